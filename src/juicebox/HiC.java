@@ -25,6 +25,7 @@
 
 package juicebox;
 
+import juicebox.assembly.AssemblyChanges;
 import juicebox.data.*;
 import juicebox.data.anchor.MotifAnchor;
 import juicebox.gui.SuperAdapter;
@@ -661,9 +662,10 @@ public class HiC {
 
             // this addresses draw box to zoom when down from low res pearsons
             // it can't zoom all the way in, but can zoom in a little more up to 500K
-            if (isInPearsonsMode() && newZoom.getBinSize() < HiCGlobals.MAX_PEARSON_ZOOM) {
+            // (unless the pearsons at the target resolution is stored in the file)
+            if (isPearsonEdgeCaseEncountered(newZoom)) {
                 for (int i = zoomList.size() - 1; i >= 0; i--) {
-                    if (zoomList.get(i).getBinSize() >= HiCGlobals.MAX_PEARSON_ZOOM) {
+                    if (zoomList.get(i).getBinSize() >= newZoom.getBinSize() && !isPearsonEdgeCaseEncountered(zoomList.get(i))) {
                         newZoom = zoomList.get(i);
                         break;
                     }
@@ -1120,15 +1122,50 @@ public class HiC {
     }
 
     public boolean isPearsonEdgeCaseEncountered(HiCZoom zoom) {
-        return isInPearsonsMode() && zoom.getBinSize() < HiCGlobals.MAX_PEARSON_ZOOM;
+        return isInPearsonsMode() && zoom.getBinSize() < HiCGlobals.MAX_PEARSON_ZOOM && !isPearsonsPrecomputed(zoom);
     }
 
     public boolean isResolutionLocked() {
         return superAdapter.isResolutionLocked() ||
-                // pearson can't zoom in
+                // pearson can't zoom in, unless the next resolution has precomputed pearsons
                 // even though it should never be less, I think we should try to catch it
                 // (i.e. <= rather than ==)?
-                (isInPearsonsMode() && currentZoom.getBinSize() <= HiCGlobals.MAX_PEARSON_ZOOM);
+                (isInPearsonsMode() && currentZoom.getBinSize() <= HiCGlobals.MAX_PEARSON_ZOOM &&
+                        !isPearsonsPrecomputed(getNextFinerZoom()));
+    }
+
+    private HiCZoom getNextFinerZoom() {
+        if (dataset == null || currentZoom == null) return null;
+        List<HiCZoom> zoomList = currentZoom.getUnit() == HiC.Unit.BP ? dataset.getBpZooms() : dataset.getFragZooms();
+        HiCZoom finerZoom = null;
+        for (HiCZoom zoom : zoomList) {
+            if (zoom.getBinSize() < currentZoom.getBinSize() &&
+                    (finerZoom == null || zoom.getBinSize() > finerZoom.getBinSize())) {
+                finerZoom = zoom;
+            }
+        }
+        return finerZoom;
+    }
+
+    /**
+     * @param zoom resolution
+     * @return true if every pearsons shown in the current display option is stored in its file at this resolution,
+     * so it does not have to be computed
+     */
+    private boolean isPearsonsPrecomputed(HiCZoom zoom) {
+        if (zoom == null) return false;
+        if (displayOption != MatrixType.PEARSONCTRL &&
+                !isPearsonsPrecomputed(getMatrix(), zoom, obsNormalizationType)) {
+            return false;
+        }
+        return !MatrixType.isControlPearsonType(displayOption) ||
+                isPearsonsPrecomputed(getControlMatrix(), zoom, ctrlNormalizationType);
+    }
+
+    private static boolean isPearsonsPrecomputed(Matrix matrix, HiCZoom zoom, NormalizationType type) {
+        if (matrix == null) return false;
+        MatrixZoomData zd = matrix.getZoomData(zoom);
+        return zd != null && zd.hasPrecomputedPearsons(type);
     }
 
     public boolean isPearsonsNotAvailable(boolean isControl) {
@@ -1241,6 +1278,20 @@ public class HiC {
         }
     }
 
+    public void clearMatrixZoomDataCache(AssemblyChanges changes) {
+        clearCacheForDataset(dataset, changes);
+        if (isControlLoaded()) {
+            clearCacheForDataset(controlDataset, changes);
+        }
+    }
+
+    private void clearCacheForDataset(Dataset ds, AssemblyChanges changes) {
+        Matrix matrix = ds.getMatrix(xContext.getChromosome(), yContext.getChromosome());
+        for (HiCZoom zoom : ds.getBpZooms()) {
+            matrix.getZoomData(zoom).clearCache(changes);
+        }
+    }
+
     public List<Pair<MotifAnchor, MotifAnchor>> getRTreeHandlerIntersectingFeatures(int chrIndex, int g1, int g2) {
         try {
             return ((CustomMatrixZoomData) getZd()).getRTreeHandlerIntersectingFeatures(chrIndex, g1, g2);
@@ -81,6 +81,8 @@ public class HiCGlobals {
     public static double hicMapScale = 1; //TODO implement Map scaling with this global variable
     // whether MatrixZoomData should cache or not
     public static boolean useCache = true;
+    // whether expected values are read from the footer on first use or when the file is opened
+    public static boolean useLazyFooter = true;
     public static boolean guiIsCurrentlyActive = false;
     public static boolean printVerboseComments = false;
     public static boolean slideshowEnabled = false;
@@ -0,0 +1,230 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.assembly;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable snapshot of the aggregate scaffolds of an assembly, sorted by original position, used to translate
+ * original bins to their current position.
+ */
+class AggregateScaffoldMapping {
+
+    static final AggregateScaffoldMapping EMPTY = new AggregateScaffoldMapping(new ArrayList<Scaffold>());
+
+    private final long[] originalStarts;
+    private final long[] lengths;
+    private final long[] currentStarts;
+    private final boolean[] inverted;
+
+    /**
+     * @param scaffolds sorted with Scaffold.originalStateComparator
+     */
+    AggregateScaffoldMapping(List<Scaffold> scaffolds) {
+        int n = scaffolds.size();
+        originalStarts = new long[n];
+        lengths = new long[n];
+        currentStarts = new long[n];
+        inverted = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            Scaffold scaffold = scaffolds.get(i);
+            originalStarts[i] = scaffold.getOriginalStart();
+            lengths[i] = scaffold.getLength();
+            currentStarts[i] = scaffold.getCurrentStart();
+            inverted[i] = scaffold.getInvertedVsInitial();
+        }
+    }
+
+    private AggregateScaffoldMapping(long[] originalStarts, long[] lengths, long[] currentStarts, boolean[] inverted) {
+        this.originalStarts = originalStarts;
+        this.lengths = lengths;
+        this.currentStarts = currentStarts;
+        this.inverted = inverted;
+    }
+
+    /**
+     * @return mapping from current to original positions, sorted by current position
+     */
+    AggregateScaffoldMapping inverse() {
+        int n = originalStarts.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Long.compare(currentStarts[o1], currentStarts[o2]);
+            }
+        });
+
+        long[] newOriginalStarts = new long[n];
+        long[] newLengths = new long[n];
+        long[] newCurrentStarts = new long[n];
+        boolean[] newInverted = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            newOriginalStarts[i] = currentStarts[order[i]];
+            newLengths[i] = lengths[order[i]];
+            newCurrentStarts[i] = originalStarts[order[i]];
+            newInverted[i] = inverted[order[i]];
+        }
+        return new AggregateScaffoldMapping(newOriginalStarts, newLengths, newCurrentStarts, newInverted);
+    }
+
+    /**
+     * Same result as a binary search with Scaffold.originalStateComparator for a probe of length 1 starting at
+     * genomicPos: the last scaffold ordered before the probe, or none if the probe matches a scaffold exactly.
+     *
+     * @return index of the scaffold containing genomicPos, or -1
+     */
+    int find(long genomicPos) {
+        int low = 0;
+        int high = originalStarts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (originalStarts[mid] < genomicPos || (originalStarts[mid] == genomicPos && lengths[mid] > 1)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low < originalStarts.length && originalStarts[low] == genomicPos && lengths[low] == 1) {
+            return -1;
+        }
+        return low - 1;
+    }
+
+    /**
+     * @return index of the last scaffold starting before genomicPos, or -1
+     */
+    private int findContaining(long genomicPos) {
+        int low = 0;
+        int high = originalStarts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (originalStarts[mid] < genomicPos) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * @return current bin of an original bin, or -1 if it is not in any scaffold
+     */
+    int getAlteredBin(int binValue, int binSize, double scale) {
+        long originalFirstNucleotide = (long) (binValue * scale * binSize + 1);
+        int i = find(originalFirstNucleotide);
+        if (i < 0) {
+            return -1;
+        }
+
+        long currentFirstNucleotide;
+        if (!inverted[i]) {
+            currentFirstNucleotide = currentStarts[i] + originalFirstNucleotide - originalStarts[i];
+        } else {
+            currentFirstNucleotide = currentStarts[i] + lengths[i] - originalFirstNucleotide + 1 - (long) (scale * binSize) + originalStarts[i];
+        }
+        return (int) (currentFirstNucleotide / (scale * binSize) - 1);
+    }
+
+    /**
+     * @return end of the last scaffold in original coordinates
+     */
+    long getOriginalEnd() {
+        long end = 0;
+        for (int i = 0; i < originalStarts.length; i++) {
+            end = Math.max(end, originalStarts[i] + lengths[i]);
+        }
+        return end;
+    }
+
+    /**
+     * Positions in scaffolds i and j (of other) map to the same current position
+     */
+    private boolean hasSameTranslation(int i, AggregateScaffoldMapping other, int j) {
+        if (i < 0 || j < 0) {
+            return i < 0 && j < 0;
+        }
+        if (inverted[i] != other.inverted[j]) {
+            return false;
+        }
+        if (inverted[i]) {
+            return currentStarts[i] + lengths[i] + originalStarts[i] ==
+                    other.currentStarts[j] + other.lengths[j] + other.originalStarts[j];
+        }
+        return currentStarts[i] - originalStarts[i] == other.currentStarts[j] - other.originalStarts[j];
+    }
+
+    /**
+     * Original-coordinate intervals whose current position differs between this mapping and other.
+     * Splitting a scaffold without moving it changes nothing; intervals may be slightly conservative.
+     *
+     * @return sorted, disjoint intervals as {start, end} with the end exclusive
+     */
+    List<long[]> getChangedIntervals(AggregateScaffoldMapping other) {
+        // every breakpoint of either mapping starts a segment in which both translations are fixed
+        long[] breakpoints = new long[originalStarts.length + other.originalStarts.length];
+        int n = 0;
+        int a = 0;
+        int b = 0;
+        while (a < originalStarts.length || b < other.originalStarts.length) {
+            long next;
+            if (b >= other.originalStarts.length ||
+                    (a < originalStarts.length && originalStarts[a] <= other.originalStarts[b])) {
+                next = originalStarts[a++];
+            } else {
+                next = other.originalStarts[b++];
+            }
+            if (n == 0 || breakpoints[n - 1] != next) {
+                breakpoints[n++] = next;
+            }
+        }
+
+        List<long[]> changed = new ArrayList<>();
+        for (int k = 0; k < n; k++) {
+            long start = breakpoints[k];
+            long end = k + 1 < n ? breakpoints[k + 1] : Long.MAX_VALUE;
+            // find treats a breakpoint matching a scaffold of length 1 specially, so check plain containment too
+            boolean differs = !hasSameTranslation(find(start), other, other.find(start))
+                    || !hasSameTranslation(find(start + 1), other, other.find(start + 1))
+                    || !hasSameTranslation(findContaining(start + 1), other, other.findContaining(start + 1));
+            if (differs) {
+                if (!changed.isEmpty() && changed.get(changed.size() - 1)[1] == start) {
+                    changed.get(changed.size() - 1)[1] = end;
+                } else {
+                    changed.add(new long[]{start, end});
+                }
+            }
+        }
+        // positions before the first breakpoint are in no scaffold in either mapping
+        return changed;
+    }
+}
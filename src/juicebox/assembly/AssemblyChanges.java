@@ -0,0 +1,78 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.assembly;
+
+import java.util.List;
+
+/**
+ * Intervals affected by the assembly edits since the caches were last brought up to date, in both original and
+ * current (assembly) coordinates. Cached data outside these intervals is still valid.
+ */
+public class AssemblyChanges {
+
+    private final List<long[]> originalIntervals;
+    private final List<long[]> currentIntervals;
+
+    AssemblyChanges(List<long[]> originalIntervals, List<long[]> currentIntervals) {
+        this.originalIntervals = originalIntervals;
+        this.currentIntervals = currentIntervals;
+    }
+
+    private static boolean overlaps(List<long[]> intervals, int firstBin, int lastBin, double binWidth) {
+        // widen by a bin on each side to allow for rounding when mapping positions to bins
+        double start = (firstBin - 1) * binWidth;
+        double end = (lastBin + 2) * binWidth;
+        for (long[] interval : intervals) {
+            if (interval[0] <= end && interval[1] > start) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return originalIntervals.isEmpty() && currentIntervals.isEmpty();
+    }
+
+    /**
+     * @param firstBin first original bin
+     * @param lastBin  last original bin (inclusive)
+     * @param binWidth bin size in base pairs, including the map scale
+     * @return true if contacts of any of the bins were moved
+     */
+    public boolean affectsOriginalBins(int firstBin, int lastBin, double binWidth) {
+        return overlaps(originalIntervals, firstBin, lastBin, binWidth);
+    }
+
+    /**
+     * @param firstBin first bin in assembly coordinates
+     * @param lastBin  last bin in assembly coordinates (inclusive)
+     * @param binWidth bin size in base pairs, including the map scale
+     * @return true if any of the bins now shows different contacts
+     */
+    public boolean affectsCurrentBins(int firstBin, int lastBin, double binWidth) {
+        return overlaps(currentIntervals, firstBin, lastBin, binWidth);
+    }
+}
@@ -29,9 +29,8 @@ import juicebox.data.Block;
 import juicebox.data.ContactRecord;
 import juicebox.gui.SuperAdapter;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by muhammadsaadshamim on 4/17/17.
@@ -39,13 +38,37 @@ import java.util.List;
 public class AssemblyHeatmapHandler {
 
     private static SuperAdapter superAdapter;
-    private static List<Scaffold> listOfOSortedAggregateScaffolds = new ArrayList<>();
-//    Does not seem to offer any speedup.
-//    private static Scaffold guessScaffold = null;
-
-    public static void setListOfOSortedAggregateScaffolds(List<Scaffold> listOfAggregateScaffolds) {
-        AssemblyHeatmapHandler.listOfOSortedAggregateScaffolds = new ArrayList<>(listOfAggregateScaffolds);
+    private static AggregateScaffoldMapping aggregateScaffoldMapping = AggregateScaffoldMapping.EMPTY;
+    // bin translation table for each bin size used so far
+    private static final Map<Integer, BinTranslationTable> binTranslationTables = new ConcurrentHashMap<>();
+    // changes not yet applied to the cached blocks and tiles
+    private static List<long[]> pendingOriginalChanges = new ArrayList<>();
+    private static List<long[]> pendingCurrentChanges = new ArrayList<>();
+
+    public static synchronized void setListOfOSortedAggregateScaffolds(List<Scaffold> listOfAggregateScaffolds) {
+        List<Scaffold> listOfOSortedAggregateScaffolds = new ArrayList<>(listOfAggregateScaffolds);
         Collections.sort(listOfOSortedAggregateScaffolds, Scaffold.originalStateComparator);
+
+        AggregateScaffoldMapping newMapping = new AggregateScaffoldMapping(listOfOSortedAggregateScaffolds);
+        List<long[]> changedIntervals = aggregateScaffoldMapping.getChangedIntervals(newMapping);
+        for (BinTranslationTable table : binTranslationTables.values()) {
+            table.update(newMapping, changedIntervals);
+        }
+        if (!changedIntervals.isEmpty()) {
+            pendingOriginalChanges.addAll(changedIntervals);
+            pendingCurrentChanges.addAll(aggregateScaffoldMapping.inverse().getChangedIntervals(newMapping.inverse()));
+        }
+        aggregateScaffoldMapping = newMapping;
+    }
+
+    /**
+     * @return intervals changed by the assembly since the last call
+     */
+    public static synchronized AssemblyChanges drainChanges() {
+        AssemblyChanges changes = new AssemblyChanges(pendingOriginalChanges, pendingCurrentChanges);
+        pendingOriginalChanges = new ArrayList<>();
+        pendingCurrentChanges = new ArrayList<>();
+        return changes;
     }
 
     public static SuperAdapter getSuperAdapter() {
@@ -56,69 +79,51 @@ public class AssemblyHeatmapHandler {
         AssemblyHeatmapHandler.superAdapter = superAdapter;
     }
 
+    private static BinTranslationTable getBinTranslationTable(int binSize) {
+        BinTranslationTable table = binTranslationTables.get(binSize);
+        if (table == null || table.getScale() != HiCGlobals.hicMapScale) {
+            synchronized (AssemblyHeatmapHandler.class) {
+                table = binTranslationTables.get(binSize);
+                if (table == null || table.getScale() != HiCGlobals.hicMapScale) {
+                    table = new BinTranslationTable(aggregateScaffoldMapping, binSize, HiCGlobals.hicMapScale);
+                    binTranslationTables.put(binSize, table);
+                }
+            }
+        }
+        return table;
+    }
+
     public static Block modifyBlock(Block block, String key, int binSize, int chr1Idx, int chr2Idx) {
         //temp fix for AllByAll. TODO: trace this!
         if (chr1Idx == 0 && chr2Idx == 0) {
             binSize = 1000 * binSize; // AllByAll is measured in kb
         }
+        BinTranslationTable table = getBinTranslationTable(binSize);
 
-        List<ContactRecord> alteredContacts = new ArrayList<>();
-        for (ContactRecord record : block.getContactRecords()) {
+        Collection<ContactRecord> records = block.getContactRecords();
+        List<ContactRecord> alteredContacts = new ArrayList<>(records.size());
+        for (ContactRecord record : records) {
 
-            int alteredAsmBinX = getAlteredAsmBin(record.getBinX(), binSize);
-            int alteredAsmBinY = getAlteredAsmBin(record.getBinY(), binSize);
+            int alteredAsmBinX = table.getAlteredBin(record.getBinX());
+            int alteredAsmBinY = table.getAlteredBin(record.getBinY());
 
             if (alteredAsmBinX == -1 || alteredAsmBinY == -1) {
                 alteredContacts.add(record);
             } else {
                 if (alteredAsmBinX > alteredAsmBinY) {
-                    alteredContacts.add(new ContactRecord(
-                            alteredAsmBinY,
-                            alteredAsmBinX, record.getCounts()));
+                    int tmp = alteredAsmBinX;
+                    alteredAsmBinX = alteredAsmBinY;
+                    alteredAsmBinY = tmp;
+                }
+                if (alteredAsmBinX == record.getBinX() && alteredAsmBinY == record.getBinY()) {
+                    // unchanged by the assembly, no need for a new record
+                    alteredContacts.add(record);
                 } else {
-                    alteredContacts.add(new ContactRecord(
-                            alteredAsmBinX,
-                            alteredAsmBinY, record.getCounts()));
+                    alteredContacts.add(new ContactRecord(alteredAsmBinX, alteredAsmBinY, record.getCounts()));
                 }
             }
         }
         block = new Block(block.getNumber(), alteredContacts, key);
         return block;
     }
-
-
-
-    private static int getAlteredAsmBin(int binValue, int binSize) {
-
-        long originalFirstNucleotide = (long) (binValue * HiCGlobals.hicMapScale * binSize + 1);
-        long currentFirstNucleotide;
-        Scaffold aggregateScaffold = lookUpOriginalAggregateScaffold(originalFirstNucleotide);
-
-        if (aggregateScaffold != null) {
-            if (!aggregateScaffold.getInvertedVsInitial()) {
-                currentFirstNucleotide = (aggregateScaffold.getCurrentStart() + originalFirstNucleotide - aggregateScaffold.getOriginalStart());
-            } else {
-                currentFirstNucleotide = (aggregateScaffold.getCurrentEnd() - originalFirstNucleotide + 1 - (long) (HiCGlobals.hicMapScale * binSize) + aggregateScaffold.getOriginalStart());
-            }
-
-            return (int) (currentFirstNucleotide / (HiCGlobals.hicMapScale * binSize) - 1);
-        }
-        return -1;
-    }
-
-    private static Scaffold lookUpOriginalAggregateScaffold(long genomicPos) {
-//        Does not seem to offer much advantage
-//        if (guessScaffold!=null && guessScaffold.getOriginalStart()<genomicPos && guessScaffold.getOriginalEnd()>=genomicPos){
-//            return guessScaffold;
-//        }
-        Scaffold tmp = new Scaffold("tmp", 1, 1);
-        tmp.setOriginalStart(genomicPos);
-        int idx = Collections.binarySearch(listOfOSortedAggregateScaffolds, tmp, Scaffold.originalStateComparator);
-        if (-idx - 2 >= 0) {
-            return listOfOSortedAggregateScaffolds.get(-idx - 2);
-        }
-        else
-            return null;
-
-    }
-}
\ No newline at end of file
+}
@@ -84,7 +84,7 @@ public class AssemblyOperationExecutor {
     private static void performAssemblyAction(final SuperAdapter superAdapter, final AssemblyScaffoldHandler assemblyScaffoldHandler, final Boolean refreshMap) {
 
         superAdapter.getAssemblyStateTracker().assemblyActionPerformed(assemblyScaffoldHandler, refreshMap);
-        if (refreshMap) superAdapter.safeClearAllMZDCache();
+        if (refreshMap) superAdapter.safeClearChangedMZDCache();
 
     }
 }
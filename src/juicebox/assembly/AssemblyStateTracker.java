@@ -57,7 +57,7 @@ public class AssemblyStateTracker {
     public void resetState() {
         undoStack.clear();
         assemblyActionPerformed(initialAssemblyScaffoldHandler, true);
-        superAdapter.safeClearAllMZDCache();
+        superAdapter.safeClearChangedMZDCache();
     }
 
     public AssemblyScaffoldHandler getInitialAssemblyScaffoldHandler() {
@@ -93,7 +93,7 @@ public class AssemblyStateTracker {
 
             undoStack.peek().updateAssembly(true);
             regenerateLayers(true);
-            superAdapter.safeClearAllMZDCache();
+            superAdapter.safeClearChangedMZDCache();
         }
     }
 
@@ -107,7 +107,7 @@ public class AssemblyStateTracker {
 
             undoStack.peek().updateAssembly(true);
             regenerateLayers(true);
-            superAdapter.safeClearAllMZDCache();
+            superAdapter.safeClearChangedMZDCache();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.assembly;
+
+import java.util.List;
+
+/**
+ * Current bin of every original bin at one resolution, for the current assembly.
+ * The table is replaced (copy on write) when the assembly changes, so readers never see a partial update.
+ */
+class BinTranslationTable {
+
+    // tables are not built past this many bins; remaining bins are translated directly
+    private static final int MAX_TABLE_SIZE = 1 << 24;
+
+    private final int binSize;
+    private final double scale;
+    private volatile AggregateScaffoldMapping mapping;
+    private volatile int[] currentBins;
+
+    BinTranslationTable(AggregateScaffoldMapping mapping, int binSize, double scale) {
+        this.binSize = binSize;
+        this.scale = scale;
+        this.mapping = mapping;
+
+        long numBins = (long) (mapping.getOriginalEnd() / (scale * binSize)) + 2;
+        int[] bins = new int[(int) Math.min(numBins, MAX_TABLE_SIZE)];
+        for (int bin = 0; bin < bins.length; bin++) {
+            bins[bin] = mapping.getAlteredBin(bin, binSize, scale);
+        }
+        currentBins = bins;
+    }
+
+    double getScale() {
+        return scale;
+    }
+
+    /**
+     * @return current bin of an original bin, or -1 if it is not in any scaffold
+     */
+    int getAlteredBin(int bin) {
+        int[] bins = currentBins;
+        if (bin >= 0 && bin < bins.length) {
+            return bins[bin];
+        }
+        return mapping.getAlteredBin(bin, binSize, scale);
+    }
+
+    /**
+     * Recompute only the bins that start in the changed intervals
+     *
+     * @param changedIntervals original-coordinate intervals whose translation changed
+     */
+    synchronized void update(AggregateScaffoldMapping newMapping, List<long[]> changedIntervals) {
+        int[] bins = currentBins.clone();
+        double binWidth = scale * binSize;
+        for (long[] interval : changedIntervals) {
+            // a bin's first nucleotide is (long) (bin * binWidth + 1); widen by a bin on each side for rounding
+            long firstBin = Math.max(0, (long) ((interval[0] - 1) / binWidth) - 1);
+            long lastBin = Math.min(bins.length - 1, (long) ((Math.min(interval[1], Long.MAX_VALUE / 2) - 1) / binWidth) + 1);
+            for (long bin = firstBin; bin <= lastBin; bin++) {
+                bins[(int) bin] = newMapping.getAlteredBin((int) bin, binSize, scale);
+            }
+        }
+        mapping = newMapping;
+        currentBins = bins;
+    }
+}
@@ -55,11 +55,7 @@ public abstract class AbstractDatasetReader implements DatasetReader {
 
     public BasicMatrix readPearsons(String chr1Name, String chr2Name, HiCZoom zoom, NormalizationType type) throws IOException {
 
-        // TODO -- need to use zoom unit (BP or FRAG)
-        String rootPath = FileUtils.getParent(path);
-        String folder = rootPath + "/" + chr1Name;
-        String file = "pearsons" + "_"  + zoom.getBinSize() + "_" + type + ".bin";
-        String fullPath = folder + "/" + file;
+        String fullPath = getPearsonsPath(chr1Name, zoom, type);
 
         if (FileUtils.resourceExists(fullPath)) {
             return Pearsons.readPearsons(fullPath);
@@ -69,6 +65,18 @@ public abstract class AbstractDatasetReader implements DatasetReader {
 
     }
 
+    public boolean hasPrecomputedPearsons(String chr1Name, String chr2Name, HiCZoom zoom, NormalizationType type) {
+        return FileUtils.resourceExists(getPearsonsPath(chr1Name, zoom, type));
+    }
+
+    private String getPearsonsPath(String chr1Name, HiCZoom zoom, NormalizationType type) {
+        // TODO -- need to use zoom unit (BP or FRAG)
+        String rootPath = FileUtils.getParent(path);
+        String folder = rootPath + "/" + chr1Name;
+        String file = "pearsons" + "_"  + zoom.getBinSize() + "_" + type + ".bin";
+        return folder + "/" + file;
+    }
+
     public String getPath() {
         return path;
     }
@@ -118,7 +126,7 @@ public abstract class AbstractDatasetReader implements DatasetReader {
                     System.err.println("Error reading eigenvector " + e.getLocalizedMessage());
                 }
             }
-        } else {
+        } else if (HiCGlobals.printVerboseComments) {
             System.out.println("Can't find eigenvector" + fullPath);
         }
         return null;
@@ -41,6 +41,7 @@ public class Block {
     private final int number;
     private final String uniqueRegionID;
     private final List<ContactRecord> records;
+    private volatile BlockRowIndex rowIndex;
 
     public Block(int number, String regionID) {
         this.number = number;
@@ -65,4 +66,35 @@ public class Block {
     public Collection<ContactRecord> getContactRecords() {
         return records;
     }
+
+    /**
+     * Row index over the records, built on first use
+     */
+    BlockRowIndex getRowIndex() {
+        BlockRowIndex index = rowIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = rowIndex;
+                if (index == null) {
+                    index = new BlockRowIndex(records);
+                    rowIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return the record at (binX, binY), or null if this block has none
+     */
+    public ContactRecord getContactRecord(int binX, int binY) {
+        return getRowIndex().getRecord(binX, binY);
+    }
+
+    /**
+     * @return records with binXStart <= binX < binXEnd and binYStart <= binY < binYEnd
+     */
+    public List<ContactRecord> getContactRecords(int binXStart, int binYStart, int binXEnd, int binYEnd) {
+        return getRowIndex().getRecords(binXStart, binYStart, binXEnd, binYEnd);
+    }
 }
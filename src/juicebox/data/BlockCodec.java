@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.data;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+/**
+ * Compression used for the blocks of a .hic file.  Files before version 9 always use Deflate; from version 9 on the
+ * codec id is stored in the header.
+ */
+public abstract class BlockCodec {
+
+    public static final BlockCodec DEFLATE = new DeflateBlockCodec(0, "deflate", Deflater.DEFAULT_COMPRESSION);
+    public static final BlockCodec LZ4 = new LZ4BlockCodec(1, "lz4");
+    public static final BlockCodec DEFLATE_BEST = new DeflateBlockCodec(2, "deflate_best", Deflater.BEST_COMPRESSION);
+    private static final BlockCodec[] codecs = {DEFLATE, LZ4, DEFLATE_BEST};
+
+    private final int id;
+    private final String name;
+
+    BlockCodec(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    /**
+     * @return the codec with this id, or null if there is none
+     */
+    public static BlockCodec getCodec(int id) {
+        for (BlockCodec codec : codecs) {
+            if (codec.id == id) return codec;
+        }
+        return null;
+    }
+
+    /**
+     * @return the codec with this name, or null if there is none
+     */
+    public static BlockCodec getCodec(String name) {
+        for (BlockCodec codec : codecs) {
+            if (codec.name.equalsIgnoreCase(name)) return codec;
+        }
+        return null;
+    }
+
+    public static String getCodecNames() {
+        StringBuilder names = new StringBuilder();
+        for (BlockCodec codec : codecs) {
+            if (names.length() > 0) names.append(", ");
+            names.append(codec.name);
+        }
+        return names.toString();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public abstract byte[] compress(byte[] data);
+
+    public abstract byte[] decompress(byte[] data) throws IOException;
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.data;
+
+import htsjdk.tribble.util.LittleEndianInputStream;
+import juicebox.tools.utils.original.Preprocessor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of the blocks for one resolution of a matrix.  Only the location of the index in the file is known until the
+ * resolution is first used; the entries are then kept as arrays sorted by block number and found by binary search.
+ */
+class BlockIndex {
+
+    static final int ENTRY_SIZE = 16;
+
+    private final long filePosition;
+    private final int numBlocks;
+    private int[] blockNumbers;
+    private long[] positions;
+    private int[] sizes;
+
+    BlockIndex(long filePosition, int numBlocks) {
+        this.filePosition = filePosition;
+        this.numBlocks = numBlocks;
+    }
+
+    long getFilePosition() {
+        return filePosition;
+    }
+
+    int getNumBlocks() {
+        return numBlocks;
+    }
+
+    /**
+     * @return file position just after the index
+     */
+    long getEndPosition() {
+        return filePosition + (long) ENTRY_SIZE * numBlocks;
+    }
+
+    boolean isLoaded() {
+        return blockNumbers != null;
+    }
+
+    /**
+     * @param buffer the index as stored in the file, i.e. numBlocks entries of (block number, position, size)
+     */
+    void load(byte[] buffer) throws IOException {
+        LittleEndianInputStream dis = new LittleEndianInputStream(new ByteArrayInputStream(buffer));
+        int[] numbers = new int[numBlocks];
+        long[] filePositions = new long[numBlocks];
+        int[] blockSizes = new int[numBlocks];
+        boolean isSorted = true;
+        for (int i = 0; i < numBlocks; i++) {
+            numbers[i] = dis.readInt();
+            filePositions[i] = dis.readLong();
+            blockSizes[i] = dis.readInt();
+            isSorted = isSorted && (i == 0 || numbers[i - 1] < numbers[i]);
+        }
+
+        if (!isSorted) {
+            long[] order = new long[numBlocks];
+            for (int i = 0; i < numBlocks; i++) {
+                order[i] = ((long) numbers[i] << 32) | i;
+            }
+            Arrays.sort(order);
+            int[] sortedNumbers = new int[numBlocks];
+            long[] sortedPositions = new long[numBlocks];
+            int[] sortedSizes = new int[numBlocks];
+            for (int i = 0; i < numBlocks; i++) {
+                int k = (int) order[i];
+                sortedNumbers[i] = numbers[k];
+                sortedPositions[i] = filePositions[k];
+                sortedSizes[i] = blockSizes[k];
+            }
+            numbers = sortedNumbers;
+            filePositions = sortedPositions;
+            blockSizes = sortedSizes;
+        }
+
+        positions = filePositions;
+        sizes = blockSizes;
+        blockNumbers = numbers;
+    }
+
+    /**
+     * @return location of the block in the file, or null if the block is not in the index
+     */
+    Preprocessor.IndexEntry getEntry(int blockNumber) {
+        int i = Arrays.binarySearch(blockNumbers, blockNumber);
+        if (i < 0) return null;
+        return new Preprocessor.IndexEntry(positions[i], sizes[i]);
+    }
+
+    List<Integer> getBlockNumbers() {
+        List<Integer> numbers = new ArrayList<>(blockNumbers.length);
+        for (int blockNumber : blockNumbers) {
+            numbers.add(blockNumber);
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.data;
+
+import java.util.*;
+
+/**
+ * Row offsets over the records of a block (compressed sparse row layout).
+ * Records are kept ordered by binY, then binX, so a single bin is found by two binary searches and a rectangle
+ * only visits the rows it spans.
+ */
+class BlockRowIndex {
+
+    private final ContactRecord[] records;
+    private final int[] binXs;
+    private final int[] rowBinYs;
+    private final int[] rowStarts;
+
+    BlockRowIndex(Collection<ContactRecord> recordCollection) {
+        records = recordCollection.toArray(new ContactRecord[recordCollection.size()]);
+        // blocks read from disk are usually already ordered, so they are only sorted when needed
+        for (int i = 1; i < records.length; i++) {
+            if (compareRowMajor(records[i - 1], records[i]) > 0) {
+                Arrays.sort(records, new Comparator<ContactRecord>() {
+                    @Override
+                    public int compare(ContactRecord o1, ContactRecord o2) {
+                        return compareRowMajor(o1, o2);
+                    }
+                });
+                break;
+            }
+        }
+
+        binXs = new int[records.length];
+        int numRows = 0;
+        for (int i = 0; i < records.length; i++) {
+            binXs[i] = records[i].getBinX();
+            if (i == 0 || records[i].getBinY() != records[i - 1].getBinY()) {
+                numRows++;
+            }
+        }
+
+        rowBinYs = new int[numRows];
+        rowStarts = new int[numRows + 1];
+        int row = -1;
+        for (int i = 0; i < records.length; i++) {
+            if (i == 0 || records[i].getBinY() != records[i - 1].getBinY()) {
+                row++;
+                rowBinYs[row] = records[i].getBinY();
+                rowStarts[row] = i;
+            }
+        }
+        rowStarts[numRows] = records.length;
+    }
+
+    static int compareRowMajor(ContactRecord o1, ContactRecord o2) {
+        if (o1.getBinY() != o2.getBinY()) {
+            return Integer.compare(o1.getBinY(), o2.getBinY());
+        }
+        return Integer.compare(o1.getBinX(), o2.getBinX());
+    }
+
+    /**
+     * @return first index in [from, to) whose value is >= key, or to if there is none
+     */
+    private static int lowerBound(int[] values, int from, int to, int key) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return records in row (binY) then column (binX) order
+     */
+    ContactRecord[] getRecords() {
+        return records;
+    }
+
+    /**
+     * @return the record at (binX, binY), or null if the block has none
+     */
+    ContactRecord getRecord(int binX, int binY) {
+        int row = lowerBound(rowBinYs, 0, rowBinYs.length, binY);
+        if (row == rowBinYs.length || rowBinYs[row] != binY) {
+            return null;
+        }
+        int i = lowerBound(binXs, rowStarts[row], rowStarts[row + 1], binX);
+        if (i == rowStarts[row + 1] || binXs[i] != binX) {
+            return null;
+        }
+        return records[i];
+    }
+
+    /**
+     * @return records with binXStart <= binX < binXEnd and binYStart <= binY < binYEnd, in row order
+     */
+    List<ContactRecord> getRecords(int binXStart, int binYStart, int binXEnd, int binYEnd) {
+        List<ContactRecord> result = new ArrayList<>();
+        for (int row = lowerBound(rowBinYs, 0, rowBinYs.length, binYStart);
+             row < rowBinYs.length && rowBinYs[row] < binYEnd; row++) {
+            int end = rowStarts[row + 1];
+            for (int i = lowerBound(binXs, rowStarts[row], end, binXStart); i < end && binXs[i] < binXEnd; i++) {
+                result.add(records[i]);
+            }
+        }
+        return result;
+    }
+}
@@ -37,6 +37,7 @@ import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.*;
 
 //import java.util.List;
 
@@ -50,6 +51,7 @@ public class CombinedDatasetReader implements DatasetReader {
     private final List<DatasetReaderV2> readers;
     private boolean hasFrags;
     private int version;
+    private ExecutorService blockReadExecutor;
 
     public CombinedDatasetReader(List<DatasetReaderV2> readers) {
         this.readers = readers;
@@ -142,22 +144,71 @@ public class CombinedDatasetReader implements DatasetReader {
     }
 
     @Override
-    public Block readNormalizedBlock(int blockNumber, MatrixZoomData zd, NormalizationType no) throws IOException {
+    public Block readNormalizedBlock(final int blockNumber, final MatrixZoomData zd, final NormalizationType no) throws IOException {
 
-        List<Block> blockList = new ArrayList<>();
-        for (DatasetReader r : readers) {
+        // issue the reads for all constituent datasets concurrently, but keep the results in reader order
+        List<Future<Block>> futures = new ArrayList<>();
+        for (final DatasetReader r : readers) {
             if (r.isActive()) {
-                Block cb = r.readNormalizedBlock(blockNumber, zd, no);
+                futures.add(getBlockReadExecutor().submit(new Callable<Block>() {
+                    @Override
+                    public Block call() throws IOException {
+                        return r.readNormalizedBlock(blockNumber, zd, no);
+                    }
+                }));
+            }
+        }
+
+        List<Block> blockList = new ArrayList<>();
+        try {
+            for (Future<Block> future : futures) {
+                Block cb = future.get();
                 if (cb != null) {
                     blockList.add(cb);
                 }
             }
+        } catch (InterruptedException e) {
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading block " + blockNumber, e);
+        } catch (ExecutionException e) {
+            cancelAll(futures);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
         }
+
         String key = zd.getBlockKey(blockNumber, no);
         return blockList.size() == 0 ? new Block(blockNumber, key) : mergeBlocks(blockList, key);
 
     }
 
+    private synchronized ExecutorService getBlockReadExecutor() {
+        if (blockReadExecutor == null) {
+            blockReadExecutor = Executors.newFixedThreadPool(Math.max(1, readers.size()), new ThreadFactory() {
+                private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = defaultFactory.newThread(r);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return blockReadExecutor;
+    }
+
+    private static void cancelAll(List<Future<Block>> futures) {
+        for (Future<Block> future : futures) {
+            future.cancel(true);
+        }
+    }
+
     /**
      * Return the block numbers of all occupied blocks.
      *
@@ -187,6 +238,12 @@ public class CombinedDatasetReader implements DatasetReader {
 
     @Override
     public void close() {
+        synchronized (this) {
+            if (blockReadExecutor != null) {
+                blockReadExecutor.shutdownNow();
+                blockReadExecutor = null;
+            }
+        }
         for (DatasetReader r : readers) {
             r.close();
         }
@@ -203,6 +260,11 @@ public class CombinedDatasetReader implements DatasetReader {
         return null;
     }
 
+    @Override
+    public boolean hasPrecomputedPearsons(String chr1Name, String chr2Name, HiCZoom zoom, NormalizationType type) {
+        return false;
+    }
+
     /**
      * Return a dataset that is an "intersection" of the supplied datasets.
      *
@@ -554,37 +616,91 @@ public class CombinedDatasetReader implements DatasetReader {
     }
 
     /**
-     * Merge the contact records from multiple blocks to create a new block.  Contact records are sorted in row then
-     * column order.
+     * Merge the contact records from multiple blocks to create a new block.  Each block is sorted in row then
+     * column order (as stored on disk), and the blocks are combined with a k-way merge, so counts for the same
+     * bin are summed in reader order without any per-contact lookup key.
      *
      * @param blockList Blocks to merge
      * @param blockKey
      * @return new Block
      */
     private Block mergeBlocks(List<Block> blockList, String blockKey) {
-        // First combine contact records for all blocks
         final Block firstBlock = blockList.get(0);
-        int repSize = firstBlock.getContactRecords().size();
         int blockNumber = firstBlock.getNumber(); // TODO -- this should be checked, all blocks should have same number
 
-        HashMap<String, ContactRecord> mergedRecordMap = new HashMap<>(blockList.size() * repSize * 2);
+        if (blockList.size() == 1) {
+            return new Block(blockNumber, new ArrayList<>(firstBlock.getContactRecords()), blockKey);
+        }
 
-        for (Block b : blockList) {
-            Collection<ContactRecord> records = b.getContactRecords();
-            for (ContactRecord rec : records) {
-                String key = rec.getBinX() + "_" + rec.getBinY();
-                ContactRecord mergedRecord = mergedRecordMap.get(key);
-                if (mergedRecord == null) {
-                    mergedRecord = new ContactRecord(rec.getBinX(), rec.getBinY(), rec.getCounts());
-                    mergedRecordMap.put(key, mergedRecord);
-                } else {
-                    mergedRecord.incrementCount(rec.getCounts());
-                }
+        int totalSize = 0;
+        PriorityQueue<RecordCursor> queue = new PriorityQueue<>(blockList.size());
+        for (int i = 0; i < blockList.size(); i++) {
+            ContactRecord[] records = blockList.get(i).getRowIndex().getRecords();
+            totalSize += records.length;
+            if (records.length > 0) {
+                queue.add(new RecordCursor(records, i));
+            }
+        }
+
+        List<ContactRecord> mergedRecords = new ArrayList<>(totalSize);
+        while (!queue.isEmpty()) {
+            RecordCursor cursor = queue.poll();
+            ContactRecord rec = cursor.current();
+            int binX = rec.getBinX();
+            int binY = rec.getBinY();
+            float counts = rec.getCounts();
+            advance(queue, cursor);
+
+            while (!queue.isEmpty() && queue.peek().isAt(binX, binY)) {
+                RecordCursor next = queue.poll();
+                counts += next.current().getCounts();
+                advance(queue, next);
             }
+            mergedRecords.add(new ContactRecord(binX, binY, counts));
         }
 
-        List<ContactRecord> mergedRecords = new ArrayList<>(mergedRecordMap.values());
         return new Block(blockNumber, mergedRecords, blockKey);
     }
 
+    private static void advance(PriorityQueue<RecordCursor> queue, RecordCursor cursor) {
+        if (cursor.next()) {
+            queue.add(cursor);
+        }
+    }
+
+    /**
+     * Position within the sorted records of one block; ties are broken by reader index
+     */
+    private static class RecordCursor implements Comparable<RecordCursor> {
+        private final ContactRecord[] records;
+        private final int readerIndex;
+        private int position = 0;
+
+        RecordCursor(ContactRecord[] records, int readerIndex) {
+            this.records = records;
+            this.readerIndex = readerIndex;
+        }
+
+        ContactRecord current() {
+            return records[position];
+        }
+
+        boolean next() {
+            return ++position < records.length;
+        }
+
+        boolean isAt(int binX, int binY) {
+            return records[position].getBinX() == binX && records[position].getBinY() == binY;
+        }
+
+        @Override
+        public int compareTo(RecordCursor o) {
+            int comparison = BlockRowIndex.compareRowMajor(current(), o.current());
+            if (comparison != 0) {
+                return comparison;
+            }
+            return Integer.compare(readerIndex, o.readerIndex);
+        }
+    }
+
 }
@@ -38,10 +38,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.*;
 
 /**
  * Created by muhammadsaadshamim on 7/21/17.
@@ -49,8 +46,12 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class CustomMatrixZoomData extends MatrixZoomData {
 
     private final Map<String, MatrixZoomData> zoomDatasForDifferentRegions = new HashMap<>();
-    private final Map<MatrixZoomData, Map<RegionPair, LRUCache<String, Block>>> allBlockCaches = new HashMap<>();
+    private final ConcurrentMap<MatrixZoomData, ConcurrentMap<RegionPair, LRUCache<String, Block>>> allBlockCaches = new ConcurrentHashMap<>();
+    // stitched blocks for a whole window, keyed by window and normalization (the chromosome set and zoom are fixed per object)
+    private final LRUCache<String, List<Block>> stitchedBlockCache = new LRUCache<>(20);
     private final CustomMZDRegionHandler rTreeHandler = new CustomMZDRegionHandler();
+    // shared by all custom zoom datas, so drawing many pairs does not spawn a pool per call
+    private static ExecutorService blockLoadExecutor;
 
     public CustomMatrixZoomData(Chromosome chr1, Chromosome chr2, ChromosomeHandler handler, String regionKey,
                                 MatrixZoomData zd, DatasetReader reader) {
@@ -65,6 +66,9 @@ public class CustomMatrixZoomData extends MatrixZoomData {
     public void expandAvailableZoomDatas(String regionKey, MatrixZoomData zd) {
         if (getZoom().equals(zd.getZoom())) {
             zoomDatasForDifferentRegions.put(regionKey, zd);
+            synchronized (stitchedBlockCache) {
+                stitchedBlockCache.clear();
+            }
         }
     }
 
@@ -113,7 +117,34 @@ public class CustomMatrixZoomData extends MatrixZoomData {
         int gx2 = (int) (binX2 * resolution);
         int gy2 = (int) (binY2 * resolution);
 
-        return addNormalizedBlocksToListByGenomeCoordinates(gx1, gy1, gx2, gy2, norm);
+        String stitchedKey = gx1 + "_" + gy1 + "_" + gx2 + "_" + gy2 + "_" + norm;
+        if (HiCGlobals.useCache) {
+            synchronized (stitchedBlockCache) {
+                List<Block> stitched = stitchedBlockCache.get(stitchedKey);
+                if (stitched != null) {
+                    return new ArrayList<>(stitched);
+                }
+            }
+        }
+
+        List<Block> blockList = new ArrayList<>();
+        boolean isComplete = addNormalizedBlocksToListByGenomeCoordinates(blockList, gx1, gy1, gx2, gy2, norm);
+        // a window with blocks that failed to load is not kept, so the next request reads them again
+        if (HiCGlobals.useCache && isComplete) {
+            synchronized (stitchedBlockCache) {
+                stitchedBlockCache.put(stitchedKey, new ArrayList<>(blockList));
+            }
+        }
+        return blockList;
+    }
+
+    @Override
+    public void clearCache() {
+        super.clearCache();
+        allBlockCaches.clear();
+        synchronized (stitchedBlockCache) {
+            stitchedBlockCache.clear();
+        }
     }
 
     @Override
@@ -123,9 +154,11 @@ public class CustomMatrixZoomData extends MatrixZoomData {
         System.out.println("binSize (bp): " + zoom.getBinSize());
     }
 
-    private List<Block> addNormalizedBlocksToListByGenomeCoordinates(int gx1, int gy1, int gx2, int gy2,
-                                                                     final NormalizationType no) {
-        List<Block> blockList = new ArrayList<>();
+    /**
+     * @return false if some of the blocks could not be read
+     */
+    private boolean addNormalizedBlocksToListByGenomeCoordinates(List<Block> blockList, int gx1, int gy1, int gx2, int gy2,
+                                                                 final NormalizationType no) {
         Map<MatrixZoomData, Map<RegionPair, List<Integer>>> blocksNumsToLoadForZd = new HashMap<>();
         // remember these are pseudo genome coordinates
 
@@ -167,10 +200,9 @@ public class CustomMatrixZoomData extends MatrixZoomData {
 
                 List<Integer> tempBlockNumbers = zd.getBlockNumbersForRegionFromGenomePosition(originalGenomePosition);
                 for (int blockNumber : tempBlockNumbers) {
-                    String key = zd.getBlockKey(blockNumber, no);
-                    if (HiCGlobals.useCache && allBlockCaches.containsKey(zd)
-                            && allBlockCaches.get(zd).containsKey(rp) && allBlockCaches.get(zd).get(rp).containsKey(key)) {
-                        blockList.add(allBlockCaches.get(zd).get(rp).get(key));
+                    Block cached = HiCGlobals.useCache ? getCachedBlock(zd, rp, zd.getBlockKey(blockNumber, no)) : null;
+                    if (cached != null) {
+                        blockList.add(cached);
                     } else {
                         blocksNumsToLoadForZd.get(zd).get(rp).add(blockNumber);
                     }
@@ -178,82 +210,128 @@ public class CustomMatrixZoomData extends MatrixZoomData {
             }
         }
         // Actually load new blocks
-        actuallyLoadGivenBlocks(blockList, no, blocksNumsToLoadForZd);
+        boolean isComplete = actuallyLoadGivenBlocks(blockList, no, blocksNumsToLoadForZd);
         //System.out.println("num blocks post "+blockList.size());
 
         if (blockList.size() < 1) {
             System.err.println("no blocks??");
         }
 
-        return blockList;
+        return isComplete;
+    }
+
+    private Block getCachedBlock(MatrixZoomData zd, RegionPair rp, String key) {
+        ConcurrentMap<RegionPair, LRUCache<String, Block>> zdCaches = allBlockCaches.get(zd);
+        if (zdCaches == null) return null;
+        LRUCache<String, Block> cache = zdCaches.get(rp);
+        if (cache == null) return null;
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    private void cacheBlock(MatrixZoomData zd, RegionPair rp, String key, Block b) {
+        ConcurrentMap<RegionPair, LRUCache<String, Block>> zdCaches = allBlockCaches.get(zd);
+        if (zdCaches == null) {
+            allBlockCaches.putIfAbsent(zd, new ConcurrentHashMap<RegionPair, LRUCache<String, Block>>());
+            zdCaches = allBlockCaches.get(zd);
+        }
+        LRUCache<String, Block> cache = zdCaches.get(rp);
+        if (cache == null) {
+            zdCaches.putIfAbsent(rp, new LRUCache<String, Block>(50));
+            cache = zdCaches.get(rp);
+        }
+        synchronized (cache) {
+            cache.put(key, b);
+        }
+    }
+
+    private static synchronized ExecutorService getBlockLoadExecutor() {
+        if (blockLoadExecutor == null) {
+            blockLoadExecutor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+                    new ThreadFactory() {
+                        private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = defaultFactory.newThread(r);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return blockLoadExecutor;
     }
 
     /**
      * not quite an override since inputs are different, but naming preserved as parent class
+     * <p>
+     * Every block of every region pair is read and remapped as its own task on the shared executor;
+     * blocks are added to the list in submission order once all have finished.
      *
      * @param blockList
      * @param no
      * @param blocksNumsToLoadForZd
+     * @return false if some of the blocks could not be read
      */
-    private void actuallyLoadGivenBlocks(final List<Block> blockList, final NormalizationType no,
+    private boolean actuallyLoadGivenBlocks(final List<Block> blockList, final NormalizationType no,
                                          Map<MatrixZoomData, Map<RegionPair, List<Integer>>> blocksNumsToLoadForZd) {
-        final AtomicInteger errorCounter = new AtomicInteger();
-        ExecutorService service = Executors.newFixedThreadPool(1000);
+        int errorCounter = 0;
+        ExecutorService service = getBlockLoadExecutor();
+        List<Future<Block>> futures = new ArrayList<>();
 
         for (final MatrixZoomData zd : blocksNumsToLoadForZd.keySet()) {
             final Map<RegionPair, List<Integer>> blockNumberMap = blocksNumsToLoadForZd.get(zd);
             for (final RegionPair rp : blockNumberMap.keySet()) {
-                Runnable loader = new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            for (final int blockNum : blockNumberMap.get(rp)) {
-                                String key = zd.getBlockKey(blockNum, no);
-                                Block b = reader.readNormalizedBlock(blockNum, zd, no);
-                                if (b == null) {
-                                    b = new Block(blockNum, key + rp.getDescription());   // An empty block
-                                } else {
-                                    b = modifyBlock(b, key, zd, rp);
-                                }
-
-                                if (HiCGlobals.useCache) {
-                                    if (!allBlockCaches.containsKey(zd)) {
-                                        allBlockCaches.put(zd, new HashMap<RegionPair, LRUCache<String, Block>>());
-                                    }
-                                    if (!allBlockCaches.get(zd).containsKey(rp)) {
-                                        allBlockCaches.get(zd).put(rp, new LRUCache<String, Block>(50));
-                                    }
-                                    allBlockCaches.get(zd).get(rp).put(key, b);
-                                }
-                                blockList.add(b);
+                for (final int blockNum : blockNumberMap.get(rp)) {
+                    futures.add(service.submit(new Callable<Block>() {
+                        @Override
+                        public Block call() throws IOException {
+                            String key = zd.getBlockKey(blockNum, no);
+                            Block b = reader.readNormalizedBlock(blockNum, zd, no);
+                            if (b == null) {
+                                b = new Block(blockNum, key + rp.getDescription());   // An empty block
+                            } else {
+                                b = modifyBlock(b, key, zd, rp);
+                            }
+
+                            if (HiCGlobals.useCache) {
+                                cacheBlock(zd, rp, key, b);
                             }
-                        } catch (IOException e) {
-                            errorCounter.incrementAndGet();
+                            return b;
                         }
-                    }
-                };
-                service.submit(loader);
+                    }));
+                }
             }
         }
 
-        // done submitting all jobs
-        service.shutdown();
-
         // wait for all to finish
-        try {
-            service.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException e) {
-            //String.format("Pending tasks: %d", executor.getQueue().size())
-            System.err.println("Error loading custom mzd data " + e.getLocalizedMessage());
-            if (HiCGlobals.printVerboseComments) {
-                e.printStackTrace();
+        for (Future<Block> future : futures) {
+            try {
+                blockList.add(future.get());
+            } catch (ExecutionException e) {
+                errorCounter++;
+                if (HiCGlobals.printVerboseComments) {
+                    e.getCause().printStackTrace();
+                }
+            } catch (InterruptedException e) {
+                System.err.println("Error loading custom mzd data " + e.getLocalizedMessage());
+                if (HiCGlobals.printVerboseComments) {
+                    e.printStackTrace();
+                }
+                for (Future<Block> pending : futures) {
+                    pending.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                return false;
             }
         }
 
         // error printing
-        if (errorCounter.get() > 0) {
-            System.err.println(errorCounter.get() + " errors while reading blocks");
+        if (errorCounter > 0) {
+            System.err.println(errorCounter + " errors while reading blocks");
         }
+        return errorCounter == 0;
     }
 
     public List<Integer> getBoundariesOfCustomChromosomeX() {
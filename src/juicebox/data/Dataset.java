@@ -44,6 +44,7 @@ import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * @author jrobinso
@@ -56,6 +57,8 @@ public class Dataset {
     private final LRUCache<String, double[]> eigenvectorCache;
     private final LRUCache<String, NormalizationVector> normalizationVectorCache;
     private final Map<String, NormalizationVector> normalizationsVectorsOnlySavedInRAMCache;
+    private final ConcurrentMap<String, FutureTask<NormalizationVector>> pendingNormalizationVectors =
+            new ConcurrentHashMap<>();
     Map<String, ExpectedValueFunction> expectedValueFunctionMap;
     String genomeId;
     String restrictionEnzyme = null;
@@ -255,10 +258,34 @@ public class Dataset {
     public ExpectedValueFunction getExpectedValues(HiCZoom zoom, NormalizationType type) {
         if (expectedValueFunctionMap == null || zoom == null || type == null) return null;
         String key = ExpectedValueFunctionImpl.getKey(zoom, type);
-        return expectedValueFunctionMap.get(key);
+        ExpectedValueFunction function;
+        synchronized (expectedValueFunctionMap) {
+            function = expectedValueFunctionMap.get(key);
+        }
+        if (function instanceof LazyExpectedValueFunction) {
+            try {
+                return ((LazyExpectedValueFunction) function).getFunction();
+            } catch (RuntimeException e) {
+                System.err.println(e.getLocalizedMessage());
+                return null;
+            }
+        }
+        return function;
     }
 
+    /**
+     * Expected values not read yet are read before the map is returned, so entries can be used directly.
+     */
     public Map<String, ExpectedValueFunction> getExpectedValueFunctionMap() {
+        if (expectedValueFunctionMap != null) {
+            synchronized (expectedValueFunctionMap) {
+                for (Map.Entry<String, ExpectedValueFunction> entry : expectedValueFunctionMap.entrySet()) {
+                    if (entry.getValue() instanceof LazyExpectedValueFunction) {
+                        entry.setValue(((LazyExpectedValueFunction) entry.getValue()).getFunction());
+                    }
+                }
+            }
+        }
         return expectedValueFunctionMap;
     }
 
@@ -826,16 +853,20 @@ public class Dataset {
         String key = chr.getName() + "_" + zoom.getKey() + "_" + number + "_" + type;
         if (!eigenvectorCache.containsKey(key)) {
 
-            double[] eigenvector;
-            //eigenvector = reader.readEigenvector(chr.getName(), zoom, number, type.toString());
+            double[] eigenvector = null;
+            if (reader != null) {
+                eigenvector = reader.readEigenvector(chr.getName(), zoom, number, type.toString());
+            }
 
-            ExpectedValueFunction df = getExpectedValues(zoom, type);
-            Matrix m = getMatrix(chr, chr);
-            MatrixZoomData mzd = m.getZoomData(zoom);
-            if (df != null && mzd.getPearsons(df) != null) {
-                eigenvector = mzd.computeEigenvector(df, number);
-            } else {
-                eigenvector = new double[0];
+            if (eigenvector == null) {
+                ExpectedValueFunction df = getExpectedValues(zoom, type);
+                Matrix m = getMatrix(chr, chr);
+                MatrixZoomData mzd = m.getZoomData(zoom);
+                if (df != null && mzd.getPearsons(df) != null) {
+                    eigenvector = mzd.computeEigenvector(df, number);
+                } else {
+                    eigenvector = new double[0];
+                }
             }
 
             eigenvectorCache.put(key, eigenvector);
@@ -855,16 +886,55 @@ public class Dataset {
 
         if (type.equals(NormalizationHandler.NONE)) {
             return null;
-        }  else if (!normalizationVectorCache.containsKey(key)) {
-            try {
-                NormalizationVector nv = reader.readNormalizationVector(type, chrIdx, zoom.getUnit(), zoom.getBinSize());
+        }
+
+        synchronized (normalizationVectorCache) {
+            if (normalizationVectorCache.containsKey(key)) {
+                return normalizationVectorCache.get(key);
+            }
+        }
+
+        // only one thread reads a given vector, the others wait for its result
+        FutureTask<NormalizationVector> task = new FutureTask<>(new NormalizationVectorLoader(chrIdx, zoom, type));
+        FutureTask<NormalizationVector> pending = pendingNormalizationVectors.putIfAbsent(key, task);
+        if (pending == null) {
+            pending = task;
+            task.run();
+        }
+
+        NormalizationVector nv = null;
+        try {
+            nv = pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            nv = null;
+        }
+
+        if (pending == task) {
+            synchronized (normalizationVectorCache) {
                 normalizationVectorCache.put(key, nv);
-            } catch (IOException e) {
-                normalizationVectorCache.put(key, null);
             }
+            pendingNormalizationVectors.remove(key);
         }
+        return nv;
+    }
+
+    private class NormalizationVectorLoader implements Callable<NormalizationVector> {
+        private final int chrIdx;
+        private final HiCZoom zoom;
+        private final NormalizationType type;
 
-        return normalizationVectorCache.get(key);
+        NormalizationVectorLoader(int chrIdx, HiCZoom zoom, NormalizationType type) {
+            this.chrIdx = chrIdx;
+            this.zoom = zoom;
+            this.type = type;
+        }
+
+        @Override
+        public NormalizationVector call() throws IOException {
+            return reader.readNormalizationVector(type, chrIdx, zoom.getUnit(), zoom.getBinSize());
+        }
     }
 
     public void addNormalizationVectorDirectlyToRAM(NormalizationVector normalizationVector) {
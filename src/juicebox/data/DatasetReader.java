@@ -69,6 +69,8 @@ public interface DatasetReader {
 
     BasicMatrix readPearsons(String chr1Name, String chr2Name, HiCZoom zoom, NormalizationType type) throws IOException;
 
+    boolean hasPrecomputedPearsons(String chr1Name, String chr2Name, HiCZoom zoom, NormalizationType type);
+
     String getPath();
 
     String readStats() throws IOException;
@@ -31,6 +31,7 @@ import htsjdk.tribble.util.LittleEndianInputStream;
 import juicebox.HiC;
 import juicebox.HiCGlobals;
 import juicebox.gui.SuperAdapter;
+import juicebox.matrix.BasicMatrix;
 import juicebox.tools.utils.original.Preprocessor;
 import juicebox.windowui.HiCZoom;
 import juicebox.windowui.NormalizationHandler;
@@ -38,7 +39,6 @@ import juicebox.windowui.NormalizationType;
 import org.broad.igv.exceptions.HttpResponseException;
 import org.broad.igv.feature.Chromosome;
 import org.broad.igv.ui.util.MessageUtils;
-import org.broad.igv.util.CompressionUtils;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.stream.IGVSeekableStreamFactory;
 
@@ -48,6 +48,8 @@ import java.awt.event.ActionListener;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.*;
 
 
@@ -58,20 +60,31 @@ import java.util.*;
 public class DatasetReaderV2 extends AbstractDatasetReader {
 
     private static final int maxLengthEntryName = 100;
+    /**
+     * Upper bound on the size of a resolution header (unit string, stats, bin and block counts)
+     */
+    private static final int maxZoomHeaderSize = 64;
+    /**
+     * Bytes of the footer read at a time
+     */
+    private static final int footerWindowSize = 65536;
     /**
      * Cache of chromosome name -> array of restriction sites
      */
     private final Map<String, int[]> fragmentSitesCache = new HashMap<>();
-    private final CompressionUtils compressionUtils;
+    // codec recorded in the header (version 9 and up); earlier files are Deflate compressed
+    private BlockCodec blockCodec = null;
     private SeekableStream stream;
     private Map<String, Preprocessor.IndexEntry> masterIndex;
     private Map<String, Preprocessor.IndexEntry> normVectorIndex;
     private Dataset dataset = null;
     private int version = -1;
     private Map<String, FragIndexEntry> fragmentSitesIndex;
-    private Map<String, Map<Integer, Preprocessor.IndexEntry>> blockIndexMap;
+    private Map<String, BlockIndex> blockIndexMap;
     private long masterIndexPos;
     private long normVectorFilePosition;
+    private Map<String, Preprocessor.IndexEntry> precomputedIndex;
+    private long precomputedSectionPosition = -1;
     private boolean activeStatus = true;
 
     public DatasetReaderV2(String path) throws IOException {
@@ -83,7 +96,6 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
             masterIndex = new HashMap<>();
             dataset = new Dataset(this);
         }
-        compressionUtils = new CompressionUtils();
         blockIndexMap = new HashMap<>();
     }
 
@@ -140,6 +152,15 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
             masterIndexPos = dis.readLong();
             position += 8;
 
+            if (version >= 9) {
+                int codecId = dis.readInt();
+                position += 4;
+                blockCodec = BlockCodec.getCodec(codecId);
+                if (blockCodec == null) {
+                    throw new IOException("Unsupported block codec " + codecId + " in hic file version " + version);
+                }
+            }
+
             // will set genomeId below
             String genomeId = dis.readString();
             position += genomeId.length() + 1;
@@ -246,10 +267,23 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
 
     }
 
+    /**
+     * Read the header of one resolution of a matrix.  Only the location of its block index is kept, the index itself
+     * is read when the resolution is first used.
+     *
+     * @param position  file position of the header
+     * @param endOfEntry end of the matrix entry, bounds the read
+     */
     private MatrixZoomData readMatrixZoomData(Chromosome chr1, Chromosome chr2, int[] chr1Sites, int[] chr2Sites,
-                                              LittleEndianInputStream dis) throws IOException {
+                                              long position, long endOfEntry) throws IOException {
 
-        HiC.Unit unit = HiC.valueOfUnit(dis.readString());
+        byte[] buffer = new byte[(int) Math.min(maxZoomHeaderSize, endOfEntry - position)];
+        stream.seek(position);
+        stream.readFully(buffer);
+        LittleEndianInputStream dis = new LittleEndianInputStream(new ByteArrayInputStream(buffer));
+
+        String unitString = dis.readString();
+        HiC.Unit unit = HiC.valueOfUnit(unitString);
         dis.readInt();                // Old "zoom" index -- not used
 
         // Stats.  Not used yet, but we need to read them anyway
@@ -269,15 +303,9 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
                 this);
 
         int nBlocks = dis.readInt();
-        HashMap<Integer, Preprocessor.IndexEntry> blockIndex = new HashMap<>(nBlocks);
-
-        for (int b = 0; b < nBlocks; b++) {
-            int blockNumber = dis.readInt();
-            long filePosition = dis.readLong();
-            int blockSizeInBytes = dis.readInt();
-            blockIndex.put(blockNumber, new Preprocessor.IndexEntry(filePosition, blockSizeInBytes));
-        }
-        blockIndexMap.put(zd.getKey(), blockIndex);
+        // unit string, null terminator, 9 ints/floats
+        long blockIndexPosition = position + unitString.length() + 1 + 36;
+        blockIndexMap.put(zd.getKey(), new BlockIndex(blockIndexPosition, nBlocks));
 
         int nBins1 = chr1.getLength() / binSize;
         int nBins2 = chr2.getLength() / binSize;
@@ -434,57 +462,47 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
         return version;
     }
 
+    /**
+     * @return codec the blocks of this file are compressed with
+     */
+    public BlockCodec getBlockCodec() {
+        return blockCodec == null ? BlockCodec.DEFLATE : blockCodec;
+    }
+
+    /**
+     * Read the footer.  Only the master index, the location of each expected value vector, and the normalization
+     * vector index are read here; the expected values themselves are read when first used.
+     */
     private void readFooter(long position) throws IOException {
 
-        stream.seek(position);
+        FooterReader footer = new FooterReader(position);
 
         //Get the size in bytes of the v5 footer, that is the footer up to normalization and normalized expected values
-        byte[] buffer = new byte[4];
-        stream.read(buffer);
-        LittleEndianInputStream dis = new LittleEndianInputStream(new ByteArrayInputStream(buffer));
-        int nBytes = dis.readInt();
+        int nBytes = footer.readInt();
 
         normVectorFilePosition = masterIndexPos + nBytes + 4;  // 4 bytes for the buffer size
 
-        buffer = new byte[nBytes];
-        stream.read(buffer);
-        dis = new LittleEndianInputStream(new ByteArrayInputStream(buffer));
-
-        int nEntries = dis.readInt();
+        int nEntries = footer.readInt();
         for (int i = 0; i < nEntries; i++) {
-            String key = dis.readString();
-            long filePosition = dis.readLong();
-            int sizeInBytes = dis.readInt();
+            String key = footer.readString();
+            long filePosition = footer.readLong();
+            int sizeInBytes = footer.readInt();
             masterIndex.put(key, new Preprocessor.IndexEntry(filePosition, sizeInBytes));
         }
 
         Map<String, ExpectedValueFunction> expectedValuesMap = new LinkedHashMap<>();
 
         // Expected values from non-normalized matrix
-        int nExpectedValues = dis.readInt();
+        int nExpectedValues = footer.readInt();
         for (int i = 0; i < nExpectedValues; i++) {
 
             NormalizationType no = NormalizationHandler.NONE;
-            String unitString = dis.readString();
+            String unitString = footer.readString();
             HiC.Unit unit = HiC.valueOfUnit(unitString);
-            int binSize = dis.readInt();
+            int binSize = footer.readInt();
             String key = unitString + "_" + binSize + "_" + no;
 
-            int nValues = dis.readInt();
-            double[] values = new double[nValues];
-            for (int j = 0; j < nValues; j++) {
-                values[j] = dis.readDouble();
-            }
-
-            int nNormalizationFactors = dis.readInt();
-            Map<Integer, Double> normFactors = new LinkedHashMap<>();
-            for (int j = 0; j < nNormalizationFactors; j++) {
-                Integer chrIdx = dis.readInt();
-                Double normFactor = dis.readDouble();
-                normFactors.put(chrIdx, normFactor);
-            }
-
-            expectedValuesMap.put(key, new ExpectedValueFunctionImpl(no, unit, binSize, values, normFactors));
+            expectedValuesMap.put(key, skipExpectedValues(footer, no, unit, binSize));
         }
         dataset.setExpectedValueFunctionMap(expectedValuesMap);
 
@@ -492,11 +510,10 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
 
         if (version >= 6) {
 
-            //dis = new LittleEndianInputStream(new BufferedInputStream(stream, 512000));
-            dis = new LittleEndianInputStream(new BufferedInputStream(stream, HiCGlobals.bufferSize));
+            footer.seek(normVectorFilePosition);
 
             try {
-                nExpectedValues = dis.readInt();
+                nExpectedValues = footer.readInt();
             } catch (EOFException|HttpResponseException e) {
                 if (HiCGlobals.printVerboseComments) {
                     System.out.println("No normalization vectors");
@@ -506,43 +523,28 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
 
             for (int i = 0; i < nExpectedValues; i++) {
 
-                String typeString = dis.readString();
-                String unitString = dis.readString();
+                String typeString = footer.readString();
+                String unitString = footer.readString();
                 HiC.Unit unit = HiC.valueOfUnit(unitString);
-                int binSize = dis.readInt();
+                int binSize = footer.readInt();
                 String key = unitString + "_" + binSize + "_" + typeString;
 
-                int nValues = dis.readInt();
-                double[] values = new double[nValues];
-                for (int j = 0; j < nValues; j++) {
-                    values[j] = dis.readDouble();
-                }
-
-                int nNormalizationFactors = dis.readInt();
-                Map<Integer, Double> normFactors = new LinkedHashMap<>();
-                for (int j = 0; j < nNormalizationFactors; j++) {
-                    Integer chrIdx = dis.readInt();
-                    Double normFactor = dis.readDouble();
-                    normFactors.put(chrIdx, normFactor);
-                }
-
                 NormalizationType type = dataset.getNormalizationHandler().getNormTypeFromString(typeString);
-                ExpectedValueFunction df = new ExpectedValueFunctionImpl(type, unit, binSize, values, normFactors);
-                expectedValuesMap.put(key, df);
+                expectedValuesMap.put(key, skipExpectedValues(footer, type, unit, binSize));
             }
 
             // Normalization vectors (indexed)
 
-            nEntries = dis.readInt();
+            nEntries = footer.readInt();
             normVectorIndex = new HashMap<>(nEntries * 2);
             for (int i = 0; i < nEntries; i++) {
 
-                NormalizationType type = dataset.getNormalizationHandler().getNormTypeFromString(dis.readString());
-                int chrIdx = dis.readInt();
-                String unit = dis.readString();
-                int resolution = dis.readInt();
-                long filePosition = dis.readLong();
-                int sizeInBytes = dis.readInt();
+                NormalizationType type = dataset.getNormalizationHandler().getNormTypeFromString(footer.readString());
+                int chrIdx = footer.readInt();
+                String unit = footer.readString();
+                int resolution = footer.readInt();
+                long filePosition = footer.readLong();
+                int sizeInBytes = footer.readInt();
 
                 String key = NormalizationVector.getKey(type, chrIdx, unit, resolution);
 
@@ -551,6 +553,111 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
                 normVectorIndex.put(key, new Preprocessor.IndexEntry(filePosition, sizeInBytes));
             }
         }
+
+        if (!HiCGlobals.useLazyFooter) {
+            for (ExpectedValueFunction function : expectedValuesMap.values()) {
+                ((LazyExpectedValueFunction) function).getFunction();
+            }
+        }
+    }
+
+    /**
+     * Record where an expected value vector and its normalization factors are, and move the footer past them.
+     */
+    private ExpectedValueFunction skipExpectedValues(FooterReader footer, NormalizationType type, HiC.Unit unit,
+                                                     int binSize) throws IOException {
+        int nValues = footer.readInt();
+        long valuesPosition = footer.getPosition();
+        footer.skip(8L * nValues);
+        int nNormalizationFactors = footer.readInt();
+        footer.skip(12L * nNormalizationFactors);
+        return new LazyExpectedValueFunction(this, type, unit, binSize, valuesPosition, nValues, nNormalizationFactors);
+    }
+
+    /**
+     * Read an expected value vector and its chromosome normalization factors.
+     *
+     * @param filePosition position of the first expected value
+     */
+    synchronized ExpectedValueFunctionImpl readExpectedValueFunction(NormalizationType type, HiC.Unit unit, int binSize,
+                                                                     long filePosition, int nValues,
+                                                                     int nNormalizationFactors) throws IOException {
+
+        byte[] buffer = new byte[8 * nValues + 4 + 12 * nNormalizationFactors];
+        stream.seek(filePosition);
+        stream.readFully(buffer);
+        LittleEndianInputStream dis = new LittleEndianInputStream(new ByteArrayInputStream(buffer));
+
+        double[] values = new double[nValues];
+        for (int j = 0; j < nValues; j++) {
+            values[j] = dis.readDouble();
+        }
+
+        dis.readInt();  // nNormalizationFactors, known from the footer
+        Map<Integer, Double> normFactors = new LinkedHashMap<>();
+        for (int j = 0; j < nNormalizationFactors; j++) {
+            Integer chrIdx = dis.readInt();
+            Double normFactor = dis.readDouble();
+            normFactors.put(chrIdx, normFactor);
+        }
+
+        return new ExpectedValueFunctionImpl(type, unit, binSize, values, normFactors);
+    }
+
+    /**
+     * Decode the rows of a type 3 block.  Row and column numbers are deltas from the previous row or column, and
+     * all ints are variable length (7 bits per byte, low bits first).
+     *
+     * @param position   position of the row count in the block
+     * @param useVarInt  true if counts are variable length ints, false if they are floats
+     */
+    private static void readDeltaEncodedRows(byte[] buffer, int position, int binXOffset, int binYOffset,
+                                             boolean useVarInt, List<ContactRecord> records) {
+        int p = position;
+        int[] value = new int[1];
+
+        p = readVarInt(buffer, p, value);
+        int rowCount = value[0];
+        int binY = binYOffset;
+        for (int i = 0; i < rowCount; i++) {
+            p = readVarInt(buffer, p, value);
+            binY += value[0];
+            p = readVarInt(buffer, p, value);
+            int colCount = value[0];
+
+            int binX = binXOffset;
+            for (int j = 0; j < colCount; j++) {
+                p = readVarInt(buffer, p, value);
+                binX += value[0];
+                float counts;
+                if (useVarInt) {
+                    p = readVarInt(buffer, p, value);
+                    counts = value[0];
+                } else {
+                    counts = Float.intBitsToFloat((buffer[p] & 0xff) | (buffer[p + 1] & 0xff) << 8 |
+                            (buffer[p + 2] & 0xff) << 16 | (buffer[p + 3] & 0xff) << 24);
+                    p += 4;
+                }
+                records.add(new ContactRecord(binX, binY, counts));
+            }
+        }
+    }
+
+    /**
+     * @param value receives the int read
+     * @return position after the int
+     */
+    private static int readVarInt(byte[] buffer, int position, int[] value) {
+        int result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer[position++];
+            result |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        value[0] = result;
+        return position;
     }
 
     @Override
@@ -560,7 +667,8 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
             return null;
         }
 
-        byte[] buffer = new byte[idx.size];
+        // Only read the headers, the block indices are skipped until needed
+        byte[] buffer = new byte[12];
         stream.seek(idx.position);
         stream.readFully(buffer);
         LittleEndianInputStream dis = new LittleEndianInputStream(new ByteArrayInputStream(buffer));
@@ -605,9 +713,12 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
             fragmentSitesCache.put(chr2.getName(), chr2Sites);
         }
 
+        long position = idx.position + 12;
+        long endOfEntry = idx.position + idx.size;
         for (int i = 0; i < nResolutions; i++) {
-            MatrixZoomData zd = readMatrixZoomData(chr1, chr2, chr1Sites, chr2Sites, dis);
+            MatrixZoomData zd = readMatrixZoomData(chr1, chr2, chr1Sites, chr2Sites, position, endOfEntry);
             zdList.add(zd);
+            position = blockIndexMap.get(zd.getKey()).getEndPosition();
         }
 
         return new Matrix(c1, c2, zdList);
@@ -623,109 +734,166 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
         } else return -1;
     }
 
-    synchronized private Block readBlock(int blockNumber, MatrixZoomData zd) throws IOException {
+    /**
+     * @return block index for the resolution, read from the file on first use; null if the matrix was not read
+     */
+    private synchronized BlockIndex getBlockIndex(MatrixZoomData zd) throws IOException {
+        BlockIndex blockIndex = blockIndexMap.get(zd.getKey());
+        if (blockIndex != null && !blockIndex.isLoaded()) {
+            byte[] buffer = new byte[BlockIndex.ENTRY_SIZE * blockIndex.getNumBlocks()];
+            stream.seek(blockIndex.getFilePosition());
+            stream.readFully(buffer);
+            blockIndex.load(buffer);
+        }
+        return blockIndex;
+    }
 
-        Block b = null;
-        Map<Integer, Preprocessor.IndexEntry> blockIndex = blockIndexMap.get(zd.getKey());
-        if (blockIndex != null) {
-
-            Preprocessor.IndexEntry idx = blockIndex.get(blockNumber);
-            if (idx != null) {
-
-                //System.out.println(" blockIndexPosition:" + idx.position);
-
-                byte[] compressedBytes = new byte[idx.size];
-                stream.seek(idx.position);
-                stream.readFully(compressedBytes);
-//                System.out.println();
-//                System.out.print("ID: ");
-//                System.out.print(idx.id);
-//                System.out.print(" Pos: ");
-//                System.out.print(idx.position);
-//                System.out.print(" Size: ");
-//                System.out.println(idx.size);
-                byte[] buffer;
-
-                try {
-                    buffer = compressionUtils.decompress(compressedBytes);
-
-                } catch (Exception e) {
-                    throw new RuntimeException("Block read error: " + e.getMessage());
-                }
+    /**
+     * @return the block exactly as stored in the file (still compressed), or null if the block does not exist
+     */
+    public synchronized byte[] readCompressedBlock(int blockNumber, MatrixZoomData zd) throws IOException {
+        BlockIndex blockIndex = getBlockIndex(zd);
+        if (blockIndex == null) return null;
 
-                LittleEndianInputStream dis = new LittleEndianInputStream(new ByteArrayInputStream(buffer));
-                int nRecords = dis.readInt();
-                List<ContactRecord> records = new ArrayList<>(nRecords);
+        Preprocessor.IndexEntry idx = blockIndex.getEntry(blockNumber);
+        if (idx == null) return null;
 
-                if (version < 7) {
-                    for (int i = 0; i < nRecords; i++) {
-                        int binX = dis.readInt();
-                        int binY = dis.readInt();
-                        float counts = dis.readFloat();
-                        records.add(new ContactRecord(binX, binY, counts));
-                    }
-                } else {
+        byte[] compressedBytes = new byte[idx.size];
+        stream.seek(idx.position);
+        stream.readFully(compressedBytes);
+        return compressedBytes;
+    }
 
-                    int binXOffset = dis.readInt();
-                    int binYOffset = dis.readInt();
+    /**
+     * @return location of the block in the file, or null if the block does not exist
+     */
+    public synchronized Preprocessor.IndexEntry getBlockIndexEntry(int blockNumber, MatrixZoomData zd) throws IOException {
+        BlockIndex blockIndex = getBlockIndex(zd);
+        return blockIndex == null ? null : blockIndex.getEntry(blockNumber);
+    }
 
-                    boolean useShort = dis.readByte() == 0;
+    /**
+     * @return sum, occupied cell count, 5th and 95th percentile of the counts as stored in the resolution header,
+     * or null if the matrix was not read
+     */
+    public synchronized float[] readZoomStatistics(MatrixZoomData zd) throws IOException {
+        BlockIndex blockIndex = blockIndexMap.get(zd.getKey());
+        if (blockIndex == null) return null;
 
-                    byte type = dis.readByte();
+        // the statistics are followed by bin size, block bin count, block column count and number of blocks
+        ByteBuffer stats = ByteBuffer.wrap(readBytes(blockIndex.getFilePosition() - 32, 16)).order(ByteOrder.LITTLE_ENDIAN);
+        return new float[]{stats.getFloat(), stats.getFloat(), stats.getFloat(), stats.getFloat()};
+    }
 
-                    switch (type) {
-                        case 1:
-                            // List-of-rows representation
-                            int rowCount = dis.readShort();
+    /**
+     * @return location of the matrix header, or null if the file has no such matrix
+     */
+    public Preprocessor.IndexEntry getMatrixIndexEntry(String key) {
+        return masterIndex.get(key);
+    }
 
-                            for (int i = 0; i < rowCount; i++) {
+    /**
+     * @param compressedBytes block as returned by readCompressedBlock
+     * @return contact records of the block, in the order they are stored
+     */
+    public List<ContactRecord> decodeBlock(byte[] compressedBytes) throws IOException {
+        byte[] buffer;
 
-                                int binY = binYOffset + dis.readShort();
-                                int colCount = dis.readShort();
+        // codecs keep no state between calls, so blocks are decoded concurrently without holding the reader
+        try {
+            buffer = getBlockCodec().decompress(compressedBytes);
+        } catch (Exception e) {
+            throw new RuntimeException("Block read error: " + e.getMessage());
+        }
+
+        LittleEndianInputStream dis = new LittleEndianInputStream(new ByteArrayInputStream(buffer));
+        int nRecords = dis.readInt();
+        List<ContactRecord> records = new ArrayList<>(nRecords);
+
+        if (version < 7) {
+            for (int i = 0; i < nRecords; i++) {
+                int binX = dis.readInt();
+                int binY = dis.readInt();
+                float counts = dis.readFloat();
+                records.add(new ContactRecord(binX, binY, counts));
+            }
+        } else {
 
-                                for (int j = 0; j < colCount; j++) {
+            int binXOffset = dis.readInt();
+            int binYOffset = dis.readInt();
 
-                                    int binX = binXOffset + dis.readShort();
-                                    float counts = useShort ? dis.readShort() : dis.readFloat();
-                                    records.add(new ContactRecord(binX, binY, counts));
-                                }
-                            }
-                            break;
-                        case 2:
-
-                            int nPts = dis.readInt();
-                            int w = dis.readShort();
-
-                            for (int i = 0; i < nPts; i++) {
-                                //int idx = (p.y - binOffset2) * w + (p.x - binOffset1);
-                                int row = i / w;
-                                int col = i - row * w;
-                                int bin1 = binXOffset + col;
-                                int bin2 = binYOffset + row;
-
-                                if (useShort) {
-                                    short counts = dis.readShort();
-                                    if (counts != Short.MIN_VALUE) {
-                                        records.add(new ContactRecord(bin1, bin2, counts));
-                                    }
-                                } else {
-                                    float counts = dis.readFloat();
-                                    if (!Float.isNaN(counts)) {
-                                        records.add(new ContactRecord(bin1, bin2, counts));
-                                    }
-                                }
+            boolean useShort = dis.readByte() == 0;
 
+            byte type = dis.readByte();
 
+            switch (type) {
+                case 1:
+                    // List-of-rows representation
+                    int rowCount = dis.readShort();
+
+                    for (int i = 0; i < rowCount; i++) {
+
+                        int binY = binYOffset + dis.readShort();
+                        int colCount = dis.readShort();
+
+                        for (int j = 0; j < colCount; j++) {
+
+                            int binX = binXOffset + dis.readShort();
+                            float counts = useShort ? dis.readShort() : dis.readFloat();
+                            records.add(new ContactRecord(binX, binY, counts));
+                        }
+                    }
+                    break;
+                case 2:
+
+                    int nPts = dis.readInt();
+                    int w = dis.readShort();
+
+                    for (int i = 0; i < nPts; i++) {
+                        //int idx = (p.y - binOffset2) * w + (p.x - binOffset1);
+                        int row = i / w;
+                        int col = i - row * w;
+                        int bin1 = binXOffset + col;
+                        int bin2 = binYOffset + row;
+
+                        if (useShort) {
+                            short counts = dis.readShort();
+                            if (counts != Short.MIN_VALUE) {
+                                records.add(new ContactRecord(bin1, bin2, counts));
+                            }
+                        } else {
+                            float counts = dis.readFloat();
+                            if (!Float.isNaN(counts)) {
+                                records.add(new ContactRecord(bin1, bin2, counts));
                             }
+                        }
+
 
-                            break;
-                        default:
-                            throw new RuntimeException("Unknown block type: " + type);
                     }
-                }
-                b = new Block(blockNumber, records, zd.getBlockKey(blockNumber, NormalizationHandler.NONE));
+
+                    break;
+                case 3:
+                    // Delta encoded list-of-rows representation (version 9), read directly from the buffer
+                    readDeltaEncodedRows(buffer, 14, binXOffset, binYOffset, useShort, records);
+                    break;
+                default:
+                    throw new RuntimeException("Unknown block type: " + type);
             }
         }
+        return records;
+    }
+
+    /**
+     * Only the file read holds the reader; blocks are decoded concurrently
+     */
+    private Block readBlock(int blockNumber, MatrixZoomData zd) throws IOException {
+
+        Block b = null;
+        byte[] compressedBytes = readCompressedBlock(blockNumber, zd);
+        if (compressedBytes != null) {
+            List<ContactRecord> records = decodeBlock(compressedBytes);
+            b = new Block(blockNumber, records, zd.getBlockKey(blockNumber, NormalizationHandler.NONE));
+        }
 
         // If no block exists, mark with an "empty block" to prevent further attempts
         if (b == null) {
@@ -781,8 +949,14 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
 
     @Override
     public List<Integer> getBlockNumbers(MatrixZoomData zd) {
-        Map<Integer, Preprocessor.IndexEntry> blockIndex = blockIndexMap.get(zd.getKey());
-        return blockIndex == null ? null : new ArrayList<>(blockIndex.keySet());
+        BlockIndex blockIndex;
+        try {
+            blockIndex = getBlockIndex(zd);
+        } catch (IOException e) {
+            System.err.println("Error reading block index for " + zd.getDescription() + " " + e.getLocalizedMessage());
+            return null;
+        }
+        return blockIndex == null ? null : blockIndex.getBlockNumbers();
     }
 
     @Override
@@ -822,10 +996,167 @@ public class DatasetReaderV2 extends AbstractDatasetReader {
 
     public Map<String, Preprocessor.IndexEntry> getNormVectorIndex()  { return normVectorIndex;}
 
+    @Override
+    public BasicMatrix readPearsons(String chr1Name, String chr2Name, HiCZoom zoom, NormalizationType type) throws IOException {
+        Preprocessor.IndexEntry entry = getPrecomputedIndex().get(PrecomputedTracks.getPearsonsKey(chr1Name, zoom, type));
+        if (entry != null && chr1Name.equals(chr2Name)) {
+            return new PrecomputedPearsons(this, entry);
+        }
+        return super.readPearsons(chr1Name, chr2Name, zoom, type);
+    }
+
+    @Override
+    public boolean hasPrecomputedPearsons(String chr1Name, String chr2Name, HiCZoom zoom, NormalizationType type) {
+        if (chr1Name.equals(chr2Name) && getPrecomputedIndex().containsKey(PrecomputedTracks.getPearsonsKey(chr1Name, zoom, type))) {
+            return true;
+        }
+        return super.hasPrecomputedPearsons(chr1Name, chr2Name, zoom, type);
+    }
+
+    @Override
+    public double[] readEigenvector(String chrName, HiCZoom zoom, int number, String type) {
+        Preprocessor.IndexEntry entry = getPrecomputedIndex().get(PrecomputedTracks.getEigenvectorKey(chrName, zoom, number, type));
+        if (entry != null) {
+            try {
+                LittleEndianInputStream dis = new LittleEndianInputStream(new ByteArrayInputStream(readBytes(entry.position, entry.size)));
+                double[] eigenvector = new double[dis.readInt()];
+                for (int i = 0; i < eigenvector.length; i++) {
+                    eigenvector[i] = dis.readDouble();
+                }
+                return eigenvector;
+            } catch (IOException e) {
+                System.err.println("Error reading eigenvector " + e.getLocalizedMessage());
+            }
+        }
+        return super.readEigenvector(chrName, zoom, number, type);
+    }
+
+    synchronized byte[] readBytes(long position, int size) throws IOException {
+        byte[] buffer = new byte[size];
+        stream.seek(position);
+        stream.readFully(buffer);
+        return buffer;
+    }
+
+    /**
+     * @return position of the precomputed Pearson's and eigenvectors, or -1 if the file has none
+     */
+    public long getPrecomputedSectionPosition() {
+        getPrecomputedIndex();
+        return precomputedSectionPosition;
+    }
+
+    /**
+     * The precomputed section is found through the trailer at the end of the file, and read the first time it is needed.
+     */
+    private synchronized Map<String, Preprocessor.IndexEntry> getPrecomputedIndex() {
+        if (precomputedIndex != null) return precomputedIndex;
+        precomputedIndex = new HashMap<>();
+        if (version < 6) return precomputedIndex;
+
+        try {
+            long fileLength = stream.length();
+            if (fileLength < PrecomputedTracks.TRAILER_SIZE) return precomputedIndex;
+
+            ByteBuffer trailer = ByteBuffer.wrap(readBytes(fileLength - PrecomputedTracks.TRAILER_SIZE,
+                    PrecomputedTracks.TRAILER_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+            long sectionPosition = trailer.getLong();
+            long indexPosition = trailer.getLong();
+            if (trailer.getInt() != PrecomputedTracks.MAGIC) return precomputedIndex;
+
+            FooterReader footer = new FooterReader(indexPosition);
+            int nEntries = footer.readInt();
+            for (int i = 0; i < nEntries; i++) {
+                String key = footer.readString();
+                long filePosition = footer.readLong();
+                int sizeInBytes = footer.readInt();
+                precomputedIndex.put(key, new Preprocessor.IndexEntry(filePosition, sizeInBytes));
+            }
+            precomputedSectionPosition = sectionPosition;
+        } catch (IOException e) {
+            precomputedIndex.clear();
+            System.err.println("Unable to read precomputed Pearson's and eigenvectors " + e.getLocalizedMessage());
+        }
+        return precomputedIndex;
+    }
+
     public long getNormFilePosition() {
         return version <= 5 ? (new File(this.path)).length() : normVectorFilePosition;
     }
 
+    /**
+     * Little-endian reader over the footer that refills a window of the stream as needed, so that expected value
+     * vectors can be skipped without being read.
+     */
+    private class FooterReader {
+        private final byte[] window = new byte[footerWindowSize];
+        private final ByteBuffer windowBuffer = ByteBuffer.wrap(window).order(ByteOrder.LITTLE_ENDIAN);
+        private long windowStart;
+        private int windowLength = 0;
+        private long position;
+
+        FooterReader(long position) {
+            this.position = position;
+        }
+
+        long getPosition() {
+            return position;
+        }
+
+        void seek(long position) {
+            this.position = position;
+        }
+
+        void skip(long n) {
+            position += n;
+        }
+
+        int readInt() throws IOException {
+            int offset = fill(4);
+            position += 4;
+            return windowBuffer.getInt(offset);
+        }
+
+        long readLong() throws IOException {
+            int offset = fill(8);
+            position += 8;
+            return windowBuffer.getLong(offset);
+        }
+
+        String readString() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte b;
+            while ((b = window[fill(1)]) != 0) {
+                bytes.write(b);
+                position++;
+            }
+            position++;
+            return new String(bytes.toByteArray(), "ISO-8859-1");
+        }
+
+        /**
+         * Make sure the next n bytes are in the window.
+         *
+         * @return offset of the current position in the window
+         */
+        private int fill(int n) throws IOException {
+            if (position < windowStart || position + n > windowStart + windowLength) {
+                stream.seek(position);
+                windowStart = position;
+                windowLength = 0;
+                int count;
+                while (windowLength < window.length &&
+                        (count = stream.read(window, windowLength, window.length - windowLength)) > 0) {
+                    windowLength += count;
+                }
+                if (windowLength < n) {
+                    throw new EOFException();
+                }
+            }
+            return (int) (position - windowStart);
+        }
+    }
+
     static class FragIndexEntry {
         final long position;
         final int nSites;
@@ -0,0 +1,87 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * zlib Deflate at a fixed compression level; blocks of every level are decoded the same way
+ */
+class DeflateBlockCodec extends BlockCodec {
+
+    private final int level;
+
+    DeflateBlockCodec(int id, String name, int level) {
+        super(id, name);
+        this.level = level;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            // the compressed data is not guaranteed to be smaller than the original
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length);
+            byte[] buf = new byte[1024];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buf);
+                bos.write(buf, 0, count);
+            }
+            return bos.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] data) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(4 * data.length);
+            byte[] buf = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buf);
+                if (count == 0 && !inflater.finished() &&
+                        (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated deflate block");
+                }
+                bos.write(buf, 0, count);
+            }
+            return bos.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid deflate block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
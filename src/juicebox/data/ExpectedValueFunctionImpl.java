@@ -29,6 +29,7 @@ import juicebox.windowui.HiCZoom;
 import juicebox.windowui.NormalizationType;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Utility holder for Density calculation, for O/E maps.
@@ -47,12 +48,35 @@ public class ExpectedValueFunctionImpl implements ExpectedValueFunction {
 
     private final double[] expectedValues;
 
+    /**
+     * Chromosome index -> normalization factor (1 for chromosomes without one)
+     */
+    private final double[] chrNormFactors;
+
+    /**
+     * Chromosome index -> expected values already divided by the normalization factor, filled in on first use
+     */
+    private final AtomicReferenceArray<double[]> chrExpectedValues;
+
     public ExpectedValueFunctionImpl(NormalizationType type, HiC.Unit unit, int binSize, double[] expectedValues, Map<Integer, Double> normFactors) {
         this.type = type;
         this.unit = unit;
         this.binSize = binSize;
         this.normFactors = normFactors;
         this.expectedValues = expectedValues;
+
+        int maxIndex = -1;
+        if (normFactors != null) {
+            for (Integer chrIdx : normFactors.keySet()) {
+                maxIndex = Math.max(maxIndex, chrIdx);
+            }
+        }
+        chrNormFactors = new double[maxIndex + 1];
+        for (int i = 0; i < chrNormFactors.length; i++) {
+            Double normFactor = normFactors.get(i);
+            chrNormFactors[i] = normFactor == null ? 1.0 : normFactor;
+        }
+        chrExpectedValues = new AtomicReferenceArray<>(chrNormFactors.length);
     }
 
     public static String getKey(HiCZoom zoom, NormalizationType normType) {
@@ -85,16 +109,12 @@ public class ExpectedValueFunctionImpl implements ExpectedValueFunction {
     @Override
     public double getExpectedValue(int chrIdx, int distance) {
 
-        double normFactor = 1.0;
-        if (normFactors != null && normFactors.containsKey(chrIdx)) {
-            normFactor = normFactors.get(chrIdx);
-        }
-
         if (expectedValues.length > 0) {
-            if (distance >= expectedValues.length) {
-                return expectedValues[expectedValues.length - 1] / normFactor;
+            double[] values = getExpectedValuesForChromosome(chrIdx);
+            if (distance >= values.length) {
+                return values[values.length - 1];
             } else {
-                return expectedValues[distance] / normFactor;
+                return values[distance];
             }
         } else {
             System.err.println("Expected values array is empty");
@@ -102,6 +122,30 @@ public class ExpectedValueFunctionImpl implements ExpectedValueFunction {
         }
     }
 
+    /**
+     * Expected value vector for a chromosome, i.e. divided by the chromosome's normalization factor
+     *
+     * @param chrIdx Chromosome index
+     * @return Expected values for each distance from diagonal in bins
+     */
+    public double[] getExpectedValuesForChromosome(int chrIdx) {
+        if (chrIdx < 0 || chrIdx >= chrNormFactors.length) {
+            return expectedValues;
+        }
+
+        double[] values = chrExpectedValues.get(chrIdx);
+        if (values == null) {
+            double normFactor = chrNormFactors[chrIdx];
+            values = new double[expectedValues.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = expectedValues[i] / normFactor;
+            }
+            chrExpectedValues.compareAndSet(chrIdx, null, values);
+            values = chrExpectedValues.get(chrIdx);
+        }
+        return values;
+    }
+
     @Override
     public int getLength() {
         return expectedValues.length;
@@ -393,16 +393,9 @@ public class HiCFileTools {
         if (blocks.size() > 0) {
             for (Block b : blocks) {
                 if (b != null) {
-                    for (ContactRecord rec : b.getContactRecords()) {
-
-                        int relativeX = rec.getBinX() - binXStart;
-                        int relativeY = rec.getBinY() - binYStart;
-
-                        if (relativeX >= 0 && relativeX < numRows) {
-                            if (relativeY >= 0 && relativeY < numCols) {
-                                data.addToEntry(relativeX, relativeY, rec.getCounts());
-                            }
-                        }
+                    for (ContactRecord rec : b.getContactRecords(binXStart, binYStart,
+                            binXStart + numRows, binYStart + numCols)) {
+                        data.addToEntry(rec.getBinX() - binXStart, rec.getBinY() - binYStart, rec.getCounts());
                     }
                 }
             }
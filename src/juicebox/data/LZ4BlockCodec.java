@@ -0,0 +1,207 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.data;
+
+import java.io.IOException;
+
+/**
+ * LZ4 block format, written in plain Java.  The uncompressed length is stored first as a little-endian int since
+ * the format does not record it.  Decoding is a copy loop without entropy coding, several times faster than
+ * inflating the same block.
+ */
+class LZ4BlockCodec extends BlockCodec {
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    // a match may not start within the last 12 bytes of the input
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int HASH_LOG = 14;
+    private static final int RUN_MASK = 15;
+
+    LZ4BlockCodec(int id, String name) {
+        super(id, name);
+    }
+
+    private static int readInt(byte[] data, int i) {
+        return (data[i] & 0xff) | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff) << 16 | (data[i + 3] & 0xff) << 24;
+    }
+
+    private static int hash(int value) {
+        return (value * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    /**
+     * Write a length that did not fit in its token nibble
+     */
+    private static int writeLength(byte[] out, int op, int length) {
+        while (length >= 255) {
+            out[op++] = (byte) 255;
+            length -= 255;
+        }
+        out[op++] = (byte) length;
+        return op;
+    }
+
+    /**
+     * Write the literals [anchor, anchor + numLiterals) followed by a match, or by nothing if matchLength is 0
+     */
+    private static int writeSequence(byte[] data, int anchor, int numLiterals, int offset, int matchLength,
+                                     byte[] out, int op) {
+        int tokenPosition = op++;
+        int token = Math.min(numLiterals, RUN_MASK) << 4;
+        if (numLiterals >= RUN_MASK) {
+            op = writeLength(out, op, numLiterals - RUN_MASK);
+        }
+        System.arraycopy(data, anchor, out, op, numLiterals);
+        op += numLiterals;
+
+        if (matchLength > 0) {
+            out[op++] = (byte) offset;
+            out[op++] = (byte) (offset >>> 8);
+            int length = matchLength - MIN_MATCH;
+            token |= Math.min(length, RUN_MASK);
+            if (length >= RUN_MASK) {
+                op = writeLength(out, op, length - RUN_MASK);
+            }
+        }
+        out[tokenPosition] = (byte) token;
+        return op;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        int n = data.length;
+        byte[] out = new byte[4 + n + n / 255 + 16];
+        out[0] = (byte) n;
+        out[1] = (byte) (n >>> 8);
+        out[2] = (byte) (n >>> 16);
+        out[3] = (byte) (n >>> 24);
+        int op = 4;
+
+        int anchor = 0;
+        if (n >= MF_LIMIT + 1) {
+            // positions are stored + 1 so that 0 means empty
+            int[] table = new int[1 << HASH_LOG];
+            int matchLimit = n - LAST_LITERALS;
+            int mfLimit = n - MF_LIMIT;
+            int ip = 0;
+            while (ip < mfLimit) {
+                int sequence = readInt(data, ip);
+                int h = hash(sequence);
+                int ref = table[h] - 1;
+                table[h] = ip + 1;
+                if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(data, ref) != sequence) {
+                    ip++;
+                    continue;
+                }
+
+                while (ip > anchor && ref > 0 && data[ip - 1] == data[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && data[ip + matchLength] == data[ref + matchLength]) {
+                    matchLength++;
+                }
+
+                op = writeSequence(data, anchor, ip - anchor, ip - ref, matchLength, out, op);
+                ip += matchLength;
+                anchor = ip;
+                if (ip - 2 < mfLimit) {
+                    table[hash(readInt(data, ip - 2))] = ip - 1;
+                }
+            }
+        }
+        op = writeSequence(data, anchor, n - anchor, 0, 0, out, op);
+
+        byte[] result = new byte[op];
+        System.arraycopy(out, 0, result, 0, op);
+        return result;
+    }
+
+    @Override
+    public byte[] decompress(byte[] data) throws IOException {
+        if (data.length < 5) {
+            throw new IOException("Truncated lz4 block");
+        }
+        int n = readInt(data, 0);
+        byte[] out = new byte[n];
+        int ip = 4;
+        int op = 0;
+        try {
+            while (true) {
+                int token = data[ip++] & 0xff;
+
+                int numLiterals = token >>> 4;
+                if (numLiterals == RUN_MASK) {
+                    int b;
+                    do {
+                        b = data[ip++] & 0xff;
+                        numLiterals += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(data, ip, out, op, numLiterals);
+                ip += numLiterals;
+                op += numLiterals;
+                if (ip >= data.length) {
+                    break;
+                }
+
+                int offset = (data[ip] & 0xff) | (data[ip + 1] & 0xff) << 8;
+                ip += 2;
+                int matchLength = token & RUN_MASK;
+                if (matchLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = data[ip++] & 0xff;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+
+                int ref = op - offset;
+                if (offset == 0 || ref < 0 || op + matchLength > n) {
+                    throw new IOException("Invalid lz4 block");
+                }
+                if (offset >= matchLength) {
+                    System.arraycopy(out, ref, out, op, matchLength);
+                    op += matchLength;
+                } else {
+                    // overlapping copy repeats the last offset bytes
+                    for (int i = 0; i < matchLength; i++) {
+                        out[op++] = out[ref++];
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Invalid lz4 block", e);
+        }
+        if (op != n) {
+            throw new IOException("Invalid lz4 block");
+        }
+        return out;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.data;
+
+import juicebox.HiC;
+import juicebox.windowui.NormalizationType;
+
+import java.io.IOException;
+
+/**
+ * Expected values whose vector and chromosome normalization factors have not been read from the footer yet.
+ * The values are read the first time they are needed, then kept.
+ */
+class LazyExpectedValueFunction implements ExpectedValueFunction {
+
+    private final DatasetReaderV2 reader;
+    private final NormalizationType type;
+    private final HiC.Unit unit;
+    private final int binSize;
+    private final long filePosition;
+    private final int nValues;
+    private final int nNormalizationFactors;
+    private volatile ExpectedValueFunctionImpl function;
+
+    /**
+     * @param filePosition position of the expected values vector in the file, followed by the normalization factors
+     */
+    LazyExpectedValueFunction(DatasetReaderV2 reader, NormalizationType type, HiC.Unit unit, int binSize,
+                              long filePosition, int nValues, int nNormalizationFactors) {
+        this.reader = reader;
+        this.type = type;
+        this.unit = unit;
+        this.binSize = binSize;
+        this.filePosition = filePosition;
+        this.nValues = nValues;
+        this.nNormalizationFactors = nNormalizationFactors;
+    }
+
+    /**
+     * @return the expected value function, read from the file on first call
+     */
+    ExpectedValueFunctionImpl getFunction() {
+        ExpectedValueFunctionImpl result = function;
+        if (result == null) {
+            synchronized (this) {
+                result = function;
+                if (result == null) {
+                    try {
+                        result = reader.readExpectedValueFunction(type, unit, binSize, filePosition, nValues,
+                                nNormalizationFactors);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Error reading expected values " + unit + "_" + binSize + "_" + type, e);
+                    }
+                    function = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public double getExpectedValue(int chrIdx, int distance) {
+        return getFunction().getExpectedValue(chrIdx, distance);
+    }
+
+    @Override
+    public int getLength() {
+        return nValues;
+    }
+
+    @Override
+    public NormalizationType getNormalizationType() {
+        return type;
+    }
+
+    @Override
+    public HiC.Unit getUnit() {
+        return unit;
+    }
+
+    @Override
+    public int getBinSize() {
+        return binSize;
+    }
+
+    @Override
+    public double[] getExpectedValues() {
+        return getFunction().getExpectedValues();
+    }
+}
@@ -301,6 +301,15 @@ public class Matrix {
         return null;
     }
 
+    /**
+     * @return zoom data of every base-pair resolution followed by every fragment resolution
+     */
+    public List<MatrixZoomData> getAllZoomData() {
+        List<MatrixZoomData> zdList = new ArrayList<>(bpZoomData);
+        zdList.addAll(fragZoomData);
+        return zdList;
+    }
+
     public int getNumberOfZooms(HiC.Unit unit) {
         return (unit == HiC.Unit.BP) ? bpZoomData.size() : fragZoomData.size();
     }
@@ -28,6 +28,7 @@ package juicebox.data;
 import htsjdk.tribble.util.LittleEndianOutputStream;
 import juicebox.HiC;
 import juicebox.HiCGlobals;
+import juicebox.assembly.AssemblyChanges;
 import juicebox.assembly.AssemblyHeatmapHandler;
 import juicebox.assembly.AssemblyScaffoldHandler;
 import juicebox.assembly.Scaffold;
@@ -52,6 +53,7 @@ import org.broad.igv.util.collections.LRUCache;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -75,9 +77,14 @@ public class MatrixZoomData {
     private final int blockColumnCount;     // number of block columns
     // Cache the last 20 blocks loaded
     private final LRUCache<String, Block> blockCache = new LRUCache<>(500);
+    // normalizations and numbers of the blocks put in the cache, so stale keys can be rebuilt without
+    // going through every block of the matrix; numbers of blocks evicted since are harmless
+    private final Set<NormalizationType> cachedNormalizations = Collections.newSetFromMap(new ConcurrentHashMap<NormalizationType, Boolean>());
+    private final Set<Integer> cachedBlockNumbers = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
     private final HashMap<NormalizationType, BasicMatrix> pearsonsMap;
     private final HashMap<NormalizationType, BasicMatrix> normSquaredMaps;
     private final HashSet<NormalizationType> missingPearsonFiles;
+    private final HashMap<NormalizationType, Boolean> precomputedPearsons;
     DatasetReader reader;
     private double averageCount = -1;
 
@@ -129,6 +136,7 @@ public class MatrixZoomData {
         pearsonsMap = new HashMap<>();
         normSquaredMaps = new HashMap<>();
         missingPearsonFiles = new HashSet<>();
+        precomputedPearsons = new HashMap<>();
     }
 
     public Chromosome getChr1() {
@@ -164,10 +172,14 @@ public class MatrixZoomData {
         return zoom;
     }
 
-    private int getBlockColumnCount() {
+    public int getBlockColumnCount() {
         return blockColumnCount;
     }
 
+    public int getBlockBinCount() {
+        return blockBinCount;
+    }
+
     public String getKey() {
         return chr1.getName() + "_" + chr2.getName() + "_" + zoom.getKey();
     }
@@ -419,6 +431,8 @@ public class MatrixZoomData {
                             b = AssemblyHeatmapHandler.modifyBlock(b, key, binSize, chr1Index, chr2Index);
                         }
                         if (HiCGlobals.useCache) {
+                            cachedNormalizations.add(no);
+                            cachedBlockNumbers.add(blockNumber);
                             blockCache.put(key, b);
                         }
                         blockList.add(b);
@@ -528,10 +542,9 @@ public class MatrixZoomData {
         List<Block> blocks = getNormalizedBlocksOverlapping(binX, binY, binX, binY, normalizationType, false);
         if (blocks == null) return 0;
         for (Block b : blocks) {
-            for (ContactRecord rec : b.getContactRecords()) {
-                if (rec.getBinX() == binX && rec.getBinY() == binY) {
-                    return rec.getCounts();
-                }
+            ContactRecord rec = b.getContactRecord(binX, binY);
+            if (rec != null) {
+                return rec.getCounts();
             }
         }
         // No record found for this bin
@@ -580,7 +593,17 @@ public class MatrixZoomData {
         if (pearsons == null) {
             return null;
         }
+        return computeEigenvector(pearsons, which);
+    }
 
+    /**
+     * Computes eigenvector from the given Pearson's matrix.
+     *
+     * @param pearsons Pearson's matrix
+     * @param which    Which eigenvector; 0 is principal.
+     * @return Eigenvector
+     */
+    public static double[] computeEigenvector(BasicMatrix pearsons, int which) {
         int dim = pearsons.getRowDimension();
         double[][] data = new double[dim][dim];
         BitSet bitSet = new BitSet(dim);
@@ -678,8 +701,8 @@ public class MatrixZoomData {
             }
         }
         // we weren't able to read in the Pearsons. check that the resolution is low enough to calculate
-        if (!readPearsons && (zoom.getUnit() == HiC.Unit.BP && zoom.getBinSize() >= HiCGlobals.MAX_PEARSON_ZOOM) ||
-                (zoom.getUnit() == HiC.Unit.FRAG && zoom.getBinSize() >= HiCGlobals.MAX_PEARSON_ZOOM/1000)) {
+        if (!readPearsons && ((zoom.getUnit() == HiC.Unit.BP && zoom.getBinSize() >= HiCGlobals.MAX_PEARSON_ZOOM) ||
+                (zoom.getUnit() == HiC.Unit.FRAG && zoom.getBinSize() >= HiCGlobals.MAX_PEARSON_ZOOM/1000))) {
             pearsons = computePearsons(df);
             pearsonsMap.put(df.getNormalizationType(), pearsons);
         }
@@ -687,6 +710,22 @@ public class MatrixZoomData {
         return pearsonsMap.get(df.getNormalizationType());
     }
 
+    /**
+     * Whether the Pearson's for this normalization is stored with the dataset, in which case it can be shown at
+     * resolutions too fine to calculate on the fly.
+     *
+     * @param type Normalization type
+     * @return true if the Pearson's can be read rather than computed
+     */
+    public synchronized boolean hasPrecomputedPearsons(NormalizationType type) {
+        Boolean precomputed = precomputedPearsons.get(type);
+        if (precomputed == null) {
+            precomputed = chr1 == chr2 && reader.hasPrecomputedPearsons(chr1.getName(), chr2.getName(), zoom, type);
+            precomputedPearsons.put(type, precomputed);
+        }
+        return precomputed;
+    }
+
     /**
      * Returns Pearson value at given bin X and Y
      *
@@ -706,12 +745,12 @@ public class MatrixZoomData {
 
     /**
      * Compute the Pearson's.  Read in the observed, calculate O/E from the expected value function, subtract the row
-     * means, compute the Pearson's correlation on that matrix
+     * means, compute the Pearson's correlation on that matrix.  The result is not cached.
      *
      * @param df Expected value
      * @return Pearson's correlation matrix
      */
-    private BasicMatrix computePearsons(ExpectedValueFunction df) {
+    public BasicMatrix computePearsons(ExpectedValueFunction df) {
         if (chr1 != chr2) {
             throw new RuntimeException("Cannot compute pearsons for non-diagonal matrices");
         }
@@ -773,10 +812,7 @@ public class MatrixZoomData {
             }
         }
 
-        BasicMatrix pearsons = Pearsons.computePearsons(vectors, dim);
-        pearsonsMap.put(df.getNormalizationType(), pearsons);
-
-        return pearsons;
+        return Pearsons.computePearsons(vectors, dim);
     }
 
     /**
@@ -1143,6 +1179,57 @@ public class MatrixZoomData {
 
     public void clearCache() {
         blockCache.clear();
+        cachedBlockNumbers.clear();
+    }
+
+    /**
+     * Remove only the cached blocks holding contacts moved by the assembly changes
+     *
+     * @param changes intervals changed since the cache was last updated
+     */
+    public void clearCache(AssemblyChanges changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        if (HiCGlobals.isAssemblyMatCheck) {
+            // blocks are cached under different keys
+            clearCache();
+            return;
+        }
+
+        double binWidth = HiCGlobals.hicMapScale * getBinSize();
+        if (chr1.getIndex() == 0 && chr2.getIndex() == 0) {
+            binWidth *= 1000; // AllByAll is measured in kb
+        }
+
+        boolean[] changedColumns = new boolean[blockColumnCount];
+        int numChangedColumns = 0;
+        for (int c = 0; c < blockColumnCount; c++) {
+            if (changes.affectsOriginalBins(c * blockBinCount, (c + 1) * blockBinCount - 1, binWidth)) {
+                changedColumns[c] = true;
+                numChangedColumns++;
+            }
+        }
+        if (numChangedColumns == 0) {
+            return;
+        }
+        if (2 * numChangedColumns > blockColumnCount) {
+            clearCache();
+            return;
+        }
+
+        // blocks are indexed by original position, so a block is stale if its row or its column moved
+        Iterator<Integer> iterator = cachedBlockNumbers.iterator();
+        while (iterator.hasNext()) {
+            int blockNumber = iterator.next();
+            int r = blockNumber / blockColumnCount;
+            if (r >= blockColumnCount || changedColumns[r] || changedColumns[blockNumber % blockColumnCount]) {
+                for (NormalizationType no : cachedNormalizations) {
+                    blockCache.remove(getBlockKey(blockNumber, no));
+                }
+                iterator.remove();
+            }
+        }
     }
 
 
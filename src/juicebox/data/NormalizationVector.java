@@ -26,13 +26,12 @@
 package juicebox.data;
 
 import juicebox.HiC;
+import juicebox.tools.utils.norm.SparseSymmetricMatrix;
 import juicebox.tools.utils.norm.ZeroScale;
 import juicebox.windowui.HiCZoom;
 import juicebox.windowui.NormalizationType;
 import org.broad.igv.feature.Chromosome;
 
-import java.util.List;
-
 /**
  * @author jrobinso
  *         Date: 2/10/13
@@ -98,10 +97,12 @@ public class NormalizationVector {
 
     public NormalizationVector mmbaScaleToVector(MatrixZoomData zd) {
 
-        List<ContactRecord> contactRecordList = zd.getContactRecordList();
-        double[] newNormVector = ZeroScale.scale(contactRecordList, data, getKey());
-        if (newNormVector != null) {
-            newNormVector = ZeroScale.normalizeVectorByScaleFactor(newNormVector, contactRecordList);
+        double[] newNormVector;
+        try (SparseSymmetricMatrix matrix = SparseSymmetricMatrix.fromContactRecords(zd.getNewContactRecordIterator(), data.length)) {
+            newNormVector = ZeroScale.scale(matrix, data, getKey());
+            if (newNormVector != null) {
+                newNormVector = ZeroScale.normalizeVectorByScaleFactor(newNormVector, matrix);
+            }
         }
 
         return new NormalizationVector(type, chrIdx, unit, resolution, newNormVector);
@@ -0,0 +1,143 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.data;
+
+import juicebox.matrix.BasicMatrix;
+import juicebox.tools.utils.original.Preprocessor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pearson's matrix stored in a .hic file; blocks are read and decompressed when first used.
+ * Only the upper triangle is stored.
+ */
+class PrecomputedPearsons implements BasicMatrix {
+
+    private static final int MAX_CACHED_BLOCKS = 64;
+
+    private final DatasetReaderV2 reader;
+    private final int dim;
+    private final float lowerValue;
+    private final float upperValue;
+    private final int blockSize;
+    private final int numBlocks;
+    private final long[] blockPositions;
+    private final int[] blockSizes;
+    private final Map<Integer, float[]> blockCache = new LinkedHashMap<Integer, float[]>(MAX_CACHED_BLOCKS, 0.75f, true) {
+        private static final long serialVersionUID = 45045L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, float[]> eldest) {
+            return size() > MAX_CACHED_BLOCKS;
+        }
+    };
+
+    PrecomputedPearsons(DatasetReaderV2 reader, Preprocessor.IndexEntry entry) throws IOException {
+        this.reader = reader;
+        ByteBuffer header = ByteBuffer.wrap(reader.readBytes(entry.position, entry.size)).order(ByteOrder.LITTLE_ENDIAN);
+        dim = header.getInt();
+        lowerValue = header.getFloat();
+        upperValue = header.getFloat();
+        blockSize = header.getInt();
+        numBlocks = (dim + blockSize - 1) / blockSize;
+        int numStoredBlocks = header.getInt();
+        blockPositions = new long[numStoredBlocks];
+        blockSizes = new int[numStoredBlocks];
+        for (int i = 0; i < numStoredBlocks; i++) {
+            blockPositions[i] = entry.position + header.getLong();
+            blockSizes[i] = header.getInt();
+        }
+    }
+
+    @Override
+    public float getEntry(int row, int col) {
+        if (row < 0 || col < 0 || row >= dim || col >= dim) return Float.NaN;
+        if (row > col) {
+            int tmp = row;
+            row = col;
+            col = tmp;
+        }
+
+        int blockRowIdx = row / blockSize;
+        int blockColIdx = col / blockSize;
+        float[] blockData = getBlockData(blockRowIdx, blockColIdx);
+        if (blockData == null) return Float.NaN;
+
+        int colDim = Math.min(blockSize, dim - blockColIdx * blockSize);
+        return blockData[(row - blockRowIdx * blockSize) * colDim + col - blockColIdx * blockSize];
+    }
+
+    private float[] getBlockData(int blockRowIdx, int blockColIdx) {
+        Integer key = PrecomputedTracks.getUpperTriangleBlockIndex(blockRowIdx, blockColIdx, numBlocks);
+        synchronized (blockCache) {
+            float[] blockData = blockCache.get(key);
+            if (blockData != null) return blockData;
+        }
+
+        float[] blockData;
+        try {
+            byte[] bytes = PrecomputedTracks.CODEC.decompress(reader.readBytes(blockPositions[key], blockSizes[key]));
+            blockData = new float[bytes.length / 4];
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(blockData);
+        } catch (IOException e) {
+            System.err.println("Error reading Pearson's block: " + blockRowIdx + "-" + blockColIdx + " " + e.getLocalizedMessage());
+            return null;
+        }
+
+        synchronized (blockCache) {
+            blockCache.put(key, blockData);
+        }
+        return blockData;
+    }
+
+    @Override
+    public int getRowDimension() {
+        return dim;
+    }
+
+    @Override
+    public int getColumnDimension() {
+        return dim;
+    }
+
+    @Override
+    public float getLowerValue() {
+        return lowerValue;
+    }
+
+    @Override
+    public float getUpperValue() {
+        return upperValue;
+    }
+
+    @Override
+    public void setEntry(int i, int j, float corr) {
+
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.data;
+
+import juicebox.windowui.HiCZoom;
+import juicebox.windowui.NormalizationType;
+
+/**
+ * Pearson's matrices and eigenvectors precomputed into a .hic file, after the normalization vectors.
+ * <p/>
+ * Layout:
+ * Entries	Pearson's matrices and eigenvectors, one after another
+ * Index	Number of entries, then key, file position and size in bytes of each entry
+ * Trailer	Position of the first entry (long), position of the index (long), magic number (int)
+ * <p/>
+ * A Pearson's entry holds the dimension, lower and upper bounds for scale, block size and number of blocks, followed
+ * by the position (relative to the entry) and compressed size of each block in the upper triangle, row by row.
+ * The size in the index covers only this header.  Each block is a row major array of little endian floats.
+ * An eigenvector entry holds the number of values followed by the values as doubles.
+ */
+public class PrecomputedTracks {
+
+    public static final int MAGIC = 0x50524543;   // "CERP" when read as bytes
+    public static final int TRAILER_SIZE = 20;
+    public static final int PEARSONS_BLOCK_SIZE = 500;
+    public static final BlockCodec CODEC = BlockCodec.DEFLATE;
+
+    public static String getPearsonsKey(String chrName, HiCZoom zoom, NormalizationType type) {
+        return "pearsons_" + chrName + "_" + zoom.getKey() + "_" + type;
+    }
+
+    public static String getEigenvectorKey(String chrName, HiCZoom zoom, int number, String type) {
+        return "eigenvector" + number + "_" + chrName + "_" + zoom.getKey() + "_" + type;
+    }
+
+    /**
+     * @return index of the block in the upper triangle of a grid of numBlocks x numBlocks blocks
+     */
+    public static int getUpperTriangleBlockIndex(int blockRowIdx, int blockColIdx, int numBlocks) {
+        return blockRowIdx * numBlocks - blockRowIdx * (blockRowIdx - 1) / 2 + blockColIdx - blockRowIdx;
+    }
+}
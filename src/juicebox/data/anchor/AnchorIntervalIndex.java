@@ -0,0 +1,176 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.data.anchor;
+
+import java.util.*;
+
+/**
+ * Immutable interval index over the anchors of one chromosome.
+ * <p/>
+ * Anchors are sorted by start, and the sorted array is treated as an implicit balanced binary tree in which each node
+ * also holds the largest end in its subtree (an augmented interval tree laid out in place, as in cgranges).
+ * An overlap query visits O(log n + k) nodes for k results.
+ */
+class AnchorIntervalIndex {
+
+    // subtrees with at most 2^(LINEAR_SCAN_LEVEL + 1) anchors are scanned directly
+    private static final int LINEAR_SCAN_LEVEL = 3;
+
+    private final MotifAnchor[] anchors;
+    private final int[] starts;
+    // ends are exclusive, i.e. anchor.getX2() + 1
+    private final int[] ends;
+    private final int[] maxEnds;
+    private final int rootLevel;
+
+    AnchorIntervalIndex(Collection<MotifAnchor> anchorCollection) {
+        anchors = anchorCollection.toArray(new MotifAnchor[anchorCollection.size()]);
+        Arrays.sort(anchors, new Comparator<MotifAnchor>() {
+            @Override
+            public int compare(MotifAnchor o1, MotifAnchor o2) {
+                return Integer.compare(o1.getX1(), o2.getX1());
+            }
+        });
+
+        int n = anchors.length;
+        starts = new int[n];
+        ends = new int[n];
+        for (int i = 0; i < n; i++) {
+            starts[i] = anchors[i].getX1();
+            ends[i] = anchors[i].getX2() + 1;
+        }
+
+        maxEnds = new int[n];
+        rootLevel = buildMaxEnds();
+    }
+
+    /**
+     * Fill in the largest end of each subtree, level by level
+     *
+     * @return level of the root
+     */
+    private int buildMaxEnds() {
+        int n = anchors.length;
+        if (n == 0) return -1;
+
+        int lastIndex = 0;
+        int last = 0;
+        for (int i = 0; i < n; i += 2) {
+            lastIndex = i;
+            maxEnds[i] = last = ends[i];
+        }
+
+        int k = 1;
+        for (; (1 << k) <= n; k++) {
+            int x = 1 << (k - 1);
+            int step = x << 2;
+            for (int i = (x << 1) - 1; i < n; i += step) {
+                int leftMax = maxEnds[i - x];
+                // a right subtree that extends past the array ends at the last anchor
+                int rightMax = i + x < n ? maxEnds[i + x] : last;
+                maxEnds[i] = Math.max(ends[i], Math.max(leftMax, rightMax));
+            }
+            lastIndex = ((lastIndex >> k) & 1) != 0 ? lastIndex - x : lastIndex + x;
+            if (lastIndex < n && maxEnds[lastIndex] > last) {
+                last = maxEnds[lastIndex];
+            }
+        }
+        return k - 1;
+    }
+
+    int size() {
+        return anchors.length;
+    }
+
+    /**
+     * @return anchors overlapping [x1, x2] (both inclusive, as in MotifAnchor.hasOverlapWith), ordered by start
+     */
+    List<MotifAnchor> getOverlapping(int x1, int x2) {
+        List<MotifAnchor> result = new ArrayList<>();
+        if (anchors.length == 0) return result;
+
+        int n = anchors.length;
+        int queryStart = x1;
+        int queryEnd = x2 + 1;
+
+        // explicit stack of (node, level, whether the left subtree was already visited)
+        int[] nodes = new int[64];
+        int[] levels = new int[64];
+        boolean[] leftVisited = new boolean[64];
+        int top = 0;
+        nodes[0] = (1 << rootLevel) - 1;
+        levels[0] = rootLevel;
+        leftVisited[0] = false;
+        top++;
+
+        while (top > 0) {
+            top--;
+            int node = nodes[top];
+            int level = levels[top];
+
+            if (level <= LINEAR_SCAN_LEVEL) {
+                int i0 = node >> level << level;
+                int i1 = Math.min(n, i0 + (1 << (level + 1)) - 1);
+                for (int i = i0; i < i1 && starts[i] < queryEnd; i++) {
+                    if (queryStart < ends[i]) {
+                        result.add(anchors[i]);
+                    }
+                }
+            } else if (!leftVisited[top]) {
+                int left = node - (1 << (level - 1));
+                leftVisited[top] = true;
+                top++;
+                if (left >= n || maxEnds[left] > queryStart) {
+                    nodes[top] = left;
+                    levels[top] = level - 1;
+                    leftVisited[top] = false;
+                    top++;
+                }
+            } else if (node < n && starts[node] < queryEnd) {
+                if (queryStart < ends[node]) {
+                    result.add(anchors[node]);
+                }
+                nodes[top] = node + (1 << (level - 1));
+                levels[top] = level - 1;
+                leftVisited[top] = false;
+                top++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return anchors overlapping the given anchor, ordered by start
+     */
+    List<MotifAnchor> getOverlapping(MotifAnchor anchor) {
+        List<MotifAnchor> result = getOverlapping(anchor.getX1(), anchor.getX2());
+        for (Iterator<MotifAnchor> iterator = result.iterator(); iterator.hasNext(); ) {
+            if (iterator.next().getChr() != anchor.getChr()) {
+                iterator.remove();
+            }
+        }
+        return result;
+    }
+}
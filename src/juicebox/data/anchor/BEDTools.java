@@ -74,53 +74,11 @@ class BEDTools {
         Collections.sort(topAnchors);
         Collections.sort(bottomAnchors);
 
+        AnchorIntervalIndex bottomIndex = new AnchorIntervalIndex(bottomAnchors);
         Set<MotifAnchor> intersected = new HashSet<>();
-
-        int topIndex = 0;
-        int bottomIndex = 0;
-        int maxTopIndex = topAnchors.size();
-        int maxBottomIndex = bottomAnchors.size();
-
-        while (topIndex < maxTopIndex && bottomIndex < maxBottomIndex) {
-            MotifAnchor topAnchor = topAnchors.get(topIndex);
-            MotifAnchor bottomAnchor = bottomAnchors.get(bottomIndex);
-            if (topAnchor.hasOverlapWith(bottomAnchor) || bottomAnchor.hasOverlapWith(topAnchor)) {
-
-                //List<MotifAnchor> tempIntersected = new ArrayList<MotifAnchor>();
-
-                // iterate over all possible intersections with top element
-                for (int i = bottomIndex; i < maxBottomIndex; i++) {
-                    MotifAnchor newAnchor = bottomAnchors.get(i);
-                    if (topAnchor.hasOverlapWith(newAnchor) || newAnchor.hasOverlapWith(topAnchor)) {
-                        intersected.add(intersection(topAnchor, newAnchor, conductFullIntersection));
-                    } else {
-                        break;
-                    }
-                }
-
-                // iterate over all possible intersections with bottom element
-                // start from +1 because +0 checked in the for loop above
-                for (int i = topIndex + 1; i < maxTopIndex; i++) {
-                    MotifAnchor newAnchor = topAnchors.get(i);
-                    if (bottomAnchor.hasOverlapWith(newAnchor) || newAnchor.hasOverlapWith(bottomAnchor)) {
-                        intersected.add(intersection(bottomAnchor, newAnchor, conductFullIntersection));
-                    } else {
-                        break;
-                    }
-                }
-
-                //intersected.addAll(merge(tempIntersected));
-
-                // increment both
-                topIndex++;
-                bottomIndex++;
-            } else if (topAnchor.isStrictlyToTheLeftOf(bottomAnchor)) {
-                topIndex++;
-            } else if (topAnchor.isStrictlyToTheRightOf(bottomAnchor)) {
-                bottomIndex++;
-            } else {
-                System.err.println("Error while intersecting anchors.");
-                System.err.println(topAnchor + " & " + bottomAnchor);
+        for (MotifAnchor topAnchor : topAnchors) {
+            for (MotifAnchor bottomAnchor : bottomIndex.getOverlapping(topAnchor)) {
+                intersected.add(intersection(topAnchor, bottomAnchor, conductFullIntersection));
             }
         }
 
@@ -169,53 +127,11 @@ class BEDTools {
         Collections.sort(topAnchors);
         Collections.sort(bottomAnchors);
 
+        AnchorIntervalIndex bottomIndex = new AnchorIntervalIndex(bottomAnchors);
         Set<MotifAnchor> intersected = new HashSet<>();
-
-        int topIndex = 0;
-        int bottomIndex = 0;
-        int maxTopIndex = topAnchors.size();
-        int maxBottomIndex = bottomAnchors.size();
-
-        while (topIndex < maxTopIndex && bottomIndex < maxBottomIndex) {
-            MotifAnchor topAnchor = topAnchors.get(topIndex);
-            MotifAnchor bottomAnchor = bottomAnchors.get(bottomIndex);
-            if (topAnchor.hasOverlapWith(bottomAnchor) || bottomAnchor.hasOverlapWith(topAnchor)) {
-                // iterate over all possible intersections with top element
-
-                //List<MotifAnchor> tempIntersection = new ArrayList<MotifAnchor>();
-
-                for (int i = bottomIndex; i < maxBottomIndex; i++) {
-                    MotifAnchor newAnchor = bottomAnchors.get(i);
-                    if (topAnchor.hasOverlapWith(newAnchor) || newAnchor.hasOverlapWith(topAnchor)) {
-                        intersected.add(preservativeIntersection(topAnchor, newAnchor, conductFullIntersection));
-                    } else {
-                        break;
-                    }
-                }
-
-                // iterate over all possible intersections with bottom element
-                // start from +1 because +0 checked in the for loop above
-                for (int i = topIndex + 1; i < maxTopIndex; i++) {
-                    MotifAnchor newAnchor = topAnchors.get(i);
-                    if (bottomAnchor.hasOverlapWith(newAnchor) || newAnchor.hasOverlapWith(bottomAnchor)) {
-                        intersected.add(preservativeIntersection(newAnchor, bottomAnchor, conductFullIntersection));
-                    } else {
-                        break;
-                    }
-                }
-
-                //intersected.addAll(merge(tempIntersection));
-
-                // increment both
-                topIndex++;
-                bottomIndex++;
-            } else if (topAnchor.isStrictlyToTheLeftOf(bottomAnchor)) {
-                topIndex++;
-            } else if (topAnchor.isStrictlyToTheRightOf(bottomAnchor)) {
-                bottomIndex++;
-            } else {
-                System.err.println("Error while intersecting anchors.");
-                System.err.println(topAnchor + " & " + bottomAnchor);
+        for (MotifAnchor topAnchor : topAnchors) {
+            for (MotifAnchor bottomAnchor : bottomIndex.getOverlapping(topAnchor)) {
+                intersected.add(preservativeIntersection(topAnchor, bottomAnchor, conductFullIntersection));
             }
         }
 
@@ -137,7 +137,7 @@ public class MotifAnchorTools {
      */
     public static void intersectLists(final GenomeWideList<MotifAnchor> firstList, final GenomeWideList<MotifAnchor> secondList,
                                       final boolean conductFullIntersection) {
-        firstList.filterLists(new FeatureFilter<MotifAnchor>() {
+        firstList.filterListsInParallel(new FeatureFilter<MotifAnchor>() {
             @Override
             public List<MotifAnchor> filter(String key, List<MotifAnchor> anchorList) {
                 if (secondList.containsKey(key)) {
@@ -151,7 +151,7 @@ public class MotifAnchorTools {
 
     public static void preservativeIntersectLists(final GenomeWideList<MotifAnchor> firstList, final GenomeWideList<MotifAnchor> secondList,
                                                   final boolean conductFullIntersection) {
-        firstList.filterLists(new FeatureFilter<MotifAnchor>() {
+        firstList.filterListsInParallel(new FeatureFilter<MotifAnchor>() {
             @Override
             public List<MotifAnchor> filter(String key, List<MotifAnchor> anchorList) {
                 if (secondList.containsKey(key)) {
@@ -347,53 +347,12 @@ public class MotifAnchorTools {
             bottomListToTopList.put(anchor, new HashSet<MotifAnchor>());
         }
 
-        int topIndex = 0;
-        int bottomIndex = 0;
-        int maxTopIndex = topAnchors.size();
-        int maxBottomIndex = baseList.size();
         Collections.sort(topAnchors);
         Collections.sort(baseList);
 
-
-        while (topIndex < maxTopIndex && bottomIndex < maxBottomIndex) {
-            MotifAnchor topAnchor = topAnchors.get(topIndex);
-            MotifAnchor bottomAnchor = baseList.get(bottomIndex);
-            if (topAnchor.hasOverlapWith(bottomAnchor) || bottomAnchor.hasOverlapWith(topAnchor)) {
-
-                bottomListToTopList.get(bottomAnchor).add(topAnchor);
-
-                // iterate over all possible intersections with top element
-                for (int i = bottomIndex; i < maxBottomIndex; i++) {
-                    MotifAnchor newAnchor = baseList.get(i);
-                    if (topAnchor.hasOverlapWith(newAnchor) || newAnchor.hasOverlapWith(topAnchor)) {
-                        bottomListToTopList.get(newAnchor).add(topAnchor);
-                    } else {
-                        break;
-                    }
-                }
-
-                // iterate over all possible intersections with bottom element
-                // start from +1 because +0 checked in the for loop above
-                for (int i = topIndex + 1; i < maxTopIndex; i++) {
-                    MotifAnchor newAnchor = topAnchors.get(i);
-                    if (bottomAnchor.hasOverlapWith(newAnchor) || newAnchor.hasOverlapWith(bottomAnchor)) {
-                        bottomListToTopList.get(bottomAnchor).add(newAnchor);
-                    } else {
-                        break;
-                    }
-                }
-
-                // increment both
-                topIndex++;
-                bottomIndex++;
-            } else if (topAnchor.isStrictlyToTheLeftOf(bottomAnchor)) {
-                topIndex++;
-            } else if (topAnchor.isStrictlyToTheRightOf(bottomAnchor)) {
-                bottomIndex++;
-            } else {
-                System.err.println("Error while intersecting anchors.");
-                System.err.println(topAnchor + " & " + bottomAnchor);
-            }
+        AnchorIntervalIndex topIndex = new AnchorIntervalIndex(topAnchors);
+        for (MotifAnchor bottomAnchor : baseList) {
+            bottomListToTopList.get(bottomAnchor).addAll(topIndex.getOverlapping(bottomAnchor));
         }
 
         List<MotifAnchor> uniqueAnchors = new ArrayList<>();
@@ -460,53 +419,12 @@ public class MotifAnchorTools {
             bottomListToTopList.put(anchor, new HashSet<MotifAnchor>());
         }
 
-        int topIndex = 0;
-        int bottomIndex = 0;
-        int maxTopIndex = topAnchors.size();
-        int maxBottomIndex = baseList.size();
         Collections.sort(topAnchors);
         Collections.sort(baseList);
 
-
-        while (topIndex < maxTopIndex && bottomIndex < maxBottomIndex) {
-            MotifAnchor topAnchor = topAnchors.get(topIndex);
-            MotifAnchor bottomAnchor = baseList.get(bottomIndex);
-            if (topAnchor.hasOverlapWith(bottomAnchor) || bottomAnchor.hasOverlapWith(topAnchor)) {
-
-                bottomListToTopList.get(bottomAnchor).add(topAnchor);
-
-                // iterate over all possible intersections with top element
-                for (int i = bottomIndex; i < maxBottomIndex; i++) {
-                    MotifAnchor newAnchor = baseList.get(i);
-                    if (topAnchor.hasOverlapWith(newAnchor) || newAnchor.hasOverlapWith(topAnchor)) {
-                        bottomListToTopList.get(newAnchor).add(topAnchor);
-                    } else {
-                        break;
-                    }
-                }
-
-                // iterate over all possible intersections with bottom element
-                // start from +1 because +0 checked in the for loop above
-                for (int i = topIndex + 1; i < maxTopIndex; i++) {
-                    MotifAnchor newAnchor = topAnchors.get(i);
-                    if (bottomAnchor.hasOverlapWith(newAnchor) || newAnchor.hasOverlapWith(bottomAnchor)) {
-                        bottomListToTopList.get(bottomAnchor).add(newAnchor);
-                    } else {
-                        break;
-                    }
-                }
-
-                // increment both
-                topIndex++;
-                bottomIndex++;
-            } else if (topAnchor.isStrictlyToTheLeftOf(bottomAnchor)) {
-                topIndex++;
-            } else if (topAnchor.isStrictlyToTheRightOf(bottomAnchor)) {
-                bottomIndex++;
-            } else {
-                System.err.println("Error while intersecting anchors.");
-                System.err.println(topAnchor + " & " + bottomAnchor);
-            }
+        AnchorIntervalIndex topIndex = new AnchorIntervalIndex(topAnchors);
+        for (MotifAnchor bottomAnchor : baseList) {
+            bottomListToTopList.get(bottomAnchor).addAll(topIndex.getOverlapping(bottomAnchor));
         }
 
         for (MotifAnchor anchor : bottomListToTopList.keySet()) {
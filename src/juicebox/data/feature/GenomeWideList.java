@@ -31,6 +31,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * Created by muhammadsaadshamim on 11/17/15.
@@ -159,6 +160,63 @@ public class GenomeWideList<T extends Feature> {
         }
     }
 
+    /**
+     * Same as filterLists, with the lists of different chromosomes filtered in parallel.  The list is only locked
+     * while the current lists are collected and while the results are stored.
+     * The filter must not share mutable state between chromosomes.
+     *
+     * @param filter
+     */
+    public void filterListsInParallel(final FeatureFilter<T> filter) {
+        final List<String> keys;
+        List<Callable<List<T>>> tasks = new ArrayList<>();
+        synchronized (this) {
+            keys = new ArrayList<>(featureLists.keySet());
+            Collections.sort(keys);
+            for (final String key : keys) {
+                final List<T> features = featureLists.get(key);
+                tasks.add(new Callable<List<T>>() {
+                    @Override
+                    public List<T> call() {
+                        return filter.filter(key, features);
+                    }
+                });
+            }
+        }
+
+        List<List<T>> results = FeatureListExecutor.invokeAll(tasks);
+        synchronized (this) {
+            for (int i = 0; i < keys.size(); i++) {
+                featureLists.put(keys.get(i), results.get(i));
+            }
+        }
+    }
+
+    /**
+     * Same as processLists, with the lists of different chromosomes processed in parallel.
+     * The function must not share mutable state between chromosomes.
+     *
+     * @param function
+     */
+    public void processListsInParallel(final FeatureFunction<T> function) {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        synchronized (this) {
+            List<String> keys = new ArrayList<>(featureLists.keySet());
+            Collections.sort(keys);
+            for (final String key : keys) {
+                final List<T> features = featureLists.get(key);
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        function.process(key, features);
+                        return null;
+                    }
+                });
+            }
+        }
+        FeatureListExecutor.invokeAll(tasks);
+    }
+
     /**
      * @return deep copy of the anchor list
      */
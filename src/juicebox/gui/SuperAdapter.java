@@ -27,6 +27,8 @@ package juicebox.gui;
 import juicebox.HiC;
 import juicebox.HiCGlobals;
 import juicebox.MainWindow;
+import juicebox.assembly.AssemblyChanges;
+import juicebox.assembly.AssemblyHeatmapHandler;
 import juicebox.assembly.AssemblyStateTracker;
 import juicebox.data.*;
 import juicebox.data.anchor.MotifAnchorTools;
@@ -372,6 +374,7 @@ public class SuperAdapter {
 
     public void unsafeClearAllMatrixZoomCache() {
         //not sure if this is a right place for this
+        AssemblyHeatmapHandler.drainChanges();
         hic.clearAllMatrixZoomDataCache();
     }
 
@@ -1033,6 +1036,22 @@ public class SuperAdapter {
         executeLongRunningTask(runnable, "Assembly clear MZD cache");
     }
 
+    /**
+     * Drop only the cached blocks and tiles affected by the assembly edits since the last update
+     */
+    public void safeClearChangedMZDCache() {
+        Runnable runnable = new Runnable() {
+            public void run() {
+                AssemblyChanges changes = AssemblyHeatmapHandler.drainChanges();
+                hic.clearMatrixZoomDataCache(changes);
+                mainViewPanel.getHeatmapPanel().clearTileCache(changes);
+                mainViewPanel.updateThumbnail(hic);
+                repaint();
+            }
+        };
+        executeLongRunningTask(runnable, "Assembly update MZD cache");
+    }
+
     public boolean exitAssemblyMode() {
         MainMenuBar.exitAssemblyMode();
         int dialogButton = JOptionPane.YES_NO_OPTION;
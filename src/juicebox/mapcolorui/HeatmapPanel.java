@@ -28,6 +28,7 @@ import com.jidesoft.swing.JidePopupMenu;
 import juicebox.HiC;
 import juicebox.HiCGlobals;
 import juicebox.MainWindow;
+import juicebox.assembly.AssemblyChanges;
 import juicebox.assembly.AssemblyHeatmapHandler;
 import juicebox.assembly.AssemblyOperationExecutor;
 import juicebox.assembly.AssemblyScaffoldHandler;
@@ -41,12 +42,12 @@ import juicebox.track.feature.AnnotationLayerHandler;
 import juicebox.track.feature.Feature2D;
 import juicebox.track.feature.Feature2DGuiContainer;
 import juicebox.windowui.EditFeatureAttributesDialog;
+import juicebox.windowui.HiCZoom;
 import juicebox.windowui.MatrixType;
 import juicebox.windowui.NormalizationType;
 import org.broad.igv.feature.Chromosome;
 import org.broad.igv.renderer.GraphicUtils;
 import org.broad.igv.ui.FontManager;
-import org.broad.igv.util.ObjectCache;
 import org.broad.igv.util.Pair;
 
 import javax.swing.*;
@@ -57,8 +58,7 @@ import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.io.Serializable;
 import java.text.NumberFormat;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.*;
 import java.util.List;
 
 import static java.awt.Toolkit.getDefaultToolkit;
@@ -84,7 +84,17 @@ public class HeatmapPanel extends JComponent implements Serializable {
   private final MainWindow mainWindow;
   private final HiC hic;
   private final SuperAdapter superAdapter;
-  private final ObjectCache<String, ImageTile> tileCache = new ObjectCache<>(26);
+  private static final int maxTileCacheSize = 26;
+  // iterable, so tiles can be invalidated selectively after assembly edits
+  private final Map<String, ImageTile> tileCache = Collections.synchronizedMap(
+          new LinkedHashMap<String, ImageTile>(maxTileCacheSize + 1, 0.75f, true) {
+            private static final long serialVersionUID = 42050L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ImageTile> eldest) {
+              return size() > maxTileCacheSize;
+            }
+          });
   private final HeatmapRenderer renderer;
   //private final transient List<Pair<Rectangle, Feature2D>> drawnLoopFeatures;
   private final transient List<Feature2DGuiContainer> allFeaturePairs = new ArrayList<>();
@@ -747,6 +757,58 @@ public class HeatmapPanel extends JComponent implements Serializable {
     tileCache.clear();
   }
 
+  /**
+   * Remove only the tiles showing regions changed by the assembly
+   *
+   * @param changes intervals changed since the tiles were rendered
+   */
+  public void clearTileCache(AssemblyChanges changes) {
+    if (changes.isEmpty()) {
+      return;
+    }
+    List<MatrixZoomData> zoomDatas = new ArrayList<>();
+    try {
+      Matrix matrix = hic.getMatrix();
+      for (HiCZoom zoom : hic.getDataset().getBpZooms()) {
+        zoomDatas.add(matrix.getZoomData(zoom));
+      }
+    } catch (Exception e) {
+      clearTileCache();
+      return;
+    }
+
+    synchronized (tileCache) {
+      Iterator<Map.Entry<String, ImageTile>> iterator = tileCache.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<String, ImageTile> entry = iterator.next();
+        MatrixZoomData tileZd = null;
+        for (MatrixZoomData zd : zoomDatas) {
+          if (zd != null && entry.getKey().startsWith(zd.getKey() + "_")) {
+            tileZd = zd;
+            break;
+          }
+        }
+        if (tileZd == null) {
+          iterator.remove();
+          continue;
+        }
+
+        double binWidth = HiCGlobals.hicMapScale * tileZd.getBinSize();
+        if (tileZd.getChr1Idx() == 0 && tileZd.getChr2Idx() == 0) {
+          binWidth *= 1000; // AllByAll is measured in kb
+        }
+        ImageTile tile = entry.getValue();
+        int width = tile.image.getWidth(null);
+        int height = tile.image.getHeight(null);
+        if (width < 0 || height < 0
+                || changes.affectsCurrentBins(tile.bLeft, tile.bLeft + width - 1, binWidth)
+                || changes.affectsCurrentBins(tile.bTop, tile.bTop + height - 1, binWidth)) {
+          iterator.remove();
+        }
+      }
+    }
+  }
+
   private void launchColorSelectionMenu(Pair<Rectangle, Feature2D> selectedFeaturePair) {
     JColorChooser colorChooser = new JColorChooser(selectedFeaturePair.getSecond().getColor());
     JDialog dialog = JColorChooser.createDialog(new JPanel(null), "feature Color Selection", true, colorChooser,
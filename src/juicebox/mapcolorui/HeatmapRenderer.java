@@ -36,6 +36,7 @@ import juicebox.data.MatrixZoomData;
 import juicebox.gui.MainViewPanel;
 import juicebox.gui.SuperAdapter;
 import juicebox.matrix.BasicMatrix;
+import juicebox.matrix.DiskResidentBlockMatrix;
 import juicebox.windowui.MatrixType;
 import juicebox.windowui.NormalizationType;
 import org.apache.commons.math.stat.StatUtils;
@@ -628,12 +629,20 @@ class HeatmapRenderer {
                                    PearsonColorScale colorScale, String key, Graphics2D g, ColorScale cs) {
         int endX = Math.min(originX + width, bm1.getColumnDimension());
         int endY = Math.min(originY + height, bm1.getRowDimension());
+        if (endX <= originX || endY <= originY) return;
+
+        // read the visible region in bulk rather than entry by entry
+        int numRows = endY - originY;
+        int numCols = endX - originX;
+        float[] scores = getDenseRegion(bm1, originY, originX, numRows, numCols);
+        float[] controlScores = bm2 == null ? null : getDenseRegion(bm2, originY, originX, numRows, numCols);
 
         // TODO -- need to check bounds before drawing
         for (int row = originY; row < endY; row++) {
+            int rowOffset = (row - originY) * numCols - originX;
             for (int col = originX; col < endX; col++) {
 
-                float score = bm1.getEntry(row, col);
+                float score = scores[rowOffset + col];
                 Color color = getDenseMatrixColor(key, score, colorScale, cs);
                 int px = col - originX;
                 int py = row - originY;
@@ -643,8 +652,8 @@ class HeatmapRenderer {
                 g.fillRect(px, py, HiCGlobals.BIN_PIXEL_WIDTH, HiCGlobals.BIN_PIXEL_WIDTH);
                 // Assuming same chromosome
                 if (col != row) {
-                    if (bm2 != null) {
-                        float controlScore = bm2.getEntry(row, col);
+                    if (controlScores != null) {
+                        float controlScore = controlScores[rowOffset + col];
                         Color controlColor = getDenseMatrixColor(key, controlScore, colorScale, cs);
                         px = row - originX;
                         py = col - originY;
@@ -660,6 +669,27 @@ class HeatmapRenderer {
         }
     }
 
+    /**
+     * @return entries of the region in row major order; precomputed files are read directly from disk
+     */
+    private float[] getDenseRegion(BasicMatrix bm, int rowStart, int colStart, int numRows, int numCols) {
+        float[] region = new float[numRows * numCols];
+        if (bm instanceof DiskResidentBlockMatrix) {
+            ((DiskResidentBlockMatrix) bm).getRegion(rowStart, colStart, numRows, numCols, region);
+        } else {
+            int endRow = Math.min(rowStart + numRows, bm.getRowDimension());
+            int endCol = Math.min(colStart + numCols, bm.getColumnDimension());
+            Arrays.fill(region, Float.NaN);
+            for (int row = rowStart; row < endRow; row++) {
+                int rowOffset = (row - rowStart) * numCols - colStart;
+                for (int col = colStart; col < endCol; col++) {
+                    region[rowOffset + col] = bm.getEntry(row, col);
+                }
+            }
+        }
+        return region;
+    }
+
     private Color getDenseMatrixColor(String key, float score, PearsonColorScale pearsonColorScale, ColorScale genericColorScale) {
         Color color;
         if (Float.isNaN(score)) {
@@ -27,13 +27,19 @@ package juicebox.matrix;
 import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.seekablestream.SeekableStreamFactory;
 import htsjdk.tribble.util.LittleEndianInputStream;
+import org.broad.igv.util.HttpUtils;
 import org.broad.igv.util.ObjectCache;
 import org.broad.igv.util.ParsingUtils;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 /**
  * Matrix class backed by a file layed out in "block" format.
@@ -59,7 +65,7 @@ import java.io.InputStream;
 public class DiskResidentBlockMatrix implements BasicMatrix {
 
     private final String path;
-    private final ObjectCache<String, float[][]> blockDataCache = new ObjectCache<>(200);
+    private final ObjectCache<Integer, float[][]> blockDataCache = new ObjectCache<>(200);
     boolean isLoading = false;
     private String genome;
     private String chr1;
@@ -72,10 +78,16 @@ public class DiskResidentBlockMatrix implements BasicMatrix {
     private int remSize;   // Dimension of last block
     private int arrayStartPosition;
     private int nFullBlocks;
+    private int nBlocks;
+    // one view per row of blocks when the file is local, so files over 2GB can still be mapped
+    private FloatBuffer[] mappedBlockRows;
 
     public DiskResidentBlockMatrix(String path) throws IOException {
         this.path = path;
         init();
+        if (!HttpUtils.isRemoteURL(path)) {
+            mapBlockRows();
+        }
     }
 
     public String getChr1() {
@@ -84,34 +96,134 @@ public class DiskResidentBlockMatrix implements BasicMatrix {
 
     @Override
     public float getEntry(int row, int col) {
+        if (row < 0 || col < 0 || row >= dim || col >= dim) return Float.NaN;
 
         int blockRowIdx = row / blockSize;
         int blockColIdx = col / blockSize;
-        String key = "row" + blockRowIdx + "_col" + blockColIdx;
-        float[][] blockData = blockDataCache.get(key);
-        if (blockData == null) {
-            blockData = loadBlockData(blockRowIdx, blockColIdx);
-            blockDataCache.put(key, blockData);
+        int rowRelative = row - blockRowIdx * blockSize;
+        int colRelative = col - blockColIdx * blockSize;
+
+        if (mappedBlockRows != null) {
+            return mappedBlockRows[blockRowIdx].get(getIndexInBlockRow(blockRowIdx, blockColIdx, rowRelative, colRelative));
         }
 
+        float[][] blockData = getBlockData(blockRowIdx, blockColIdx);
         if (blockData == null) {
             return Float.NaN;
         } else {
+            return blockData[rowRelative][colRelative];
+        }
+    }
+
+    /**
+     * Copy a rectangle of the matrix into out, row by row; entries outside the matrix are NaN.
+     *
+     * @param rowStart first row
+     * @param colStart first column
+     * @param rows     number of rows
+     * @param cols     number of columns
+     * @param out      array of at least rows * cols entries
+     */
+    public void getRegion(int rowStart, int colStart, int rows, int cols, float[] out) {
+        Arrays.fill(out, 0, rows * cols, Float.NaN);
+
+        int firstCol = Math.max(colStart, 0);
+        int endCol = Math.min(colStart + cols, dim);
+        int firstRow = Math.max(rowStart, 0);
+        int endRow = Math.min(rowStart + rows, dim);
+
+        FloatBuffer[] views = null;
+        if (mappedBlockRows != null) {
+            // duplicates have their own position, so concurrent calls do not interfere
+            views = new FloatBuffer[nBlocks];
+        }
+
+        for (int row = firstRow; row < endRow; row++) {
+            int blockRowIdx = row / blockSize;
             int rowRelative = row - blockRowIdx * blockSize;
-            int colRelative = col - blockColIdx * blockSize;
-            int totalRows = blockData.length;
-            int totalCols = blockData[0].length;
-            // TODO: note this should not happen, probably the bug in MatrixZoomData where there are too many columns.
-            if (rowRelative < totalRows && colRelative < totalCols)
-                return blockData[rowRelative][colRelative];
-            else return Float.NaN;
+            int outOffset = (row - rowStart) * cols - colStart;
+
+            int col = firstCol;
+            while (col < endCol) {
+                int blockColIdx = col / blockSize;
+                int colRelative = col - blockColIdx * blockSize;
+                int runLength = Math.min(getBlockDimension(blockColIdx) - colRelative, endCol - col);
+
+                if (views != null) {
+                    if (views[blockRowIdx] == null) {
+                        views[blockRowIdx] = mappedBlockRows[blockRowIdx].duplicate();
+                    }
+                    FloatBuffer view = views[blockRowIdx];
+                    view.position(getIndexInBlockRow(blockRowIdx, blockColIdx, rowRelative, colRelative));
+                    view.get(out, outOffset + col, runLength);
+                } else {
+                    float[][] blockData = getBlockData(blockRowIdx, blockColIdx);
+                    if (blockData != null) {
+                        System.arraycopy(blockData[rowRelative], colRelative, out, outOffset + col, runLength);
+                    }
+                }
+                col += runLength;
+            }
+        }
+    }
+
+    private int getBlockDimension(int blockIdx) {
+        return blockIdx < nFullBlocks ? blockSize : remSize;
+    }
+
+    /**
+     * Blocks of a block row are stored one after another, each in row major order
+     */
+    private int getIndexInBlockRow(int blockRowIdx, int blockColIdx, int rowRelative, int colRelative) {
+        int rowDim = getBlockDimension(blockRowIdx);
+        int colDim = getBlockDimension(blockColIdx);
+        return blockColIdx * blockSize * rowDim + rowRelative * colDim + colRelative;
+    }
+
+    private void mapBlockRows() {
+        // a single mapping holds at most Integer.MAX_VALUE bytes; larger block rows are read through streams
+        for (int blockRowIdx = 0; blockRowIdx < nBlocks; blockRowIdx++) {
+            if ((long) getBlockDimension(blockRowIdx) * dim * 4L > Integer.MAX_VALUE) {
+                return;
+            }
+        }
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(path, "r");
+            FileChannel channel = raf.getChannel();
+            FloatBuffer[] blockRows = new FloatBuffer[nBlocks];
+            for (int blockRowIdx = 0; blockRowIdx < nBlocks; blockRowIdx++) {
+                long start = arrayStartPosition + (long) blockRowIdx * blockSize * dim * 4L;
+                long size = (long) getBlockDimension(blockRowIdx) * dim * 4L;
+                blockRows[blockRowIdx] = channel.map(FileChannel.MapMode.READ_ONLY, start, size)
+                        .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            }
+            mappedBlockRows = blockRows;
+        } catch (IOException e) {
+            // fall back to reading blocks through streams
+            System.err.println("Unable to map " + path + " " + e.getLocalizedMessage());
+        } finally {
+            if (raf != null)
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
         }
+    }
 
+    private float[][] getBlockData(int blockRowIdx, int blockColIdx) {
+        Integer key = blockRowIdx * nBlocks + blockColIdx;
+        float[][] blockData = blockDataCache.get(key);
+        if (blockData == null) {
+            blockData = loadBlockData(blockRowIdx, blockColIdx, key);
+        }
+        return blockData;
     }
 
-    private synchronized float[][] loadBlockData(int blockRowIdx, int blockColIdx) {
+    private synchronized float[][] loadBlockData(int blockRowIdx, int blockColIdx, Integer key) {
 
-        String key = "row" + blockRowIdx + "_col" + blockColIdx;
         float[][] blockData = blockDataCache.get(key);
         if (blockData != null) return blockData;    // In case this was calculated in another thread
 
@@ -121,11 +233,11 @@ public class DiskResidentBlockMatrix implements BasicMatrix {
 
             int pointsPerBlockRow = blockSize * dim;  // Applies to all but the last row
 
-            int rowDim = blockRowIdx < nFullBlocks ? blockSize : remSize;
-            int colDim = blockColIdx < nFullBlocks ? blockSize : remSize;
+            int rowDim = getBlockDimension(blockRowIdx);
+            int colDim = getBlockDimension(blockColIdx);
 
-            int l1 = blockRowIdx * pointsPerBlockRow;
-            int l2 = blockColIdx * blockSize * rowDim;
+            long l1 = (long) blockRowIdx * pointsPerBlockRow;
+            long l2 = (long) blockColIdx * blockSize * rowDim;
             long startFilePosition = arrayStartPosition + (l1 + l2) * 4L;
 
 
@@ -136,17 +248,12 @@ public class DiskResidentBlockMatrix implements BasicMatrix {
             is.seek(startFilePosition);
             is.readFully(byteArray);
 
-            ByteArrayInputStream bis = new ByteArrayInputStream(byteArray);
-            LittleEndianInputStream les = new LittleEndianInputStream(bis);
-
+            FloatBuffer floats = ByteBuffer.wrap(byteArray).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
 
             blockData = new float[rowDim][colDim];
 
             for (int r = 0; r < rowDim; r++) {
-                for (int c = 0; c < colDim; c++) {
-                    float f = les.readFloat();
-                    blockData[r][c] = f;
-                }
+                floats.get(blockData[r]);
             }
 
             blockDataCache.put(key, blockData);
@@ -242,6 +349,7 @@ public class DiskResidentBlockMatrix implements BasicMatrix {
 
             nFullBlocks = dim / blockSize;
             remSize = dim - nFullBlocks * blockSize;
+            nBlocks = remSize > 0 ? nFullBlocks + 1 : nFullBlocks;
 
             this.arrayStartPosition = bytePosition;
 
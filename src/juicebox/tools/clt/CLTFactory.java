@@ -54,7 +54,10 @@ public class CLTFactory {
             //        "db",           "db <frag|annot|update> [items]",
             Dump.getUsage(),
             PreProcessing.getBasicUsage(),
+            MergeHiCFiles.getBasicUsage(),
+            AppendHiC.getBasicUsage(),
             AddNorm.getBasicUsage(),
+            AddPearsons.getBasicUsage(),
             Pearsons.getBasicUsage(),
             Eigenvector.getUsage(),
             APA.getBasicUsage(),
@@ -82,6 +85,10 @@ public class CLTFactory {
 
         if (cmd.equals("pre")) {
             return new PreProcessing();
+        } else if (cmd.equals("merge")) {
+            return new MergeHiCFiles();
+        } else if (cmd.equals("append")) {
+            return new AppendHiC();
         } else if (cmd.equals("dump")) {
             return new Dump();
         } else if (cmd.equals("validate")) {
@@ -90,6 +97,8 @@ public class CLTFactory {
             return new AddGWNorm();
         } else if (cmd.equals("addNorm".toLowerCase())) {
             return new AddNorm();
+        } else if (cmd.equals("addPearsons".toLowerCase())) {
+            return new AddPearsons();
         } else if (cmd.equals("apa")) {
             return new APA();
         } else if (cmd.equals("compare")) {
@@ -65,6 +65,8 @@ public class CommandLineParser extends CmdLineParser {
     private static Option multipleChromosomesOption = null;
     private static Option resolutionOption = null;
     private static Option randomizePositionMapsOption = null;
+    private static Option pearsonResolutionsOption = null;
+    private static Option pearsonNormsOption = null;
 
 
     //filter option based on directionality
@@ -72,6 +74,9 @@ public class CommandLineParser extends CmdLineParser {
 
     private static Option randomizePositionOption = null;
     private static Option randomSeedOption = null;
+    private static Option threadNumOption = null;
+    private static Option blockCodecOption = null;
+    private static Option hicVersionOption = null;
 
     public CommandLineParser() {
 
@@ -113,6 +118,11 @@ public class CommandLineParser extends CmdLineParser {
         skipKROption = addBooleanOption("skip-kr");
         randomSeedOption = addLongOption("random_seed");
         randomizePositionMapsOption = addStringOption("randomize_pos_maps");
+        threadNumOption = addIntegerOption("threads");
+        blockCodecOption = addStringOption("block_codec");
+        hicVersionOption = addIntegerOption("hic_version");
+        pearsonResolutionsOption = addStringOption("pearson_resolutions");
+        pearsonNormsOption = addStringOption("pearson_norms");
 
     }
 
@@ -185,6 +195,10 @@ public class CommandLineParser extends CmdLineParser {
         return optionToString(expectedVectorOption);
     }
 
+    public String getBlockCodecOption() {
+        return optionToString(blockCodecOption);
+    }
+
     public Alignment getAlignmentOption() {
         int alignmentInt = optionToInt(alignmentFilterOption);
 
@@ -220,6 +234,10 @@ public class CommandLineParser extends CmdLineParser {
 
     public int getGenomeWideOption() { return optionToInt(genomeWideOption); }
 
+    public int getNumThreads() { return optionToInt(threadNumOption); }
+
+    public int getHicVersionOption() { return optionToInt(hicVersionOption); }
+
     private long optionToLong(Option option) {
         Object opt = getOptionValue(option);
         return opt == null ? 0 : ((Number) opt).longValue();
@@ -261,4 +279,8 @@ public class CommandLineParser extends CmdLineParser {
     public Set<String> getResolutionOption() { return optionToStringSet(resolutionOption);}
 
     public Set<String> getRandomizePositionMaps() {return optionToStringSet(randomizePositionMapsOption);}
+
+    public Set<String> getPearsonResolutionsOption() { return optionToStringSet(pearsonResolutionsOption); }
+
+    public Set<String> getPearsonNormsOption() { return optionToStringSet(pearsonNormsOption); }
 }
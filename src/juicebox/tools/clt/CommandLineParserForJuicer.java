@@ -62,6 +62,7 @@ public class CommandLineParserForJuicer extends CmdLineParser {
     // for HiCCUPS
     private static Option cpuVersionHiCCUPSOption = null;
     private static Option restrictSearchRegionsOption = null;
+    private static Option singlePassHiCCUPSOption = null;
     private static Option fdrOption = null;
     private static Option windowOption = null;
     private static Option peakOption = null;
@@ -107,6 +108,7 @@ public class CommandLineParserForJuicer extends CmdLineParser {
         thresholdOption = addStringOption('t', "postprocessing_thresholds");
         cpuVersionHiCCUPSOption = addBooleanOption('j', "cpu");
         restrictSearchRegionsOption = addBooleanOption('y', "restrict");
+        singlePassHiCCUPSOption = addBooleanOption("single_pass");
 
         // previously for AFA
         relativeLocationOption = addStringOption('l', "location_type");
@@ -292,4 +294,9 @@ public class CommandLineParserForJuicer extends CmdLineParser {
         Object opt = getOptionValue(restrictSearchRegionsOption);
         return opt != null;
     }
+
+    public boolean getSinglePassHiCCUPSOption() {
+        Object opt = getOptionValue(singlePassHiCCUPSOption);
+        return opt != null;
+    }
 }
\ No newline at end of file
@@ -44,6 +44,7 @@ import org.broad.igv.feature.Chromosome;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Aggregate Peak Analysis developed by mhuntley
@@ -245,7 +246,7 @@ public class APA extends JuicerCLT {
                 handler = HiCFileTools.stringToChromosomes(givenChromosomes, handler);
 
             // Metrics resulting from apa filtering
-            final Map<String, Integer[]> filterMetrics = new HashMap<>();
+            final Map<String, Integer[]> filterMetrics = new ConcurrentHashMap<>();
             //looplist is empty here why??
             Feature2DList loopList = Feature2DParser.loadFeatures(loopListPath, handler, false,
                     new FeatureFilter() {
@@ -44,6 +44,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -250,6 +251,9 @@ public class Arrowhead extends JuicerCLT {
         System.out.println("max " + maxProgressStatus);
 
         ExecutorService executor = Executors.newFixedThreadPool(numCPUThreads);
+        // windows along each chromosome's diagonal are processed on a shared pool so that
+        // large chromosomes are not limited to a single core
+        final ExecutorService windowExecutor = Executors.newFixedThreadPool(numCPUThreads);
 
         for (final Chromosome chr : chromosomeHandler.getChromosomeArrayWithoutAllByAll()) {
 
@@ -270,7 +274,8 @@ public class Arrowhead extends JuicerCLT {
                         // actual Arrowhead algorithm
                         BlockBuster.run(chr.getIndex(), chr.getName(), chr.getLength(), resolution, matrixSize,
                                 matrix.getZoomData(zoom), norm, list, control, contactDomainsGenomeWide,
-                                contactDomainListScoresGenomeWide, contactDomainControlScoresGenomeWide);
+                                contactDomainListScoresGenomeWide, contactDomainControlScoresGenomeWide,
+                                windowExecutor);
 
                         //todo should this be inside if? But the wouldn't increment for skipped chr;s?
                         int currProg = currentProgressStatus.incrementAndGet();
@@ -283,8 +288,12 @@ public class Arrowhead extends JuicerCLT {
 
         executor.shutdown();
         // Wait until all threads finish
-        while (!executor.isTerminated()) {
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            System.err.println("Arrowhead interrupted " + e.getLocalizedMessage());
         }
+        windowExecutor.shutdown();
 
         // save the data on local machine
         contactDomainsGenomeWide.exportFeatureList(outputBlockFile, true, Feature2DList.ListFormat.ARROWHEAD);
@@ -37,6 +37,7 @@ import juicebox.tools.utils.juicer.hiccups.*;
 import juicebox.track.feature.Feature2D;
 import juicebox.track.feature.Feature2DList;
 import juicebox.track.feature.Feature2DTools;
+import juicebox.track.feature.FeatureFunction;
 import juicebox.windowui.HiCZoom;
 import juicebox.windowui.NormalizationHandler;
 import juicebox.windowui.NormalizationType;
@@ -48,9 +49,12 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * HiC Computational Unbiased Peak Search
@@ -197,11 +201,11 @@ public class HiCCUPS extends JuicerCLT {
     private File outputDirectory;
     private List<HiCCUPSConfiguration> configurations;
     private Dataset ds;
-    private boolean useCPUVersionHiCCUPS = false, restrictSearchRegions = false;
+    private boolean useCPUVersionHiCCUPS = false, restrictSearchRegions = false, singlePass = false;
 
     public HiCCUPS() {
         super("hiccups [-m matrixSize] [-k normalization (NONE/VC/VC_SQRT/KR)] [-c chromosome(s)] [-r resolution(s)] " +
-                "[-f fdr] [-p peak width] [-i window] [-t thresholds] [-d centroid distances] [--ignore_sparsity]" +
+                "[-f fdr] [-p peak width] [-i window] [-t thresholds] [-d centroid distances] [--ignore_sparsity] [--single_pass]" +
                 "<hicFile> <outputDirectory> [specified_loop_list]");
         Feature2D.allowHiCCUPSOrdering = true;
     }
@@ -243,6 +247,10 @@ public class HiCCUPS extends JuicerCLT {
             System.out.println(CPU_VERSION_WARNING);
         }
 
+        if (juicerParser.getSinglePassHiCCUPSOption()) {
+            singlePass = true;
+        }
+
         updateNumberOfCPUThreads(juicerParser);
 
         if (juicerParser.getBypassMinimumMapCountCheckOption()) {
@@ -356,13 +364,7 @@ public class HiCCUPS extends JuicerCLT {
             inputListFeature2DHandler.setLoopList(featureListPath, commonChromosomesHandler);
         }
 
-        for (HiCCUPSConfiguration conf : configurations) {
-            System.out.println("Running HiCCUPS for resolution " + conf.getResolution());
-            Feature2DList enrichedPixels = runHiccupsProcessing(ds, conf, commonChromosomesHandler, inputListFeature2DHandler);
-            if (enrichedPixels != null) {
-                loopLists.put(conf.getResolution(), enrichedPixels);
-            }
-        }
+        loopLists.putAll(runHiccupsProcessing(ds, configurations, commonChromosomesHandler, inputListFeature2DHandler));
 
         if (dataShouldBePostProcessed) {
             Feature2DList finalList = HiCCUPSUtils.postProcess(loopLists, ds, commonChromosomesHandler,
@@ -376,68 +378,158 @@ public class HiCCUPS extends JuicerCLT {
     }
 
     /**
-     * Actual run of the HiCCUPS algorithm
+     * Actual run of the HiCCUPS algorithm, for all configurations at once.
+     * Regions of every resolution share one work queue, so the threshold calculation or the tail of one
+     * resolution does not leave threads idle while work remains for another.
      *
      * @param ds                dataset from hic file
-     * @param conf              configuration of hiccups inputs
+     * @param configurations    configurations of hiccups inputs
      * @param chromosomeHandler list of chromosomes to run hiccups on
-     * @return list of enriched pixels
+     * @return lists of enriched pixels for each resolution
      */
-    private Feature2DList runHiccupsProcessing(Dataset ds, final HiCCUPSConfiguration conf, ChromosomeHandler chromosomeHandler,
-                                               final Feature2DHandler inputListFeature2DHandler) {
+    private Map<Integer, Feature2DList> runHiccupsProcessing(Dataset ds, List<HiCCUPSConfiguration> configurations,
+                                                            ChromosomeHandler chromosomeHandler,
+                                                            Feature2DHandler inputListFeature2DHandler) {
 
         long begin_time = System.currentTimeMillis();
 
-        HiCZoom zoom = ds.getZoomForBPResolution(conf.getResolution());
-        if (zoom == null) {
-            System.err.println("Data not available at " + conf.getResolution() + " resolution");
-            return null;
+        List<ResolutionRun> runs = new ArrayList<>();
+        for (HiCCUPSConfiguration conf : configurations) {
+            HiCZoom zoom = ds.getZoomForBPResolution(conf.getResolution());
+            if (zoom == null) {
+                System.err.println("Data not available at " + conf.getResolution() + " resolution");
+                continue;
+            }
+            System.out.println("Running HiCCUPS for resolution " + conf.getResolution());
+            runs.add(new ResolutionRun(runs.size(), ds, conf, zoom, chromosomeHandler, inputListFeature2DHandler));
         }
 
-        // open the print writer early so the file I/O capability is verified before running hiccups
-        PrintWriter outputFDR = HiCFileTools.openWriter(
-                new File(outputDirectory, FDR_THRESHOLDS + "_" + conf.getResolution()));
+        Map<Integer, Feature2DList> enrichedPixels = new HashMap<>();
+        if (runs.isEmpty()) {
+            return enrichedPixels;
+        }
 
-        final long[][] histBL = new long[w1][w2];
-        final long[][] histDonut = new long[w1][w2];
-        final long[][] histH = new long[w1][w2];
-        final long[][] histV = new long[w1][w2];
-        final float[][] fdrLogBL = new float[w1][w2];
-        final float[][] fdrLogDonut = new float[w1][w2];
-        final float[][] fdrLogH = new float[w1][w2];
-        final float[][] fdrLogV = new float[w1][w2];
-        final float[] thresholdBL = ArrayTools.newValueInitializedFloatArray(w1, (float) w2);
-        final float[] thresholdDonut = ArrayTools.newValueInitializedFloatArray(w1, (float) w2);
-        final float[] thresholdH = ArrayTools.newValueInitializedFloatArray(w1, (float) w2);
-        final float[] thresholdV = ArrayTools.newValueInitializedFloatArray(w1, (float) w2);
+        PriorityBlockingQueue<RegionTask> queue = new PriorityBlockingQueue<>();
+        CountDownLatch unfinishedRuns = new CountDownLatch(runs.size());
+        for (ResolutionRun run : runs) {
+            run.start(queue, unfinishedRuns);
+        }
 
-        // to hold all enriched pixels found in second run
-        final Feature2DList globalList = new Feature2DList();
-        final Feature2DList requestedList = new Feature2DList();
+        ExecutorService executor = Executors.newFixedThreadPool(numCPUThreads);
+        for (int l = 0; l < numCPUThreads; l++) {
+            executor.execute(new RegionWorker(queue));
+        }
 
+        // Wait until all resolutions finish
+        try {
+            unfinishedRuns.await();
+        } catch (InterruptedException e) {
+            System.err.println("HiCCUPS interrupted " + e.getLocalizedMessage());
+            if (HiCGlobals.printVerboseComments) {
+                e.printStackTrace();
+            }
+        }
+        // idle workers are waiting on the queue
+        executor.shutdownNow();
+
+        for (ResolutionRun run : runs) {
+            Throwable failure = run.getFailure();
+            if (failure != null) {
+                System.err.println("HiCCUPS failed at " + run.conf.getResolution() + " resolution: " + failure);
+                failure.printStackTrace();
+                System.exit(39);
+            }
+        }
+
+        for (ResolutionRun run : runs) {
+            enrichedPixels.put(run.conf.getResolution(), run.globalList);
+        }
+
+        if (HiCGlobals.printVerboseComments) {
+            long final_time = System.currentTimeMillis();
+            System.out.println("Total time: " + (final_time - begin_time));
+        }
 
-        // two runs, 1st to build histograms, 2nd to identify loops
+        return enrichedPixels;
+    }
 
-        for (final int runNum : new int[]{0, 1}) {
+    /**
+     * State of HiCCUPS for one configuration: its regions, histograms, thresholds and results.
+     * Run 0 builds the histograms; once its last region is done the thresholds are calculated and
+     * run 1 identifies the loops (unless the candidate pixels of run 0 were kept).
+     */
+    private class ResolutionRun {
+        // position of the run among all resolutions, its regions are scheduled before those of later runs
+        private final int order;
+        private final HiCCUPSConfiguration conf;
+        private final Feature2DHandler inputListFeature2DHandler;
+        private final List<HiCCUPSRegionContainer> regions = new ArrayList<>();
+        private final long estimatedRegionCost;
+
+        private final long[][] histBL = new long[w1][w2];
+        private final long[][] histDonut = new long[w1][w2];
+        private final long[][] histH = new long[w1][w2];
+        private final long[][] histV = new long[w1][w2];
+        private final float[][] fdrLogBL = new float[w1][w2];
+        private final float[][] fdrLogDonut = new float[w1][w2];
+        private final float[][] fdrLogH = new float[w1][w2];
+        private final float[][] fdrLogV = new float[w1][w2];
+        private final float[] thresholdBL = ArrayTools.newValueInitializedFloatArray(w1, (float) w2);
+        private final float[] thresholdDonut = ArrayTools.newValueInitializedFloatArray(w1, (float) w2);
+        private final float[] thresholdH = ArrayTools.newValueInitializedFloatArray(w1, (float) w2);
+        private final float[] thresholdV = ArrayTools.newValueInitializedFloatArray(w1, (float) w2);
 
-            final AtomicInteger currentProgressStatus = new AtomicInteger(0);
-            final List<HiCCUPSRegionContainer> allRegionContainers = new ArrayList<>();
+        // to hold all enriched pixels found in second run
+        private final Feature2DList globalList = new Feature2DList();
+        private final Feature2DList requestedList = new Feature2DList();
+        private final PrintWriter outputFDR;
+        private HiCCUPSCandidateFile candidateFile = null;
+
+        // histograms and lists of the workers, merged when the run they are needed for ends
+        private final List<long[][][]> workerHistograms = new ArrayList<>();
+        private final List<Feature2DList[]> workerLists = new ArrayList<>();
+
+        private final AtomicInteger pendingRegions = new AtomicInteger(0);
+        private final AtomicInteger currentProgressStatus = new AtomicInteger(0);
+        private volatile int runNum = 0;
+        // first error of any region; the remaining regions are skipped and no results are written
+        private volatile Throwable failure = null;
+        private PriorityBlockingQueue<RegionTask> queue;
+        private CountDownLatch unfinishedRuns;
+
+        ResolutionRun(int order, Dataset ds, HiCCUPSConfiguration conf, HiCZoom zoom, ChromosomeHandler chromosomeHandler,
+                      Feature2DHandler inputListFeature2DHandler) {
+            this.order = order;
+            this.conf = conf;
+            this.inputListFeature2DHandler = inputListFeature2DHandler;
+            // the kernel sums over windows around every pixel of the region
+            long windowArea = (2L * conf.getWindowWidth() + 1) * (2L * conf.getWindowWidth() + 1);
+            estimatedRegionCost = windowArea * matrixSize * matrixSize;
+
+            // open the print writer early so the file I/O capability is verified before running hiccups
+            outputFDR = HiCFileTools.openWriter(
+                    new File(outputDirectory, FDR_THRESHOLDS + "_" + conf.getResolution()));
+
+            // in single pass mode, the candidate pixels from the histogram run are kept so the second run can be skipped
+            if (singlePass) {
+                try {
+                    candidateFile = new HiCCUPSCandidateFile(outputDirectory);
+                } catch (IOException e) {
+                    System.err.println("Unable to create file for candidate pixels; running both passes " + e.getLocalizedMessage());
+                }
+            }
 
+            // regions are listed in file order; norm and expected vectors are shared by both runs
             for (final Chromosome chromosome : chromosomeHandler.getChromosomeArrayWithoutAllByAll()) {
 
                 // skip these matrices
                 Matrix matrix = ds.getMatrix(chromosome, chromosome);
                 if (matrix == null) continue;
 
-                if (HiCGlobals.printVerboseComments) {
-                    System.out.println("Processing " + chromosome + " ; run num " + runNum);
-                }
-
                 // get matrix data access
                 long start_time = System.currentTimeMillis();
                 final MatrixZoomData zd = matrix.getZoomData(zoom);
 
-                //NormalizationType preferredNormalization = HiCFileTools.determinePreferredNormalization(ds);
                 NormalizationVector normVector = ds.getNormalizationVector(chromosome.getIndex(), zoom, norm);
                 if (normVector != null) {
                     final double[] normalizationVector = normVector.getData();
@@ -469,7 +561,7 @@ public class HiCCUPS extends JuicerCLT {
 
                                 if (columnBounds[4] < chrMatrixWidth - regionMargin) {
 
-                                    allRegionContainers.add(new HiCCUPSRegionContainer(chromosome,
+                                    regions.add(new HiCCUPSRegionContainer(chromosome,
                                             zd, normalizationVector, expectedVector, rowBounds, columnBounds));
 
                                 }
@@ -478,138 +570,380 @@ public class HiCCUPS extends JuicerCLT {
                     }
                 } else {
                     System.err.println("Data not available for " + chromosome + " at " + conf.getResolution() + " resolution");
-                    currentProgressStatus.incrementAndGet();
                 }
             }
+        }
 
-            final AtomicInteger indexOfHiCCUPSRegion = new AtomicInteger(0);
-
-            ExecutorService executor = Executors.newFixedThreadPool(numCPUThreads);
-            for (int l = 0; l < numCPUThreads; l++) {
-                Runnable worker = new Runnable() {
-                    @Override
-                    public void run() {
-
-                        int indexOfRegionForThread = indexOfHiCCUPSRegion.getAndIncrement();
+        void start(PriorityBlockingQueue<RegionTask> queue, CountDownLatch unfinishedRuns) {
+            this.queue = queue;
+            this.unfinishedRuns = unfinishedRuns;
+            submitRegions();
+        }
 
-                        GPUController gpuController = buildGPUController(conf);
+        private void submitRegions() {
+            if (regions.isEmpty()) {
+                finishRun();
+                return;
+            }
+            currentProgressStatus.set(0);
+            pendingRegions.set(regions.size());
+            for (HiCCUPSRegionContainer regionContainer : regions) {
+                // diagonal regions hold the most contacts
+                int[] rowBounds = regionContainer.getRowBounds();
+                int[] columnBounds = regionContainer.getColumnBounds();
+                long cost = rowBounds[4] == columnBounds[4] ? 2 * estimatedRegionCost : estimatedRegionCost;
+                queue.add(new RegionTask(this, runNum, regionContainer, cost));
+            }
+        }
 
-                        while (indexOfRegionForThread < allRegionContainers.size()) {
+        synchronized long[][][] newWorkerHistograms() {
+            long[][][] histograms = new long[][][]{new long[w1][w2], new long[w1][w2], new long[w1][w2], new long[w1][w2]};
+            workerHistograms.add(histograms);
+            return histograms;
+        }
 
-                            HiCCUPSRegionContainer regionContainer = allRegionContainers.get(indexOfRegionForThread);
-                            try {
+        /**
+         * Add a worker's histograms to the totals, unless that already happened
+         */
+        synchronized void mergeWorkerHistograms(long[][][] histograms) {
+            if (workerHistograms.remove(histograms)) {
+                addHistograms(histograms);
+            }
+        }
 
-                                if (HiCGlobals.printVerboseComments) {
-                                    System.out.println();
-                                    System.out.println("GPU Run Details");
-                                    System.out.println("Row bounds " + Arrays.toString(regionContainer.getRowBounds()));
-                                    System.out.println("Col bounds " + Arrays.toString(regionContainer.getColumnBounds()));
-                                }
+        private void addHistograms(long[][][] histograms) {
+            ArrayTools.addInPlace(histBL, histograms[0]);
+            ArrayTools.addInPlace(histDonut, histograms[1]);
+            ArrayTools.addInPlace(histH, histograms[2]);
+            ArrayTools.addInPlace(histV, histograms[3]);
+        }
 
-                                int[] rowBounds = regionContainer.getRowBounds();
-                                int[] columnBounds = regionContainer.getColumnBounds();
-
-                                GPUOutputContainer gpuOutputs = gpuController.process(regionContainer, matrixSize,
-                                        thresholdBL, thresholdDonut, thresholdH, thresholdV, norm);
-
-                                int diagonalCorrection = (rowBounds[4] - columnBounds[4]) + conf.getPeakWidth() + 2;
-
-                                if (runNum == 0) {
-                                    gpuOutputs.cleanUpBinNans();
-                                    gpuOutputs.cleanUpBinDiagonal(diagonalCorrection);
-                                    gpuOutputs.updateHistograms(histBL, histDonut, histH, histV, w1, w2);
-
-                                } else if (runNum == 1) {
-                                    gpuOutputs.cleanUpPeakNaNs();
-                                    gpuOutputs.cleanUpPeakDiagonal(diagonalCorrection);
-
-                                    Chromosome chromosome = regionContainer.getChromosome();
-
-                                    Feature2DList peaksList = gpuOutputs.extractPeaks(chromosome.getIndex(), chromosome.getName(),
-                                            w1, w2, rowBounds[4], columnBounds[4], conf.getResolution());
-                                    Feature2DTools.calculateFDR(peaksList, fdrLogBL, fdrLogDonut, fdrLogH, fdrLogV);
-                                    globalList.add(peaksList);
-
-                                    if (listGiven) {
-                                        float rowBound1GenomeCoords = ((float) rowBounds[4]) * conf.getResolution();
-                                        float columnBound1GenomeCoords = ((float) columnBounds[4]) * conf.getResolution();
-                                        float rowBound2GenomeCoords = ((float) rowBounds[5] - 1) * conf.getResolution();
-                                        float columnBound2GenomeCoords = ((float) columnBounds[5] - 1) * conf.getResolution();
-                                        // System.out.println(chromosome.getIndex() + "\t" + rowBound1GenomeCoords + "\t" + rowBound2GenomeCoords + "\t" + columnBound1GenomeCoords + "\t" + columnBound2GenomeCoords);
-                                        net.sf.jsi.Rectangle currentWindow = new net.sf.jsi.Rectangle(rowBound1GenomeCoords,
-                                                columnBound1GenomeCoords, rowBound2GenomeCoords, columnBound2GenomeCoords);
-                                        List<Feature2D> inputListFoundFeatures = inputListFeature2DHandler.getContainedFeatures(chromosome.getIndex(), chromosome.getIndex(),
-                                                currentWindow);
-                                        Feature2DList peaksRequestedList = gpuOutputs.extractPeaksListGiven(chromosome.getIndex(), chromosome.getName(),
-                                                w1, w2, rowBounds[4], columnBounds[4], conf.getResolution(), inputListFoundFeatures);
-                                        Feature2DTools.calculateFDR(peaksRequestedList, fdrLogBL, fdrLogDonut, fdrLogH, fdrLogV);
-                                        requestedList.add(peaksRequestedList);
-                                    }
+        synchronized void fail(Throwable t) {
+            if (failure == null) {
+                failure = t;
+            }
+        }
 
-                                }
-                                int currProg = currentProgressStatus.incrementAndGet();
-                                System.out.println(((int) Math.floor((100.0 * currProg) / allRegionContainers.size())) + "% ");
+        Throwable getFailure() {
+            return failure;
+        }
 
-                            } catch (IOException e) {
-                                System.err.println("No data in map region");
-                            }
+        synchronized Feature2DList[] newWorkerLists() {
+            Feature2DList[] lists = new Feature2DList[]{new Feature2DList(), new Feature2DList()};
+            workerLists.add(lists);
+            return lists;
+        }
 
-                            indexOfRegionForThread = indexOfHiCCUPSRegion.getAndIncrement();
+        void regionFinished() {
+            int currProg = currentProgressStatus.incrementAndGet();
+            System.out.println(conf.getResolution() + " bp run " + runNum + ": " +
+                    ((int) Math.floor((100.0 * currProg) / regions.size())) + "% ");
+
+            if (pendingRegions.decrementAndGet() == 0) {
+                if (runNum == 0 && failure == null) {
+                    try {
+                        calculateThresholds();
+                        if (candidateFile == null) {
+                            runNum = 1;
+                            submitRegions();
+                            return;
                         }
+                    } catch (Throwable t) {
+                        fail(t);
                     }
-                };
-                executor.execute(worker);
+                }
+                finishRun();
             }
-            executor.shutdown();
+        }
 
-            // Wait until all threads finish
-            while (!executor.isTerminated()) {
+        private void calculateThresholds() {
+            long thresh_time0 = System.currentTimeMillis();
+
+            synchronized (this) {
+                for (long[][][] histograms : workerHistograms) {
+                    addHistograms(histograms);
+                }
+                workerHistograms.clear();
             }
 
-            if (runNum == 0) {
+            long[][] rcsHistBL = ArrayTools.makeReverse2DCumulativeArray(histBL);
+            long[][] rcsHistDonut = ArrayTools.makeReverse2DCumulativeArray(histDonut);
+            long[][] rcsHistH = ArrayTools.makeReverse2DCumulativeArray(histH);
+            long[][] rcsHistV = ArrayTools.makeReverse2DCumulativeArray(histV);
+
+            for (int i = 0; i < w1; i++) {
+                float[] unitPoissonPMF = Floats.toArray(Doubles.asList(ArrayTools.generatePoissonPMF(i, w2)));
+                HiCCUPSUtils.calculateThresholdAndFDR(i, w2, conf.getFDRThreshold(), unitPoissonPMF, rcsHistBL, thresholdBL, fdrLogBL);
+                HiCCUPSUtils.calculateThresholdAndFDR(i, w2, conf.getFDRThreshold(), unitPoissonPMF, rcsHistDonut, thresholdDonut, fdrLogDonut);
+                HiCCUPSUtils.calculateThresholdAndFDR(i, w2, conf.getFDRThreshold(), unitPoissonPMF, rcsHistH, thresholdH, fdrLogH);
+                HiCCUPSUtils.calculateThresholdAndFDR(i, w2, conf.getFDRThreshold(), unitPoissonPMF, rcsHistV, thresholdV, fdrLogV);
+            }
 
-                long thresh_time0 = System.currentTimeMillis();
+            if (HiCGlobals.printVerboseComments) {
+                long thresh_time1 = System.currentTimeMillis();
+                System.out.println("Time to calculate thresholds: " + (thresh_time1 - thresh_time0) + "ms");
+            }
+        }
 
-                long[][] rcsHistBL = ArrayTools.makeReverse2DCumulativeArray(histBL);
-                long[][] rcsHistDonut = ArrayTools.makeReverse2DCumulativeArray(histDonut);
-                long[][] rcsHistH = ArrayTools.makeReverse2DCumulativeArray(histH);
-                long[][] rcsHistV = ArrayTools.makeReverse2DCumulativeArray(histV);
+        private void finishRun() {
+            try {
+                if (failure != null) {
+                    outputFDR.close();
+                    return;
+                }
+                synchronized (this) {
+                    for (Feature2DList[] lists : workerLists) {
+                        globalList.add(lists[0]);
+                        requestedList.add(lists[1]);
+                    }
+                    workerLists.clear();
+                }
 
-                for (int i = 0; i < w1; i++) {
-                    float[] unitPoissonPMF = Floats.toArray(Doubles.asList(ArrayTools.generatePoissonPMF(i, w2)));
-                    HiCCUPSUtils.calculateThresholdAndFDR(i, w2, conf.getFDRThreshold(), unitPoissonPMF, rcsHistBL, thresholdBL, fdrLogBL);
-                    HiCCUPSUtils.calculateThresholdAndFDR(i, w2, conf.getFDRThreshold(), unitPoissonPMF, rcsHistDonut, thresholdDonut, fdrLogDonut);
-                    HiCCUPSUtils.calculateThresholdAndFDR(i, w2, conf.getFDRThreshold(), unitPoissonPMF, rcsHistH, thresholdH, fdrLogH);
-                    HiCCUPSUtils.calculateThresholdAndFDR(i, w2, conf.getFDRThreshold(), unitPoissonPMF, rcsHistV, thresholdV, fdrLogV);
+                if (candidateFile != null) {
+                    try {
+                        globalList.add(candidateFile.extractPeaks(conf.getResolution(), thresholdBL, thresholdDonut, thresholdH,
+                                thresholdV, fdrLogBL, fdrLogDonut, fdrLogH, fdrLogV));
+                    } catch (IOException e) {
+                        // without the candidates this resolution would silently have no peaks
+                        throw new RuntimeException("Unable to read candidate pixels", e);
+                    }
+                    if (listGiven) {
+                        requestedList.processLists(new FeatureFunction() {
+                            @Override
+                            public void process(String chr, List<Feature2D> feature2DList) {
+                                for (Feature2D feature : feature2DList) {
+                                    HiCCUPSUtils.updatePeak(feature, thresholdBL, thresholdDonut, thresholdH, thresholdV);
+                                }
+                            }
+                        });
+                        Feature2DTools.calculateFDR(requestedList, fdrLogBL, fdrLogDonut, fdrLogH, fdrLogV);
+                    }
                 }
 
-                if (HiCGlobals.printVerboseComments) {
-                    long thresh_time1 = System.currentTimeMillis();
-                    System.out.println("Time to calculate thresholds: " + (thresh_time1 - thresh_time0) + "ms");
+                globalList.exportFeatureList(new File(outputDirectory, ENRICHED_PIXELS + "_" + conf.getResolution() + ".bedpe"),
+                        true, Feature2DList.ListFormat.ENRICHED);
+                if (listGiven) {
+                    requestedList.exportFeatureList(new File(outputDirectory, REQUESTED_LIST + "_" + conf.getResolution() + ".bedpe"),
+                            true, Feature2DList.ListFormat.ENRICHED);
+                }
+                for (int i = 0; i < w1; i++) {
+                    outputFDR.println(i + "\t" + thresholdBL[i] + "\t" + thresholdDonut[i] + "\t" + thresholdH[i] +
+                            "\t" + thresholdV[i]);
                 }
+                outputFDR.close();
+            } catch (Throwable t) {
+                // recorded before the count down, so the failure is seen once all runs are finished
+                fail(t);
+            } finally {
+                unfinishedRuns.countDown();
             }
+        }
+    }
 
+    /**
+     * One region of one run.  Tasks are scheduled by run, then in file order (chromosome, then row of regions), so
+     * workers share the blocks cached for neighbouring regions; within a row the costlier diagonal region comes first.
+     */
+    private static class RegionTask implements Comparable<RegionTask> {
+        private static final AtomicLong taskCounter = new AtomicLong(0);
+
+        private final ResolutionRun run;
+        private final int runNum;
+        private final HiCCUPSRegionContainer regionContainer;
+        private final long estimatedCost;
+        private final long sequenceNumber = taskCounter.getAndIncrement();
+
+        RegionTask(ResolutionRun run, int runNum, HiCCUPSRegionContainer regionContainer, long estimatedCost) {
+            this.run = run;
+            this.runNum = runNum;
+            this.regionContainer = regionContainer;
+            this.estimatedCost = estimatedCost;
         }
 
-        globalList.exportFeatureList(new File(outputDirectory, ENRICHED_PIXELS + "_" + conf.getResolution() + ".bedpe"),
-                true, Feature2DList.ListFormat.ENRICHED);
-        if (listGiven) {
-            requestedList.exportFeatureList(new File(outputDirectory, REQUESTED_LIST + "_" + conf.getResolution() + ".bedpe"),
-                    true, Feature2DList.ListFormat.ENRICHED);
+        @Override
+        public int compareTo(RegionTask o) {
+            if (run.order != o.run.order) {
+                return Integer.compare(run.order, o.run.order);
+            }
+            int chrIndex = regionContainer.getChromosome().getIndex();
+            int otherChrIndex = o.regionContainer.getChromosome().getIndex();
+            if (chrIndex != otherChrIndex) {
+                return Integer.compare(chrIndex, otherChrIndex);
+            }
+            int row = regionContainer.getRowBounds()[4];
+            int otherRow = o.regionContainer.getRowBounds()[4];
+            if (row != otherRow) {
+                return Integer.compare(row, otherRow);
+            }
+            if (estimatedCost != o.estimatedCost) {
+                return estimatedCost > o.estimatedCost ? -1 : 1;
+            }
+            return Long.compare(sequenceNumber, o.sequenceNumber);
         }
-        for (int i = 0; i < w1; i++) {
-            outputFDR.println(i + "\t" + thresholdBL[i] + "\t" + thresholdDonut[i] + "\t" + thresholdH[i] +
-                    "\t" + thresholdV[i]);
+    }
+
+    /**
+     * Takes regions of any resolution from the queue until interrupted.
+     * Each worker keeps its own GPU controllers, histograms and peak lists.
+     */
+    private class RegionWorker implements Runnable {
+        private final PriorityBlockingQueue<RegionTask> queue;
+        private final Map<ResolutionRun, GPUController> gpuControllers = new HashMap<>();
+        private final Map<ResolutionRun, Feature2DList[]> lists = new HashMap<>();
+        // only the histograms of the latest run are kept, to bound memory
+        private ResolutionRun histogramRun = null;
+        private long[][][] histograms = null;
+
+        RegionWorker(PriorityBlockingQueue<RegionTask> queue) {
+            this.queue = queue;
         }
-        outputFDR.close();
 
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                RegionTask task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // any error fails the region's run instead of ending this worker, so the queue still drains
+                try {
+                    if (task.run.getFailure() == null) {
+                        process(task);
+                    }
+                } catch (Throwable t) {
+                    task.run.fail(t);
+                } finally {
+                    try {
+                        task.run.regionFinished();
+                    } catch (Throwable t) {
+                        task.run.fail(t);
+                    }
+                }
+            }
+        }
 
-        if (HiCGlobals.printVerboseComments) {
-            long final_time = System.currentTimeMillis();
-            System.out.println("Total time: " + (final_time - begin_time));
+        private long[][][] getHistograms(ResolutionRun run) {
+            if (histogramRun != run) {
+                if (histogramRun != null) {
+                    histogramRun.mergeWorkerHistograms(histograms);
+                }
+                histogramRun = run;
+                histograms = run.newWorkerHistograms();
+            }
+            return histograms;
+        }
+
+        private Feature2DList[] getLists(ResolutionRun run) {
+            Feature2DList[] runLists = lists.get(run);
+            if (runLists == null) {
+                runLists = run.newWorkerLists();
+                lists.put(run, runLists);
+            }
+            return runLists;
+        }
+
+        private void process(RegionTask task) {
+            ResolutionRun run = task.run;
+            HiCCUPSConfiguration conf = run.conf;
+            HiCCUPSRegionContainer regionContainer = task.regionContainer;
+
+            GPUController gpuController = gpuControllers.get(run);
+            if (gpuController == null) {
+                gpuController = buildGPUController(conf);
+                gpuControllers.put(run, gpuController);
+            }
+
+            try {
+
+                if (HiCGlobals.printVerboseComments) {
+                    System.out.println();
+                    System.out.println("GPU Run Details");
+                    System.out.println("Row bounds " + Arrays.toString(regionContainer.getRowBounds()));
+                    System.out.println("Col bounds " + Arrays.toString(regionContainer.getColumnBounds()));
+                }
+
+                int[] rowBounds = regionContainer.getRowBounds();
+                int[] columnBounds = regionContainer.getColumnBounds();
+
+                GPUOutputContainer gpuOutputs = gpuController.process(regionContainer, matrixSize,
+                        run.thresholdBL, run.thresholdDonut, run.thresholdH, run.thresholdV, norm);
+
+                int diagonalCorrection = (rowBounds[4] - columnBounds[4]) + conf.getPeakWidth() + 2;
+
+                if (task.runNum == 0) {
+                    if (run.candidateFile != null && listGiven) {
+                        // peak values are updated once the thresholds are known
+                        gpuOutputs.cleanUpPeakNaNs();
+                        gpuOutputs.cleanUpPeakDiagonal(diagonalCorrection);
+                        getLists(run)[1].add(extractRequestedPeaks(gpuOutputs, regionContainer, conf,
+                                run.inputListFeature2DHandler));
+                    }
+
+                    gpuOutputs.cleanUpBinNans();
+                    gpuOutputs.cleanUpBinDiagonal(diagonalCorrection);
+                    long[][][] localHistograms = getHistograms(run);
+                    gpuOutputs.updateHistograms(localHistograms[0], localHistograms[1], localHistograms[2],
+                            localHistograms[3], w1, w2);
+
+                    if (run.candidateFile != null) {
+                        try {
+                            run.candidateFile.write(regionContainer.getChromosome(), rowBounds[4], columnBounds[4],
+                                    gpuOutputs, w1, w2);
+                        } catch (IOException e) {
+                            // fails the run; skipping the region would drop its peaks from the output
+                            throw new RuntimeException("Unable to save candidate pixels of " +
+                                    regionContainer.getChromosome().getName(), e);
+                        }
+                    }
+
+                } else if (task.runNum == 1) {
+                    gpuOutputs.cleanUpPeakNaNs();
+                    gpuOutputs.cleanUpPeakDiagonal(diagonalCorrection);
+
+                    Chromosome chromosome = regionContainer.getChromosome();
+
+                    Feature2DList peaksList = gpuOutputs.extractPeaks(chromosome.getIndex(), chromosome.getName(),
+                            w1, w2, rowBounds[4], columnBounds[4], conf.getResolution());
+                    Feature2DTools.calculateFDR(peaksList, run.fdrLogBL, run.fdrLogDonut, run.fdrLogH, run.fdrLogV);
+                    getLists(run)[0].add(peaksList);
+
+                    if (listGiven) {
+                        Feature2DList peaksRequestedList = extractRequestedPeaks(gpuOutputs, regionContainer,
+                                conf, run.inputListFeature2DHandler);
+                        Feature2DTools.calculateFDR(peaksRequestedList, run.fdrLogBL, run.fdrLogDonut, run.fdrLogH, run.fdrLogV);
+                        getLists(run)[1].add(peaksRequestedList);
+                    }
+
+                }
+
+            } catch (IOException e) {
+                System.err.println("No data in map region");
+            }
         }
+    }
 
-        return globalList;
+    /**
+     * @return pixels of the region in the given loop list
+     */
+    private Feature2DList extractRequestedPeaks(GPUOutputContainer gpuOutputs, HiCCUPSRegionContainer regionContainer,
+                                                HiCCUPSConfiguration conf, Feature2DHandler inputListFeature2DHandler) {
+        Chromosome chromosome = regionContainer.getChromosome();
+        int[] rowBounds = regionContainer.getRowBounds();
+        int[] columnBounds = regionContainer.getColumnBounds();
+
+        float rowBound1GenomeCoords = ((float) rowBounds[4]) * conf.getResolution();
+        float columnBound1GenomeCoords = ((float) columnBounds[4]) * conf.getResolution();
+        float rowBound2GenomeCoords = ((float) rowBounds[5] - 1) * conf.getResolution();
+        float columnBound2GenomeCoords = ((float) columnBounds[5] - 1) * conf.getResolution();
+        // System.out.println(chromosome.getIndex() + "\t" + rowBound1GenomeCoords + "\t" + rowBound2GenomeCoords + "\t" + columnBound1GenomeCoords + "\t" + columnBound2GenomeCoords);
+        net.sf.jsi.Rectangle currentWindow = new net.sf.jsi.Rectangle(rowBound1GenomeCoords,
+                columnBound1GenomeCoords, rowBound2GenomeCoords, columnBound2GenomeCoords);
+        List<Feature2D> inputListFoundFeatures = inputListFeature2DHandler.getContainedFeatures(chromosome.getIndex(), chromosome.getIndex(),
+                currentWindow);
+        return gpuOutputs.extractPeaksListGiven(chromosome.getIndex(), chromosome.getName(),
+                w1, w2, rowBounds[4], columnBounds[4], conf.getResolution(), inputListFoundFeatures);
     }
 
     private GPUController buildGPUController(HiCCUPSConfiguration conf) {
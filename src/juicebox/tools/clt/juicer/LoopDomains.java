@@ -33,8 +33,7 @@ import juicebox.track.feature.*;
 
 import java.awt.*;
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.*;
 import java.util.List;
 
 /**
@@ -143,17 +142,13 @@ public class LoopDomains extends JuicerCLT {
 
                 Collections.sort(domains);
                 Collections.sort(loops);
+                LoopMidpointIndex loopIndex = new LoopMidpointIndex(loops);
 
                 for (Feature2D domain : domains) {
                     boolean domainHasNoLoops = true;
-                    for (Feature2D loop : loops) {
-                        // since we've sorted, avoid assessing loops too far away
-                        if (Feature2DTools.loopIsUpstreamOfDomain(loop, domain, threshold)) {
-                            continue;
-                        }
-                        if (Feature2DTools.loopIsDownstreamOfDomain(loop, domain, threshold)) {
-                            break;// since list is sorted, all valid options should have been considered
-                        }
+                    // only loops centered within the expanded x range of the domain can be on its boundary
+                    for (Feature2D loop : loopIndex.getLoopsWithMidpointIn(domain.getStart1() - Math.abs(threshold),
+                            domain.getEnd1() + Math.abs(threshold))) {
 
                         if (Feature2DTools.domainContainsLoopWithinExpandedTolerance(loop, domain, threshold)) {
                             // inside larger box
@@ -179,4 +174,64 @@ public class LoopDomains extends JuicerCLT {
         loopDomainList.exportFeatureList(outputFile, false, Feature2DList.ListFormat.NA);
     }
 
+    /**
+     * Loops sorted by the x coordinate of their midpoint
+     */
+    private static class LoopMidpointIndex {
+        private final List<Feature2D> loops;
+        private final int[] midpoints;
+        private final int[] loopIndices;
+
+        /**
+         * @param loops loops in the order results should be returned
+         */
+        LoopMidpointIndex(final List<Feature2D> loops) {
+            this.loops = loops;
+            Integer[] order = new Integer[loops.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return Integer.compare(loops.get(o1).getMidPt1(), loops.get(o2).getMidPt1());
+                }
+            });
+
+            midpoints = new int[order.length];
+            loopIndices = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                loopIndices[i] = order[i];
+                midpoints[i] = loops.get(order[i]).getMidPt1();
+            }
+        }
+
+        /**
+         * @return loops whose x midpoint is in [start, end], in their original order
+         */
+        List<Feature2D> getLoopsWithMidpointIn(int start, int end) {
+            int low = 0;
+            int high = midpoints.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (midpoints[mid] < start) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            List<Integer> indices = new ArrayList<>();
+            for (int i = low; i < midpoints.length && midpoints[i] <= end; i++) {
+                indices.add(loopIndices[i]);
+            }
+            Collections.sort(indices);
+
+            List<Feature2D> result = new ArrayList<>(indices.size());
+            for (Integer index : indices) {
+                result.add(loops.get(index));
+            }
+            return result;
+        }
+    }
 }
@@ -30,6 +30,8 @@ import juicebox.tools.clt.JuiceboxCLT;
 import juicebox.tools.utils.norm.CustomNormVectorFileHandler;
 import juicebox.tools.utils.norm.NormalizationVectorUpdater;
 
+import java.util.Set;
+
 
 public class AddNorm extends JuiceboxCLT {
 
@@ -41,12 +43,18 @@ public class AddNorm extends JuiceboxCLT {
 
     private String file;
     private static boolean doNotSkipKRNorm = true;
+    private Set<String> pearsonResolutions = null;
+    private Set<String> pearsonNorms = null;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
 
     public AddNorm() {
         super(getBasicUsage()+"\n"
                 + "           : -d use intra chromosome (diagonal) [false]\n"
                 + "           : -F don't calculate normalization for fragment-delimited maps [false]\n"
                 + "           : -w <int> calculate genome-wide resolution on all resolutions >= input resolution [not set]\n"
+                + "           : --pearson_resolutions <comma-separated list of resolutions> also store Pearson's and eigenvectors [not set]\n"
+                + "           : --pearson_norms <comma-separated list of norms> norms for Pearson's [all]\n"
+                + "           : --threads <int> number of chromosomes for Pearson's calculated at once [number of processors]\n"
                 + " Above options ignored if input_vector_file present\n"
         );
     }
@@ -71,6 +79,12 @@ public class AddNorm extends JuiceboxCLT {
         noFragNorm = parser1.getNoFragNormOption();
         genomeWideResolution = parser1.getGenomeWideOption();
         doNotSkipKRNorm = parser1.getDoNotSkipKROption();
+        pearsonResolutions = parser1.getPearsonResolutionsOption();
+        pearsonNorms = parser1.getPearsonNormsOption();
+        int threads = parser1.getNumThreads();
+        if (threads > 0) {
+            numThreads = threads;
+        }
         file = args[1];
 
     }
@@ -84,9 +98,11 @@ public class AddNorm extends JuiceboxCLT {
             else {
                 boolean useGenomeWideResolution = genomeWideResolution != -100;
                 if (useGenomeWideResolution)
-                    NormalizationVectorUpdater.updateHicFile(file, genomeWideResolution, noFragNorm, doNotSkipKRNorm);
+                    NormalizationVectorUpdater.updateHicFile(file, genomeWideResolution, noFragNorm, doNotSkipKRNorm,
+                            pearsonResolutions, pearsonNorms, numThreads);
                 else
-                    NormalizationVectorUpdater.updateHicFile(file, 0, noFragNorm, doNotSkipKRNorm);
+                    NormalizationVectorUpdater.updateHicFile(file, 0, noFragNorm, doNotSkipKRNorm,
+                            pearsonResolutions, pearsonNorms, numThreads);
             }
         } catch (Exception e) {
             e.printStackTrace();
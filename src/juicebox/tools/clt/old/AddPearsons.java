@@ -0,0 +1,85 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.tools.clt.old;
+
+import jargs.gnu.CmdLineParser;
+import juicebox.tools.clt.CommandLineParser;
+import juicebox.tools.clt.JuiceboxCLT;
+import juicebox.tools.utils.norm.PrecomputedTracksUpdater;
+
+import java.util.Set;
+
+/**
+ * Store Pearson's matrices and eigenvectors inside an existing hic file
+ */
+public class AddPearsons extends JuiceboxCLT {
+
+    private String file;
+    private Set<String> resolutions;
+    private Set<String> norms;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    public AddPearsons() {
+        super(getBasicUsage() + "\n"
+                + "           : -r <comma-separated list of resolutions> resolutions to precompute\n"
+                + "           : --pearson_norms <comma-separated list of norms> norms to precompute [all]\n"
+                + "           : --threads <int> number of chromosomes calculated at once [number of processors]\n"
+        );
+    }
+
+    public static String getBasicUsage() {
+        return "addPearsons -r <resolutions> [options] <input_HiC_file>";
+    }
+
+    @Override
+    public void readArguments(String[] args, CmdLineParser parser) {
+        CommandLineParser parser1 = (CommandLineParser) parser;
+        if (parser1.getHelpOption() || args.length != 2) {
+            printUsageAndExit();
+        }
+
+        resolutions = parser1.getResolutionOption();
+        if (resolutions == null) {
+            System.err.println("Resolutions to precompute must be given with -r");
+            printUsageAndExit();
+        }
+        norms = parser1.getPearsonNormsOption();
+        int threads = parser1.getNumThreads();
+        if (threads > 0) {
+            numThreads = threads;
+        }
+        file = args[1];
+    }
+
+    @Override
+    public void run() {
+        try {
+            PrecomputedTracksUpdater.updateHicFile(file, resolutions, norms, numThreads);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(64);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.tools.clt.old;
+
+import jargs.gnu.CmdLineParser;
+import juicebox.HiCGlobals;
+import juicebox.tools.clt.CommandLineParser;
+import juicebox.tools.clt.JuiceboxCLT;
+import juicebox.tools.utils.norm.NormalizationVectorUpdater;
+import juicebox.tools.utils.original.HiCFileAppender;
+
+import java.io.File;
+
+/**
+ * Adds the contacts of a new pairs file to an existing .hic file
+ */
+public class AppendHiC extends JuiceboxCLT {
+
+    private String pairsFile;
+    private String outputFile;
+    private HiCFileAppender appender;
+    private boolean noNorm = false;
+    private boolean noFragNorm = false;
+    private int genomeWide;
+    private boolean doNotSkipKRNorm = true;
+    private int numThreads;
+
+    public AppendHiC() {
+        super(getBasicUsage() + "\n"
+                + "           : outfile defaults to replacing hic_file\n"
+                + "           : -d only add intra chromosome (diagonal) contacts [false]\n"
+                + "           : -q <int> filter by MAPQ score greater than or equal to q [not set]\n"
+                + "           : -a <1, 2, 3, 4> filter based on inner, outer, left-left, right-right pairs respectively\n"
+                + "           : -t <tmpDir> Set a temporary directory for writing\n"
+                + "           : -n Don't normalize the matrices\n"
+                + "           : -w <int> calculate genome-wide resolution on all resolutions >= input resolution [not set]\n"
+                + "           : --skip-kr skip KR normalization\n"
+                + "           : --threads <int> number of threads used to merge blocks [number of processors]\n"
+                + "           : the file is only replaced when none of its normalizations or precomputed Pearson's would be lost\n"
+        );
+    }
+
+    public static String getBasicUsage() {
+        return "append [options] <hic_file> <new_pairs_file> [outfile]";
+    }
+
+    @Override
+    public void readArguments(String[] args, CmdLineParser parser) {
+        CommandLineParser parser1 = (CommandLineParser) parser;
+        if (parser1.getHelpOption() || args.length < 3 || args.length > 4) {
+            printUsageAndExit();
+        }
+
+        String hicFile = args[1];
+        pairsFile = args[2];
+        outputFile = args.length == 4 ? args[3] : hicFile;
+
+        numThreads = Runtime.getRuntime().availableProcessors();
+        int threads = parser1.getNumThreads();
+        if (threads > 0) {
+            numThreads = threads;
+        }
+        appender = new HiCFileAppender(hicFile, new File(outputFile), numThreads);
+        appender.setTmpdir(parser1.getTmpdirOption());
+        appender.setMapqThreshold(parser1.getMapqThresholdOption());
+        appender.setDiagonalsOnly(parser1.getDiagonalsOption());
+        appender.setAlignmentFilter(parser1.getAlignmentOption());
+
+        noNorm = parser1.getNoNormOption();
+        genomeWide = parser1.getGenomeWideOption();
+        noFragNorm = parser1.getNoFragNormOption();
+        doNotSkipKRNorm = parser1.getDoNotSkipKROption();
+        if (!noNorm) {
+            appender.setRecalculatedNorms(NormalizationVectorUpdater.getCalculatedNormTypes(doNotSkipKRNorm));
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            long currentTime = System.currentTimeMillis();
+            appender.append(pairsFile);
+            if (HiCGlobals.printVerboseComments) {
+                System.out.println("\nAppending contacts took: " + (System.currentTimeMillis() - currentTime) + " milliseconds");
+            }
+            if (!noNorm) {
+                // Pearson's precomputed in the existing file are computed again from the new norms
+                NormalizationVectorUpdater.updateHicFile(outputFile, genomeWide, noFragNorm, doNotSkipKRNorm,
+                        appender.getPrecomputedResolutions(), appender.getPrecomputedNorms(), numThreads);
+            } else {
+                System.out.println("Done updating .hic file. Normalization not calculated due to -n flag.");
+                System.out.println("To run normalization, run: juicebox addNorm <hicfile>");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(56);
+        }
+    }
+}
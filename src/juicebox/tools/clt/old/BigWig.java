@@ -25,6 +25,7 @@
 package juicebox.tools.clt.old;
 
 import jargs.gnu.CmdLineParser;
+import juicebox.tools.clt.CommandLineParser;
 import juicebox.tools.clt.JuiceboxCLT;
 import juicebox.tools.utils.original.BigWigUtils;
 
@@ -32,11 +33,13 @@ import juicebox.tools.utils.original.BigWigUtils;
 public class BigWig extends JuiceboxCLT {
 
     private int version = -1;
-    private int start = -1, end = -1, windowSize = -1;
+    private int start = -1, end = -1;
+    private int[] windowSizes;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
     private String chr, path;
 
     public BigWig() {
-        super("bigWig <bigWig path or URL> <window size in bp> [chr] [start base] [end base]");
+        super("bigWig [--threads <int>] <bigWig path or URL> <window size(s) in bp, comma separated> [chr] [start base] [end base]");
     }
 
     @Override
@@ -46,7 +49,17 @@ public class BigWig extends JuiceboxCLT {
             printUsageAndExit();
         }
         path = args[1];
-        windowSize = Integer.parseInt(args[2]);
+        String[] windowSizeStrings = args[2].split(",");
+        windowSizes = new int[windowSizeStrings.length];
+        for (int i = 0; i < windowSizeStrings.length; i++) {
+            windowSizes[i] = Integer.parseInt(windowSizeStrings[i]);
+        }
+        if (parser instanceof CommandLineParser) {
+            int threads = ((CommandLineParser) parser).getNumThreads();
+            if (threads > 0) {
+                numThreads = threads;
+            }
+        }
 
         if (args.length == 3) {
             version = 0;
@@ -67,13 +80,13 @@ public class BigWig extends JuiceboxCLT {
         try {
             switch (version) {
                 case 0:
-                    BigWigUtils.computeBins(path, windowSize);
+                    BigWigUtils.computeBins(path, windowSizes, numThreads);
                     break;
                 case 1:
-                    BigWigUtils.computeBins(path, chr, 0, Integer.MAX_VALUE, windowSize);
+                    BigWigUtils.computeBins(path, chr, 0, Integer.MAX_VALUE, windowSizes);
                     break;
                 case 2:
-                    BigWigUtils.computeBins(path, chr, start, end, windowSize);
+                    BigWigUtils.computeBins(path, chr, start, end, windowSizes);
                     break;
                 default:
                     System.err.println("Invalid Option Setup");
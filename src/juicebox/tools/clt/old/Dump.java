@@ -116,8 +116,10 @@ public class Dump extends JuiceboxCLT {
             totalSize += c1.getLength() / binSize + 1;
         }
 
-        NormalizationCalculations calculations = new NormalizationCalculations(recordArrayList, totalSize);
-        double[] vector = calculations.getNorm(norm);
+        double[] vector;
+        try (NormalizationCalculations calculations = new NormalizationCalculations(recordArrayList, totalSize)) {
+            vector = calculations.getNorm(norm);
+        }
 
 
         if (matrixType == MatrixType.NORM) {
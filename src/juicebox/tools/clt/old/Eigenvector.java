@@ -90,14 +90,6 @@ public class Eigenvector extends JuiceboxCLT {
             System.exit(21);
         }
 
-        if ((unit == HiC.Unit.BP && binSize < HiCGlobals.MAX_PEARSON_ZOOM) ||
-                (unit == HiC.Unit.FRAG && binSize < HiCGlobals.MAX_PEARSON_ZOOM/1000)) {
-          /*  System.out.println("Pearson's and Eigenvector are not calculated for high resolution datasets");
-            System.out.println("To override this limitation, send in the \"-p\" flag.");
-            System.exit(0);    */
-            System.out.println("WARNING: Pearson's and eigenvector calculation at high resolution can take a long time");
-        }
-
 
         if (args.length == 7) {
             try {
@@ -139,6 +131,14 @@ public class Eigenvector extends JuiceboxCLT {
             System.err.println("Pearson's not available at " + chromosome1 + " " + zoom + " " + norm);
             System.exit(14);
         }
+        // precomputed Pearson's are read from the file, so only a calculation at high resolution is slow
+        if (((unit == HiC.Unit.BP && binSize < HiCGlobals.MAX_PEARSON_ZOOM) ||
+                (unit == HiC.Unit.FRAG && binSize < HiCGlobals.MAX_PEARSON_ZOOM/1000)) && !zd.hasPrecomputedPearsons(norm)) {
+          /*  System.out.println("Pearson's and Eigenvector are not calculated for high resolution datasets");
+            System.out.println("To override this limitation, send in the \"-p\" flag.");
+            System.exit(0);    */
+            System.out.println("WARNING: Pearson's and eigenvector calculation at high resolution can take a long time");
+        }
         double[] vector = dataset.getEigenvector(chromosome1, zoom, 0, norm);
 
         // mean center and print
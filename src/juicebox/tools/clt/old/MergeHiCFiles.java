@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.tools.clt.old;
+
+import jargs.gnu.CmdLineParser;
+import juicebox.HiCGlobals;
+import juicebox.data.BlockCodec;
+import juicebox.tools.clt.CommandLineParser;
+import juicebox.tools.clt.JuiceboxCLT;
+import juicebox.tools.utils.norm.NormalizationVectorUpdater;
+import juicebox.tools.utils.original.HiCFileMerger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Materializes the combination of several .hic files into a new .hic file
+ */
+public class MergeHiCFiles extends JuiceboxCLT {
+
+    private String outputFile;
+    private List<String> inputFiles;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private boolean noNorm = false;
+    private boolean noFragNorm = false;
+    private int genomeWide;
+    private boolean doNotSkipKRNorm = true;
+    private BlockCodec blockCodec = null;
+
+    public MergeHiCFiles() {
+        super(getBasicUsage() + "\n"
+                + "           : -n Don't normalize the matrices\n"
+                + "           : -w <int> calculate genome-wide resolution on all resolutions >= input resolution [not set]\n"
+                + "           : --skip-kr skip KR normalization\n"
+                + "           : --block_codec <" + BlockCodec.getCodecNames() + "> block compression [deflate]\n"
+                + "           : --threads <int> number of threads used to merge blocks [number of processors]\n"
+        );
+    }
+
+    public static String getBasicUsage() {
+        return "merge [options] <outfile> <hic_file_1> <hic_file_2> [hic_file_3 ...]";
+    }
+
+    @Override
+    public void readArguments(String[] args, CmdLineParser parser) {
+        CommandLineParser parser1 = (CommandLineParser) parser;
+        if (parser1.getHelpOption() || args.length < 4) {
+            printUsageAndExit();
+        }
+
+        outputFile = args[1];
+        inputFiles = new ArrayList<>(Arrays.asList(args).subList(2, args.length));
+
+        int threads = parser1.getNumThreads();
+        if (threads > 0) {
+            numThreads = threads;
+        }
+        String blockCodecName = parser1.getBlockCodecOption();
+        if (blockCodecName != null) {
+            blockCodec = BlockCodec.getCodec(blockCodecName);
+            if (blockCodec == null) {
+                System.err.println("Unknown block codec " + blockCodecName + ", expected one of " + BlockCodec.getCodecNames());
+                printUsageAndExit();
+            }
+        }
+        noNorm = parser1.getNoNormOption();
+        genomeWide = parser1.getGenomeWideOption();
+        noFragNorm = parser1.getNoFragNormOption();
+        doNotSkipKRNorm = parser1.getDoNotSkipKROption();
+    }
+
+    @Override
+    public void run() {
+        try {
+            long currentTime = System.currentTimeMillis();
+            HiCFileMerger merger = new HiCFileMerger(inputFiles, new File(outputFile), numThreads);
+            merger.setBlockCodec(blockCodec);
+            merger.merge();
+            if (HiCGlobals.printVerboseComments) {
+                System.out.println("\nMerging contact matrices took: " + (System.currentTimeMillis() - currentTime) + " milliseconds");
+            }
+            if (!noNorm) {
+                NormalizationVectorUpdater.updateHicFile(outputFile, genomeWide, noFragNorm, doNotSkipKRNorm);
+            } else {
+                System.out.println("Done creating .hic file. Normalization not calculated due to -n flag.");
+                System.out.println("To run normalization, run: juicebox addNorm <hicfile>");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(56);
+        }
+    }
+}
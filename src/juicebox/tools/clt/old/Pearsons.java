@@ -193,13 +193,6 @@ public class Pearsons extends JuiceboxCLT {
             System.exit(21);
         }
 
-        if ((unit == HiC.Unit.BP && binSize < HiCGlobals.MAX_PEARSON_ZOOM) ||
-                (unit == HiC.Unit.FRAG && binSize < HiCGlobals.MAX_PEARSON_ZOOM / 1000)) {
-            System.out.println("Pearson's and Eigenvector are not calculated for high resolution datasets");
-            System.out.println("To override this limitation, send in the \"-p\" flag.");
-            System.exit(0);
-        }
-
         if (args.length == 7) {
             ofile = args[6];
         }
@@ -235,6 +228,14 @@ public class Pearsons extends JuiceboxCLT {
             System.exit(14);
         }
 
+        // precomputed Pearson's are read from the file at any resolution
+        if (((unit == HiC.Unit.BP && binSize < HiCGlobals.MAX_PEARSON_ZOOM) ||
+                (unit == HiC.Unit.FRAG && binSize < HiCGlobals.MAX_PEARSON_ZOOM / 1000)) && !zd.hasPrecomputedPearsons(norm)) {
+            System.out.println("Pearson's and Eigenvector are not calculated for high resolution datasets");
+            System.out.println("To override this limitation, send in the \"-p\" flag.");
+            System.exit(0);
+        }
+
         BasicMatrix pearsons = zd.getPearsons(df);
         if (pearsons == null) {
             System.err.println("Pearson's not available at zoom " + zoom  + ". For high resolution, try again with -p");
@@ -26,6 +26,7 @@ package juicebox.tools.clt.old;
 
 import jargs.gnu.CmdLineParser;
 import juicebox.HiCGlobals;
+import juicebox.data.BlockCodec;
 import juicebox.data.ChromosomeHandler;
 import juicebox.data.HiCFileTools;
 import juicebox.tools.clt.CommandLineParser;
@@ -34,6 +35,7 @@ import juicebox.tools.utils.norm.NormalizationVectorUpdater;
 import juicebox.tools.utils.original.Preprocessor;
 
 import java.io.File;
+import java.util.Set;
 
 public class PreProcessing extends JuiceboxCLT {
 
@@ -45,6 +47,9 @@ public class PreProcessing extends JuiceboxCLT {
     private boolean noFragNorm = false;
     private int genomeWide;
     private static boolean doNotSkipKRNorm = true;
+    private Set<String> pearsonResolutions = null;
+    private Set<String> pearsonNorms = null;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
 
     public PreProcessing() {
         super(getBasicUsage()+"\n"
@@ -63,6 +68,11 @@ public class PreProcessing extends JuiceboxCLT {
                 + "           : --randomize_position randomize positions between fragment sites\n"
                 + "           : --random_seed seed for random generator\n"
                 + "           : --randomize_pos_maps fragment maps for randomization\n"
+                + "           : --block_codec <" + BlockCodec.getCodecNames() + "> block compression [deflate]\n"
+                + "           : --hic_version <8 or 9> version 9 adds delta encoded blocks [8, or 9 for other codecs]\n"
+                + "           : --pearson_resolutions <comma-separated list of resolutions> also store Pearson's and eigenvectors [not set]\n"
+                + "           : --pearson_norms <comma-separated list of norms> norms for Pearson's [all]\n"
+                + "           : --threads <int> number of chromosomes for Pearson's calculated at once [number of processors]\n"
 
 
         );
@@ -110,10 +120,29 @@ public class PreProcessing extends JuiceboxCLT {
         preprocessor.setRandomizeFragMaps(parser1.getRandomizePositionMaps());
 
         preprocessor.setMaxInMemoryBlockSize(parser1.getMaxInMemoryBlockSize());
+
+        String blockCodecName = parser1.getBlockCodecOption();
+        if (blockCodecName != null) {
+            BlockCodec blockCodec = BlockCodec.getCodec(blockCodecName);
+            if (blockCodec == null) {
+                System.err.println("Unknown block codec " + blockCodecName + ", expected one of " + BlockCodec.getCodecNames());
+                printUsageAndExit();
+            }
+            preprocessor.setBlockCodec(blockCodec);
+        }
+        if (parser1.getHicVersionOption() > 0) {
+            preprocessor.setVersion(parser1.getHicVersionOption());
+        }
         noNorm = parser1.getNoNormOption();
         genomeWide = parser1.getGenomeWideOption();
         noFragNorm = parser1.getNoFragNormOption();
         doNotSkipKRNorm = parser1.getDoNotSkipKROption();
+        pearsonResolutions = parser1.getPearsonResolutionsOption();
+        pearsonNorms = parser1.getPearsonNormsOption();
+        int threads = parser1.getNumThreads();
+        if (threads > 0) {
+            numThreads = threads;
+        }
     }
 
     @Override
@@ -125,7 +154,8 @@ public class PreProcessing extends JuiceboxCLT {
                 System.out.println("\nCalculating contact matrices took: " + (System.currentTimeMillis() - currentTime) + " milliseconds");
             }
             if (!noNorm) {
-                NormalizationVectorUpdater.updateHicFile(outputFile, genomeWide, noFragNorm, doNotSkipKRNorm);
+                NormalizationVectorUpdater.updateHicFile(outputFile, genomeWide, noFragNorm, doNotSkipKRNorm,
+                        pearsonResolutions, pearsonNorms, numThreads);
             }
             else {
                 System.out.println("Done creating .hic file. Normalization not calculated due to -n flag.");
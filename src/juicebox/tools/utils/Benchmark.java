@@ -25,12 +25,16 @@
 package juicebox.tools.utils;
 
 import jargs.gnu.CmdLineParser;
-import juicebox.data.ChromosomeHandler;
+import juicebox.data.*;
 import juicebox.tools.clt.JuiceboxCLT;
 import juicebox.tools.clt.old.Dump;
+import juicebox.windowui.HiCZoom;
 import org.broad.igv.Globals;
 import org.broad.igv.feature.Chromosome;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -42,20 +46,37 @@ public class Benchmark extends JuiceboxCLT {
     private final int NUM_QUERIES = 1000;
     // Query 10,000 times at 256x256 and 2048x2048
     private int QUERY_SIZE = 256;
+    // blocks sampled from the file and timed passes over them when comparing codecs
+    private static final int MAX_CODEC_BLOCKS = 5000;
+    private static final int CODEC_ROUNDS = 5;
     private Dump dump;
+    private String codecFile = null;
+    private int codecResolution = -1;
     
     public Benchmark() {
         super(getUsage());
     }
 
     private static String getUsage() {
-        return "benchmark <hicFile> <norm>";
+        return "benchmark <hicFile> <norm>\n" +
+                "benchmark codecs <hicFile> [resolution]   decode speed of real blocks with each block codec";
     }
 
     @Override
     public void readArguments(String[] argv, CmdLineParser parser)   {
         Globals.setHeadless(true);
 
+        if (argv.length >= 3 && argv.length <= 4 && argv[1].equals("codecs")) {
+            codecFile = argv[2];
+            if (argv.length == 4) {
+                try {
+                    codecResolution = Integer.parseInt(argv[3]);
+                } catch (NumberFormatException e) {
+                    printUsageAndExit();
+                }
+            }
+            return;
+        }
 
         if (argv.length != 3) {
             printUsageAndExit();
@@ -75,6 +96,15 @@ public class Benchmark extends JuiceboxCLT {
 
     @Override
     public void run() {
+        if (codecFile != null) {
+            try {
+                runCodecBenchmark();
+            } catch (IOException e) {
+                System.err.println("Unable to read blocks from " + codecFile + " " + e.getLocalizedMessage());
+                System.exit(57);
+            }
+            return;
+        }
 
         // will use to make sure we're not off the end of the chromosome
         ChromosomeHandler handler = dump.getChromosomeHandler();
@@ -130,4 +160,93 @@ public class Benchmark extends JuiceboxCLT {
         }
         System.err.println("Average time to query " + QUERY_SIZE + "x" + QUERY_SIZE +": " + sum/NUM_QUERIES + " milliseconds");
     }
+
+    /**
+     * Decompress real blocks of the file with each codec.  The blocks are read from the intra-chromosomal matrices at
+     * one resolution, uncompressed with the codec of the file, and compressed again with every codec, so all codecs
+     * decode the same contact data.  Reports blocks and uncompressed megabytes decoded per second.
+     */
+    private void runCodecBenchmark() throws IOException {
+        DatasetReaderV2 reader = new DatasetReaderV2(codecFile);
+        List<byte[]> blocks = new ArrayList<>();
+        try {
+            Dataset ds = reader.read();
+            // finest resolution unless one is given
+            HiCZoom zoom = null;
+            for (HiCZoom bpZoom : ds.getBpZooms()) {
+                if (codecResolution < 0) {
+                    if (zoom == null || bpZoom.getBinSize() < zoom.getBinSize()) zoom = bpZoom;
+                } else if (bpZoom.getBinSize() == codecResolution) {
+                    zoom = bpZoom;
+                }
+            }
+            if (zoom == null) {
+                System.err.println("Resolution " + codecResolution + " is not in " + codecFile);
+                System.exit(57);
+            }
+
+            for (Chromosome chr : ds.getChromosomeHandler().getChromosomeArrayWithoutAllByAll()) {
+                Matrix matrix = ds.getMatrix(chr, chr);
+                if (matrix == null) continue;
+                MatrixZoomData zd = matrix.getZoomData(zoom);
+                if (zd == null) continue;
+                List<Integer> blockNumbers = reader.getBlockNumbers(zd);
+                if (blockNumbers == null) continue;
+                for (int blockNumber : blockNumbers) {
+                    if (blocks.size() >= MAX_CODEC_BLOCKS) break;
+                    byte[] compressedBytes = reader.readCompressedBlock(blockNumber, zd);
+                    if (compressedBytes != null) {
+                        blocks.add(reader.getBlockCodec().decompress(compressedBytes));
+                    }
+                }
+            }
+            System.out.println(blocks.size() + " blocks of " + codecFile + " at " + zoom + " (file codec "
+                    + reader.getBlockCodec() + ")");
+        } finally {
+            reader.close();
+        }
+        if (blocks.isEmpty()) {
+            System.err.println("No blocks found in " + codecFile);
+            System.exit(57);
+        }
+
+        long uncompressedBytes = 0;
+        for (byte[] block : blocks) {
+            uncompressedBytes += block.length;
+        }
+
+        for (BlockCodec codec : new BlockCodec[]{BlockCodec.DEFLATE, BlockCodec.LZ4}) {
+            List<byte[]> compressedBlocks = new ArrayList<>(blocks.size());
+            long compressedBytes = 0;
+            for (byte[] block : blocks) {
+                byte[] compressed = codec.compress(block);
+                compressedBlocks.add(compressed);
+                compressedBytes += compressed.length;
+            }
+
+            // the first pass warms up the JIT and is not timed
+            long checksum = decodeAll(codec, compressedBlocks);
+            long start = System.nanoTime();
+            for (int round = 0; round < CODEC_ROUNDS; round++) {
+                checksum += decodeAll(codec, compressedBlocks);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            double blocksPerSecond = (double) blocks.size() * CODEC_ROUNDS / seconds;
+            double megabytesPerSecond = (double) uncompressedBytes * CODEC_ROUNDS / seconds / (1 << 20);
+            System.out.println(String.format("%-8s %10.0f blocks/s %10.1f MB/s  compressed to %.1f%% (checksum %d)",
+                    codec, blocksPerSecond, megabytesPerSecond, 100.0 * compressedBytes / uncompressedBytes, checksum));
+        }
+    }
+
+    /**
+     * @return total decoded length, so the decoding cannot be optimized away
+     */
+    private static long decodeAll(BlockCodec codec, List<byte[]> compressedBlocks) throws IOException {
+        long length = 0;
+        for (byte[] compressed : compressedBlocks) {
+            length += codec.decompress(compressed).length;
+        }
+        return length;
+    }
 }
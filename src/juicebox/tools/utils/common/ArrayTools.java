@@ -110,6 +110,17 @@ public class ArrayTools {
         return rcsData;
     }
 
+    /**
+     * Add values to the total, element by element
+     */
+    public static void addInPlace(long[][] total, long[][] values) {
+        for (int i = 0; i < total.length; i++) {
+            for (int j = 0; j < total[i].length; j++) {
+                total[i][j] += values[i][j];
+            }
+        }
+    }
+
     public static float[] newValueInitializedFloatArray(int n, float val) {
         float[] array = new float[n];
         Arrays.fill(array, val);
@@ -26,83 +26,115 @@ package juicebox.tools.utils.dev.drink;
 
 import juicebox.data.feature.GenomeWideList;
 import juicebox.tools.utils.dev.drink.kmeans.Cluster;
+import juicebox.tools.utils.dev.drink.kmeans.DoubleArrayRowMatrix;
+import juicebox.tools.utils.dev.drink.kmeans.RowAccessMatrix;
 import org.broad.igv.feature.Chromosome;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 class DataCleaner {
 
-    final private double[][] originalData;
-    final private double[][] cleanData;
-    private final Map<Integer, Integer> cleanIndexRowToOriginalIndexRow = new HashMap<>();
-    private final Map<Integer, Integer> cleanIndexColToOriginalIndexCol = new HashMap<>();
+    final private RowAccessMatrix originalData;
+    final private RowAccessMatrix cleanRows;
+    private double[][] cleanData;
+    private int[] cleanIndexRowToOriginalIndexRow;
+    private int[] cleanIndexColToOriginalIndexCol;
     final private int resolution;
     private final double maxPercentAllowedToBeZeroThreshold;
 
     public DataCleaner(double[][] data, double maxPercentAllowedToBeZeroThreshold, int resolution) {
+        this(new DoubleArrayRowMatrix(data), maxPercentAllowedToBeZeroThreshold, resolution);
+    }
+
+    /**
+     * The data is never copied; rows of the cleaned matrix are read through the original one,
+     * with NaN, infinite and near zero entries read as 0.
+     */
+    public DataCleaner(RowAccessMatrix data, double maxPercentAllowedToBeZeroThreshold, int resolution) {
         this.resolution = resolution;
         this.maxPercentAllowedToBeZeroThreshold = maxPercentAllowedToBeZeroThreshold;
         originalData = data;
-        cleanData = cleanUpData();
+        cleanRows = cleanUpData();
     }
 
-    private double[][] cleanUpData() {
+    private RowAccessMatrix cleanUpData() {
 
-        //boolean[][] isZeroNanOrInf = new boolean[originalData.length][originalData[0].length];
-        int[] numZerosRowIndx = new int[originalData.length];
-        int[] numZerosColIndx = new int[originalData[0].length];
+        int[] numZerosRowIndx = new int[originalData.getNumRows()];
+        int[] numZerosColIndx = new int[originalData.getNumColumns()];
 
-        for (int i = 0; i < originalData.length; i++) {
-            for (int j = 0; j < originalData[0].length; j++) {
-                //isZeroNanOrInf[i][j] = Double.isNaN(originalData[i][j]) || Double.isInfinite(originalData[i][j]) || isCloseToZero(originalData[i][j]);
-
-                if (Double.isNaN(originalData[i][j]) || Double.isInfinite(originalData[i][j]) || isCloseToZero(originalData[i][j])) {
-                    originalData[i][j] = 0;
+        double[] buffer = new double[originalData.getNumColumns()];
+        for (int i = 0; i < numZerosRowIndx.length; i++) {
+            double[] row = originalData.getRow(i, buffer);
+            for (int j = 0; j < numZerosColIndx.length; j++) {
+                if (isZeroNanOrInf(row[j])) {
                     numZerosRowIndx[i]++;
                     numZerosColIndx[j]++;
                 }
             }
         }
 
-        calculateWhichIndicesToKeep(numZerosRowIndx, cleanIndexRowToOriginalIndexRow);
-        calculateWhichIndicesToKeep(numZerosColIndx, cleanIndexColToOriginalIndexCol);
+        cleanIndexRowToOriginalIndexRow = calculateWhichIndicesToKeep(numZerosRowIndx);
+        cleanIndexColToOriginalIndexCol = calculateWhichIndicesToKeep(numZerosColIndx);
 
         return makeCleanMatrix();
     }
 
-    private double[][] makeCleanMatrix() {
+    private RowAccessMatrix makeCleanMatrix() {
 
-        int numRows = cleanIndexRowToOriginalIndexRow.keySet().size();
-        int numCols = cleanIndexColToOriginalIndexCol.keySet().size();
+        final int numRows = cleanIndexRowToOriginalIndexRow.length;
+        final int numCols = cleanIndexColToOriginalIndexCol.length;
         //System.out.println("cleaner "+numRows+" "+numCols);
 
-        double[][] cleanMatrx = new double[numRows][numCols];
+        final ThreadLocal<double[]> originalRowBuffer = new ThreadLocal<double[]>() {
+            @Override
+            protected double[] initialValue() {
+                return new double[originalData.getNumColumns()];
+            }
+        };
+
+        return new RowAccessMatrix() {
+            @Override
+            public int getNumRows() {
+                return numRows;
+            }
 
-        for (int i = 0; i < numRows; i++) {
-            int i0 = getOriginalIndexRow(i);
-            for (int j = 0; j < numCols; j++) {
-                int j0 = getOriginalIndexCol(j);
-                cleanMatrx[i][j] = originalData[i0][j0];
+            @Override
+            public int getNumColumns() {
+                return numCols;
             }
-        }
-        return cleanMatrx;
+
+            @Override
+            public double[] getRow(int i, double[] buffer) {
+                double[] row = originalData.getRow(getOriginalIndexRow(i), originalRowBuffer.get());
+                for (int j = 0; j < numCols; j++) {
+                    double val = row[getOriginalIndexCol(j)];
+                    buffer[j] = isZeroNanOrInf(val) ? 0 : val;
+                }
+                return buffer;
+            }
+        };
     }
 
 
-    private void calculateWhichIndicesToKeep(int[] numZerosIndxCount, Map<Integer, Integer> cleanIndexToOriginalIndex) {
+    private int[] calculateWhichIndicesToKeep(int[] numZerosIndxCount) {
 
         int maxNumAllowedToBeZeroCutOff = (int) (numZerosIndxCount.length * maxPercentAllowedToBeZeroThreshold);
         int counter = 0;
+        int[] cleanIndexToOriginalIndex = new int[numZerosIndxCount.length];
 
         for (int i0 = 0; i0 < numZerosIndxCount.length; i0++) {
             if (numZerosIndxCount[i0] < maxNumAllowedToBeZeroCutOff) {
-                cleanIndexToOriginalIndex.put(counter, i0);
+                cleanIndexToOriginalIndex[counter] = i0;
                 counter++;
             }
         }
+        return Arrays.copyOf(cleanIndexToOriginalIndex, counter);
+    }
+
+    private boolean isZeroNanOrInf(double v) {
+        return Double.isNaN(v) || Double.isInfinite(v) || isCloseToZero(v);
     }
 
     private boolean isCloseToZero(double v) {
@@ -110,24 +142,34 @@ class DataCleaner {
     }
 
 
-    public double[][] getCleanedData() {
+    public synchronized double[][] getCleanedData() {
+        if (cleanData == null) {
+            cleanData = new double[cleanRows.getNumRows()][cleanRows.getNumColumns()];
+            for (int i = 0; i < cleanData.length; i++) {
+                cleanRows.getRow(i, cleanData[i]);
+            }
+        }
         return cleanData;
     }
 
-    public double[][] getOriginalData() {
+    public RowAccessMatrix getCleanedRows() {
+        return cleanRows;
+    }
+
+    public RowAccessMatrix getOriginalData() {
         return originalData;
     }
 
     int getOriginalIndexRow(int i) {
-        return cleanIndexRowToOriginalIndexRow.get(i);
+        return cleanIndexRowToOriginalIndexRow[i];
     }
 
     private int getOriginalIndexCol(int i) {
-        return cleanIndexColToOriginalIndexCol.get(i);
+        return cleanIndexColToOriginalIndexCol[i];
     }
 
     public int getLength() {
-        return cleanData.length;
+        return cleanRows.getNumRows();
     }
 
     public void processKmeansResult(Chromosome chromosome, GenomeWideList<SubcompartmentInterval> subcompartments, Cluster[] clusters) {
@@ -47,10 +47,10 @@ class DataCleanerV2 extends DataCleaner {
 
         /*
         File outputFile2 = new File(outDirectory, "PostAggregateOrigChr"+indx+".txt");
-        MatrixTools.exportData(getOriginalData(), outputFile2);
+        DrinkUtils.exportData(getOriginalData(), outputFile2);
 
         File outputFile3 = new File(outDirectory, "PostAggregateCleanChr"+indx+".txt");
-        MatrixTools.exportData(getOriginalData(), outputFile3);
+        DrinkUtils.exportData(getOriginalData(), outputFile3);
         */
 
     }
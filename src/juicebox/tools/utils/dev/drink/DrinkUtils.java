@@ -30,11 +30,13 @@ import juicebox.data.feature.FeatureFilter;
 import juicebox.data.feature.FeatureFunction;
 import juicebox.data.feature.GenomeWideList;
 import juicebox.tools.utils.common.ArrayTools;
+import juicebox.tools.utils.dev.drink.kmeans.RowAccessMatrix;
 import org.broad.igv.feature.Chromosome;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.text.DecimalFormat;
 import java.util.*;
 
 public class DrinkUtils {
@@ -175,6 +177,33 @@ public class DrinkUtils {
         return breakUpFileName[breakUpFileName.length - 1].replaceAll(".hic", "");
     }
 
+    /**
+     * Same format as MatrixTools.exportData, but reads one row at a time
+     */
+    public static void exportData(RowAccessMatrix data, File file) {
+        try {
+            DecimalFormat df = new DecimalFormat("##.###");
+            double[] buffer = new double[data.getNumColumns()];
+
+            final FileWriter fw = new FileWriter(file);
+            for (int i = 0; i < data.getNumRows(); i++) {
+                for (double val : data.getRow(i, buffer)) {
+                    if (Double.isNaN(val)) {
+                        fw.write("NaN, ");
+                    } else {
+                        fw.write(Double.valueOf(df.format(val)) + ", ");
+                    }
+                }
+                fw.write("0\n");
+            }
+            fw.close();
+        } catch (Exception e) {
+            System.err.println("Error exporting matrix");
+            e.printStackTrace();
+            System.exit(86);
+        }
+    }
+
     public static void writeConsensusSubcompartmentsToFile(List<GenomeWideList<SubcompartmentInterval>> comparativeSubcompartments, File outputDirectory) {
         GenomeWideList<SubcompartmentInterval> consensus = calculateConsensus(comparativeSubcompartments);
         File outputFile3 = new File(outputDirectory, "consensus_result_intra_compare_file.bed");
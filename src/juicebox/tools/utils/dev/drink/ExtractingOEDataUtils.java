@@ -173,6 +173,10 @@ public class ExtractingOEDataUtils {
             }
         }
 
+        return scaleAveragedOE(total, totalNumInclZero, threshold, isIntra);
+    }
+
+    static double scaleAveragedOE(double total, int totalNumInclZero, double threshold, boolean isIntra) {
         if (Double.isNaN(total)) total = 0;
         double average = total / totalNumInclZero;
         if (!isIntra) {
@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.tools.utils.dev.drink;
+
+import juicebox.tools.utils.dev.drink.kmeans.RowAccessMatrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Square float matrix stored as blocks of consecutive rows, either on the heap
+ * or memory-mapped from a temporary file when it would not fit in memory.
+ * Concurrent writers must touch disjoint cells.
+ */
+class FloatRowBlockedMatrix implements RowAccessMatrix {
+
+    private static final long MAX_BLOCK_BYTES = 1L << 30;
+
+    private final int n;
+    private final int rowsPerBlock;
+    private final float[][] heapBlocks;
+    private final FloatBuffer[] mappedBlocks;
+
+    public FloatRowBlockedMatrix(int n) {
+        this(n, 4L * n * n > Runtime.getRuntime().maxMemory() / 2);
+    }
+
+    public FloatRowBlockedMatrix(int n, boolean useMemoryMap) {
+        this.n = n;
+        rowsPerBlock = (int) Math.max(1, Math.min(n, MAX_BLOCK_BYTES / (4L * Math.max(n, 1))));
+        int numBlocks = (n + rowsPerBlock - 1) / rowsPerBlock;
+
+        if (useMemoryMap) {
+            heapBlocks = null;
+            mappedBlocks = mapBlocks(numBlocks);
+        } else {
+            mappedBlocks = null;
+            heapBlocks = new float[numBlocks][];
+            for (int b = 0; b < numBlocks; b++) {
+                heapBlocks[b] = new float[getRowsInBlock(b) * n];
+            }
+        }
+    }
+
+    private FloatBuffer[] mapBlocks(int numBlocks) {
+        FloatBuffer[] blocks = new FloatBuffer[numBlocks];
+        try {
+            File file = File.createTempFile("drink_gw_matrix", ".bin");
+            file.deleteOnExit();
+            System.out.println("Memory-mapping " + n + "x" + n + " matrix to " + file.getAbsolutePath());
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                 FileChannel channel = raf.getChannel()) {
+                long blockBytes = 4L * rowsPerBlock * n;
+                for (int b = 0; b < numBlocks; b++) {
+                    long size = 4L * getRowsInBlock(b) * n;
+                    blocks[b] = channel.map(FileChannel.MapMode.READ_WRITE, b * blockBytes, size)
+                            .order(ByteOrder.nativeOrder()).asFloatBuffer();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to memory-map genome-wide matrix " + e.getLocalizedMessage());
+            System.exit(58);
+        }
+        return blocks;
+    }
+
+    private int getRowsInBlock(int b) {
+        return Math.min(rowsPerBlock, n - b * rowsPerBlock);
+    }
+
+    public float get(int i, int j) {
+        int b = i / rowsPerBlock;
+        int index = (i - b * rowsPerBlock) * n + j;
+        if (heapBlocks != null) {
+            return heapBlocks[b][index];
+        }
+        return mappedBlocks[b].get(index);
+    }
+
+    public void set(int i, int j, float value) {
+        int b = i / rowsPerBlock;
+        int index = (i - b * rowsPerBlock) * n + j;
+        if (heapBlocks != null) {
+            heapBlocks[b][index] = value;
+        } else {
+            mappedBlocks[b].put(index, value);
+        }
+    }
+
+    public void add(int i, int j, float value) {
+        set(i, j, get(i, j) + value);
+    }
+
+    @Override
+    public int getNumRows() {
+        return n;
+    }
+
+    @Override
+    public int getNumColumns() {
+        return n;
+    }
+
+    @Override
+    public double[] getRow(int i, double[] buffer) {
+        int b = i / rowsPerBlock;
+        int offset = (i - b * rowsPerBlock) * n;
+        if (heapBlocks != null) {
+            float[] block = heapBlocks[b];
+            for (int j = 0; j < n; j++) {
+                buffer[j] = block[offset + j];
+            }
+        } else {
+            FloatBuffer block = mappedBlocks[b];
+            for (int j = 0; j < n; j++) {
+                buffer[j] = block.get(offset + j);
+            }
+        }
+        return buffer;
+    }
+}
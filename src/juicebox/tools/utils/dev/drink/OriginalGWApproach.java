@@ -27,7 +27,6 @@ package juicebox.tools.utils.dev.drink;
 import juicebox.data.ChromosomeHandler;
 import juicebox.data.Dataset;
 import juicebox.data.feature.GenomeWideList;
-import juicebox.tools.utils.common.MatrixTools;
 import juicebox.tools.utils.dev.drink.kmeans.Cluster;
 import juicebox.tools.utils.dev.drink.kmeans.ConcurrentKMeans;
 import juicebox.tools.utils.dev.drink.kmeans.KMeansListener;
@@ -39,6 +38,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 public class OriginalGWApproach {
 
+    // genome-wide matrices with more rows than this are clustered with mini-batch k-means
+    private static final int MINI_BATCH_THRESHOLD = 20000;
+    private static final int MINI_BATCH_SIZE = 2000;
+
     public static GenomeWideList<SubcompartmentInterval>
     extractFinalGWSubcompartments(Dataset ds, ChromosomeHandler chromosomeHandler, int resolution, NormalizationType norm,
                                   File outputDirectory, int numClusters, int maxIters, double logThreshold,
@@ -55,10 +58,11 @@ public class OriginalGWApproach {
 
             //System.out.println("printing GW matrix file");
             File outputFile = new File(outputDirectory, "gw_matrix_data.txt");
-            MatrixTools.exportData(gwMatrix.getCleanedData(), outputFile);
+            DrinkUtils.exportData(gwMatrix.getCleanedData(), outputFile);
 
+            int miniBatchSize = gwMatrix.getLength() > MINI_BATCH_THRESHOLD ? MINI_BATCH_SIZE : 0;
             ConcurrentKMeans kMeans = new ConcurrentKMeans(gwMatrix.getCleanedData(), numClusters,
-                    maxIters, 128971L);
+                    maxIters, 128971L, miniBatchSize);
 
             KMeansListener kMeansListener = new KMeansListener() {
                 @Override
@@ -27,12 +27,16 @@ package juicebox.tools.utils.dev.drink;
 import juicebox.data.*;
 import juicebox.data.feature.GenomeWideList;
 import juicebox.tools.utils.dev.drink.kmeans.Cluster;
+import juicebox.tools.utils.dev.drink.kmeans.RowAccessMatrix;
 import juicebox.windowui.HiCZoom;
 import juicebox.windowui.NormalizationType;
 import org.broad.igv.feature.Chromosome;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 class ScaledGenomeWideMatrix {
@@ -42,7 +46,7 @@ class ScaledGenomeWideMatrix {
     private final int resolution;
     private final GenomeWideList<SubcompartmentInterval> intraSubcompartments;
     private final double threshold;
-    private final double[][] gwCleanMatrix;
+    private final FloatRowBlockedMatrix gwCleanMatrix;
 
 
     public ScaledGenomeWideMatrix(ChromosomeHandler chromosomeHandler, Dataset ds, NormalizationType norm, int resolution,
@@ -56,21 +60,37 @@ class ScaledGenomeWideMatrix {
         gwCleanMatrix = makeCleanScaledGWMatrix(ds);
     }
 
-    private double[][] makeCleanScaledGWMatrix(Dataset ds) {
+    /**
+     * Each chromosome pair is streamed block column by block column straight into its own region
+     * of the genome-wide matrix, so no dense per-pair matrix is ever built. Pairs write disjoint
+     * cells and are filled in parallel.
+     */
+    private FloatRowBlockedMatrix makeCleanScaledGWMatrix(Dataset ds) {
 
         Chromosome[] chromosomes = chromosomeHandler.getAutosomalChromosomesArray();
         int n = calculateSizeGWMatrix(chromosomes);
         int[] indices = calculateOffsetIndex(chromosomes);
         System.out.println("Size " + n);
 
-        double[][] gwMatrix = new double[n][n];
+        final FloatRowBlockedMatrix gwMatrix = new FloatRowBlockedMatrix(n);
+        for (int i = 0; i < chromosomes.length; i++) {
+            List<SubcompartmentInterval> intervals = intraSubcompartments.getFeatures("" + chromosomes[i].getIndex());
+            for (int k = 0; k < intervals.size(); k++) {
+                indexToIntervalMap.put(indices[i] + k, intervals.get(k));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<Future<?>> futures = new ArrayList<>();
 
         for (int i = 0; i < chromosomes.length; i++) {
-            Chromosome chr1 = chromosomes[i];
+            final Chromosome chr1 = chromosomes[i];
+            final int offsetIndex1 = indices[i];
             for (int j = i; j < chromosomes.length; j++) {
-                Chromosome chr2 = chromosomes[j];
+                final Chromosome chr2 = chromosomes[j];
+                final int offsetIndex2 = indices[j];
 
-                boolean isIntra = chr1.getIndex() == chr2.getIndex();
+                final boolean isIntra = chr1.getIndex() == chr2.getIndex();
                 Matrix matrix = ds.getMatrix(chr1, chr2);
 
                 if (matrix == null) continue;
@@ -80,14 +100,30 @@ class ScaledGenomeWideMatrix {
 
                 if (zd == null) continue;
 
-                ExpectedValueFunction df = ds.getExpectedValues(zd.getZoom(), norm);
+                final ExpectedValueFunction df = ds.getExpectedValues(zd.getZoom(), norm);
                 if (isIntra && df == null) {
                     System.err.println("O/E data not available at " + chr1.getName() + " " + zoom + " " + norm);
                     System.exit(14);
                 }
 
-                fillInChromosomeRegion(gwMatrix, zd, df, isIntra, chr1, indices[i], chr2, indices[j]);
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        fillInChromosomeRegion(gwMatrix, zd, df, isIntra, chr1, offsetIndex1, chr2, offsetIndex2);
+                    }
+                }));
+            }
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
             }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(15);
+        } finally {
+            executor.shutdown();
         }
 
         return gwMatrix;
@@ -112,7 +148,24 @@ class ScaledGenomeWideMatrix {
         return indices;
     }
 
-    private void fillInChromosomeRegion(double[][] matrix, MatrixZoomData zd, ExpectedValueFunction df, boolean isIntra,
+    /**
+     * Map every bin of the chromosome to the (local) index of the interval covering it, or -1
+     */
+    private int[] mapBinsToIntervals(List<SubcompartmentInterval> intervals, int lengthChr) {
+        int[] binToInterval = new int[Math.max(lengthChr, 0)];
+        Arrays.fill(binToInterval, -1);
+        for (int i = 0; i < intervals.size(); i++) {
+            SubcompartmentInterval interval = intervals.get(i);
+            int binStart = Math.max(interval.getX1() / resolution, 0);
+            int binEnd = Math.min(interval.getX2() / resolution, lengthChr);
+            for (int bin = binStart; bin < binEnd; bin++) {
+                binToInterval[bin] = i;
+            }
+        }
+        return binToInterval;
+    }
+
+    private void fillInChromosomeRegion(FloatRowBlockedMatrix matrix, MatrixZoomData zd, ExpectedValueFunction df, boolean isIntra,
                                         Chromosome chr1, int offsetIndex1, Chromosome chr2, int offsetIndex2) {
 
         int chr1Index = chr1.getIndex();
@@ -123,12 +176,53 @@ class ScaledGenomeWideMatrix {
 
         try {
             if (intervals1.size() == 0 || intervals2.size() == 0) return;
-            double[][] allDataForRegion = ExtractingOEDataUtils.extractLocalOEBoundedRegion(zd, 0, lengthChr1,
-                    0, lengthChr2, lengthChr1, lengthChr2, norm, isIntra, df, chr1Index, threshold);
+
+            int[] binToInterval1 = mapBinsToIntervals(intervals1, lengthChr1);
+            int[] binToInterval2 = mapBinsToIntervals(intervals2, lengthChr2);
+
+            // accumulate the totals for each pair of intervals, one column of blocks at a time;
+            // neighbouring columns can return the same block, so each block is only counted once
+            Set<Integer> processedBlocks = new HashSet<>();
+            int blockBinCount = zd.getBlockBinCount();
+            for (int binXStart = 0; binXStart < lengthChr1; binXStart += blockBinCount) {
+                List<Block> blocks = HiCFileTools.getAllRegionBlocks(zd, binXStart, binXStart + blockBinCount - 1,
+                        0, lengthChr2, norm);
+                for (Block b : blocks) {
+                    if (b != null && processedBlocks.add(b.getNumber())) {
+                        for (ContactRecord rec : b.getContactRecords()) {
+                            int x = rec.getBinX();
+                            int y = rec.getBinY();
+
+                            double oeVal = rec.getCounts();
+                            if (isIntra) {
+                                int dist = Math.abs(x - y);
+                                double expected = df.getExpectedValue(chr1Index, dist);
+                                oeVal = Math.log(rec.getCounts() / expected);
+                            }
+                            if (Double.isNaN(oeVal)) oeVal = 0;
+
+                            if (x < lengthChr1 && y < lengthChr2) {
+                                int i = binToInterval1[x];
+                                int j = binToInterval2[y];
+                                if (i > -1 && j > -1) {
+                                    matrix.add(offsetIndex1 + i, offsetIndex2 + j, (float) oeVal);
+                                }
+                            }
+                            if (isIntra && y < lengthChr1 && x < lengthChr2) {
+                                int i = binToInterval1[y];
+                                int j = binToInterval2[x];
+                                if (i > -1 && j > -1) {
+                                    matrix.add(offsetIndex1 + i, offsetIndex2 + j, (float) oeVal);
+                                }
+                            }
+                        }
+                    }
+                }
+                zd.clearCache();
+            }
 
             for (int i = 0; i < intervals1.size(); i++) {
                 SubcompartmentInterval interv1 = intervals1.get(i);
-                indexToIntervalMap.put(offsetIndex1 + i, interv1);
                 int binXStart = interv1.getX1() / resolution;
                 int binXEnd = Math.min(interv1.getX2() / resolution, lengthChr1);
 
@@ -137,12 +231,13 @@ class ScaledGenomeWideMatrix {
                     int binYStart = interv2.getX1() / resolution;
                     int binYEnd = Math.min(interv2.getX2() / resolution, lengthChr2);
 
-                    double averagedValue = ExtractingOEDataUtils.extractAveragedOEFromRegion(allDataForRegion,
-                            binXStart, binXEnd, binYStart, binYEnd, threshold, isIntra);
+                    double total = matrix.get(offsetIndex1 + i, offsetIndex2 + j);
+                    double averagedValue = ExtractingOEDataUtils.scaleAveragedOE(total,
+                            (binXEnd - binXStart) * (binYEnd - binYStart), threshold, isIntra);
 
-                    matrix[offsetIndex1 + i][offsetIndex2 + j] = averagedValue;
+                    matrix.set(offsetIndex1 + i, offsetIndex2 + j, (float) averagedValue);
                     if (!isIntra) {
-                        matrix[offsetIndex2 + j][offsetIndex1 + i] = averagedValue;
+                        matrix.set(offsetIndex2 + j, offsetIndex1 + i, (float) averagedValue);
                     }
                 }
             }
@@ -181,10 +276,10 @@ class ScaledGenomeWideMatrix {
     }
 
     public int getLength() {
-        return gwCleanMatrix.length;
+        return gwCleanMatrix.getNumRows();
     }
 
-    public double[][] getCleanedData() {
+    public RowAccessMatrix getCleanedData() {
         return gwCleanMatrix;
     }
 }
@@ -35,6 +35,12 @@ import java.util.concurrent.*;
  * or simultaneous multithreading (SMT).  The subtasks of
  * computing distances and making assignments are delegate to
  * a subtask manager which oversees a thread pool.
+ * <p>
+ * Centers are seeded with k-means++.  Assignments keep Hamerly's
+ * upper and lower distance bounds per coordinate, so after the first
+ * iterations most coordinates are kept in their cluster without computing
+ * any distance.  Optionally, centers are first fit on random mini-batches
+ * and all coordinates are then assigned once to the resulting centers.
  */
 public class ConcurrentKMeans implements KMeans {
 
@@ -42,9 +48,16 @@ public class ConcurrentKMeans implements KMeans {
     // an array of the simpler class Cluster at the conclusion.
     private ConcurrentKMeans.ProtoCluster[] mProtoClusters;
 
-    // Cache of coordinate-to-cluster distances. Number of entries =
-    // number of clusters X number of coordinates.
-    private double[][] mDistanceCache;
+    // Bounds used to prune distance computations: an upper bound on the
+    // distance from each coordinate to its assigned center, and a lower
+    // bound on the distance to every other center.
+    private double[] mUpperBounds;
+    private double[] mLowerBounds;
+
+    // Half the distance from each center to its nearest other center, and
+    // the largest distance moved by a center in the last update.
+    private double[] mHalfMinSeparation;
+    private double mMaxDrift;
 
     // Used in makeAssignments() to figure out how many moves are made
     // during each iteration -- the cluster assignment for coordinate n is
@@ -52,8 +65,8 @@ public class ConcurrentKMeans implements KMeans {
     // 0 ... (N-1)
     private int[] mClusterAssignments;
 
-    // 2D array holding the coordinates to be clustered.
-    private final double[][] mCoordinates;
+    // Row-accessible matrix holding the coordinates to be clustered.
+    private final RowAccessMatrix mCoordinates;
     // The desired number of clusters and maximum number
     // of iterations.
     private final int mK;
@@ -63,6 +76,12 @@ public class ConcurrentKMeans implements KMeans {
     private final long mRandomSeed;
     // The number of threads used to perform the subtasks.
     private final int mThreadCount;
+    // Number of coordinates sampled per mini-batch; 0 runs the full algorithm.
+    private final int mMiniBatchSize;
+    // Mini-batch fitting stops once no center moves more than this
+    // for MINI_BATCH_PATIENCE consecutive batches.
+    private static final double MINI_BATCH_TOLERANCE = 1e-3;
+    private static final int MINI_BATCH_PATIENCE = 3;
     // Subtask manager that handles the thread pool to which
     // time-consuming tasks are delegated.
     private ConcurrentKMeans.SubtaskManager mSubtaskManager;
@@ -76,20 +95,22 @@ public class ConcurrentKMeans implements KMeans {
     /**
      * Constructor
      *
-     * @param coordinates   two-dimensional array containing the coordinates to be clustered.
+     * @param coordinates   matrix whose rows are the coordinates to be clustered.
      * @param k             the number of desired clusters.
      * @param maxIterations the maximum number of clustering iterations.
      * @param randomSeed    seed used with the random number generator.
      * @param threadCount   the number of threads to be used for computing time-consuming steps.
+     * @param miniBatchSize number of coordinates per mini-batch, or 0 to use all coordinates every iteration.
      */
-    private ConcurrentKMeans(double[][] coordinates, int k, int maxIterations,
-                             long randomSeed, int threadCount) {
+    private ConcurrentKMeans(RowAccessMatrix coordinates, int k, int maxIterations,
+                             long randomSeed, int threadCount, int miniBatchSize) {
         mCoordinates = coordinates;
         // Can't have more clusters than coordinates.
-        mK = Math.min(k, mCoordinates.length);
+        mK = Math.min(k, mCoordinates.getNumRows());
         mMaxIterations = maxIterations;
         mRandomSeed = randomSeed;
         mThreadCount = threadCount;
+        mMiniBatchSize = miniBatchSize;
     }
 
     /**
@@ -104,8 +125,38 @@ public class ConcurrentKMeans implements KMeans {
      */
     public ConcurrentKMeans(double[][] coordinates, int k, int maxIterations,
                             long randomSeed) {
+        this(new DoubleArrayRowMatrix(coordinates), k, maxIterations, randomSeed);
+    }
+
+    /**
+     * Constructor for coordinates that are only accessible row by row
+     * (e.g. float backed or memory-mapped matrices).
+     *
+     * @param coordinates   matrix whose rows are the coordinates to be clustered.
+     * @param k             the number of desired clusters.
+     * @param maxIterations the maximum number of clustering iterations.
+     * @param randomSeed    seed used with the random number generator.
+     */
+    public ConcurrentKMeans(RowAccessMatrix coordinates, int k, int maxIterations,
+                            long randomSeed) {
+        this(coordinates, k, maxIterations, randomSeed, 0);
+    }
+
+    /**
+     * Constructor for mini-batch k-means, meant for very large matrices.  Centers are
+     * fit on random batches of coordinates (at most maxIterations batches), then every
+     * coordinate is assigned to its nearest center once.
+     *
+     * @param coordinates   matrix whose rows are the coordinates to be clustered.
+     * @param k             the number of desired clusters.
+     * @param maxIterations the maximum number of mini-batches.
+     * @param randomSeed    seed used with the random number generator.
+     * @param miniBatchSize number of coordinates per mini-batch; 0 runs the full algorithm.
+     */
+    public ConcurrentKMeans(RowAccessMatrix coordinates, int k, int maxIterations,
+                            long randomSeed, int miniBatchSize) {
         this(coordinates, k, maxIterations, randomSeed,
-                Runtime.getRuntime().availableProcessors());
+                Runtime.getRuntime().availableProcessors(), miniBatchSize);
     }
 
     /**
@@ -217,11 +268,16 @@ public class ConcurrentKMeans implements KMeans {
 
             postKMeansMessage("K-Means clustering started");
 
-            // Randomly initialize the cluster centers creating the
+            // Initialize the cluster centers with k-means++, creating the
             // array mProtoClusters.
             initCenters();
             postKMeansMessage("... centers initialized");
 
+            boolean useMiniBatches = mMiniBatchSize > 0 && mMiniBatchSize < mCoordinates.getNumRows();
+            if (useMiniBatches) {
+                fitMiniBatches();
+            }
+
             // Instantiate the subtask manager.
             mSubtaskManager = new ConcurrentKMeans.SubtaskManager(mThreadCount);
 
@@ -233,7 +289,7 @@ public class ConcurrentKMeans implements KMeans {
                 postKMeansMessage("... non-concurrent processing mode");
             }
 
-            // Perform the initial computation of distances.
+            // Prepare the distance bounds for the initial assignments.
             computeDistances();
 
             // Make the initial cluster assignments.
@@ -242,32 +298,37 @@ public class ConcurrentKMeans implements KMeans {
             // Number of moves in the iteration and the iteration counter.
             int moves = 0, it = 0;
 
-            // Main Loop:
-            //
-            // Two stopping criteria:
-            // - no moves in makeAssignments
-            //   (moves == 0)
-            // OR
-            // - the maximum number of iterations has been reached
-            //   (it == mMaxIterations)
-            //
-            do {
+            // With mini-batches, the centers are already fit and the single
+            // full assignment above is the result.
+            if (!useMiniBatches) {
 
-                // Compute the centers of the clusters that need updating.
-                computeCenters();
+                // Main Loop:
+                //
+                // Two stopping criteria:
+                // - no moves in makeAssignments
+                //   (moves == 0)
+                // OR
+                // - the maximum number of iterations has been reached
+                //   (it == mMaxIterations)
+                //
+                do {
 
-                // Compute the stored distances between the updated clusters and the
-                // coordinates.
-                computeDistances();
+                    // Compute the centers of the clusters that need updating.
+                    computeCenters();
 
-                // Make this iteration's assignments.
-                moves = makeAssignments();
+                    // Update the distance bounds with how far the centers moved.
+                    computeDistances();
 
-                it++;
+                    // Make this iteration's assignments.
+                    moves = makeAssignments();
 
-                postKMeansMessage("... iteration " + it + " moves = " + moves);
+                    it++;
 
-            } while (moves > 0 && it < mMaxIterations);
+                    postKMeansMessage("... iteration " + it + " moves = " + moves
+                            + " distances = " + mSubtaskManager.numberOfDistances());
+
+                } while (moves > 0 && it < mMaxIterations);
+            }
 
             // Transform the array of ProtoClusters to an array
             // of the simpler class Cluster.
@@ -290,13 +351,15 @@ public class ConcurrentKMeans implements KMeans {
     }
 
     /**
-     * Randomly select coordinates to be the initial cluster centers.
+     * Select coordinates to be the initial cluster centers with k-means++: each
+     * new center is drawn with probability proportional to the squared distance
+     * from a coordinate to its nearest center chosen so far.
      */
     private void initCenters() {
 
         Random random = new Random(mRandomSeed);
 
-        int coordCount = mCoordinates.length;
+        int coordCount = mCoordinates.getNumRows();
 
         // The array mClusterAssignments is used only to keep track of the cluster
         // membership for each coordinate.  The method makeAssignments() uses it
@@ -307,27 +370,140 @@ public class ConcurrentKMeans implements KMeans {
             Arrays.fill(mClusterAssignments, -1);
         }
 
-        // Place the coordinate indices into an array and shuffle it.
-        int[] indices = new int[coordCount];
-        for (int i = 0; i < coordCount; i++) {
-            indices[i] = i;
+        // Squared distance from each coordinate to the nearest chosen center.
+        double[] minDistSquared = new double[coordCount];
+        Arrays.fill(minDistSquared, Double.MAX_VALUE);
+        boolean[] chosen = new boolean[coordCount];
+        double[] rowBuffer = new double[mCoordinates.getNumColumns()];
+
+        mProtoClusters = new ConcurrentKMeans.ProtoCluster[mK];
+        int coordIndex = random.nextInt(coordCount);
+        for (int i = 0; i < mK; i++) {
+            if (i > 0) {
+                coordIndex = sampleNextCenter(random, minDistSquared, chosen);
+            }
+            mProtoClusters[i] = new ConcurrentKMeans.ProtoCluster(mCoordinates.getRow(coordIndex, rowBuffer), coordIndex);
+            mClusterAssignments[coordIndex] = i;
+            chosen[coordIndex] = true;
+
+            if (i < mK - 1) {
+                double[] center = mProtoClusters[i].getCenter();
+                for (int j = 0; j < coordCount; j++) {
+                    if (!chosen[j]) {
+                        double d = distance(mCoordinates.getRow(j, rowBuffer), center);
+                        minDistSquared[j] = Math.min(minDistSquared[j], d * d);
+                    }
+                }
+            }
         }
-        for (int i = 0, m = coordCount; m > 0; i++, m--) {
-            int j = i + random.nextInt(m);
-            if (i != j) {
-                // Swap the indices.
-                indices[i] ^= indices[j];
-                indices[j] ^= indices[i];
-                indices[i] ^= indices[j];
+    }
+
+    /**
+     * Draw an unchosen coordinate with probability proportional to its squared distance
+     * from the nearest center.  If every remaining coordinate sits on a center, any
+     * unchosen coordinate is taken.
+     */
+    private static int sampleNextCenter(Random random, double[] minDistSquared, boolean[] chosen) {
+        double total = 0;
+        for (int j = 0; j < minDistSquared.length; j++) {
+            if (!chosen[j]) {
+                total += minDistSquared[j];
             }
         }
 
-        mProtoClusters = new ConcurrentKMeans.ProtoCluster[mK];
-        for (int i = 0; i < mK; i++) {
-            int coordIndex = indices[i];
-            mProtoClusters[i] = new ConcurrentKMeans.ProtoCluster(mCoordinates[coordIndex], coordIndex);
-            mClusterAssignments[indices[i]] = i;
+        int lastCandidate = -1;
+        if (total > 0) {
+            double target = random.nextDouble() * total;
+            for (int j = 0; j < minDistSquared.length; j++) {
+                if (!chosen[j] && minDistSquared[j] > 0) {
+                    lastCandidate = j;
+                    target -= minDistSquared[j];
+                    if (target < 0) {
+                        return j;
+                    }
+                }
+            }
+            // only reached through rounding
+            if (lastCandidate > -1) {
+                return lastCandidate;
+            }
+        }
+
+        int start = random.nextInt(chosen.length);
+        for (int m = 0; m < chosen.length; m++) {
+            int j = (start + m) % chosen.length;
+            if (!chosen[j]) {
+                return j;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * Fit the centers on random mini-batches of coordinates.  Each batch is
+     * first assigned to the current centers, then every center moves toward
+     * its new members with a learning rate of 1 / (number of members seen so far).
+     */
+    private void fitMiniBatches() {
+
+        Random random = new Random(mRandomSeed);
+        int coordCount = mCoordinates.getNumRows();
+        double[] rowBuffer = new double[mCoordinates.getNumColumns()];
+        int[] batch = new int[mMiniBatchSize];
+        int[] nearest = new int[mMiniBatchSize];
+        int[] counts = new int[mProtoClusters.length];
+
+        int numQuietBatches = 0;
+        for (int it = 0; it < mMaxIterations && numQuietBatches < MINI_BATCH_PATIENCE; it++) {
+            for (int b = 0; b < mMiniBatchSize; b++) {
+                batch[b] = random.nextInt(coordCount);
+                nearest[b] = nearestCenter(mCoordinates.getRow(batch[b], rowBuffer));
+            }
+
+            for (ProtoCluster cluster : mProtoClusters) {
+                cluster.clearDrift();
+            }
+            for (int b = 0; b < mMiniBatchSize; b++) {
+                int c = nearest[b];
+                counts[c]++;
+                mProtoClusters[c].moveCenterTowards(mCoordinates.getRow(batch[b], rowBuffer), 1.0 / counts[c]);
+            }
+
+            double maxDrift = 0;
+            for (ProtoCluster cluster : mProtoClusters) {
+                maxDrift = Math.max(maxDrift, cluster.getDrift());
+            }
+            if (maxDrift < MINI_BATCH_TOLERANCE) {
+                numQuietBatches++;
+            } else {
+                numQuietBatches = 0;
+            }
         }
+        postKMeansMessage("... centers fit on mini-batches of " + mMiniBatchSize);
+
+        // Every coordinate gets assigned from scratch to the fitted centers.
+        for (ProtoCluster cluster : mProtoClusters) {
+            cluster.clearDrift();
+        }
+        Arrays.fill(mClusterAssignments, -1);
+    }
+
+    /**
+     * Index of the center nearest to the coordinate, among clusters in contention.
+     */
+    private int nearestCenter(double[] coord) {
+        int nearest = -1;
+        double min = Double.MAX_VALUE;
+        for (int c = 0; c < mProtoClusters.length; c++) {
+            if (mProtoClusters[c].getConsiderForAssignment()) {
+                double d = distance(coord, mProtoClusters[c].getCenter());
+                if (d < min) {
+                    min = d;
+                    nearest = c;
+                }
+            }
+        }
+        return nearest;
     }
 
     /**
@@ -342,6 +518,7 @@ public class ConcurrentKMeans implements KMeans {
         // whose memberships have changed in the iteration just completed.
         //
         for (ProtoCluster cluster : mProtoClusters) {
+            cluster.clearDrift();
             if (cluster.getConsiderForAssignment()) {
                 if (cluster.isNotEmpty()) {
                     // This sets the protocluster's update flag to
@@ -363,33 +540,48 @@ public class ConcurrentKMeans implements KMeans {
     }
 
     /**
-     * Compute distances between coodinates and cluster centers,
-     * storing them in the distance cache.  Only distances that
-     * need to be computed are computed.  This is determined by
-     * distance update flags in the protocluster objects.
+     * Prepare the bounds used to prune distance computations in
+     * makeAssignments(): how far each center moved, and half the
+     * distance from each center to its nearest neighbor.
      */
     private void computeDistances() throws InsufficientMemoryException {
 
-        if (mDistanceCache == null) {
-            int numCoords = mCoordinates.length;
-            int numClusters = mProtoClusters.length;
+        int numClusters = mProtoClusters.length;
+        if (mUpperBounds == null) {
+            int numCoords = mCoordinates.getNumRows();
             // Explicit garbage collection to reduce likelihood of insufficient
             // memory.
             System.gc();
-            // Ensure there is enough memory available for the distances.
+            // Ensure there is enough memory available for the bounds.
             // Throw an exception if not.
-            long memRequired = 8L * numCoords * numClusters;
+            long memRequired = 16L * numCoords;
             if (Runtime.getRuntime().freeMemory() < memRequired) {
                 throw new InsufficientMemoryException("Not enough memory for compute distances");
             }
-            // Instantiate an array to hold the distances between coordinates
-            // and cluster centers
-            mDistanceCache = new double[numCoords][numClusters];
+            mUpperBounds = new double[numCoords];
+            mLowerBounds = new double[numCoords];
+            mHalfMinSeparation = new double[numClusters];
         }
 
-        // Bulk of the work is delegated to the
-        // SubtaskManager.
-        mSubtaskManager.computeDistances();
+        // Unassigned coordinates (first pass, or after mini-batches) are
+        // compared against every center.
+        mMaxDrift = 0;
+        for (int c = 0; c < numClusters; c++) {
+            ProtoCluster cluster = mProtoClusters[c];
+            if (cluster.getConsiderForAssignment()) {
+                mMaxDrift = Math.max(mMaxDrift, cluster.getDrift());
+            }
+            mHalfMinSeparation[c] = Double.MAX_VALUE;
+        }
+        for (int c = 0; c < numClusters; c++) {
+            if (!mProtoClusters[c].getConsiderForAssignment()) continue;
+            for (int c2 = c + 1; c2 < numClusters; c2++) {
+                if (!mProtoClusters[c2].getConsiderForAssignment()) continue;
+                double halfDist = distance(mProtoClusters[c].getCenter(), mProtoClusters[c2].getCenter()) / 2;
+                mHalfMinSeparation[c] = Math.min(mHalfMinSeparation[c], halfDist);
+                mHalfMinSeparation[c2] = Math.min(mHalfMinSeparation[c2], halfDist);
+            }
+        }
     }
 
     /**
@@ -415,26 +607,6 @@ public class ConcurrentKMeans implements KMeans {
         return mSubtaskManager.numberOfMoves();
     }
 
-    /**
-     * Find the nearest cluster to the coordinate identified by
-     * the specified index.
-     */
-    private int nearestCluster(int ndx) {
-        int nearest = -1;
-        double min = Double.MAX_VALUE;
-        int numClusters = mProtoClusters.length;
-        for (int c = 0; c < numClusters; c++) {
-            if (mProtoClusters[c].getConsiderForAssignment()) {
-                double d = mDistanceCache[ndx][c];
-                if (d < min) {
-                    min = d;
-                    nearest = c;
-                }
-            }
-        }
-        return nearest;
-    }
-
     /**
      * Generate an array of Cluster objects from mProtoClusters.
      *
@@ -467,7 +639,9 @@ public class ConcurrentKMeans implements KMeans {
      */
     private void cleanup() {
         mProtoClusters = null;
-        mDistanceCache = null;
+        mUpperBounds = null;
+        mLowerBounds = null;
+        mHalfMinSeparation = null;
         mClusterAssignments = null;
         if (mSubtaskManager != null) {
             mSubtaskManager.shutdown();
@@ -491,6 +665,8 @@ public class ConcurrentKMeans implements KMeans {
 
         // The cluster center.
         private final double[] mCenter;
+        // Distance the center moved in its last update.
+        private double mDrift;
 
         // Born true, so the first call to updateDistances() will set all the
         // distances.
@@ -643,13 +819,15 @@ public class ConcurrentKMeans implements KMeans {
         /**
          * Update the cluster center.
          *
-         * @param coordinates the array of coordinates.
+         * @param coordinates the matrix of coordinates.
          */
-        void updateCenter(double[][] coordinates) {
+        void updateCenter(RowAccessMatrix coordinates) {
+            double[] previousCenter = mCenter.clone();
             Arrays.fill(mCenter, 0.0);
             if (mCurrentSize > 0) {
+                double[] rowBuffer = new double[mCenter.length];
                 for (int i = 0; i < mCurrentSize; i++) {
-                    double[] coord = coordinates[mCurrentMembership[i]];
+                    double[] coord = coordinates.getRow(mCurrentMembership[i], rowBuffer);
                     for (int j = 0; j < coord.length; j++) {
                         mCenter[j] += coord[j];
                     }
@@ -658,6 +836,31 @@ public class ConcurrentKMeans implements KMeans {
                     mCenter[i] /= mCurrentSize;
                 }
             }
+            mDrift = distance(previousCenter, mCenter);
+        }
+
+        /**
+         * Move the center part of the way toward a coordinate (mini-batch update).
+         *
+         * @param coord        the coordinate.
+         * @param learningRate fraction of the way to move.
+         */
+        void moveCenterTowards(double[] coord, double learningRate) {
+            double driftSquared = 0;
+            for (int j = 0; j < mCenter.length; j++) {
+                double step = learningRate * (coord[j] - mCenter[j]);
+                mCenter[j] += step;
+                driftSquared += step * step;
+            }
+            mDrift = Math.max(mDrift, Math.sqrt(driftSquared));
+        }
+
+        double getDrift() {
+            return mDrift;
+        }
+
+        void clearDrift() {
+            mDrift = 0;
         }
     }
 
@@ -668,11 +871,10 @@ public class ConcurrentKMeans implements KMeans {
 
         // Codes used to identify what step is being done.
         static final int DOING_NOTHING = 0;
-        static final int COMPUTING_DISTANCES = 1;
-        static final int MAKING_ASSIGNMENTS = 2;
+        static final int MAKING_ASSIGNMENTS = 1;
 
         // What the object is currently doing. Set to one of the
-        // three codes above.
+        // two codes above.
         private int mDoing = DOING_NOTHING;
 
         // True if the at least one of the Workers is doing something.
@@ -706,7 +908,7 @@ public class ConcurrentKMeans implements KMeans {
                         + numThreads);
             }
 
-            int coordCount = mCoordinates.length;
+            int coordCount = mCoordinates.getNumRows();
 
             // There would be no point in having more workers than
             // coordinates, since some of the workers would have nothing
@@ -784,17 +986,6 @@ public class ConcurrentKMeans implements KMeans {
             return work();
         }
 
-        /**
-         * Compute the distances between the coordinates and those centers with
-         * update flags.
-         *
-         * @return true if nothing went wrong.
-         */
-        boolean computeDistances() {
-            mDoing = COMPUTING_DISTANCES;
-            return work();
-        }
-
         /**
          * Perform the current subtask, waiting until all the workers
          * finish their part of the current task before returning.
@@ -891,6 +1082,18 @@ public class ConcurrentKMeans implements KMeans {
             return moves;
         }
 
+        /**
+         * Returns the number of distances computed in the previous call to
+         * makeAssignments().
+         */
+        long numberOfDistances() {
+            long distances = 0;
+            for (Worker mWorker : mWorkers) {
+                distances += mWorker.numberOfDistances();
+            }
+            return distances;
+        }
+
         /**
          * The class which does the hard work of the subtasks.
          */
@@ -904,6 +1107,11 @@ public class ConcurrentKMeans implements KMeans {
             // to workerMakeAssignments().  The SubtaskManager totals up
             // this value from all the workers in numberOfMoves().
             private int mMoves;
+            // Number of distances computed in the last call to workerMakeAssignments().
+            private long mDistances;
+
+            // Scratch space for reading coordinates from mCoordinates.
+            private final double[] mRowBuffer;
 
             /**
              * Constructor
@@ -915,6 +1123,7 @@ public class ConcurrentKMeans implements KMeans {
             Worker(int startCoord, int numCoords) {
                 mStartCoord = startCoord;
                 mNumCoords = numCoords;
+                mRowBuffer = new double[mCoordinates.getNumColumns()];
             }
 
             /**
@@ -925,6 +1134,10 @@ public class ConcurrentKMeans implements KMeans {
                 return mMoves;
             }
 
+            long numberOfDistances() {
+                return mDistances;
+            }
+
             /**
              * The run method.  It accesses the SubtaskManager field mDoing
              * to determine what subtask to perform.
@@ -933,9 +1146,6 @@ public class ConcurrentKMeans implements KMeans {
 
                 try {
                     switch (mDoing) {
-                        case COMPUTING_DISTANCES:
-                            workerComputeDistances();
-                            break;
                         case MAKING_ASSIGNMENTS:
                             workerMakeAssignments();
                             break;
@@ -958,36 +1168,70 @@ public class ConcurrentKMeans implements KMeans {
             }
 
             /**
-             * Compute the distances for the covered coordinates
-             * to the updated centers.
+             * Assign each covered coordinate to the nearest cluster.  The bounds
+             * are first shifted by how far the centers moved; a coordinate stays in
+             * its cluster without computing distances when its upper bound is within
+             * half the separation of its center or within its lower bound.
              */
-            private void workerComputeDistances() {
+            private void workerMakeAssignments() {
+                mMoves = 0;
+                mDistances = 0;
                 int lim = mStartCoord + mNumCoords;
                 for (int i = mStartCoord; i < lim; i++) {
-                    int numClusters = mProtoClusters.length;
-                    for (int c = 0; c < numClusters; c++) {
-                        ConcurrentKMeans.ProtoCluster cluster = mProtoClusters[c];
-                        if (cluster.getConsiderForAssignment() && cluster.needsUpdate()) {
-                            mDistanceCache[i][c] = distance(mCoordinates[i], cluster.getCenter());
+                    int c = mClusterAssignments[i];
+                    double[] coord = null;
+                    if (c >= 0) {
+                        mUpperBounds[i] += mProtoClusters[c].getDrift();
+                        mLowerBounds[i] -= mMaxDrift;
+                        double bound = Math.max(mHalfMinSeparation[c], mLowerBounds[i]);
+                        if (mUpperBounds[i] > bound) {
+                            // Tighten the upper bound and test again.
+                            coord = mCoordinates.getRow(i, mRowBuffer);
+                            mUpperBounds[i] = distance(coord, mProtoClusters[c].getCenter());
+                            mDistances++;
+                            if (mUpperBounds[i] > bound) {
+                                c = -1;
+                            }
+                        }
+                    }
+                    if (c < 0) {
+                        if (coord == null) {
+                            coord = mCoordinates.getRow(i, mRowBuffer);
                         }
+                        c = assignToNearest(i, coord);
+                    }
+                    mProtoClusters[c].add(i);
+                    if (mClusterAssignments[i] != c) {
+                        mClusterAssignments[i] = c;
+                        mMoves++;
                     }
                 }
             }
 
             /**
-             * Assign each covered coordinate to the nearest cluster.
+             * Compare the coordinate against every cluster in contention,
+             * resetting its bounds to the two smallest distances.
              */
-            private void workerMakeAssignments() {
-                mMoves = 0;
-                int lim = mStartCoord + mNumCoords;
-                for (int i = mStartCoord; i < lim; i++) {
-                    int c = nearestCluster(i);
-                    mProtoClusters[c].add(i);
-                    if (mClusterAssignments[i] != c) {
-                        mClusterAssignments[i] = c;
-                        mMoves++;
+            private int assignToNearest(int i, double[] coord) {
+                int nearest = -1;
+                double min = Double.MAX_VALUE, secondMin = Double.MAX_VALUE;
+                int numClusters = mProtoClusters.length;
+                for (int c = 0; c < numClusters; c++) {
+                    if (mProtoClusters[c].getConsiderForAssignment()) {
+                        double d = distance(coord, mProtoClusters[c].getCenter());
+                        mDistances++;
+                        if (d < min) {
+                            secondMin = min;
+                            min = d;
+                            nearest = c;
+                        } else if (d < secondMin) {
+                            secondMin = d;
+                        }
                     }
                 }
+                mUpperBounds[i] = min;
+                mLowerBounds[i] = secondMin;
+                return nearest;
             }
 
         }
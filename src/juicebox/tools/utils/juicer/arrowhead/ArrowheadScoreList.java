@@ -24,10 +24,8 @@
 
 package juicebox.tools.utils.juicer.arrowhead;
 
-import juicebox.tools.utils.common.MatrixTools;
 import juicebox.track.feature.Feature2D;
 import juicebox.track.feature.Feature2DList;
-import org.apache.commons.math.linear.RealMatrix;
 import org.broad.igv.feature.Chromosome;
 
 import java.util.ArrayList;
@@ -62,17 +60,21 @@ public class ArrowheadScoreList {
         return copy;
     }
 
-    public ArrowheadScoreList updateActiveIndexScores(RealMatrix blockScore, int limStart, int limEnd) {
-
-        setActiveListElements(limStart, limEnd);
+    /**
+     * Scores the list elements fully contained in the window; the list itself is not modified
+     * so that windows can be scored concurrently (scores are merged by max in mergeScores)
+     */
+    ArrowheadScoreList updateActiveIndexScores(MatrixTriangles triangles, int limStart, int limEnd) {
 
         ArrowheadScoreList scoredList = new ArrowheadScoreList(resolution);
 
         for (ArrowheadScore score : arrowheadScores) {
-            if (score.isActive) {
+            if (score.isWithin(limStart, limEnd, resolution)) {
                 int[] transformedIndices = scaleAndTranslateIndices(score.indices, resolution, limStart);
-                score.updateScore(MatrixTools.calculateMax(MatrixTools.getSubMatrix(blockScore, transformedIndices)));
-                scoredList.arrowheadScores.add(new ArrowheadScore(score));
+                ArrowheadScore activeScore = new ArrowheadScore(score);
+                activeScore.isActive = true;
+                activeScore.updateScore(triangles.calculateMaxScore(transformedIndices));
+                scoredList.arrowheadScores.add(activeScore);
             }
         }
 
@@ -87,18 +89,6 @@ public class ArrowheadScoreList {
         return transformedIndices;
     }
 
-    private void setActiveListElements(int limStart, int limEnd) {
-        for (ArrowheadScore score : arrowheadScores) {
-            score.isActive = false;
-        }
-
-        for (ArrowheadScore score : arrowheadScores) {
-            if (score.isWithin(limStart, limEnd, resolution)) {
-                score.isActive = true;
-            }
-        }
-    }
-
     public void addAll(ArrowheadScoreList arrowheadScoreList) {
         arrowheadScores.addAll(arrowheadScoreList.arrowheadScores);
     }
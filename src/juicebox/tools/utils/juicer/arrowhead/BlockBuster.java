@@ -35,6 +35,10 @@ import org.apache.commons.math.linear.RealMatrix;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Created by muhammadsaadshamim on 6/3/15.
@@ -56,7 +60,7 @@ public class BlockBuster {
     public static void run(int chrIndex, String chrName, int chrLength, int resolution, int matrixWidth, MatrixZoomData zd,
                            NormalizationType norm, ArrowheadScoreList list, ArrowheadScoreList control,
                            Feature2DList contactDomainsGenomeWide, Feature2DList contactDomainListScoresGenomeWide,
-                           Feature2DList contactDomainControlScoresGenomeWide) {
+                           Feature2DList contactDomainControlScoresGenomeWide, ExecutorService windowExecutor) {
 
         // used for sliding window across diagonal
         int increment = matrixWidth / 2;
@@ -67,7 +71,7 @@ public class BlockBuster {
             CumulativeBlockResults results = null;
             for (double signThreshold = maxLowSignThreshold; signThreshold >= minLowSignThreshold; signThreshold -= decrementLowSignThreshold) {
                 results = callSubBlockbuster(zd, maxDataLengthAtResolution, Double.NaN, signThreshold, matrixWidth,
-                        increment, list, control, norm, resolution);
+                        increment, list, control, norm, resolution, windowExecutor);
                 if (results.getCumulativeResults().size() > 0) {
                     break;
                 }
@@ -76,7 +80,7 @@ public class BlockBuster {
             // high variance threshold, fewer blocks, high confidence
             CumulativeBlockResults highConfidenceResults = callSubBlockbuster(zd, maxDataLengthAtResolution,
                     varThreshold, highSignThreshold, matrixWidth, increment, new ArrowheadScoreList(resolution),
-                    new ArrowheadScoreList(resolution), norm, resolution);
+                    new ArrowheadScoreList(resolution), norm, resolution, windowExecutor);
 
             List<HighScore> uniqueBlocks = orderedSetDifference(results.getCumulativeResults(),
                     highConfidenceResults.getCumulativeResults());
@@ -125,6 +129,7 @@ public class BlockBuster {
 
     /**
      * Runs blockbuster for a sliding window along the diagonal of the matrix
+     * The windows are processed concurrently on the given executor, but accumulated in diagonal order
      *
      * @param zd            - zoomData from hic file
      * @param chrLength
@@ -134,12 +139,16 @@ public class BlockBuster {
      * @param increment
      * @param list
      * @param control
+     * @param windowExecutor
      * @return contact domain results for given thresholds and parameters
      */
-    private static CumulativeBlockResults callSubBlockbuster(MatrixZoomData zd, int chrLength, double varThreshold,
-                                                             double signThreshold, int matrixWidth, int increment,
-                                                             ArrowheadScoreList list, ArrowheadScoreList control,
-                                                             NormalizationType norm, int resolution) throws IOException {
+    private static CumulativeBlockResults callSubBlockbuster(final MatrixZoomData zd, final int chrLength,
+                                                             final double varThreshold, final double signThreshold,
+                                                             final int matrixWidth, int increment,
+                                                             final ArrowheadScoreList list,
+                                                             final ArrowheadScoreList control,
+                                                             final NormalizationType norm, int resolution,
+                                                             ExecutorService windowExecutor) throws IOException {
 
         // container for results
         CumulativeBlockResults cumulativeBlockResults = new CumulativeBlockResults(resolution);
@@ -148,6 +157,7 @@ public class BlockBuster {
         }
 
         // slide across chromosome diagonal
+        List<Future<BlockResults>> windowResults = new ArrayList<>();
         for (int limStart = 0; limStart < chrLength; limStart += increment) {
             // appropriate boundaries of window
             int adjustedLimStart = limStart;
@@ -157,6 +167,71 @@ public class BlockBuster {
                     adjustedLimStart = limEnd - matrixWidth;
                 }
             }
+
+            windowResults.add(windowExecutor.submit(new BlockBusterWindow(zd, limStart, adjustedLimStart, limEnd,
+                    varThreshold, signThreshold, list, control, norm)));
+        }
+
+        try {
+            // accumulate results across the windows
+            for (Future<BlockResults> windowResult : windowResults) {
+                BlockResults results = windowResult.get();
+                if (HiCGlobals.printVerboseComments) {
+                    System.out.println("Found " + results.getResults().size() + " blocks");
+                }
+                cumulativeBlockResults.add(results);
+            }
+        } catch (InterruptedException e) {
+            cancelWindows(windowResults);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calling blocks", e);
+        } catch (ExecutionException e) {
+            cancelWindows(windowResults);
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+
+        if (HiCGlobals.printVerboseComments) {
+            System.out.println(".");
+        }
+        return cumulativeBlockResults;
+    }
+
+    private static void cancelWindows(List<Future<BlockResults>> windowResults) {
+        for (Future<BlockResults> windowResult : windowResults) {
+            windowResult.cancel(true);
+        }
+    }
+
+    /**
+     * Contact domains for a single window along the diagonal
+     */
+    private static class BlockBusterWindow implements Callable<BlockResults> {
+
+        private final MatrixZoomData zd;
+        private final int limStart, adjustedLimStart, limEnd;
+        private final double varThreshold, signThreshold;
+        private final ArrowheadScoreList list, control;
+        private final NormalizationType norm;
+
+        BlockBusterWindow(MatrixZoomData zd, int limStart, int adjustedLimStart, int limEnd, double varThreshold,
+                          double signThreshold, ArrowheadScoreList list, ArrowheadScoreList control,
+                          NormalizationType norm) {
+            this.zd = zd;
+            this.limStart = limStart;
+            this.adjustedLimStart = adjustedLimStart;
+            this.limEnd = limEnd;
+            this.varThreshold = varThreshold;
+            this.signThreshold = signThreshold;
+            this.list = list;
+            this.control = control;
+            this.norm = norm;
+        }
+
+        @Override
+        public BlockResults call() throws IOException {
             if (HiCGlobals.printVerboseComments) {
                 System.out.println("Reading " + limStart + ":" + limEnd);
             }
@@ -170,21 +245,9 @@ public class BlockBuster {
             BlockResults results = new BlockResults(observed, varThreshold, signThreshold, list, control,
                     adjustedLimStart, limEnd);
 
-            if (HiCGlobals.printVerboseComments) {
-                System.out.println("Found " + results.getResults().size() + " blocks");
-            }
-
-            // accumulate results across the windows
             results.offsetResultsIndex(limStart); // +1? because genome index should start at 1 not 0?
-            cumulativeBlockResults.add(results);
-            if (HiCGlobals.printVerboseComments) {
-                System.out.print(".");
-            }
+            return results;
         }
-        if (HiCGlobals.printVerboseComments) {
-            System.out.println(".");
-        }
-        return cumulativeBlockResults;
     }
 
     /**
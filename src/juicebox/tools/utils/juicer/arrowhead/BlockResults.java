@@ -24,14 +24,10 @@
 
 package juicebox.tools.utils.juicer.arrowhead;
 
-import com.google.common.collect.Lists;
-import com.google.common.primitives.Doubles;
-import juicebox.tools.utils.common.MatrixTools;
 import org.apache.commons.math.linear.RealMatrix;
 
 import java.awt.*;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -50,10 +46,10 @@ class BlockResults {
         int n = Math.min(observed.getRowDimension(), observed.getColumnDimension());
         int gap = 7;
 
-        RealMatrix dUpstream = calculateDirectionalityIndexUpstream(observed, n, gap);
-        MatrixTriangles triangles = new MatrixTriangles(dUpstream);
+        BlockScoreBuffers buffers = BlockScoreBuffers.forCurrentThread(n);
+        calculateDirectionalityIndexUpstream(observed, buffers.matrix, n, gap);
+        MatrixTriangles triangles = new MatrixTriangles(buffers);
 
-        triangles.generateBlockScoreCalculations();
         internalList = triangles.updateScoresUsingList(list, limStart, limEnd);
         internalControl = triangles.updateScoresUsingList(control, limStart, limEnd);
         triangles.thresholdScoreValues(varThreshold, signThreshold);
@@ -69,13 +65,11 @@ class BlockResults {
      * calculate D upstream, directionality index upstream
      *
      * @param observed
+     * @param dUpstream zeroed n x n row-major buffer
      * @param n
      * @param gap
-     * @return dUpstream
      */
-    private RealMatrix calculateDirectionalityIndexUpstream(RealMatrix observed, int n, int gap) {
-
-        RealMatrix dUpstream = MatrixTools.cleanArray2DMatrix(n);
+    private void calculateDirectionalityIndexUpstream(RealMatrix observed, double[] dUpstream, int n, int gap) {
 
         for (int i = 0; i < n; i++) {
             // choose smaller window of two: from 0 to (i-gap) or from (i+gap) to n
@@ -83,25 +77,15 @@ class BlockResults {
             window = Math.min(window, n);
 
             if (window >= gap) {
-                double[] row = observed.getRow(i);
-
                 // in MATLAB second index inclusive, but for java need +1
-                double[] A = Doubles.toArray(Lists.reverse(Doubles.asList(Arrays.copyOfRange(row, i - window, i - gap + 1))));
-                double[] B = Arrays.copyOfRange(row, i + gap, i + window + 1);
-
-                double[] preference = new double[A.length];
-                for (int j = 0; j < A.length; j++) {
-                    preference[j] = (A[j] - B[j]) / (A[j] + B[j]);
-                }
-
-                int index = 0;
-                for (int j = i + gap; j < i + window + 1; j++) {
-                    dUpstream.setEntry(i, j, preference[index]);
-                    index++;
+                // A runs backwards from (i-gap) and B runs forwards from (i+gap)
+                for (int k = 0; k <= window - gap; k++) {
+                    double a = observed.getEntry(i, i - gap - k);
+                    double b = observed.getEntry(i, i + gap + k);
+                    dUpstream[i * n + i + gap + k] = (a - b) / (a + b);
                 }
             }
         }
-        return dUpstream;
     }
 
     /**
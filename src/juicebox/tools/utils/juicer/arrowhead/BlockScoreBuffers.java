@@ -0,0 +1,99 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.tools.utils.juicer.arrowhead;
+
+import java.util.Arrays;
+
+/**
+ * Primitive n x n (row-major) work buffers for one Arrowhead window.
+ * <p/>
+ * A thread keeps a single instance and reuses it for every window it processes, so the
+ * dynamic programming tables are no longer reallocated per window.
+ * <p/>
+ * The "right" (column) cumulative sums are only defined on/above the diagonal and the "upper" (row)
+ * cumulative sums are only needed on/above the diagonal as well, so both are packed into one table:
+ * right(i,j) is stored at [i][j] and upper(i,j) at [j][i].  The same packing is used for the up/lo
+ * sign and variance tables.
+ */
+class BlockScoreBuffers {
+
+    private static final ThreadLocal<BlockScoreBuffers> buffersForThread = new ThreadLocal<BlockScoreBuffers>() {
+        @Override
+        protected BlockScoreBuffers initialValue() {
+            return new BlockScoreBuffers();
+        }
+    };
+
+    int n = 0;
+    // directionality index, later overwritten with the block scores
+    double[] matrix = new double[0];
+    // packed right/upper cumulative sums of the values, signs and squared values
+    double[] cumulativeSum = new double[0];
+    double[] cumulativeSign = new double[0];
+    double[] cumulativeSquared = new double[0];
+    // packed up/lo mean signs and variances
+    double[] sign = new double[0];
+    double[] var = new double[0];
+
+    /**
+     * @return buffers owned by the calling thread, sized for an n x n window with the first matrix zeroed
+     */
+    static BlockScoreBuffers forCurrentThread(int n) {
+        BlockScoreBuffers buffers = buffersForThread.get();
+        buffers.resize(n);
+        return buffers;
+    }
+
+    private void resize(int n) {
+        this.n = n;
+        int length = n * n;
+        if (matrix.length < length) {
+            matrix = new double[length];
+            cumulativeSum = new double[length];
+            cumulativeSign = new double[length];
+            cumulativeSquared = new double[length];
+            sign = new double[length];
+            var = new double[length];
+        } else {
+            Arrays.fill(matrix, 0, length, 0);
+        }
+    }
+
+    double getUpSign(int i, int j) {
+        return i < j ? sign[i * n + j] : 0;
+    }
+
+    double getLoSign(int i, int j) {
+        return i < j ? sign[j * n + i] : 0;
+    }
+
+    double getUpVar(int i, int j) {
+        return i < j ? var[i * n + j] : 0;
+    }
+
+    double getLoVar(int i, int j) {
+        return i < j ? var[j * n + i] : 0;
+    }
+}
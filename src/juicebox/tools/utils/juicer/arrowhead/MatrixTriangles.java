@@ -24,9 +24,7 @@
 
 package juicebox.tools.utils.juicer.arrowhead;
 
-import juicebox.tools.utils.common.MatrixTools;
 import juicebox.tools.utils.juicer.arrowhead.connectedcomponents.BinaryConnectedComponents;
-import org.apache.commons.math.linear.RealMatrix;
 
 import java.awt.*;
 import java.util.ArrayList;
@@ -38,45 +36,29 @@ import java.util.Set;
  */
 class MatrixTriangles {
 
-    private boolean initialMatricesNotGenerated = true;
-    private boolean blockScoresNotCalculated = true;
+    private final BlockScoreBuffers buffers;
+    private final int n;
     private boolean blockScoresNotThresholded = true;
 
-
-    private RealMatrix up;
-    private RealMatrix upSign;
-    private RealMatrix upSquared;
-    private RealMatrix lo;
-    private RealMatrix loSign;
-    private RealMatrix loSquared;
-
-    private RealMatrix upVar;
-    private RealMatrix loVar;
-    private RealMatrix blockScore;
-
     /**
      * calculate Bnew, the block score matrix. it's a combination of 3 matrices
+     * <p/>
+     * All intermediate values live in the (reused) primitive buffers; the directionality index
+     * must already be in buffers.matrix and is overwritten with the block scores.
      *
-     * @param matrix
+     * @param buffers
      */
-    public MatrixTriangles(RealMatrix matrix) {
-        int n = Math.min(matrix.getRowDimension(), matrix.getColumnDimension());
-        up = MatrixTools.cleanArray2DMatrix(n);
-        upSign = MatrixTools.cleanArray2DMatrix(n);
-        upSquared = MatrixTools.cleanArray2DMatrix(n);
-        lo = MatrixTools.cleanArray2DMatrix(n);
-        loSign = MatrixTools.cleanArray2DMatrix(n);
-        loSquared = MatrixTools.cleanArray2DMatrix(n);
-
-        MatrixTools.setNaNs(matrix, 0);
-
-        //int window= matrix.getRowDimension(); // TODO What? -> "not using this because it messed things up"
-        RealMatrix matrixElementwiseSquared = MatrixTools.elementBasedMultiplication(matrix, matrix);
-        RealMatrix signMatrix = MatrixTools.sign(matrix);
-        RealMatrix onesMatrix = MatrixTools.ones(n);
-
-        //System.out.println("msign "+ matrix.getNorm());
-        //System.out.println("sign " + signMatrix.getNorm());
+    public MatrixTriangles(BlockScoreBuffers buffers) {
+        this.buffers = buffers;
+        this.n = buffers.n;
+
+        double[] matrix = buffers.matrix;
+        int length = n * n;
+        for (int k = 0; k < length; k++) {
+            if (Double.isNaN(matrix[k])) {
+                matrix[k] = 0;
+            }
+        }
 
         // Matrices used as dynamic programming lookups.
         // "R" matrices are sums of the columns up to that point: R(1,5) is sum of
@@ -84,76 +66,147 @@ class MatrixTriangles {
         // "U" matrices are sums of the rows up to the point: U(1,5) is sum of row 5
         // from diagonal (col 1) up to col 5
         // We want mean, mean of sign, and variance, so we are doing the sum then
-        // dividing by counts
-        RealMatrix rSum = DynamicProgrammingUtils.right(matrix, n);
-        RealMatrix rSign = DynamicProgrammingUtils.right(signMatrix, n);
-        RealMatrix rSquared = DynamicProgrammingUtils.right(matrixElementwiseSquared, n);
-        RealMatrix rCount = DynamicProgrammingUtils.right(onesMatrix, n);
+        // dividing by counts (the counts are just the number of entries summed)
+        fillCumulativeSums();
+        calculateBlockScores();
+    }
 
-        RealMatrix uSum = DynamicProgrammingUtils.upper(matrix, n);
-        RealMatrix uSign = DynamicProgrammingUtils.upper(signMatrix, n);
-        RealMatrix uSquared = DynamicProgrammingUtils.upper(matrixElementwiseSquared, n);
-        RealMatrix uCount = DynamicProgrammingUtils.upper(onesMatrix, n);
+    private static double sign(double val) {
+        if (val > 0) {
+            return 1;
+        } else if (val < 0) {
+            return -1;
+        }
+        return 0;
+    }
 
-        RealMatrix upCount = MatrixTools.cleanArray2DMatrix(n);
-        RealMatrix loCount = MatrixTools.cleanArray2DMatrix(n);
+    /**
+     * R(i,j) is stored at [i][j] and U(i,j) at [j][i]; both equal the original value on the diagonal
+     */
+    private void fillCumulativeSums() {
+        double[] matrix = buffers.matrix;
+        double[] sum = buffers.cumulativeSum;
+        double[] signSum = buffers.cumulativeSign;
+        double[] squaredSum = buffers.cumulativeSquared;
+
+        for (int d = 0; d < n; d++) {
+            int diag = d * n + d;
+            double val = matrix[diag];
+            sum[diag] = val;
+            signSum[diag] = sign(val);
+            squaredSum[diag] = val * val;
+        }
 
-        // Upper triangle
-        for (int i = 0; i < n; i++) {
-            for (int j = i + 1; j < n; j++) {
-                int bottom = (int) Math.floor((j - i + 1) / 2);
-                // add half of column
-                up.setEntry(i, j, up.getEntry(i, j - 1) + rSum.getEntry(i, j) - rSum.getEntry(i + bottom, j));
-                upSign.setEntry(i, j, upSign.getEntry(i, j - 1) + rSign.getEntry(i, j) - rSign.getEntry(i + bottom, j));
-                upSquared.setEntry(i, j, upSquared.getEntry(i, j - 1) + rSquared.getEntry(i, j) - rSquared.getEntry(i + bottom, j));
-                upCount.setEntry(i, j, upCount.getEntry(i, j - 1) + rCount.getEntry(i, j) - rCount.getEntry(i + bottom, j));
+        // right - j is column, i is row, iterate up
+        for (int j = 1; j < n; j++) {
+            for (int i = j - 1; i >= 0; i--) {
+                int k = i * n + j;
+                int below = k + n;
+                double val = matrix[k];
+                sum[k] = val + sum[below];
+                signSum[k] = sign(val) + signSum[below];
+                squaredSum[k] = val * val + squaredSum[below];
             }
         }
 
-        // Normalize
-        MatrixTools.replaceValue(upCount, 0, 1);
-        up = MatrixTools.elementBasedDivision(up, upCount);
-        upSign = MatrixTools.elementBasedDivision(upSign, upCount);
-        upSquared = MatrixTools.elementBasedDivision(upSquared, upCount);
-
-        // Lower triangle
-        for (int a = 0; a < n; a++) {
-            for (int b = a + 1; b < n; b++) {
-                int val = (int) Math.floor((b - a + 1) / 2);
-                int endpt = Math.min(2 * b - a, n - 1);
-                loCount.setEntry(a, b, loCount.getEntry(a, b - 1) + uCount.getEntry(b, endpt) - rCount.getEntry(a + val, b));
-                lo.setEntry(a, b, lo.getEntry(a, b - 1) + uSum.getEntry(b, endpt) - rSum.getEntry(a + val, b));
-                loSign.setEntry(a, b, loSign.getEntry(a, b - 1) + uSign.getEntry(b, endpt) - rSign.getEntry(a + val, b));
-                loSquared.setEntry(a, b, loSquared.getEntry(a, b - 1) + uSquared.getEntry(b, endpt) - rSquared.getEntry(a + val, b));
+        // upper - i is row, j is column, iterate right
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                int k = j * n + i;
+                int left = k - n;
+                double val = matrix[i * n + j];
+                sum[k] = val + sum[left];
+                signSum[k] = sign(val) + signSum[left];
+                squaredSum[k] = val * val + squaredSum[left];
             }
         }
-
-        // Normalize
-        MatrixTools.replaceValue(loCount, 0, 1);
-        lo = MatrixTools.elementBasedDivision(lo, loCount);
-        loSign = MatrixTools.elementBasedDivision(loSign, loCount);
-        loSquared = MatrixTools.elementBasedDivision(loSquared, loCount);
-
-        initialMatricesNotGenerated = false;
     }
 
     /**
-     * Calculate block scores
+     * Upper and lower triangle means/variances are accumulated along each row,
+     * then combined into the block score once the normalizing maxima are known
      */
-    public void generateBlockScoreCalculations() {
-        if (initialMatricesNotGenerated) {
-            System.out.println("Initial matrices have not been generated");
-            System.exit(45);
+    private void calculateBlockScores() {
+        double[] matrix = buffers.matrix;
+        double[] sum = buffers.cumulativeSum;
+        double[] signSum = buffers.cumulativeSign;
+        double[] squaredSum = buffers.cumulativeSquared;
+        double[] signs = buffers.sign;
+        double[] vars = buffers.var;
+
+        // matrices are normalized by their max element, which includes the zeroes off the upper triangle
+        double maxDiff = 0, maxDiffSign = 0, maxDiffSquared = 0;
+
+        for (int i = 0; i < n; i++) {
+            int diag = i * n + i;
+            signs[diag] = 0;
+            vars[diag] = 0;
+
+            double up = 0, upSign = 0, upSquared = 0, upCount = 0;
+            double lo = 0, loSign = 0, loSquared = 0, loCount = 0;
+
+            for (int j = i + 1; j < n; j++) {
+                int bottom = (j - i + 1) / 2;
+                int endpt = Math.min(2 * j - i, n - 1);
+                int upperIndex = i * n + j;
+                int lowerIndex = j * n + i;
+                int rIndex = (i + bottom) * n + j;
+                int uIndex = endpt * n + j;
+
+                // Upper triangle - add half of column
+                up = up + sum[upperIndex] - sum[rIndex];
+                upSign = upSign + signSum[upperIndex] - signSum[rIndex];
+                upSquared = upSquared + squaredSum[upperIndex] - squaredSum[rIndex];
+                upCount = upCount + (j - i + 1) - (j - i - bottom + 1);
+
+                // Lower triangle
+                loCount = loCount + (endpt - j + 1) - (j - i - bottom + 1);
+                lo = lo + sum[uIndex] - sum[rIndex];
+                loSign = loSign + signSum[uIndex] - signSum[rIndex];
+                loSquared = loSquared + squaredSum[uIndex] - squaredSum[rIndex];
+
+                // Normalize
+                double upDenominator = upCount == 0 ? 1 : upCount;
+                double loDenominator = loCount == 0 ? 1 : loCount;
+                double upMean = up / upDenominator;
+                double loMean = lo / loDenominator;
+                double upSignMean = upSign / upDenominator;
+                double loSignMean = loSign / loDenominator;
+                double upVar = upSquared / upDenominator - upMean * upMean;
+                double loVar = loSquared / loDenominator - loMean * loMean;
+
+                signs[upperIndex] = upSignMean;
+                signs[lowerIndex] = loSignMean;
+                vars[upperIndex] = upVar;
+                vars[lowerIndex] = loVar;
+
+                double diff = loMean - upMean;
+                double diffSign = loSignMean - upSignMean;
+                double diffSquared = upVar + loVar;
+                matrix[upperIndex] = diff;
+                if (maxDiff < diff) maxDiff = diff;
+                if (maxDiffSign < diffSign) maxDiffSign = diffSign;
+                if (maxDiffSquared < diffSquared) maxDiffSquared = diffSquared;
+            }
         }
 
-        upVar = upSquared.subtract(MatrixTools.elementBasedMultiplication(up, up));
-        loVar = loSquared.subtract(MatrixTools.elementBasedMultiplication(lo, lo));
-        RealMatrix diff = MatrixTools.normalizeByMax(lo.subtract(up));
-        RealMatrix diffSign = MatrixTools.normalizeByMax(loSign.subtract(upSign));
-        RealMatrix diffSquared = MatrixTools.normalizeByMax((upVar).add(loVar));
-        blockScore = (diff.add(diffSign)).subtract(diffSquared);
+        double diffScale = 1 / maxDiff;
+        double diffSignScale = 1 / maxDiffSign;
+        double diffSquaredScale = 1 / maxDiffSquared;
+        double emptyScore = (0 * diffScale + 0 * diffSignScale) - 0 * diffSquaredScale;
 
-        blockScoresNotCalculated = false;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                int k = i * n + j;
+                if (i < j) {
+                    int lowerIndex = j * n + i;
+                    matrix[k] = (matrix[k] * diffScale + (signs[lowerIndex] - signs[k]) * diffSignScale)
+                            - (vars[k] + vars[lowerIndex]) * diffSquaredScale;
+                } else {
+                    matrix[k] = emptyScore;
+                }
+            }
+        }
     }
 
     /**
@@ -163,67 +216,48 @@ class MatrixTriangles {
      * @param signThreshold
      */
     public void thresholdScoreValues(double varThreshold, double signThreshold) {
-        if (blockScoresNotCalculated) {
-            System.out.println("Block scores not calculated");
-            System.exit(46);
-        }
-
-        signThresholdInternalValues(blockScore, upSign, loSign, signThreshold);
+        double[] blockScore = buffers.matrix;
+        boolean useVarThreshold = !Double.isNaN(varThreshold);
 
-        if (!Double.isNaN(varThreshold)) {
-            varThresholdInternalValues(blockScore, upVar.add(loVar), varThreshold);
+        // Threshold values in block score matrix, set extremes to zero
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if ((-buffers.getUpSign(i, j)) < signThreshold || buffers.getLoSign(i, j) < signThreshold) {
+                    blockScore[i * n + j] = 0;
+                }
+                if (useVarThreshold && buffers.getUpVar(i, j) + buffers.getLoVar(i, j) > varThreshold) {
+                    blockScore[i * n + j] = 0;
+                }
+            }
         }
         blockScoresNotThresholded = false;
     }
 
     /**
-     * Threshold values in block score matrix, set extremes to zero
+     * extract block scores from regions specified in the provided list
      *
-     * @param matrix
-     * @param thresholdSums
-     * @param threshold
+     * @return
      */
-    private void varThresholdInternalValues(RealMatrix matrix, RealMatrix thresholdSums, double threshold) {
-        for (int i = 0; i < matrix.getRowDimension(); i++) {
-            for (int j = 0; j < matrix.getColumnDimension(); j++) {
-                if (thresholdSums.getEntry(i, j) > threshold) {
-                    matrix.setEntry(i, j, 0);
-                }
-            }
-        }
+    public ArrowheadScoreList updateScoresUsingList(ArrowheadScoreList scoreList, int limStart, int limEnd) {
+        return scoreList.updateActiveIndexScores(this, limStart, limEnd);
     }
 
     /**
-     * Threshold sign values in block score matrix, set extremes at either end to zero
-     *
-     * @param matrix
-     * @param upSign
-     * @param loSign
-     * @param threshold
+     * @param indices row start, row end, column start, column end (inclusive)
+     * @return max block score within the region
      */
-    private void signThresholdInternalValues(RealMatrix matrix, RealMatrix upSign, RealMatrix loSign, double threshold) {
-        for (int i = 0; i < matrix.getRowDimension(); i++) {
-            for (int j = 0; j < matrix.getColumnDimension(); j++) {
-                //System.out.println(upSign.getEntry(i, j)+" "+loSign.getEntry(i, j)+" "+threshold);
-                if ((-upSign.getEntry(i, j)) < threshold || loSign.getEntry(i, j) < threshold) {
-                    matrix.setEntry(i, j, 0);
+    double calculateMaxScore(int[] indices) {
+        double[] blockScore = buffers.matrix;
+        double max = blockScore[indices[0] * n + indices[2]];
+        for (int i = indices[0]; i <= indices[1]; i++) {
+            for (int j = indices[2]; j <= indices[3]; j++) {
+                double val = blockScore[i * n + j];
+                if (max < val) {
+                    max = val;
                 }
             }
         }
-    }
-
-    /**
-     * extract block scores from regions specified in the provided list
-     *
-     * @return
-     */
-    public ArrowheadScoreList updateScoresUsingList(ArrowheadScoreList scoreList, int limStart, int limEnd) {
-        if (blockScoresNotCalculated) {
-            System.out.println("Block scores not calculated");
-            System.exit(47);
-        }
-
-        return scoreList.updateActiveIndexScores(blockScore, limStart, limEnd);
+        return max;
     }
 
     public List<Set<Point>> extractConnectedComponents() {
@@ -232,19 +266,17 @@ class MatrixTriangles {
             System.exit(48);
         }
 
-        //System.out.println("Norm "+blockScore.getNorm());
-
-        return BinaryConnectedComponents.detection(blockScore.getData(), 0);
+        return BinaryConnectedComponents.detection(buffers.matrix, n, n, 0);
     }
 
     public List<HighScore> calculateResults(List<Set<Point>> connectedComponents) {
         /*  for each connected component, get result for highest scoring point  */
         ArrayList<HighScore> results = new ArrayList<>();
         for (Set<Point> connectedComponent : connectedComponents) {
-            Point score = getHighestScoringPoint(blockScore, connectedComponent);
+            Point score = getHighestScoringPoint(connectedComponent);
             int i = score.x, j = score.y;
-            results.add(new HighScore(i, j, blockScore.getEntry(i, j), upVar.getEntry(i, j), loVar.getEntry(i, j),
-                    -upSign.getEntry(i, j), loSign.getEntry(i, j)));
+            results.add(new HighScore(i, j, buffers.matrix[i * n + j], buffers.getUpVar(i, j), buffers.getLoVar(i, j),
+                    -buffers.getUpSign(i, j), buffers.getLoSign(i, j)));
         }
         return results;
     }
@@ -252,16 +284,16 @@ class MatrixTriangles {
     /**
      * Find the point within the connected component with the highest block score
      *
-     * @param blockScore
      * @param component
      * @return scorePoint
      */
-    private Point getHighestScoringPoint(RealMatrix blockScore, Set<Point> component) {
+    private Point getHighestScoringPoint(Set<Point> component) {
+        double[] blockScore = buffers.matrix;
         Point scorePoint = component.iterator().next();
-        double highestScore = blockScore.getEntry(scorePoint.x, scorePoint.y);
+        double highestScore = blockScore[scorePoint.x * n + scorePoint.y];
 
         for (Point point : component) {
-            double score = blockScore.getEntry(point.x, point.y);
+            double score = blockScore[point.x * n + point.y];
             if (score > highestScore) {
                 highestScore = score;
                 scorePoint = new Point(point);
@@ -270,6 +302,3 @@ class MatrixTriangles {
         return new Point(scorePoint);
     }
 }
-
-
-
@@ -35,24 +35,21 @@ import java.util.concurrent.LinkedBlockingQueue;
  */
 public class BinaryConnectedComponents {
 
-    // unique labels for components, start at 0
-    private static Integer nextLabel = 0;
-
     /**
      * @param image
      * @param threshold
      * @return list of connected components in image
      */
-    public synchronized static List<Set<Point>> detection(double[][] image, double threshold) {
+    public static List<Set<Point>> detection(double[][] image, double threshold) {
         int r = image.length;
         int c = image[0].length;
 
         // pixel label matrix
         int[][] labels = new int[r][c];
 
+        // unique labels for components are the positions in this list, start at 1
         List<IndexNode> indices = new ArrayList<>();
         indices.add(new IndexNode(-1));
-        nextLabel = 1;
 
         // 1st pass
         for (int i = 0; i < r; i++) {
@@ -65,6 +62,33 @@ public class BinaryConnectedComponents {
         return processLabeledIndices(indices);
     }
 
+    /**
+     * @param image     row-major r x c image
+     * @param r
+     * @param c
+     * @param threshold
+     * @return list of connected components in image
+     */
+    public static List<Set<Point>> detection(double[] image, int r, int c, double threshold) {
+
+        // pixel label matrix
+        int[][] labels = new int[r][c];
+
+        // unique labels for components are the positions in this list, start at 1
+        List<IndexNode> indices = new ArrayList<>();
+        indices.add(new IndexNode(-1));
+
+        // 1st pass
+        for (int i = 0; i < r; i++) {
+            for (int j = 0; j < c; j++) {
+                if (image[i * c + j] > threshold) {
+                    processNeighbors(labels, indices, i, j, Math.max(i - 1, 0), Math.min(i + 1, r - 1), Math.max(j - 1, 0), Math.min(j + 1, c - 1));
+                }
+            }
+        }
+        return processLabeledIndices(indices);
+    }
+
     /**
      * 2nd pass of algorithm
      *
@@ -73,7 +97,7 @@ public class BinaryConnectedComponents {
      */
     private static List<Set<Point>> processLabeledIndices(List<IndexNode> indices) {
         List<Set<Point>> components = new ArrayList<>();
-        for (int i = 1; i < nextLabel; i++) {
+        for (int i = 1; i < indices.size(); i++) {
             IndexNode current = indices.get(i);
             if (current.hasNotBeenIndexed()) {
                 Queue<IndexNode> queue = new LinkedBlockingQueue<>();
@@ -124,9 +148,8 @@ public class BinaryConnectedComponents {
             lowestLabel = Collections.min(new ArrayList<>(allPosVals));
 
         if (lowestLabel <= 0) {
-            lowestLabel = nextLabel;
+            lowestLabel = indices.size();
             indices.add(new IndexNode(lowestLabel));
-            nextLabel++;
         }
 
         labels[i][j] = lowestLabel;
@@ -29,6 +29,8 @@ import juicebox.tools.utils.common.ArrayTools;
 import juicebox.track.feature.Feature2D;
 import juicebox.track.feature.Feature2DList;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -103,7 +105,7 @@ public class GPUOutputContainer {
         }
     }
 
-    public synchronized void updateHistograms(long[][] histBL, long[][] histDonut, long[][] histH, long[][] histV, int maxRows, int maxColumns) {
+    public void updateHistograms(long[][] histBL, long[][] histDonut, long[][] histH, long[][] histV, int maxRows, int maxColumns) {
         for (int i = 0; i < numRows; i++) {
             for (int j = 0; j < numColumns; j++) {
 
@@ -211,6 +213,61 @@ public class GPUOutputContainer {
         return peaks;
     }
 
+    /**
+     * Write the pixels extractPeaks could report for some set of thresholds, so peaks can be called later
+     * without recomputing the region. Call after cleanUpBinNans and cleanUpBinDiagonal.
+     * <p/>
+     * Format: number of pixels, then for each pixel its row and column in the region (unsigned shorts),
+     * observed, the four expected values (floats) and the four bins (bytes)
+     */
+    public void writeCandidates(DataOutputStream out, int w1, int w2) throws IOException {
+        int numCandidates = 0;
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < numColumns; j++) {
+                if (isCandidate(i, j, w1, w2)) {
+                    numCandidates++;
+                }
+            }
+        }
+
+        out.writeInt(numCandidates);
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < numColumns; j++) {
+                if (isCandidate(i, j, w1, w2)) {
+                    out.writeShort(i);
+                    out.writeShort(j);
+                    out.writeFloat(observed[i][j]);
+                    out.writeFloat(expectedBL[i][j]);
+                    out.writeFloat(expectedDonut[i][j]);
+                    out.writeFloat(expectedH[i][j]);
+                    out.writeFloat(expectedV[i][j]);
+                    out.writeByte((int) binBL[i][j]);
+                    out.writeByte((int) binDonut[i][j]);
+                    out.writeByte((int) binH[i][j]);
+                    out.writeByte((int) binV[i][j]);
+                }
+            }
+        }
+    }
+
+    private boolean isCandidate(int i, int j, int w1, int w2) {
+        float observedVal = observed[i][j];
+        // thresholds are never negative, so a peak needs at least one contact
+        if (Float.isNaN(observedVal) || observedVal < 1 || observedVal >= w2) {
+            return false;
+        }
+        if (Float.isNaN(expectedBL[i][j]) || Float.isNaN(expectedDonut[i][j]) ||
+                Float.isNaN(expectedH[i][j]) || Float.isNaN(expectedV[i][j])) {
+            return false;
+        }
+        return isValidBin(binBL[i][j], w1) && isValidBin(binDonut[i][j], w1) &&
+                isValidBin(binH[i][j], w1) && isValidBin(binV[i][j], w1);
+    }
+
+    private boolean isValidBin(float bin, int w1) {
+        return !Float.isNaN(bin) && bin >= 0 && bin < w1;
+    }
+
     public Feature2DList extractPeaksListGiven(int chrIndex, String chrName, int w1, int w2,
                                                int rowOffset, int columnOffset, int resolution, List<Feature2D> inputListFoundFeatures) {
 
@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.tools.utils.juicer.hiccups;
+
+import juicebox.track.feature.Feature2D;
+import juicebox.track.feature.Feature2DList;
+import org.broad.igv.feature.Chromosome;
+
+import java.io.*;
+
+/**
+ * Candidate pixels of every region, spilled to a temporary file during the histogram pass so that
+ * peaks can be called once the thresholds are known, without a second pass over the matrix.
+ */
+public class HiCCUPSCandidateFile {
+
+    private final File file;
+    private final DataOutputStream out;
+
+    public HiCCUPSCandidateFile(File directory) throws IOException {
+        file = File.createTempFile("hiccups_candidates", ".bin", directory);
+        file.deleteOnExit();
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 20));
+    }
+
+    /**
+     * Save the candidates of a region; bins must already be cleaned up for NaNs and the diagonal
+     */
+    public synchronized void write(Chromosome chromosome, int rowOffset, int columnOffset, GPUOutputContainer gpuOutputs,
+                                   int w1, int w2) throws IOException {
+        out.writeInt(chromosome.getIndex());
+        out.writeUTF(chromosome.getName());
+        out.writeInt(rowOffset);
+        out.writeInt(columnOffset);
+        gpuOutputs.writeCandidates(out, w1, w2);
+    }
+
+    /**
+     * Same peaks as GPUOutputContainer.extractPeaks followed by calculateFDR, for the final thresholds.
+     * The file is deleted afterwards.
+     */
+    public Feature2DList extractPeaks(int resolution, float[] thresholdBL, float[] thresholdDonut,
+                                      float[] thresholdH, float[] thresholdV,
+                                      float[][] fdrLogBL, float[][] fdrLogDonut, float[][] fdrLogH, float[][] fdrLogV)
+            throws IOException {
+        synchronized (this) {
+            out.close();
+        }
+
+        Feature2DList peaks = new Feature2DList();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 20))) {
+            while (true) {
+                int chrIndex;
+                try {
+                    chrIndex = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                String chrName = in.readUTF();
+                int rowOffset = in.readInt();
+                int columnOffset = in.readInt();
+                int numCandidates = in.readInt();
+
+                for (int k = 0; k < numCandidates; k++) {
+                    int i = in.readUnsignedShort();
+                    int j = in.readUnsignedShort();
+                    float observedVal = in.readFloat();
+                    float expectedBLVal = in.readFloat();
+                    float expectedDonutVal = in.readFloat();
+                    float expectedHVal = in.readFloat();
+                    float expectedVVal = in.readFloat();
+                    int binBL = in.readByte();
+                    int binDonut = in.readByte();
+                    int binH = in.readByte();
+                    int binV = in.readByte();
+
+                    float threshold = Math.max(thresholdBL[binBL], thresholdDonut[binDonut]);
+                    threshold = Math.max(threshold, thresholdH[binH]);
+                    threshold = Math.max(threshold, thresholdV[binV]);
+                    float peakVal = observedVal - threshold;
+                    if (peakVal <= 0) {
+                        continue;
+                    }
+
+                    int rowPos = (i + rowOffset) * resolution;
+                    int colPos = (j + columnOffset) * resolution;
+                    Feature2D peak = HiCCUPSUtils.generatePeak(chrName, observedVal, peakVal,
+                            rowPos, colPos, expectedBLVal, expectedDonutVal, expectedHVal, expectedVVal,
+                            binBL, binDonut, binH, binV, resolution);
+                    HiCCUPSUtils.calculateFDR(peak, fdrLogBL, fdrLogDonut, fdrLogH, fdrLogV);
+                    peaks.add(chrIndex, chrIndex, peak);
+                }
+            }
+        } finally {
+            if (!file.delete() && file.exists()) {
+                System.err.println("Unable to delete " + file.getAbsolutePath());
+            }
+        }
+        return peaks;
+    }
+}
@@ -33,6 +33,7 @@ import juicebox.tools.clt.juicer.HiCCUPS;
 import juicebox.tools.utils.common.ArrayTools;
 import juicebox.track.feature.Feature2D;
 import juicebox.track.feature.Feature2DList;
+import juicebox.track.feature.Feature2DSpatialIndex;
 import juicebox.track.feature.Feature2DTools;
 import juicebox.track.feature.FeatureFilter;
 import juicebox.windowui.NormalizationType;
@@ -107,6 +108,21 @@ public class HiCCUPSUtils {
         return new Feature2D(Feature2D.FeatureType.PEAK, chrName, pos1, pos1 + resolution, chrName, pos2, pos2 + resolution, Color.black, attributes);
     }
 
+    /**
+     * Recalculate the peak value of a pixel for the given thresholds; pixels with no peak value (NaN) are unchanged
+     */
+    public static void updatePeak(Feature2D feature, float[] thresholdBL, float[] thresholdDonut,
+                                  float[] thresholdH, float[] thresholdV) {
+        if (Float.isNaN(feature.getFloatAttribute(PEAK))) return;
+
+        float observed = feature.getFloatAttribute(OBSERVED);
+        float threshold = Math.max(thresholdBL[(int) feature.getFloatAttribute(BINBL)],
+                thresholdDonut[(int) feature.getFloatAttribute(BINDONUT)]);
+        threshold = Math.max(threshold, thresholdH[(int) feature.getFloatAttribute(BINH)]);
+        threshold = Math.max(threshold, thresholdV[(int) feature.getFloatAttribute(BINV)]);
+        feature.setAttribute(PEAK, String.valueOf(observed - threshold));
+    }
+
     /**
      * Calculate fdr values for a given peak
      */
@@ -141,7 +157,7 @@ public class HiCCUPSUtils {
         if (HiCGlobals.printVerboseComments) {
             System.out.println("Initial: " + list.getNumTotalFeatures());
         }
-        list.filterLists(new FeatureFilter() {
+        list.filterListsInParallel(new FeatureFilter() {
             @Override
             public List<Feature2D> filter(String chr, List<Feature2D> feature2DList) {
                 try {
@@ -158,7 +174,7 @@ public class HiCCUPSUtils {
     }
 
     private static void coalesceFeaturesToCentroid(Feature2DList list, final int resolution, final int centroidRadius) {
-        list.filterLists(new FeatureFilter() {
+        list.filterListsInParallel(new FeatureFilter() {
             @Override
             public List<Feature2D> filter(String chr, List<Feature2D> feature2DList) {
                 return coalescePixelsToCentroid(resolution, feature2DList, centroidRadius);
@@ -167,7 +183,7 @@ public class HiCCUPSUtils {
     }
 
     public static void filterOutFeaturesByEnrichment(Feature2DList list, final float maxEnrich) {
-        list.filterLists(new FeatureFilter() {
+        list.filterListsInParallel(new FeatureFilter() {
             @Override
             public List<Feature2D> filter(String chr, List<Feature2D> feature2DList) {
                 return enrichmentThreshold(feature2DList, maxEnrich);
@@ -185,7 +201,7 @@ public class HiCCUPSUtils {
     }
 
     private static void filterOutFeaturesByFDR(Feature2DList list) {
-        list.filterLists(new FeatureFilter() {
+        list.filterListsInParallel(new FeatureFilter() {
             @Override
             public List<Feature2D> filter(String chr, List<Feature2D> feature2DList) {
                 return fdrThreshold(feature2DList);
@@ -235,18 +251,35 @@ public class HiCCUPSUtils {
      */
     private static List<Feature2D> coalescePixelsToCentroid(int resolution, List<Feature2D> feature2DList,
                                                             int originalClusterRadius) {
-        // HashSet intermediate for removing duplicates; LinkedList used so that we can pop out highest obs values
-        LinkedList<Feature2D> featureLL = new LinkedList<>(new HashSet<>(feature2DList));
+        // HashSet intermediate for removing duplicates; sorted once so that we can pop out highest obs values
+        List<Feature2D> sortedFeatures = new ArrayList<>(new HashSet<>(feature2DList));
+        // See Feature2D
+        Collections.sort(sortedFeatures);
+        Collections.reverse(sortedFeatures);
+        int numFeatures = sortedFeatures.size();
+
+        // pixels are still scanned in sorted order, but the index is used to jump
+        // to the next one within the cluster radius instead of checking every pixel
+        Map<Feature2D, Integer> sortedIndices = new IdentityHashMap<>();
+        for (int i = 0; i < numFeatures; i++) {
+            sortedIndices.put(sortedFeatures.get(i), i);
+        }
+        Feature2DSpatialIndex remainingPixels = new Feature2DSpatialIndex(sortedFeatures, originalClusterRadius);
+        boolean[] alreadyCoalesced = new boolean[numFeatures];
         List<Feature2D> coalesced = new ArrayList<>();
 
-        while (!featureLL.isEmpty()) {
-
-            // See Feature2D
-            Collections.sort(featureLL);
-            Collections.reverse(featureLL);
-
-            Feature2D pixel = featureLL.pollFirst();
-            featureLL.remove(pixel);
+        for (int pixelIndex = 0; pixelIndex < numFeatures; pixelIndex++) {
+            if (alreadyCoalesced[pixelIndex]) continue;
+
+            Feature2D pixel = sortedFeatures.get(pixelIndex);
+            alreadyCoalesced[pixelIndex] = true;
+            remainingPixels.remove(pixel);
+            // an equal pixel can survive the HashSet (hashCode only depends on the widths), drop the next one
+            int duplicateIndex = getFirstEquivalentIndex(remainingPixels, sortedIndices, pixel);
+            if (duplicateIndex < numFeatures) {
+                alreadyCoalesced[duplicateIndex] = true;
+                remainingPixels.remove(sortedFeatures.get(duplicateIndex));
+            }
             List<Feature2D> pixelList = new ArrayList<>();
             pixelList.add(pixel);
 
@@ -255,28 +288,40 @@ public class HiCCUPSUtils {
             double r = 0;
             double pixelClusterRadius = originalClusterRadius;
 
-            for (Feature2D px : featureLL) {
+            int scanIndex = pixelIndex;
+            while (true) {
                 // TODO should likely reduce radius or at least start with default?
-                //System.out.println("Radius " + HiCCUPS.pixelClusterRadius);
-                if (hypotenuse(pixelListX - px.getStart1(), pixelListY - px.getStart2()) <= pixelClusterRadius) {
-                    pixelList.add(px);
-                    pixelListX = mean(pixelList, 1);
-                    pixelListY = mean(pixelList, 2);
-
-                    List<Double> distances = new ArrayList<>();
-                    for (Feature2D px2 : pixelList) {
-                        double dist = hypotenuse(pixelListX - px2.getStart1(), pixelListY - px2.getStart2());
-                        if (Double.isNaN(dist) || dist < 0) {
-                            System.err.println("Invalid distance while merging centroid");
-                            System.exit(29);
-                        }
-                        distances.add(dist);
+                int nextIndex = numFeatures;
+                for (Feature2D px : remainingPixels.getFeaturesWithinRadius(pixelListX, pixelListY, pixelClusterRadius)) {
+                    int index = sortedIndices.get(px);
+                    if (index > scanIndex && index < nextIndex) {
+                        nextIndex = index;
                     }
-                    //System.out.println("Radii "+distances);
-                    r = Math.round(Collections.max(distances));
-
-                    pixelClusterRadius = originalClusterRadius + r;
                 }
+                if (nextIndex == numFeatures) break;
+
+                scanIndex = nextIndex;
+                Feature2D px = sortedFeatures.get(nextIndex);
+                alreadyCoalesced[nextIndex] = true;
+                remainingPixels.remove(px);
+
+                pixelList.add(px);
+                pixelListX = mean(pixelList, 1);
+                pixelListY = mean(pixelList, 2);
+
+                List<Double> distances = new ArrayList<>();
+                for (Feature2D px2 : pixelList) {
+                    double dist = hypotenuse(pixelListX - px2.getStart1(), pixelListY - px2.getStart2());
+                    if (Double.isNaN(dist) || dist < 0) {
+                        System.err.println("Invalid distance while merging centroid");
+                        System.exit(29);
+                    }
+                    distances.add(dist);
+                }
+                //System.out.println("Radii "+distances);
+                r = Math.round(Collections.max(distances));
+
+                pixelClusterRadius = originalClusterRadius + r;
             }
 
             pixel.setEnd1(pixel.getStart1() + resolution);
@@ -288,12 +333,27 @@ public class HiCCUPSUtils {
             setPixelColor(pixel);
             coalesced.add(pixel);
 
-            featureLL.removeAll(pixelList);
+            // pixels equal to any in the cluster are discarded
+            for (Feature2D px : pixelList) {
+                for (Feature2D duplicate : remainingPixels.getEquivalentFeatures(px)) {
+                    alreadyCoalesced[sortedIndices.get(duplicate)] = true;
+                    remainingPixels.remove(duplicate);
+                }
+            }
         }
 
         return coalesced;
     }
 
+    private static int getFirstEquivalentIndex(Feature2DSpatialIndex index, Map<Feature2D, Integer> sortedIndices,
+                                               Feature2D feature) {
+        int firstIndex = Integer.MAX_VALUE;
+        for (Feature2D equivalentFeature : index.getEquivalentFeatures(feature)) {
+            firstIndex = Math.min(firstIndex, sortedIndices.get(equivalentFeature));
+        }
+        return firstIndex;
+    }
+
     private static void setPixelColor(Feature2D pixel) {
         Color c = HiCCUPS.defaultPeakColor;
         if (HiCCUPS.shouldColorBeScaledByFDR) {
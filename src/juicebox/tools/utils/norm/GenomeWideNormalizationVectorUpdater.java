@@ -131,17 +131,13 @@ public class GenomeWideNormalizationVectorUpdater extends NormVectorUpdater {
         }
         final ChromosomeHandler chromosomeHandler = dataset.getChromosomeHandler();
         final int resolution = zoom.getBinSize();
-        final ArrayList<ContactRecord> recordArrayList = createWholeGenomeRecords(dataset, chromosomeHandler, zoom, includeIntra);
+        final SparseSymmetricMatrix wholeGenomeMatrix = createWholeGenomeMatrix(dataset, chromosomeHandler, zoom, includeIntra);
 
-        int totalSize = 0;
-        for (Chromosome c1 : chromosomeHandler.getChromosomeArrayWithoutAllByAll()) {
-            totalSize += c1.getLength() / resolution + 1;
+        double[] vector;
+        try (NormalizationCalculations calculations = new NormalizationCalculations(wholeGenomeMatrix)) {
+            vector = calculations.getNorm(norm);
         }
 
-
-        NormalizationCalculations calculations = new NormalizationCalculations(recordArrayList, totalSize);
-        double[] vector = calculations.getNorm(norm);
-
         if (vector == null) {
             return null;
         }
@@ -187,6 +183,41 @@ public class GenomeWideNormalizationVectorUpdater extends NormVectorUpdater {
         return new Pair<>(normVectorMap, expectedValueCalculation);
     }
 
+    /**
+     * Stream every chromosome pair into one sparse matrix at genome-wide offsets,
+     * without creating a ContactRecord per entry
+     */
+    public static SparseSymmetricMatrix createWholeGenomeMatrix(Dataset dataset, ChromosomeHandler handler,
+                                                                HiCZoom zoom, boolean includeIntra) {
+        Chromosome[] chromosomes = handler.getChromosomeArrayWithoutAllByAll();
+        int[] offsets = new int[chromosomes.length + 1];
+        for (int i = 0; i < chromosomes.length; i++) {
+            offsets[i + 1] = offsets[i] + chromosomes[i].getLength() / zoom.getBinSize() + 1;
+        }
+
+        SparseSymmetricMatrix matrix = new SparseSymmetricMatrix(offsets[chromosomes.length]);
+        for (int i = 0; i < chromosomes.length; i++) {
+            Chromosome c1 = chromosomes[i];
+            for (int j = 0; j < chromosomes.length; j++) {
+                Chromosome c2 = chromosomes[j];
+                if (c1.getIndex() < c2.getIndex() || (c1.equals(c2) && includeIntra)) {
+                    Matrix chrMatrix = dataset.getMatrix(c1, c2);
+                    if (chrMatrix != null) {
+                        MatrixZoomData zd = chrMatrix.getZoomData(zoom);
+                        if (zd != null) {
+                            Iterator<ContactRecord> iter = zd.getNewContactRecordIterator();
+                            while (iter.hasNext()) {
+                                ContactRecord cr = iter.next();
+                                matrix.add(cr.getBinX() + offsets[i], cr.getBinY() + offsets[j], cr.getCounts());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return matrix;
+    }
+
     public static ArrayList<ContactRecord> createWholeGenomeRecords(Dataset dataset, ChromosomeHandler handler,
                                                                     HiCZoom zoom, boolean includeIntra) {
         ArrayList<ContactRecord> recordArrayList = new ArrayList<>();
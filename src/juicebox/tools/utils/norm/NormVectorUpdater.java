@@ -195,5 +195,8 @@ public class NormVectorUpdater {
 
         // Finally the norm vectors
         raf.write(normVectorBuffer);
+
+        // Drop anything left from earlier norms, including precomputed Pearson's made with them
+        raf.setLength(raf.getFilePointer());
     }
 }
@@ -32,6 +32,7 @@ import org.apache.commons.math.stat.StatUtils;
 import org.broad.igv.Globals;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -47,9 +48,9 @@ import java.util.Iterator;
  *         Date: 1/25/13
  *         Time: 4:03 PM
  */
-public class NormalizationCalculations {
+public class NormalizationCalculations implements Closeable {
 
-    private ArrayList<ContactRecord> contactRecords;
+    private SparseSymmetricMatrix contactRecords;
     private int totSize;
     private boolean isEnoughMemory = false;
 
@@ -68,19 +69,18 @@ public class NormalizationCalculations {
         if (count * 1000 < Runtime.getRuntime().maxMemory()) {
             isEnoughMemory = true;
 
-            this.contactRecords = new ArrayList<>();
-            Iterator<ContactRecord> iter = zd.getNewContactRecordIterator();
-            while (iter.hasNext()) {
-                ContactRecord cr = iter.next();
-                contactRecords.add(cr);
-            }
             this.totSize = zd.getXGridAxis().getBinCount();
+            this.contactRecords = SparseSymmetricMatrix.fromContactRecords(zd.getNewContactRecordIterator(), totSize);
         }
     }
 
     public NormalizationCalculations(ArrayList<ContactRecord> list, int totSize) {
-        this.contactRecords = list;
-        this.totSize = totSize;
+        this(SparseSymmetricMatrix.fromContactRecords(list, totSize));
+    }
+
+    public NormalizationCalculations(SparseSymmetricMatrix matrix) {
+        this.contactRecords = matrix;
+        this.totSize = matrix.getSize();
     }
 
     public static void calcKR(String path) throws IOException {
@@ -135,7 +135,7 @@ public class NormalizationCalculations {
         if nargin < 3, x0 = e; end
         if nargin < 2, tol = 1e-6; end
     */
-    private static double[] computeKRNormVector(int[] offset, ArrayList<ContactRecord> list, double tol, double[] x0, double delta) {
+    private static double[] computeKRNormVector(int[] offset, SparseSymmetricMatrix list, double tol, double[] x0, double delta) {
 
         int n = x0.length;
         double[] e = new double[n];
@@ -147,7 +147,7 @@ public class NormalizationCalculations {
 
         double rt = Math.pow(tol, 2);
 
-        double[] v = sparseMultiplyFromContactRecords(offset, list, x0);
+        double[] v = list.multiply(offset, x0);
         double[] rk = new double[v.length];
         for (int i = 0; i < v.length; i++) {
             v[i] = v[i] * x0[i];
@@ -196,7 +196,7 @@ public class NormalizationCalculations {
                 for (int i = 0; i < tmp.length; i++) {
                     tmp[i] = x0[i] * p[i];
                 }
-                tmp = sparseMultiplyFromContactRecords(offset, list, tmp);
+                tmp = list.multiply(offset, tmp);
                 alpha = 0;
                 // Update search direction efficiently.
                 for (int i = 0; i < tmp.length; i++) {
@@ -237,7 +237,7 @@ public class NormalizationCalculations {
             for (int i = 0; i < x0.length; i++) {
                 x0[i] = x0[i] * y[i];
             }
-            v = sparseMultiplyFromContactRecords(offset, list, x0);
+            v = list.multiply(offset, x0);
             rho_km1 = 0;
             for (int i = 0; i < v.length; i++) {
                 v[i] = v[i] * x0[i];
@@ -266,32 +266,20 @@ public class NormalizationCalculations {
         return x0;
     }
 
-    private static double[] sparseMultiplyFromContactRecords(int[] offset, ArrayList<ContactRecord> list, double[] vector) {
-        double[] result = new double[vector.length];
-
-        for (ContactRecord cr : list) {
-            int row = cr.getBinX();
-            int col = cr.getBinY();
-            float value = cr.getCounts();
-
-            row = offset[row];
-            col = offset[col];
-
-            if (row != -1 && col != -1) {
-                result[row] += vector[col] * value;
-                if (row != col) {
-                    result[col] += vector[row] * value;
-                }
-            }
-        }
-
-        return result;
-    }
-
     boolean isEnoughMemory() {
         return isEnoughMemory;
     }
 
+    /**
+     * Release the matrix, deleting any file it spilled to
+     */
+    @Override
+    public void close() {
+        if (contactRecords != null) {
+            contactRecords.close();
+        }
+    }
+
     public double[] getNorm(NormalizationType normOption) {
         double[] norm;
         switch (normOption.getLabel().toUpperCase()) {
@@ -335,21 +323,7 @@ public class NormalizationCalculations {
      * @return Normalization vector
      */
     double[] computeVC() {
-        double[] rowsums = new double[totSize];
-
-        for (int i = 0; i < rowsums.length; i++) rowsums[i] = 0;
-
-        for (ContactRecord cr : contactRecords) {
-            int x = cr.getBinX();
-            int y = cr.getBinY();
-            float value = cr.getCounts();
-            rowsums[x] += value;
-            if (x != y) {
-                rowsums[y] += value;
-            }
-        }
-
-        return rowsums;
+        return getRowSums();
 
     }
 
@@ -360,25 +334,8 @@ public class NormalizationCalculations {
      * @return Square root of ratio of original to normalized vector
      */
     double getSumFactor(double[] norm) {
-        double matrix_sum = 0;
-        double norm_sum = 0;
-        for (ContactRecord cr : contactRecords) {
-            int x = cr.getBinX();
-            int y = cr.getBinY();
-            float value = cr.getCounts();
-            if (!Double.isNaN(norm[x]) && !Double.isNaN(norm[y]) && norm[x] > 0 && norm[y] > 0) {
-                // want total sum of matrix, not just upper triangle
-                if (x == y) {
-                    norm_sum += value / (norm[x] * norm[y]);
-                    matrix_sum += value;
-                } else {
-                    norm_sum += 2 * value / (norm[x] * norm[y]);
-                    matrix_sum += 2 * value;
-                }
-
-            }
-        }
-        return Math.sqrt(norm_sum / matrix_sum);
+        double[] sums = contactRecords.getNormalizedAndRawSums(norm);
+        return Math.sqrt(sums[0] / sums[1]);
     }
 
     double[] computeKR() {
@@ -459,19 +416,7 @@ public class NormalizationCalculations {
     }
 
     private int[] getOffset(double percent) {
-        double[] rowSums = new double[totSize];
-
-        for (int i = 0; i < rowSums.length; i++) rowSums[i] = 0;
-
-        for (ContactRecord cr : contactRecords) {
-            int x = cr.getBinX();
-            int y = cr.getBinY();
-            float value = cr.getCounts();
-            rowSums[x] += value;
-            if (x != y) {
-                rowSums[y] += value;
-            }
-        }
+        double[] rowSums = getRowSums();
 
         double thresh = 0;
         if (percent > 0) {
@@ -497,6 +442,12 @@ public class NormalizationCalculations {
 
     }
 
+    private double[] getRowSums() {
+        double[] ones = new double[totSize];
+        Arrays.fill(ones, 1);
+        return contactRecords.multiply(ones);
+    }
+
     public double[] computeMMBA() {
 
         double[] tempTargetVector = new double[totSize];
@@ -45,6 +45,17 @@ import java.util.*;
  */
 public class NormalizationVectorUpdater extends NormVectorUpdater {
 
+    /**
+     * Update the norms, then precompute Pearson's and eigenvectors at the given resolutions if there are any
+     */
+    public static void updateHicFile(String path, int genomeWideResolution, boolean noFrag, boolean doNotSkipKRNorm,
+                                     Set<String> pearsonResolutions, Set<String> pearsonNorms, int numThreads) throws IOException {
+        updateHicFile(path, genomeWideResolution, noFrag, doNotSkipKRNorm);
+        if (pearsonResolutions != null) {
+            PrecomputedTracksUpdater.updateHicFile(path, pearsonResolutions, pearsonNorms, numThreads);
+        }
+    }
+
     public static void updateHicFile(String path, int genomeWideResolution, boolean noFrag, boolean doNotSkipKRNorm) throws IOException {
         DatasetReaderV2 reader = new DatasetReaderV2(path);
         Dataset ds = reader.read();
@@ -99,54 +110,54 @@ public class NormalizationVectorUpdater extends NormVectorUpdater {
                 if (matrix == null) continue;
                 MatrixZoomData zd = matrix.getZoomData(zoom);
 
-                NormalizationCalculations nc = new NormalizationCalculations(zd);
-
-                if (!nc.isEnoughMemory()) {
-                    System.err.println("Not enough memory, skipping " + chr);
-                    continue;
-                }
-                long currentTime = System.currentTimeMillis();
-
+                try (NormalizationCalculations nc = new NormalizationCalculations(zd)) {
+                    if (!nc.isEnoughMemory()) {
+                        System.err.println("Not enough memory, skipping " + chr);
+                        continue;
+                    }
+                    long currentTime = System.currentTimeMillis();
 
-                double[] vc = nc.computeVC();
-                double[] vcSqrt = new double[vc.length];
-                for (int i = 0; i < vc.length; i++) {
-                    vcSqrt[i] = Math.sqrt(vc[i]);
-                }
 
-                final int chrIdx = chr.getIndex();
+                    double[] vc = nc.computeVC();
+                    double[] vcSqrt = new double[vc.length];
+                    for (int i = 0; i < vc.length; i++) {
+                        vcSqrt[i] = Math.sqrt(vc[i]);
+                    }
 
-                updateExpectedValueCalculationForChr(chrIdx, nc, vc, NormalizationHandler.VC, zoom, zd, evVC, normVectorBuffer, normVectorIndices);
-                updateExpectedValueCalculationForChr(chrIdx, nc, vcSqrt, NormalizationHandler.VC_SQRT, zoom, zd, evVCSqrt, normVectorBuffer, normVectorIndices);
-                printNormTiming("VC and VC_SQRT", chr, zoom, currentTime);
+                    final int chrIdx = chr.getIndex();
+
+                    updateExpectedValueCalculationForChr(chrIdx, nc, vc, NormalizationHandler.VC, zoom, zd, evVC, normVectorBuffer, normVectorIndices);
+                    updateExpectedValueCalculationForChr(chrIdx, nc, vcSqrt, NormalizationHandler.VC_SQRT, zoom, zd, evVCSqrt, normVectorBuffer, normVectorIndices);
+                    printNormTiming("VC and VC_SQRT", chr, zoom, currentTime);
+
+                    // KR normalization
+                    if (doNotSkipKRNorm) {
+                        currentTime = System.currentTimeMillis();
+                        if (!failureSetKR.contains(chr)) {
+                            double[] kr = nc.computeKR();
+                            if (kr == null) {
+                                failureSetKR.add(chr);
+                                printNormTiming("FAILED KR", chr, zoom, currentTime);
+                            } else {
+                                updateExpectedValueCalculationForChr(chrIdx, nc, kr, NormalizationHandler.KR, zoom, zd, evKR, normVectorBuffer, normVectorIndices);
+                                printNormTiming("KR", chr, zoom, currentTime);
+                            }
+                        }
+                    }
 
-                // KR normalization
-                if (doNotSkipKRNorm) {
+                    // Fast scaling normalization
                     currentTime = System.currentTimeMillis();
-                    if (!failureSetKR.contains(chr)) {
-                        double[] kr = nc.computeKR();
-                        if (kr == null) {
-                            failureSetKR.add(chr);
-                            printNormTiming("FAILED KR", chr, zoom, currentTime);
+                    if (!failureSetMMBA.contains(chr)) {
+                        double[] mmba = nc.computeMMBA();
+                        if (mmba == null) {
+                            failureSetMMBA.add(chr);
+                            printNormTiming("FAILED SCALE", chr, zoom, currentTime);
                         } else {
-                            updateExpectedValueCalculationForChr(chrIdx, nc, kr, NormalizationHandler.KR, zoom, zd, evKR, normVectorBuffer, normVectorIndices);
-                            printNormTiming("KR", chr, zoom, currentTime);
+                            updateExpectedValueCalculationForChr(chrIdx, nc, mmba, NormalizationHandler.SCALE, zoom, zd, evMMBA, normVectorBuffer, normVectorIndices);
+                            printNormTiming("SCALE", chr, zoom, currentTime);
                         }
                     }
                 }
-
-                // Fast scaling normalization
-                currentTime = System.currentTimeMillis();
-                if (!failureSetMMBA.contains(chr)) {
-                    double[] mmba = nc.computeMMBA();
-                    if (mmba == null) {
-                        failureSetMMBA.add(chr);
-                        printNormTiming("FAILED SCALE", chr, zoom, currentTime);
-                    } else {
-                        updateExpectedValueCalculationForChr(chrIdx, nc, mmba, NormalizationHandler.SCALE, zoom, zd, evMMBA, normVectorBuffer, normVectorIndices);
-                        printNormTiming("SCALE", chr, zoom, currentTime);
-                    }
-                }
             }
 
             if (evVC.hasData()) {
@@ -168,6 +179,20 @@ public class NormalizationVectorUpdater extends NormVectorUpdater {
                 normVectorBuffer, "Finished writing norms");
     }
 
+    /**
+     * @return normalizations calculated by updateHicFile, for the chromosomes where they converge
+     */
+    public static List<NormalizationType> getCalculatedNormTypes(boolean doNotSkipKRNorm) {
+        List<NormalizationType> types = new ArrayList<>(Arrays.asList(NormalizationHandler.getAllGWNormTypes(true)));
+        types.add(NormalizationHandler.VC);
+        types.add(NormalizationHandler.VC_SQRT);
+        if (doNotSkipKRNorm) {
+            types.add(NormalizationHandler.KR);
+        }
+        types.add(NormalizationHandler.SCALE);
+        return types;
+    }
+
     private static void printNormTiming(String norm, Chromosome chr, HiCZoom zoom, long currentTime) {
         if (HiCGlobals.printVerboseComments) {
             System.out.println(norm + " normalization of " + chr + " at " + zoom + " took " + (System.currentTimeMillis() - currentTime) + " milliseconds");
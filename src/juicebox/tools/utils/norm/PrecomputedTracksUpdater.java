@@ -0,0 +1,271 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.tools.utils.norm;
+
+import juicebox.HiCGlobals;
+import juicebox.data.*;
+import juicebox.matrix.BasicMatrix;
+import juicebox.windowui.HiCZoom;
+import juicebox.windowui.NormalizationHandler;
+import juicebox.windowui.NormalizationType;
+import org.broad.igv.feature.Chromosome;
+import org.broad.igv.tdf.BufferedByteWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Update an existing hic file with precomputed Pearson's matrices and eigenvectors, so they no longer need
+ * to be calculated when viewed.  Any previously precomputed section is replaced.
+ */
+public class PrecomputedTracksUpdater {
+
+    // bytes held per matrix entry while one chromosome is calculated: the float Pearson's, the double O/E vectors
+    // it is built from, and the double copies made for the eigenvector decomposition
+    private static final long BYTES_PER_PEARSONS_ENTRY = 40;
+
+    /**
+     * @param path        hic file
+     * @param resolutions BP resolutions to precompute
+     * @param norms       normalizations to precompute; all normalizations in the file when null
+     * @param numThreads  maximum number of chromosomes calculated at once; fewer run together when their dense
+     *                    matrices would not fit in the heap
+     * @throws IOException if any chromosome fails; the file is then left without precomputed Pearson's
+     */
+    public static void updateHicFile(String path, Set<String> resolutions, Set<String> norms, int numThreads) throws IOException {
+        DatasetReaderV2 reader = new DatasetReaderV2(path);
+        final Dataset ds = reader.read();
+        HiCGlobals.verifySupportedHiCFileVersion(reader.getVersion());
+        if (reader.getVersion() < 6) {
+            System.err.println("Pearson's can only be stored in files with normalization vectors (version 6 or later)");
+            reader.close();
+            return;
+        }
+
+        List<HiCZoom> zooms = new ArrayList<>();
+        for (HiCZoom zoom : ds.getBpZooms()) {
+            if (resolutions.contains(String.valueOf(zoom.getBinSize()))) {
+                zooms.add(zoom);
+            }
+        }
+
+        final List<NormalizationType> normTypes = new ArrayList<>();
+        if (norms == null) {
+            for (NormalizationType type : ds.getNormalizationTypes()) {
+                if (!type.equals(NormalizationHandler.NONE)) {
+                    normTypes.add(type);
+                }
+            }
+        } else {
+            for (String norm : norms) {
+                normTypes.add(ds.getNormalizationHandler().getNormTypeFromString(norm));
+            }
+        }
+
+        long sectionPosition = reader.getPrecomputedSectionPosition();
+        if (sectionPosition < 0) {
+            sectionPosition = new File(path).length();
+        }
+
+        // each calculation holds permits (megabytes) for its dense matrices, so large chromosomes at fine
+        // resolutions run with fewer threads instead of exhausting the heap
+        final int memoryPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, (Runtime.getRuntime().maxMemory() / 4 * 3) >> 20));
+        final Semaphore memory = new Semaphore(memoryPermits, true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numThreads));
+        List<Future<List<TrackEntry>>> futures = new ArrayList<>();
+        for (HiCZoom zoom : zooms) {
+            for (final Chromosome chr : ds.getChromosomeHandler().getChromosomeArrayWithoutAllByAll()) {
+                Matrix matrix = ds.getMatrix(chr, chr);
+                if (matrix == null) continue;
+                final MatrixZoomData zd = matrix.getZoomData(zoom);
+                if (zd == null) continue;
+
+                long dim = chr.getLength() / zoom.getBinSize() + 1;
+                final int permits = (int) Math.min(memoryPermits, ((BYTES_PER_PEARSONS_ENTRY * dim * dim) >> 20) + 1);
+                futures.add(executor.submit(new Callable<List<TrackEntry>>() {
+                    @Override
+                    public List<TrackEntry> call() throws IOException, InterruptedException {
+                        memory.acquire(permits);
+                        try {
+                            return computeTracks(ds, chr, zd, normTypes);
+                        } finally {
+                            memory.release(permits);
+                        }
+                    }
+                }));
+            }
+        }
+        executor.shutdown();
+
+        // entries are written in submission order, so the file does not depend on thread timing
+        List<String> keys = new ArrayList<>();
+        List<Long> positions = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        try (RandomAccessFile raf = new RandomAccessFile(path, "rw")) {
+            raf.seek(sectionPosition);
+            for (Future<List<TrackEntry>> future : futures) {
+                List<TrackEntry> entries;
+                try {
+                    entries = future.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    // an index missing a chromosome is never written; the file is left without a precomputed section
+                    for (Future<List<TrackEntry>> pending : futures) {
+                        pending.cancel(true);
+                    }
+                    raf.setLength(sectionPosition);
+                    if (e instanceof InterruptedException) {
+                        Thread.currentThread().interrupt();
+                    }
+                    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    throw new IOException("Unable to precompute Pearson's " + cause.getLocalizedMessage(), cause);
+                }
+                for (TrackEntry entry : entries) {
+                    keys.add(entry.key);
+                    positions.add(raf.getFilePointer());
+                    sizes.add(entry.indexedSize);
+                    for (byte[] bytes : entry.data) {
+                        raf.write(bytes);
+                    }
+                }
+            }
+
+            long indexPosition = raf.getFilePointer();
+            BufferedByteWriter buffer = new BufferedByteWriter();
+            buffer.putInt(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                buffer.putNullTerminatedString(keys.get(i));
+                buffer.putLong(positions.get(i));
+                buffer.putInt(sizes.get(i));
+            }
+            buffer.putLong(sectionPosition);
+            buffer.putLong(indexPosition);
+            buffer.putInt(PrecomputedTracks.MAGIC);
+            raf.write(buffer.getBytes());
+            raf.setLength(raf.getFilePointer());
+        } finally {
+            executor.shutdownNow();
+            reader.close();
+        }
+        System.out.println("Finished writing " + keys.size() + " Pearson's matrices and eigenvectors");
+    }
+
+    private static List<TrackEntry> computeTracks(Dataset ds, Chromosome chr, MatrixZoomData zd,
+                                                  List<NormalizationType> normTypes) throws IOException {
+        List<TrackEntry> entries = new ArrayList<>();
+        HiCZoom zoom = zd.getZoom();
+        for (NormalizationType type : normTypes) {
+            ExpectedValueFunction df = ds.getExpectedValues(zoom, type);
+            if (df == null) continue;
+
+            long currentTime = System.currentTimeMillis();
+            BasicMatrix pearsons = zd.computePearsons(df);
+            entries.add(encodePearsons(PrecomputedTracks.getPearsonsKey(chr.getName(), zoom, type), pearsons));
+
+            try {
+                double[] eigenvector = MatrixZoomData.computeEigenvector(pearsons, 0);
+                entries.add(encodeEigenvector(PrecomputedTracks.getEigenvectorKey(chr.getName(), zoom, 0, type.toString()),
+                        eigenvector));
+            } catch (Exception e) {
+                System.err.println("Unable to compute eigenvector of " + chr.getName() + " at " + zoom + " " + e.getLocalizedMessage());
+            }
+
+            if (HiCGlobals.printVerboseComments) {
+                System.out.println("Pearson's of " + chr + " at " + zoom + " " + type + " took " + (System.currentTimeMillis() - currentTime) + " milliseconds");
+            }
+        }
+        zd.clearCache();
+        return entries;
+    }
+
+    private static TrackEntry encodePearsons(String key, BasicMatrix pearsons) throws IOException {
+        int dim = pearsons.getRowDimension();
+        int blockSize = PrecomputedTracks.PEARSONS_BLOCK_SIZE;
+        int numBlocks = (dim + blockSize - 1) / blockSize;
+        int numStoredBlocks = numBlocks * (numBlocks + 1) / 2;
+        int headerSize = 20 + 12 * numStoredBlocks;
+
+        BufferedByteWriter header = new BufferedByteWriter();
+        header.putInt(dim);
+        header.putFloat(pearsons.getLowerValue());
+        header.putFloat(pearsons.getUpperValue());
+        header.putInt(blockSize);
+        header.putInt(numStoredBlocks);
+
+        List<byte[]> data = new ArrayList<>();
+        data.add(null);
+        long position = headerSize;
+        for (int blockRowIdx = 0; blockRowIdx < numBlocks; blockRowIdx++) {
+            int rowStart = blockRowIdx * blockSize;
+            int rowDim = Math.min(blockSize, dim - rowStart);
+            for (int blockColIdx = blockRowIdx; blockColIdx < numBlocks; blockColIdx++) {
+                int colStart = blockColIdx * blockSize;
+                int colDim = Math.min(blockSize, dim - colStart);
+
+                ByteBuffer block = ByteBuffer.allocate(rowDim * colDim * 4).order(ByteOrder.LITTLE_ENDIAN);
+                for (int r = 0; r < rowDim; r++) {
+                    for (int c = 0; c < colDim; c++) {
+                        block.putFloat(pearsons.getEntry(rowStart + r, colStart + c));
+                    }
+                }
+                byte[] compressed = PrecomputedTracks.CODEC.compress(block.array());
+                header.putLong(position);
+                header.putInt(compressed.length);
+                data.add(compressed);
+                position += compressed.length;
+            }
+        }
+        data.set(0, header.getBytes());
+        return new TrackEntry(key, headerSize, data);
+    }
+
+    private static TrackEntry encodeEigenvector(String key, double[] eigenvector) throws IOException {
+        BufferedByteWriter buffer = new BufferedByteWriter();
+        NormVectorUpdater.putArrayValuesIntoBuffer(buffer, eigenvector);
+        List<byte[]> data = new ArrayList<>();
+        data.add(buffer.getBytes());
+        return new TrackEntry(key, buffer.bytesWritten(), data);
+    }
+
+    private static class TrackEntry {
+        private final String key;
+        // only the header of a Pearson's entry is indexed; its blocks are found through the header
+        private final int indexedSize;
+        private final List<byte[]> data;
+
+        TrackEntry(String key, int indexedSize, List<byte[]> data) {
+            this.key = key;
+            this.indexedSize = indexedSize;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.tools.utils.norm;
+
+import juicebox.data.ContactRecord;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Symmetric sparse matrix holding only its upper triangle, as (x, y, count) entries in
+ * chunks of primitive buffers instead of ContactRecord objects.  Once the chunks on the
+ * heap reach a quarter of the max memory, new chunks are memory-mapped from a temporary file.
+ * Matrix-vector products and sums are computed in parallel over the chunks.
+ * <p>
+ * Entries must be added from a single thread.  Close the matrix once it is no longer needed
+ * so that the temporary file is deleted.
+ */
+public class SparseSymmetricMatrix implements Closeable {
+
+    private static final int CHUNK_SIZE = 1 << 22;
+    private static final int INITIAL_CHUNK_CAPACITY = 1 << 12;
+    private static final int BYTES_PER_ENTRY = 12;
+
+    private final int size;
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final long maxHeapEntries = Runtime.getRuntime().maxMemory() / 4 / BYTES_PER_ENTRY;
+    private static ExecutorService reduceExecutor;
+    private long numEntries = 0;
+    private File spillPath;
+    private RandomAccessFile spillFile;
+    private FileChannel spillChannel;
+
+    /**
+     * @param size dimension of the (square) matrix
+     */
+    public SparseSymmetricMatrix(int size) {
+        this.size = size;
+    }
+
+    public static SparseSymmetricMatrix fromContactRecords(List<ContactRecord> contactRecords, int size) {
+        return fromContactRecords(contactRecords.iterator(), size);
+    }
+
+    public static SparseSymmetricMatrix fromContactRecords(Iterator<ContactRecord> iterator, int size) {
+        SparseSymmetricMatrix matrix = new SparseSymmetricMatrix(size);
+        while (iterator.hasNext()) {
+            ContactRecord cr = iterator.next();
+            matrix.add(cr.getBinX(), cr.getBinY(), cr.getCounts());
+        }
+        return matrix;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getNumEntries() {
+        return numEntries;
+    }
+
+    public boolean isEmpty() {
+        return numEntries == 0;
+    }
+
+    /**
+     * Add an entry; the lower triangle is folded onto the upper one
+     */
+    public void add(int x, int y, float counts) {
+        Chunk chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || chunk.numEntries == CHUNK_SIZE) {
+            chunk = createChunk();
+            chunks.add(chunk);
+        } else if (chunk.numEntries == chunk.xs.capacity()) {
+            chunk.grow(Math.min(2 * chunk.numEntries, CHUNK_SIZE));
+        }
+        if (x > y) {
+            int temp = x;
+            x = y;
+            y = temp;
+        }
+        int i = chunk.numEntries++;
+        chunk.xs.put(i, x);
+        chunk.ys.put(i, y);
+        chunk.counts.put(i, counts);
+        numEntries++;
+    }
+
+    private Chunk createChunk() {
+        if ((long) chunks.size() * CHUNK_SIZE < maxHeapEntries) {
+            int capacity = chunks.isEmpty() ? INITIAL_CHUNK_CAPACITY : CHUNK_SIZE;
+            return new Chunk(IntBuffer.allocate(capacity), IntBuffer.allocate(capacity), FloatBuffer.allocate(capacity));
+        }
+        try {
+            if (spillChannel == null) {
+                spillPath = File.createTempFile("sparse_matrix", ".bin");
+                spillPath.deleteOnExit();
+                spillFile = new RandomAccessFile(spillPath, "rw");
+                spillChannel = spillFile.getChannel();
+                System.out.println("Spilling sparse matrix to " + spillPath.getAbsolutePath());
+            }
+            long position = spillChannel.size();
+            MappedByteBuffer buffer = spillChannel.map(FileChannel.MapMode.READ_WRITE, position, (long) BYTES_PER_ENTRY * CHUNK_SIZE);
+            buffer.order(ByteOrder.nativeOrder());
+            return new Chunk(slice(buffer, 0).asIntBuffer(), slice(buffer, 4 * CHUNK_SIZE).asIntBuffer(),
+                    slice(buffer, 8 * CHUNK_SIZE).asFloatBuffer());
+        } catch (IOException e) {
+            System.err.println("Unable to memory-map sparse matrix " + e.getLocalizedMessage());
+            System.exit(71);
+            return null;
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int start) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(start);
+        duplicate.limit(start + 4 * CHUNK_SIZE);
+        return duplicate.slice().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Product of the full symmetric matrix with a vector
+     */
+    public double[] multiply(double[] vector) {
+        return multiply(null, vector);
+    }
+
+    /**
+     * Product of the submatrix selected by offset with a vector.  offset maps each row/column
+     * to its index in vector, or to -1 to skip it; a null offset uses every row as is.
+     */
+    public double[] multiply(final int[] offset, final double[] vector) {
+        return reduce(vector.length, new EntryReducer() {
+            @Override
+            public void reduce(Chunk chunk, double[] result) {
+                for (int i = 0; i < chunk.numEntries; i++) {
+                    int row = chunk.xs.get(i);
+                    int col = chunk.ys.get(i);
+                    if (offset != null) {
+                        row = offset[row];
+                        col = offset[col];
+                        if (row == -1 || col == -1) continue;
+                    }
+                    float value = chunk.counts.get(i);
+                    result[row] += vector[col] * value;
+                    if (row != col) {
+                        result[col] += vector[row] * value;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Sums of the normalized and of the raw full matrix, over the entries whose rows and
+     * columns both have a positive norm value.
+     *
+     * @return {normalized sum, raw sum}
+     */
+    public double[] getNormalizedAndRawSums(final double[] norm) {
+        return reduce(2, new EntryReducer() {
+            @Override
+            public void reduce(Chunk chunk, double[] sums) {
+                for (int i = 0; i < chunk.numEntries; i++) {
+                    int x = chunk.xs.get(i);
+                    int y = chunk.ys.get(i);
+                    if (!Double.isNaN(norm[x]) && !Double.isNaN(norm[y]) && norm[x] > 0 && norm[y] > 0) {
+                        float value = chunk.counts.get(i);
+                        // want total sum of matrix, not just upper triangle
+                        int multiple = x == y ? 1 : 2;
+                        sums[0] += multiple * value / (norm[x] * norm[y]);
+                        sums[1] += multiple * value;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Run the reducer over every chunk and sum the partial results.  Each task owns a fixed,
+     * contiguous range of chunks and the partial results are summed in task order, so repeated
+     * products give identical results.
+     */
+    private double[] reduce(int length, final EntryReducer reducer) {
+        final int numTasks = Math.min(Runtime.getRuntime().availableProcessors(), chunks.size());
+        if (numTasks <= 1) {
+            double[] result = new double[length];
+            for (Chunk chunk : chunks) {
+                reducer.reduce(chunk, result);
+            }
+            return result;
+        }
+
+        final double[][] partialResults = new double[numTasks][length];
+        ExecutorService executor = getReduceExecutor();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < numTasks; t++) {
+            final double[] partialResult = partialResults[t];
+            final int firstChunk = (int) ((long) t * chunks.size() / numTasks);
+            final int lastChunk = (int) ((long) (t + 1) * chunks.size() / numTasks);
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int c = firstChunk; c < lastChunk; c++) {
+                        reducer.reduce(chunks.get(c), partialResult);
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        double[] result = partialResults[0];
+        for (int t = 1; t < numTasks; t++) {
+            for (int i = 0; i < length; i++) {
+                result[i] += partialResults[t][i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Shared by all matrices, as a normalization runs many products
+     */
+    private static synchronized ExecutorService getReduceExecutor() {
+        if (reduceExecutor == null) {
+            reduceExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                        private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = defaultFactory.newThread(r);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return reduceExecutor;
+    }
+
+    /**
+     * Drop the entries and delete the temporary file they were spilled to, if any
+     */
+    @Override
+    public void close() {
+        chunks.clear();
+        numEntries = 0;
+        if (spillFile != null) {
+            try {
+                spillFile.close();
+            } catch (IOException e) {
+                System.err.println("Unable to close sparse matrix file " + e.getLocalizedMessage());
+            }
+            if (!spillPath.delete()) {
+                System.err.println("Unable to delete " + spillPath.getAbsolutePath());
+            }
+            spillFile = null;
+            spillChannel = null;
+            spillPath = null;
+        }
+    }
+
+    private interface EntryReducer {
+        void reduce(Chunk chunk, double[] accumulator);
+    }
+
+    private static class Chunk {
+        IntBuffer xs;
+        IntBuffer ys;
+        FloatBuffer counts;
+        int numEntries = 0;
+
+        Chunk(IntBuffer xs, IntBuffer ys, FloatBuffer counts) {
+            this.xs = xs;
+            this.ys = ys;
+            this.counts = counts;
+        }
+
+        /**
+         * Only called on heap chunks, which start small so little matrices stay little
+         */
+        void grow(int capacity) {
+            xs = IntBuffer.wrap(Arrays.copyOf(xs.array(), capacity));
+            ys = IntBuffer.wrap(Arrays.copyOf(ys.array(), capacity));
+            counts = FloatBuffer.wrap(Arrays.copyOf(counts.array(), capacity));
+        }
+    }
+}
@@ -27,7 +27,6 @@ package juicebox.tools.utils.norm;
 import juicebox.HiCGlobals;
 import juicebox.data.ContactRecord;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -40,6 +39,12 @@ public class ZeroScale {
     private final static int numTrialsWithinScalingRun = 5;
 
     public static double[] scale(List<ContactRecord> contactRecords, double[] targetVectorInitial, String key) {
+        try (SparseSymmetricMatrix matrix = SparseSymmetricMatrix.fromContactRecords(contactRecords, targetVectorInitial.length)) {
+            return scale(matrix, targetVectorInitial, key);
+        }
+    }
+
+    public static double[] scale(SparseSymmetricMatrix contactRecords, double[] targetVectorInitial, String key) {
         // if the regular call fails, loosen parameters
         double[] newVector = launchScalingWithDiffTolerances(contactRecords, targetVectorInitial, .01, 0, key);
         if (newVector == null) {
@@ -50,6 +55,14 @@ public class ZeroScale {
 
     public static double[] launchScalingWithDiffTolerances(List<ContactRecord> contactRecords, double[] targetVectorInitial, double percentLowRowSumExcludedInitial,
                                                            double percentZValsToIgnoreInitial, String key) {
+        try (SparseSymmetricMatrix matrix = SparseSymmetricMatrix.fromContactRecords(contactRecords, targetVectorInitial.length)) {
+            return launchScalingWithDiffTolerances(matrix, targetVectorInitial, percentLowRowSumExcludedInitial,
+                    percentZValsToIgnoreInitial, key);
+        }
+    }
+
+    public static double[] launchScalingWithDiffTolerances(SparseSymmetricMatrix contactRecords, double[] targetVectorInitial, double percentLowRowSumExcludedInitial,
+                                                           double percentZValsToIgnoreInitial, String key) {
 
         double percentLowRowSumExcluded = percentLowRowSumExcludedInitial;
         double percentZValsToIgnore = percentZValsToIgnoreInitial;
@@ -75,7 +88,7 @@ public class ZeroScale {
         return newVector;
     }
 
-    private static double[] scaleToTargetVector(List<ContactRecord> contactRecords, double[] targetVectorInitial, double tolerance,
+    private static double[] scaleToTargetVector(SparseSymmetricMatrix contactRecords, double[] targetVectorInitial, double tolerance,
                                                 double percentLowRowSumExcluded, double percentZValsToIgnore,
                                                 int maxIter, double del, int numTrials) {
 
@@ -118,20 +131,7 @@ public class ZeroScale {
         for (int p = 0; p < k; p++) if (targetVector[p] == 0) one[p] = 0;
 
         //	find rows sums
-        for (int p = 0; p < k; p++) {
-            r[p] = 0;
-        }
-
-        for (ContactRecord cr : contactRecords) {
-            int x = cr.getBinX();
-            int y = cr.getBinY();
-            final float counts = cr.getCounts();
-
-            r[x] += counts * one[y];
-            if (x < y) {
-                r[y] += counts * one[x];
-            }
-        }
+        r = contactRecords.multiply(one);
 
         //	find relevant percentiles
         System.arraycopy(r, 0, r0, 0, k);
@@ -193,18 +193,7 @@ public class ZeroScale {
                 calculatedVector[p] *= s[p];
             }
 
-            for (int p = 0; p < k; p++) r[p] = 0;
-
-            for (ContactRecord cr : contactRecords) {
-                int x = cr.getBinX();
-                int y = cr.getBinY();
-                final float counts = cr.getCounts();
-
-                r[x] += counts * calculatedVector[y];
-                if (x < y) {
-                    r[y] += counts * calculatedVector[x];
-                }
-            }
+            r = contactRecords.multiply(calculatedVector);
 
             for (int p = 0; p < k; p++) {
                 r[p] *= calculatedVector[p];
@@ -241,6 +230,12 @@ public class ZeroScale {
     }
 
     public static double[] normalizeVectorByScaleFactor(double[] newNormVector, List<ContactRecord> contactRecords) {
+        try (SparseSymmetricMatrix matrix = SparseSymmetricMatrix.fromContactRecords(contactRecords, newNormVector.length)) {
+            return normalizeVectorByScaleFactor(newNormVector, matrix);
+        }
+    }
+
+    public static double[] normalizeVectorByScaleFactor(double[] newNormVector, SparseSymmetricMatrix contactRecords) {
 
         for (int k = 0; k < newNormVector.length; k++) {
             if (newNormVector[k] <= 0 || Double.isNaN(newNormVector[k])) {
@@ -250,25 +245,8 @@ public class ZeroScale {
             }
         }
 
-        double normalizedSumTotal = 0, sumTotal = 0;
-
-        for (ContactRecord cr : contactRecords) {
-            int x = cr.getBinX();
-            int y = cr.getBinY();
-            final float counts = cr.getCounts();
-
-            if (!Double.isNaN(newNormVector[x]) && !Double.isNaN(newNormVector[y])) {
-                double normalizedValue = counts / (newNormVector[x] * newNormVector[y]);
-                normalizedSumTotal += normalizedValue;
-                sumTotal += counts;
-                if (x != y) {
-                    normalizedSumTotal += normalizedValue;
-                    sumTotal += counts;
-                }
-            }
-        }
-
-        double scaleFactor = Math.sqrt(normalizedSumTotal / sumTotal);
+        double[] sums = contactRecords.getNormalizedAndRawSums(newNormVector);
+        double scaleFactor = Math.sqrt(sums[0] / sums[1]);
 
         for (int k = 0; k < newNormVector.length; k++) {
             if (!Double.isNaN(newNormVector[k])) {
@@ -278,7 +256,7 @@ public class ZeroScale {
         return newNormVector;
     }
 
-    public static double[] mmbaScaleToVector(ArrayList<ContactRecord> contactRecords, double[] tempTargetVector) {
+    public static double[] mmbaScaleToVector(SparseSymmetricMatrix contactRecords, double[] tempTargetVector) {
 
         double[] newNormVector = scale(contactRecords, tempTargetVector, "mmsa_scale");
         if (newNormVector != null) {
@@ -24,11 +24,19 @@
 
 package juicebox.tools.utils.original;
 
+import htsjdk.samtools.seekablestream.SeekableStream;
 import org.broad.igv.bbfile.BBFileReader;
 import org.broad.igv.bbfile.BigWigIterator;
 import org.broad.igv.bbfile.WigItem;
+import org.broad.igv.util.stream.IGVSeekableStreamFactory;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Some utils for querying bigwig files
@@ -40,21 +48,29 @@ import java.io.IOException;
 public class BigWigUtils {
 
     public static void computeBins(String path, int windowSize) throws IOException {
-
-        BBFileReader reader = new BBFileReader(path);
-        for (String chr : reader.getChromosomeNames()) {
-            computeBins(reader, chr, 0, Integer.MAX_VALUE, windowSize);
-        }
-
+        computeBins(path, new int[]{windowSize}, Runtime.getRuntime().availableProcessors());
     }
 
+    /**
+     * Bin every chromosome at each of the window sizes in a single pass over the data
+     *
+     * @param path        bigWig path or URL
+     * @param windowSizes window sizes in base pairs; output is grouped by window size, in this order
+     * @param numThreads  number of chromosomes processed concurrently
+     */
+    public static void computeBins(String path, int[] windowSizes, int numThreads) throws IOException {
+        computeBins(path, getChromosomeNames(path), 0, Integer.MAX_VALUE, windowSizes, numThreads);
+    }
 
     public static void computeBins(String path, String chr, int start, int end, int windowSize) throws IOException {
+        computeBins(path, chr, start, end, new int[]{windowSize});
+    }
+
+    public static void computeBins(String path, String chr, int start, int end, int[] windowSizes) throws IOException {
 
-        BBFileReader reader = new BBFileReader(path);
         boolean found = false;
         StringBuilder errString = new StringBuilder();
-        for (String chr1 : reader.getChromosomeNames()) {
+        for (String chr1 : getChromosomeNames(path)) {
             if (chr.equals(chr1)) found = true;
             errString.append("\"").append(chr1).append("\" ");
         }
@@ -63,8 +79,72 @@ public class BigWigUtils {
             System.err.println("The chromosomes in " + path + " are " + errString);
             return;
         }
-        computeBins(reader, chr, start, end, windowSize);
+        computeBins(path, Collections.singletonList(chr), start, end, windowSizes, 1);
+
+    }
+
+    private static List<String> getChromosomeNames(String path) throws IOException {
+        SeekableStream stream = IGVSeekableStreamFactory.getInstance().getStreamFor(path);
+        try {
+            return new ArrayList<>(new BBFileReader(path, stream).getChromosomeNames());
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Bins the chromosomes on a pool of workers, each with its own reader, and writes the windows in chromosome order
+     */
+    private static void computeBins(final String path, final List<String> chromosomes, final int start, final int end,
+                                    final int[] windowSizes, int numThreads) throws IOException {
+        int numWorkers = Math.max(1, Math.min(numThreads, chromosomes.size()));
+        final WindowBins[][] chromosomeBins = new WindowBins[chromosomes.size()][];
+        final AtomicInteger nextChromosome = new AtomicInteger(0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < numWorkers; i++) {
+            workers.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    // readers are not thread safe, so each worker opens one and reuses it for all its chromosomes
+                    SeekableStream stream = IGVSeekableStreamFactory.getInstance().getStreamFor(path);
+                    try {
+                        BBFileReader reader = new BBFileReader(path, stream);
+                        int c;
+                        while ((c = nextChromosome.getAndIncrement()) < chromosomes.size()) {
+                            chromosomeBins[c] = binChromosome(reader, chromosomes.get(c), start, end, windowSizes);
+                        }
+                    } finally {
+                        stream.close();
+                    }
+                    return null;
+                }
+            }));
+        }
+        executor.shutdown();
 
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            for (int w = 0; w < windowSizes.length; w++) {
+                for (WindowBins[] bins : chromosomeBins) {
+                    bins[w].write(writer);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            writer.flush();
+            executor.shutdownNow();
+        }
     }
 
     /**
@@ -74,41 +154,57 @@ public class BigWigUtils {
      * @param chr
      * @param start
      * @param end
-     * @param windowSize
+     * @param windowSizes
      */
-    private static void computeBins(BBFileReader reader, String chr, int start, int end, int windowSize) {
-        BigWigIterator iter = reader.getBigWigIterator(chr, start, chr, end, false);
-        double sum = 0;
-        int nPts = 0;
-        double max = 0;
-        int currentBin = 0;
+    private static WindowBins[] binChromosome(BBFileReader reader, String chr, int start, int end, int[] windowSizes) {
+        WindowBins[] bins = new WindowBins[windowSizes.length];
+        for (int w = 0; w < windowSizes.length; w++) {
+            bins[w] = new WindowBins(chr, windowSizes[w]);
+        }
 
+        BigWigIterator iter = reader.getBigWigIterator(chr, start, chr, end, false);
         while (iter.hasNext()) {
             WigItem datum = iter.next();
             int dPosition = (datum.getStartBase() + datum.getEndBase()) / 2;
+            for (WindowBins windowBins : bins) {
+                windowBins.add(dPosition, datum.getWigValue());
+            }
+        }
+        for (WindowBins windowBins : bins) {
+            windowBins.finish();
+        }
+        return bins;
+    }
 
+    /**
+     * Mean and max of the data in consecutive windows of one chromosome, starting at 0
+     */
+    private static class WindowBins {
+        private final String chr;
+        private final int windowSize;
+        private double[] means = new double[16];
+        private double[] maxes = new double[16];
+        private int numBins = 0;
 
-            if (dPosition > (currentBin + 1) * windowSize) {
-                // Output previous window
-                // if (nPts > 0) {
+        private double sum = 0;
+        private int nPts = 0;
+        private double max = 0;
+        private int currentBin = 0;
 
-                double mean = sum / nPts;
-                int wStart = windowSize * currentBin;
-                int wEnd = wStart + windowSize;
-                // unclear why, but sometimes datum.getChromosome() is null
-                //System.out.println(datum.getChromosome() + "\t" + wStart + "\t" + wEnd + "\t" + mean + "\t" + max);
-                System.out.println(chr + "\t" + wStart + "\t" + wEnd + "\t" + mean + "\t" + max);
+        WindowBins(String chr, int windowSize) {
+            this.chr = chr;
+            this.windowSize = windowSize;
+        }
 
+        void add(int dPosition, double value) {
+            if (dPosition > (currentBin + 1) * windowSize) {
+                // Output previous window
+                append(sum / nPts, max);
                 currentBin++;
 
                 // deal with empty bins
                 while (currentBin < dPosition / windowSize) {
-                    wStart = windowSize * currentBin;
-                    wEnd = wStart + windowSize;
-                    mean = 0;
-                    max = 0;
-                    System.out.println(chr + "\t" + wStart + "\t" + wEnd + "\t" + mean + "\t" + max);
-                    // System.out.println(datum.getChromosome() + "\t" + wStart + "\t" + wEnd + "\t" + mean + "\t" + max);
+                    append(0, 0);
                     currentBin++;
                 }
                 // Start new window
@@ -118,10 +214,41 @@ public class BigWigUtils {
                 max = 0;
             }
 
-            sum += datum.getWigValue();
-            max = Math.max(max, datum.getWigValue());
+            sum += value;
+            max = Math.max(max, value);
             nPts++;
+        }
+
+        void finish() {
+            if (nPts > 0) {
+                append(sum / nPts, max);
+                nPts = 0;
+            }
+        }
+
+        private void append(double mean, double max) {
+            if (numBins == means.length) {
+                means = Arrays.copyOf(means, 2 * numBins);
+                maxes = Arrays.copyOf(maxes, 2 * numBins);
+            }
+            means[numBins] = mean;
+            maxes[numBins] = max;
+            numBins++;
+        }
 
+        void write(PrintWriter writer) {
+            for (int bin = 0; bin < numBins; bin++) {
+                int wStart = windowSize * bin;
+                writer.print(chr);
+                writer.print('\t');
+                writer.print(wStart);
+                writer.print('\t');
+                writer.print(wStart + windowSize);
+                writer.print('\t');
+                writer.print(means[bin]);
+                writer.print('\t');
+                writer.println(maxes[bin]);
+            }
         }
     }
 
@@ -0,0 +1,237 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.tools.utils.original;
+
+import juicebox.data.ContactRecord;
+import org.broad.igv.tdf.BufferedByteWriter;
+
+import java.util.List;
+
+/**
+ * Encodes the contact records of one block in the smallest representation the file version allows: list of rows,
+ * dense matrix, or (version 9) delta encoded list of rows.  Shared by the Preprocessor and HiCFileMerger so that
+ * both write identical blocks; compression is left to the BlockCodec.
+ */
+final class BlockEncoder {
+
+    private BlockEncoder() {
+    }
+
+    /**
+     * @param records contact records of the block, sorted in row-major order (by binY, then binX)
+     * @param version version of the .hic file the block is written to
+     * @return the uncompressed block
+     */
+    static byte[] encode(List<ContactRecord> records, int version) {
+        BufferedByteWriter buffer = new BufferedByteWriter(records.size() * 12);
+        buffer.putInt(records.size());
+
+        if (records.isEmpty()) {
+            buffer.putInt(0);
+            buffer.putInt(0);
+            buffer.put((byte) 0);
+            buffer.put((byte) 1);
+            buffer.putShort((short) 0);
+            return buffer.getBytes();
+        }
+
+        // Find extents of occupied cells
+        int binXOffset = Integer.MAX_VALUE;
+        int binYOffset = Integer.MAX_VALUE;
+        int binXMax = 0;
+        boolean isInteger = true;
+        float maxCounts = 0;
+        float minCounts = Float.MAX_VALUE;
+        int rowCount = 0;
+        int lastY = -1;
+        for (ContactRecord record : records) {
+            binXOffset = Math.min(binXOffset, record.getBinX());
+            binYOffset = Math.min(binYOffset, record.getBinY());
+            binXMax = Math.max(binXMax, record.getBinX());
+            float counts = record.getCounts();
+            isInteger = isInteger && (Math.floor(counts) == counts);
+            maxCounts = Math.max(counts, maxCounts);
+            minCounts = Math.min(counts, minCounts);
+            if (record.getBinY() != lastY) {
+                rowCount++;
+                lastY = record.getBinY();
+            }
+        }
+        buffer.putInt(binXOffset);
+        buffer.putInt(binYOffset);
+
+        // Compute size for each representation and choose smallest
+        boolean useShort = isInteger && (maxCounts < Short.MAX_VALUE);
+        int valueSize = useShort ? 2 : 4;
+        final short w = (short) (binXMax - binXOffset + 1);
+        ContactRecord lastRecord = records.get(records.size() - 1);
+        int nDensePts = (lastRecord.getBinY() - binYOffset) * w + (lastRecord.getBinX() - binXOffset) + 1;
+        int denseSize = nDensePts * valueSize;
+        int lorSize = 4 * rowCount + records.size() * valueSize;
+
+        // Delta encoded rows (version 9), variable length integer counts unless there are fractional counts
+        boolean useVarInt = isInteger && minCounts >= 0 && maxCounts <= Integer.MAX_VALUE;
+        int deltaSize = Integer.MAX_VALUE;
+        if (version >= 9) {
+            deltaSize = getDeltaEncodedSize(records, rowCount, binXOffset, binYOffset, useVarInt);
+        }
+
+        if (deltaSize < lorSize && deltaSize < denseSize) {
+            buffer.put((byte) (useVarInt ? 0 : 1));
+            buffer.put((byte) 3);  // Delta encoded list of rows
+            putVarInt(buffer, rowCount);
+
+            int lastPy = 0;
+            int start = 0;
+            while (start < records.size()) {
+                int end = getRowEnd(records, start);
+                int py = records.get(start).getBinY() - binYOffset;
+                putVarInt(buffer, py - lastPy);
+                putVarInt(buffer, end - start);
+                lastPy = py;
+
+                int lastPx = 0;
+                for (int i = start; i < end; i++) {
+                    ContactRecord record = records.get(i);
+                    int px = record.getBinX() - binXOffset;
+                    putVarInt(buffer, px - lastPx);
+                    lastPx = px;
+                    if (useVarInt) {
+                        putVarInt(buffer, (int) record.getCounts());
+                    } else {
+                        buffer.putFloat(record.getCounts());
+                    }
+                }
+                start = end;
+            }
+
+        } else if (lorSize < denseSize) {
+            buffer.put((byte) (useShort ? 0 : 1));
+            buffer.put((byte) 1);  // List of rows representation
+            buffer.putShort((short) rowCount);
+
+            int start = 0;
+            while (start < records.size()) {
+                int end = getRowEnd(records, start);
+                buffer.putShort((short) (records.get(start).getBinY() - binYOffset));  // Row number
+                buffer.putShort((short) (end - start));  // size of row
+                for (int i = start; i < end; i++) {
+                    ContactRecord record = records.get(i);
+                    buffer.putShort((short) (record.getBinX() - binXOffset));
+                    if (useShort) {
+                        buffer.putShort((short) record.getCounts());
+                    } else {
+                        buffer.putFloat(record.getCounts());
+                    }
+                }
+                start = end;
+            }
+
+        } else {
+            buffer.put((byte) (useShort ? 0 : 1));
+            buffer.put((byte) 2);  // Dense matrix
+            buffer.putInt(nDensePts);
+            buffer.putShort(w);
+
+            int lastIdx = 0;
+            for (ContactRecord record : records) {
+                int idx = (record.getBinY() - binYOffset) * w + (record.getBinX() - binXOffset);
+                for (int i = lastIdx; i < idx; i++) {
+                    // Filler value
+                    if (useShort) {
+                        buffer.putShort(Short.MIN_VALUE);
+                    } else {
+                        buffer.putFloat(Float.NaN);
+                    }
+                }
+                if (useShort) {
+                    buffer.putShort((short) record.getCounts());
+                } else {
+                    buffer.putFloat(record.getCounts());
+                }
+                lastIdx = idx + 1;
+            }
+        }
+        return buffer.getBytes();
+    }
+
+    /**
+     * @return index after the last record of the row starting at start
+     */
+    private static int getRowEnd(List<ContactRecord> records, int start) {
+        int binY = records.get(start).getBinY();
+        int end = start;
+        while (end < records.size() && records.get(end).getBinY() == binY) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * @return size in bytes of the rows of a block written as type 3 (delta encoded list of rows)
+     */
+    private static int getDeltaEncodedSize(List<ContactRecord> records, int rowCount, int binXOffset, int binYOffset,
+                                           boolean useVarInt) {
+        int size = getVarIntSize(rowCount);
+        int lastPy = 0;
+        int start = 0;
+        while (start < records.size()) {
+            int end = getRowEnd(records, start);
+            int py = records.get(start).getBinY() - binYOffset;
+            size += getVarIntSize(py - lastPy) + getVarIntSize(end - start);
+            lastPy = py;
+            int lastPx = 0;
+            for (int i = start; i < end; i++) {
+                ContactRecord record = records.get(i);
+                int px = record.getBinX() - binXOffset;
+                size += getVarIntSize(px - lastPx);
+                size += useVarInt ? getVarIntSize((int) record.getCounts()) : 4;
+                lastPx = px;
+            }
+            start = end;
+        }
+        return size;
+    }
+
+    private static int getVarIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Write a non-negative int 7 bits at a time, low bits first; the high bit of each byte marks a continuation
+     */
+    private static void putVarInt(BufferedByteWriter buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
@@ -55,9 +55,13 @@ public class ExpectedValueCalculation {
 
     private final int numberOfBins;
     /**
-     * Map of chromosome index -> total count for that chromosome
+     * Chromosome index -> total count for that chromosome
      */
-    private final Map<Integer, Double> chromosomeCounts;
+    private final double[] chromosomeCounts;
+    /**
+     * Chromosome index -> whether any count was seen for that chromosome
+     */
+    private final boolean[] chromosomeHasCounts;
     /**
      * Map of chromosome index -> "normalization factor", essentially a fudge factor to make
      * the "expected total"  == observed total
@@ -75,9 +79,9 @@ public class ExpectedValueCalculation {
      */
     private double[] densityAvg = null;
     /**
-     * Chromosome in this genome, needed for normalizations
+     * Chromosome index -> chromosome in this genome, needed for normalizations (null for all by all)
      */
-    private Map<Integer, Chromosome> chromosomesMap = null;
+    private final Chromosome[] chromosomesByIndex;
     /**
      * Stores restriction site fragment information for fragment maps
      */
@@ -86,7 +90,7 @@ public class ExpectedValueCalculation {
     /**
      * Instantiate a DensityCalculation.  This constructor is used to compute the "expected" density from pair data.
      *
-     * @param chromosomeHandler Handler for list of chromosomesMap, mainly used for size
+     * @param chromosomeHandler Handler for list of chromosomes, mainly used for size
      * @param gridSize         Grid size, used for binning appropriately
      * @param fragmentCountMap Optional.  Map of chromosome name -> number of fragments
      * @param type             Identifies the observed matrix type,  either NONE (observed), VC, or KR.
@@ -102,11 +106,17 @@ public class ExpectedValueCalculation {
         }
 
         long maxLen = 0;
-        this.chromosomesMap = new LinkedHashMap<>();
+        int maxIndex = 0;
+        for (Chromosome chr : chromosomeHandler.getChromosomeArrayWithoutAllByAll()) {
+            if (chr != null) {
+                maxIndex = Math.max(maxIndex, chr.getIndex());
+            }
+        }
+        this.chromosomesByIndex = new Chromosome[maxIndex + 1];
 
         for (Chromosome chr : chromosomeHandler.getChromosomeArrayWithoutAllByAll()) {
             if (chr != null) {
-                chromosomesMap.put(chr.getIndex(), chr);
+                chromosomesByIndex[chr.getIndex()] = chr;
                 try {
                     maxLen = isFrag ?
                             Math.max(maxLen, fragmentCountMap.get(chr.getName())) :
@@ -132,12 +142,54 @@ public class ExpectedValueCalculation {
         numberOfBins = (int) (maxLen / gridSize) + 1;
 
         actualDistances = new double[numberOfBins];
-        Arrays.fill(actualDistances, 0);
-        chromosomeCounts = new HashMap<>();
+        chromosomeCounts = new double[chromosomesByIndex.length];
+        chromosomeHasCounts = new boolean[chromosomesByIndex.length];
         chrScaleFactors = new LinkedHashMap<>();
 
     }
 
+    /**
+     * Empty calculation over the same genome and grid, used as an accumulator for one thread of a parallel pass
+     */
+    private ExpectedValueCalculation(ExpectedValueCalculation other) {
+        this.type = other.type;
+        this.gridSize = other.gridSize;
+        this.isFrag = other.isFrag;
+        this.fragmentCountMap = other.fragmentCountMap;
+        this.chromosomesByIndex = other.chromosomesByIndex;
+        this.numberOfBins = other.numberOfBins;
+        actualDistances = new double[numberOfBins];
+        chromosomeCounts = new double[chromosomesByIndex.length];
+        chromosomeHasCounts = new boolean[chromosomesByIndex.length];
+        chrScaleFactors = new LinkedHashMap<>();
+    }
+
+    /**
+     * Each thread of a parallel pass should accumulate into its own copy, which are then combined with merge.
+     *
+     * @return new empty calculation with the same chromosomes, grid size and type
+     */
+    public ExpectedValueCalculation createAccumulator() {
+        return new ExpectedValueCalculation(this);
+    }
+
+    /**
+     * Add the counts accumulated in another calculation (e.g. from createAccumulator) to this one
+     */
+    public synchronized void merge(ExpectedValueCalculation other) {
+        if (other.gridSize != gridSize || other.numberOfBins != numberOfBins
+                || other.chromosomesByIndex.length != chromosomesByIndex.length) {
+            throw new IllegalArgumentException("Attempt to merge incompatible expected value calculations");
+        }
+        for (int i = 0; i < numberOfBins; i++) {
+            actualDistances[i] += other.actualDistances[i];
+        }
+        for (int i = 0; i < chromosomeCounts.length; i++) {
+            chromosomeCounts[i] += other.chromosomeCounts[i];
+            chromosomeHasCounts[i] |= other.chromosomeHasCounts[i];
+        }
+    }
+
     public int getGridSize() {
         return gridSize;
     }
@@ -150,30 +202,26 @@ public class ExpectedValueCalculation {
      * @param bin1   Position1 observed in units of "bins"
      * @param bin2   Position2 observed in units of "bins"
      */
-    public void addDistance(Integer chrIdx, int bin1, int bin2, double weight) {
+    public void addDistance(int chrIdx, int bin1, int bin2, double weight) {
 
         // Ignore NaN values    TODO -- is this the right thing to do?
         if (Double.isNaN(weight)) return;
 
-        int dist;
-        Chromosome chr = chromosomesMap.get(chrIdx);
-        if (chr == null) return;
-
-        Double count = chromosomeCounts.get(chrIdx);
-        if (count == null) {
-            chromosomeCounts.put(chrIdx, weight);
-        } else {
-            chromosomeCounts.put(chrIdx, count + weight);
-        }
-        dist = Math.abs(bin1 - bin2);
+        if (chrIdx < 0 || chrIdx >= chromosomesByIndex.length || chromosomesByIndex[chrIdx] == null) return;
 
+        chromosomeCounts[chrIdx] += weight;
+        chromosomeHasCounts[chrIdx] = true;
 
+        int dist = Math.abs(bin1 - bin2);
         actualDistances[dist] += weight;
 
     }
 
     public boolean hasData() {
-        return !chromosomeCounts.isEmpty();
+        for (boolean hasCounts : chromosomeHasCounts) {
+            if (hasCounts) return true;
+        }
+        return false;
     }
 
     /**
@@ -195,10 +243,10 @@ public class ExpectedValueCalculation {
          */
         double[] possibleDistances = new double[numberOfBins];
 
-        for (Chromosome chr : chromosomesMap.values()) {
+        for (Chromosome chr : chromosomesByIndex) {
 
             // didn't see anything at all from a chromosome, then don't include it in possDists.
-            if (chr == null || !chromosomeCounts.containsKey(chr.getIndex())) continue;
+            if (chr == null || !chromosomeHasCounts[chr.getIndex()]) continue;
 
             // use correct units (bp or fragments)
             int len = isFrag ? fragmentCountMap.get(chr.getName()) : chr.getLength();
@@ -252,9 +300,9 @@ public class ExpectedValueCalculation {
 
         // Compute fudge factors for each chromosome so the total "expected" count for that chromosome == the observed
 
-        for (Chromosome chr : chromosomesMap.values()) {
+        for (Chromosome chr : chromosomesByIndex) {
 
-            if (chr == null || !chromosomeCounts.containsKey(chr.getIndex())) {
+            if (chr == null || !chromosomeHasCounts[chr.getIndex()]) {
                 continue;
             }
             //int len = isFrag ? fragmentCalculation.getNumberFragments(chr.getName()) : chr.getLength();
@@ -276,7 +324,7 @@ public class ExpectedValueCalculation {
                 }
             }
 
-            double observedCount = chromosomeCounts.get(chr.getIndex());
+            double observedCount = chromosomeCounts[chr.getIndex()];
             double f = expectedCount / observedCount;
             chrScaleFactors.put(chr.getIndex(), f);
         }
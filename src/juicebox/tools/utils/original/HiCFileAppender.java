@@ -0,0 +1,743 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.tools.utils.original;
+
+import htsjdk.tribble.util.LittleEndianOutputStream;
+import juicebox.HiC;
+import juicebox.HiCGlobals;
+import juicebox.data.*;
+import juicebox.tools.clt.CommandLineParser.Alignment;
+import juicebox.windowui.HiCZoom;
+import juicebox.windowui.NormalizationHandler;
+import juicebox.windowui.NormalizationType;
+import org.broad.igv.feature.Chromosome;
+import org.broad.igv.tdf.BufferedByteWriter;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Adds the contacts of a new pairs file to an existing .hic file without preprocessing the existing contacts again.
+ * The new contacts are binned by the Preprocessor at the base-pair resolutions of the existing file.  Blocks that
+ * receive new contacts are merged and written after the existing data, followed by new headers for the matrices
+ * that changed and a new footer; everything else, including the file header and its attributes, stays where it is
+ * and is referenced by the new index.
+ * <p>
+ * When the file is replaced, nothing before its current end is modified until the new data is on disk: the master
+ * index position in the header is switched last, and a failed append truncates the file back to its original length.
+ * Once the header is switched, the previous normalizations and precomputed Pearson's are no longer referenced and
+ * have to be recomputed for the combined contacts (see AppendHiC).  If the process is killed before the switch, the
+ * file still holds the previous contacts and normalizations; its precomputed Pearson's are found again once the
+ * unreferenced data at the end of the file is truncated.
+ * <p>
+ * Cost: blocks without new contacts are not rewritten, but expected values need the diagonal sums of every
+ * intra-chromosomal contact, so the intra-chromosomal blocks of each resolution are read (not rewritten) once.
+ * Recomputing the normalizations reads the whole library.  Replaced blocks, the previous footer, normalizations and
+ * precomputed Pearson's remain in the file as unused space; merging the file on its own with HiCFileMerger writes a
+ * compact copy.
+ * <p>
+ * The append is refused when it would lose data: files with fragment resolutions, and, when replacing the file,
+ * normalizations or precomputed Pearson's that are not recomputed afterwards (see setRecalculatedNorms).
+ */
+public class HiCFileAppender {
+
+    private static final int MIN_VERSION = 7;
+
+    private final String hicFile;
+    private final File outputFile;
+    private final int numThreads;
+    private final Map<String, Preprocessor.IndexEntry> matrixPositions = new LinkedHashMap<>();
+    private final Set<String> precomputedResolutions = new HashSet<>();
+    private final Set<String> precomputedNorms = new HashSet<>();
+    private String tmpDirName = null;
+    private int mapqThreshold = 0;
+    private boolean diagonalsOnly = false;
+    private Alignment alignmentFilter = null;
+    private List<NormalizationType> recalculatedNorms = null;
+    private DatasetReaderV2 reader;
+    private DatasetReaderV2 newReader;
+    private Map<String, ExpectedValueCalculation> expectedValueCalculations;
+    private ExecutorService executor;
+    private LittleEndianOutputStream los;
+    private long dataStart;
+
+    /**
+     * @param hicFile    existing .hic file
+     * @param outputFile file for the combined contacts, may be the existing file itself
+     */
+    public HiCFileAppender(String hicFile, File outputFile, int numThreads) {
+        this.hicFile = hicFile;
+        this.outputFile = outputFile;
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    public void setTmpdir(String tmpDirName) {
+        this.tmpDirName = tmpDirName;
+    }
+
+    public void setMapqThreshold(int mapqThreshold) {
+        this.mapqThreshold = mapqThreshold;
+    }
+
+    public void setDiagonalsOnly(boolean diagonalsOnly) {
+        this.diagonalsOnly = diagonalsOnly;
+    }
+
+    public void setAlignmentFilter(Alignment alignmentFilter) {
+        this.alignmentFilter = alignmentFilter;
+    }
+
+    /**
+     * @param recalculatedNorms normalizations that will be recomputed for the combined contacts, null if none are
+     */
+    public void setRecalculatedNorms(List<NormalizationType> recalculatedNorms) {
+        this.recalculatedNorms = recalculatedNorms;
+    }
+
+    /**
+     * @return resolutions of the Pearson's precomputed in the existing file, to be precomputed again once the
+     * normalizations are recomputed; null if there were none
+     */
+    public Set<String> getPrecomputedResolutions() {
+        return precomputedResolutions.isEmpty() ? null : precomputedResolutions;
+    }
+
+    /**
+     * @return normalizations of the Pearson's precomputed in the existing file
+     */
+    public Set<String> getPrecomputedNorms() {
+        return precomputedNorms;
+    }
+
+    public void append(String pairsFile) throws IOException {
+        reader = new DatasetReaderV2(hicFile);
+        File newContactsFile = null;
+        executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            Dataset dataset = reader.read();
+            HiCGlobals.verifySupportedHiCFileVersion(reader.getVersion());
+            boolean inPlace = outputFile.getCanonicalFile().equals(new File(hicFile).getCanonicalFile());
+            checkNothingIsLost(dataset, inPlace);
+
+            Set<String> resolutions = new HashSet<>();
+            for (HiCZoom zoom : dataset.getBpZooms()) {
+                resolutions.add(String.valueOf(zoom.getBinSize()));
+            }
+
+            File tmpDir = tmpDirName == null ? outputFile.getAbsoluteFile().getParentFile() : new File(tmpDirName);
+            newContactsFile = File.createTempFile("append", ".hic", tmpDir);
+            Preprocessor preprocessor = new Preprocessor(newContactsFile, dataset.getGenomeId(),
+                    dataset.getChromosomeHandler(), 1);
+            preprocessor.setResolutions(resolutions);
+            preprocessor.setTmpdir(tmpDirName);
+            preprocessor.setMapqThreshold(mapqThreshold);
+            preprocessor.setDiagonalsOnly(diagonalsOnly);
+            preprocessor.setAlignmentFilter(alignmentFilter);
+            if (reader.getBlockCodec() != BlockCodec.DEFLATE) {
+                // new blocks in the codec of the existing file can be referenced without re-encoding
+                preprocessor.setBlockCodec(reader.getBlockCodec());
+            }
+            preprocessor.preprocess(pairsFile);
+
+            newReader = new DatasetReaderV2(newContactsFile.getAbsolutePath());
+            newReader.read();
+            HiCGlobals.verifySupportedHiCFileVersion(newReader.getVersion());
+
+            ChromosomeHandler chromosomeHandler = dataset.getChromosomeHandler();
+            List<MatrixPair> matrices = readMatrices(chromosomeHandler);
+
+            expectedValueCalculations = new LinkedHashMap<>();
+            for (HiCZoom zoom : dataset.getBpZooms()) {
+                expectedValueCalculations.put(zoom.getKey(),
+                        new ExpectedValueCalculation(chromosomeHandler, zoom.getBinSize(), null, NormalizationHandler.NONE));
+            }
+
+            // the new data goes after the end of the existing file; a new file gets a copy of the contacts without
+            // the normalizations, which are recomputed for the combined contacts
+            long originalLength = new File(hicFile).length();
+            dataStart = inPlace ? originalLength : reader.getNormFilePosition();
+            boolean isAppended = false;
+            try {
+                if (!inPlace) {
+                    copyContacts(dataStart);
+                }
+                FileOutputStream fos = new FileOutputStream(outputFile, true);
+                los = new LittleEndianOutputStream(new BufferedOutputStream(fos, HiCGlobals.bufferSize));
+                long masterIndexPosition;
+                try {
+                    for (MatrixPair pair : matrices) {
+                        if (pair.newMatrix == null) {
+                            keepMatrix(pair);
+                        } else {
+                            writeMatrix(pair);
+                        }
+                        System.out.print(".");
+                    }
+                    masterIndexPosition = getPosition();
+                    writeFooter();
+                    los.flush();
+                    fos.getFD().sync();
+                } finally {
+                    los.close();
+                }
+                updateMasterIndexPosition(masterIndexPosition);
+                isAppended = true;
+            } finally {
+                if (!isAppended) {
+                    rollBack(inPlace, originalLength);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            reader.close();
+            if (newReader != null) {
+                newReader.close();
+            }
+            if (newContactsFile != null && !newContactsFile.delete()) {
+                newContactsFile.deleteOnExit();
+            }
+        }
+        System.out.println("\nFinished appending " + pairsFile);
+    }
+
+    /**
+     * @throws RuntimeException if the combined file could not hold everything the existing file holds
+     */
+    private void checkNothingIsLost(Dataset dataset, boolean inPlace) {
+        if (reader.getVersion() < MIN_VERSION) {
+            throw new RuntimeException(hicFile + " is version " + reader.getVersion() + "; contacts can only be appended to version "
+                    + MIN_VERSION + " or later files");
+        }
+        if (dataset.getBpZooms().isEmpty()) {
+            throw new RuntimeException(hicFile + " has no base-pair resolutions to append to");
+        }
+        if (!dataset.getFragZooms().isEmpty()) {
+            throw new RuntimeException("Cannot append to " + hicFile + ": new contacts cannot be added to its fragment resolutions");
+        }
+
+        List<NormalizationType> lostNorms = new ArrayList<>();
+        for (NormalizationType type : dataset.getNormalizationTypes()) {
+            if (!type.equals(NormalizationHandler.NONE) && (recalculatedNorms == null || !recalculatedNorms.contains(type))) {
+                lostNorms.add(type);
+            }
+        }
+        if (!lostNorms.isEmpty()) {
+            reportLoss("normalizations " + lostNorms + " of " + hicFile + " are not recomputed", inPlace);
+        }
+
+        if (reader.getPrecomputedSectionPosition() >= 0) {
+            for (HiCZoom zoom : dataset.getBpZooms()) {
+                for (NormalizationType type : dataset.getNormalizationTypes()) {
+                    for (Chromosome chr : dataset.getChromosomeHandler().getChromosomeArrayWithoutAllByAll()) {
+                        if (reader.hasPrecomputedPearsons(chr.getName(), chr.getName(), zoom, type)) {
+                            precomputedResolutions.add(String.valueOf(zoom.getBinSize()));
+                            precomputedNorms.add(type.getLabel());
+                            break;
+                        }
+                    }
+                }
+            }
+            if (recalculatedNorms == null) {
+                reportLoss("precomputed Pearson's of " + hicFile + " are not recomputed without normalizations", inPlace);
+                precomputedResolutions.clear();
+                precomputedNorms.clear();
+            }
+        }
+    }
+
+    private void reportLoss(String message, boolean inPlace) {
+        if (inPlace) {
+            throw new RuntimeException("Cannot append to " + hicFile + " in place: " + message
+                    + "; write to a new file instead");
+        }
+        System.err.println("Warning: " + message + ", so they are not in " + outputFile);
+    }
+
+    /**
+     * @return matrices of the existing and the new contacts, for every chromosome pair in either file
+     * @throws RuntimeException if a new matrix has a resolution or block layout the existing one lacks
+     */
+    private List<MatrixPair> readMatrices(ChromosomeHandler chromosomeHandler) throws IOException {
+        List<MatrixPair> matrices = new ArrayList<>();
+        Chromosome[] chromosomes = chromosomeHandler.getChromosomeArray();
+        for (int i = 0; i < chromosomes.length; i++) {
+            for (int j = i; j < chromosomes.length; j++) {
+                String key = Matrix.generateKey(i, j);
+                Matrix oldMatrix = reader.readMatrix(key);
+                Matrix newMatrix = newReader.readMatrix(key);
+                if (oldMatrix == null && newMatrix == null) continue;
+
+                MatrixPair pair = new MatrixPair(key, i, j, newMatrix);
+                if (oldMatrix != null) {
+                    for (MatrixZoomData zd : oldMatrix.getAllZoomData()) {
+                        pair.oldZoomData.add(zd);
+                        pair.newZoomData.add(newMatrix == null ? null : getZoomData(newMatrix, zd.getZoom()));
+                    }
+                }
+                if (newMatrix != null) {
+                    for (MatrixZoomData zd : newMatrix.getAllZoomData()) {
+                        MatrixZoomData oldZd = oldMatrix == null ? null : getZoomData(oldMatrix, zd.getZoom());
+                        if (oldZd == null && oldMatrix != null) {
+                            throw new RuntimeException("Cannot append to " + hicFile + ": " + zd.getZoom()
+                                    + " of matrix " + key + " is missing from the file");
+                        }
+                        if (oldZd == null) {
+                            pair.oldZoomData.add(null);
+                            pair.newZoomData.add(zd);
+                        } else if (oldZd.getBlockBinCount() != zd.getBlockBinCount()
+                                || oldZd.getBlockColumnCount() != zd.getBlockColumnCount()) {
+                            throw new RuntimeException("Cannot append to " + hicFile + ": block layout of " + zd.getZoom()
+                                    + " for matrix " + key + " differs from the new contacts");
+                        }
+                    }
+                }
+                matrices.add(pair);
+            }
+        }
+        return matrices;
+    }
+
+    /**
+     * @return zoom data at exactly the given resolution, or null
+     */
+    private static MatrixZoomData getZoomData(Matrix matrix, HiCZoom zoom) {
+        for (MatrixZoomData zd : matrix.getAllZoomData()) {
+            if (zd.getZoom().equals(zoom)) {
+                return zd;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copy the header, contacts and footer of the existing file, i.e. everything before its normalizations
+     */
+    private void copyContacts(long length) throws IOException {
+        try (FileChannel source = new FileInputStream(hicFile).getChannel();
+             FileChannel target = new FileOutputStream(outputFile).getChannel()) {
+            long copied = 0;
+            while (copied < length) {
+                copied += source.transferTo(copied, length - copied, target);
+            }
+        }
+    }
+
+    /**
+     * Remove everything written by a failed append: the existing file is truncated back to its original length,
+     * a new file is deleted
+     */
+    private void rollBack(boolean inPlace, long originalLength) {
+        try {
+            if (inPlace) {
+                try (RandomAccessFile raf = new RandomAccessFile(outputFile, "rw")) {
+                    raf.setLength(originalLength);
+                }
+            } else if (outputFile.exists() && !outputFile.delete()) {
+                System.err.println("Unable to delete incomplete " + outputFile);
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to truncate " + outputFile + " back to " + originalLength + " bytes " + e.getLocalizedMessage());
+        }
+    }
+
+    private long getPosition() {
+        return dataStart + los.getWrittenCount();
+    }
+
+    /**
+     * A matrix without new contacts keeps its header; only intra-chromosomal blocks are read, for expected values
+     */
+    private void keepMatrix(MatrixPair pair) throws IOException {
+        matrixPositions.put(pair.key, reader.getMatrixIndexEntry(pair.key));
+        for (MatrixZoomData zd : pair.oldZoomData) {
+            ExpectedValueCalculation ev = getExpectedValueCalculation(pair, zd);
+            if (ev != null) {
+                appendBlocks(zd, null, ev);
+            }
+        }
+    }
+
+    private void writeMatrix(MatrixPair pair) throws IOException {
+        List<ZoomHeader> headers = new ArrayList<>();
+        for (int z = 0; z < pair.oldZoomData.size(); z++) {
+            MatrixZoomData oldZd = pair.oldZoomData.get(z);
+            MatrixZoomData newZd = pair.newZoomData.get(z);
+            MatrixZoomData zd = oldZd == null ? newZd : oldZd;
+
+            ZoomHeader header = new ZoomHeader(zd);
+            float[] oldStats = oldZd == null ? null : reader.readZoomStatistics(oldZd);
+            float[] newStats = newZd == null ? null : newReader.readZoomStatistics(newZd);
+            if (oldStats != null) {
+                header.sum = oldStats[0];
+                header.cellCount = oldStats[1];
+                // percentiles of the existing counts are kept, recomputing them would read every block
+                header.percent5 = oldStats[2];
+                header.percent95 = oldStats[3];
+            } else if (newStats != null) {
+                header.percent5 = newStats[2];
+                header.percent95 = newStats[3];
+            }
+            if (newStats != null) {
+                header.sum += newStats[0];
+            }
+            appendBlocks(oldZd, newZd, getExpectedValueCalculation(pair, zd), header);
+            headers.add(header);
+        }
+
+        long position = getPosition();
+        los.writeInt(pair.chr1Idx);
+        los.writeInt(pair.chr2Idx);
+        los.writeInt(headers.size());
+        for (int z = 0; z < headers.size(); z++) {
+            ZoomHeader header = headers.get(z);
+            los.writeString(header.unit.toString());
+            los.writeInt(z);
+            los.writeFloat((float) header.sum);
+            los.writeFloat((float) header.cellCount);
+            los.writeFloat((float) header.percent5);
+            los.writeFloat((float) header.percent95);
+            los.writeInt(header.binSize);
+            los.writeInt(header.blockBinCount);
+            los.writeInt(header.blockColumnCount);
+            los.writeInt(header.blockIndex.size());
+            for (Preprocessor.IndexEntry entry : header.blockIndex) {
+                los.writeInt(entry.id);
+                los.writeLong(entry.position);
+                los.writeInt(entry.size);
+            }
+        }
+        matrixPositions.put(pair.key, new Preprocessor.IndexEntry(position, (int) (getPosition() - position)));
+    }
+
+    /**
+     * @return expected value calculation for an intra-chromosomal matrix, null for the others
+     */
+    private ExpectedValueCalculation getExpectedValueCalculation(MatrixPair pair, MatrixZoomData zd) {
+        if (pair.chr1Idx != pair.chr2Idx || pair.chr1Idx == 0) return null;
+        return expectedValueCalculations.get(zd.getZoom().getKey());
+    }
+
+    private void appendBlocks(MatrixZoomData oldZd, MatrixZoomData newZd, ExpectedValueCalculation ev) throws IOException {
+        appendBlocks(oldZd, newZd, ev, null);
+    }
+
+    /**
+     * Write the blocks with new contacts and add every block of the resolution to the header.  Blocks without new
+     * contacts are only read when their distances are needed for expected values.
+     *
+     * @param header zoom header to fill in, or null when the resolution is unchanged
+     */
+    private void appendBlocks(final MatrixZoomData oldZd, final MatrixZoomData newZd, final ExpectedValueCalculation ev,
+                              ZoomHeader header) throws IOException {
+        Set<Integer> oldBlockNumbers = new HashSet<>();
+        if (oldZd != null) {
+            List<Integer> numbers = reader.getBlockNumbers(oldZd);
+            if (numbers != null) oldBlockNumbers.addAll(numbers);
+        }
+        Set<Integer> newBlockNumbers = new HashSet<>();
+        if (newZd != null) {
+            List<Integer> numbers = newReader.getBlockNumbers(newZd);
+            if (numbers != null) newBlockNumbers.addAll(numbers);
+        }
+        Set<Integer> blockNumberSet = new HashSet<>(oldBlockNumbers);
+        blockNumberSet.addAll(newBlockNumbers);
+        List<Integer> blockNumbers = new ArrayList<>(blockNumberSet);
+        Collections.sort(blockNumbers);
+
+        // each worker adds distances to its own accumulator; they are merged once every block is done
+        final List<ExpectedValueCalculation> evAccumulators = new Vector<>();
+        final ThreadLocal<ExpectedValueCalculation> localEv = ev == null ? null : new ThreadLocal<ExpectedValueCalculation>() {
+            @Override
+            protected ExpectedValueCalculation initialValue() {
+                ExpectedValueCalculation accumulator = ev.createAccumulator();
+                evAccumulators.add(accumulator);
+                return accumulator;
+            }
+        };
+
+        // bounded number of blocks held in memory at once
+        int maxPending = 4 * numThreads;
+        Deque<Future<AppendedBlock>> pending = new ArrayDeque<>();
+        try {
+            for (final int blockNumber : blockNumbers) {
+                final boolean isOld = oldBlockNumbers.contains(blockNumber);
+                final boolean isNew = newBlockNumbers.contains(blockNumber);
+                if (!isNew && header != null) {
+                    header.blockIndex.add(getBlockIndexEntry(blockNumber, oldZd));
+                }
+                if (!isNew && localEv == null) continue;
+
+                if (pending.size() >= maxPending) {
+                    writeBlock(pending.poll().get(), header);
+                }
+                pending.add(executor.submit(new Callable<AppendedBlock>() {
+                    @Override
+                    public AppendedBlock call() throws IOException {
+                        List<ContactRecord> records = isOld ? readRecords(reader, blockNumber, oldZd) : null;
+                        AppendedBlock block = new AppendedBlock(blockNumber);
+                        if (isNew) {
+                            block.oldRecordCount = isOld ? records.size() : 0;
+                            records = mergeNewRecords(records, blockNumber, newZd, block);
+                            block.recordCount = records.size();
+                        }
+                        if (localEv != null) {
+                            ExpectedValueCalculation accumulator = localEv.get();
+                            for (ContactRecord record : records) {
+                                accumulator.addDistance(oldZd == null ? newZd.getChr1Idx() : oldZd.getChr1Idx(),
+                                        record.getBinX(), record.getBinY(), record.getCounts());
+                            }
+                        }
+                        return block;
+                    }
+                }));
+            }
+            while (!pending.isEmpty()) {
+                writeBlock(pending.poll().get(), header);
+            }
+            if (ev != null) {
+                for (ExpectedValueCalculation accumulator : evAccumulators) {
+                    ev.merge(accumulator);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while appending to " + (oldZd == null ? newZd : oldZd).getDescription(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            for (Future<AppendedBlock> future : pending) {
+                future.cancel(true);
+            }
+        }
+
+        if (header != null) {
+            Collections.sort(header.blockIndex, new Comparator<Preprocessor.IndexEntry>() {
+                @Override
+                public int compare(Preprocessor.IndexEntry o1, Preprocessor.IndexEntry o2) {
+                    return Integer.compare(o1.id, o2.id);
+                }
+            });
+        }
+    }
+
+    private Preprocessor.IndexEntry getBlockIndexEntry(int blockNumber, MatrixZoomData zd) throws IOException {
+        Preprocessor.IndexEntry entry = reader.getBlockIndexEntry(blockNumber, zd);
+        return new Preprocessor.IndexEntry(blockNumber, entry.position, entry.size);
+    }
+
+    private static List<ContactRecord> readRecords(DatasetReaderV2 source, int blockNumber, MatrixZoomData zd) throws IOException {
+        byte[] compressedBytes = source.readCompressedBlock(blockNumber, zd);
+        if (compressedBytes == null) {
+            return new ArrayList<>();
+        }
+        return source.decodeBlock(compressedBytes);
+    }
+
+    /**
+     * Add the new contacts of a block to the existing ones and encode the result in the format of the existing file
+     *
+     * @param oldRecords existing contacts of the block, null if the block is new
+     */
+    private List<ContactRecord> mergeNewRecords(List<ContactRecord> oldRecords, int blockNumber, MatrixZoomData newZd,
+                                                AppendedBlock block) throws IOException {
+        byte[] newBytes = newReader.readCompressedBlock(blockNumber, newZd);
+        List<ContactRecord> newRecords = newBytes == null ? new ArrayList<ContactRecord>() : newReader.decodeBlock(newBytes);
+        if (oldRecords == null && newBytes != null && canCopyNewBlocks()) {
+            block.compressedBytes = newBytes;
+            return newRecords;
+        }
+
+        List<ContactRecord> records = oldRecords == null ? newRecords : mergeRecords(oldRecords, newRecords);
+        block.compressedBytes = reader.getBlockCodec().compress(BlockEncoder.encode(records, reader.getVersion()));
+        return records;
+    }
+
+    /**
+     * New blocks can be referenced as they are when they use the codec of the existing file and an encoding its
+     * version reads
+     */
+    private boolean canCopyNewBlocks() {
+        return newReader.getVersion() <= reader.getVersion() && newReader.getBlockCodec() == reader.getBlockCodec();
+    }
+
+    /**
+     * @return records of both lists in row-major order, with the counts of cells present in both summed
+     */
+    private static List<ContactRecord> mergeRecords(List<ContactRecord> records1, List<ContactRecord> records2) {
+        Comparator<ContactRecord> rowMajor = new Comparator<ContactRecord>() {
+            @Override
+            public int compare(ContactRecord o1, ContactRecord o2) {
+                if (o1.getBinY() != o2.getBinY()) {
+                    return Integer.compare(o1.getBinY(), o2.getBinY());
+                }
+                return Integer.compare(o1.getBinX(), o2.getBinX());
+            }
+        };
+        List<ContactRecord> sorted1 = new ArrayList<>(records1);
+        List<ContactRecord> sorted2 = new ArrayList<>(records2);
+        Collections.sort(sorted1, rowMajor);
+        Collections.sort(sorted2, rowMajor);
+
+        List<ContactRecord> merged = new ArrayList<>(sorted1.size() + sorted2.size());
+        int i = 0;
+        int j = 0;
+        while (i < sorted1.size() || j < sorted2.size()) {
+            int comparison;
+            if (i == sorted1.size()) {
+                comparison = 1;
+            } else if (j == sorted2.size()) {
+                comparison = -1;
+            } else {
+                comparison = rowMajor.compare(sorted1.get(i), sorted2.get(j));
+            }
+
+            if (comparison < 0) {
+                merged.add(sorted1.get(i++));
+            } else if (comparison > 0) {
+                merged.add(sorted2.get(j++));
+            } else {
+                ContactRecord record = sorted1.get(i++);
+                merged.add(new ContactRecord(record.getBinX(), record.getBinY(), record.getCounts() + sorted2.get(j++).getCounts()));
+            }
+        }
+        return merged;
+    }
+
+    private void writeBlock(AppendedBlock block, ZoomHeader header) throws IOException {
+        if (block.compressedBytes == null) return;
+
+        long position = getPosition();
+        los.write(block.compressedBytes);
+        header.blockIndex.add(new Preprocessor.IndexEntry(block.number, position, block.compressedBytes.length));
+        header.cellCount += block.recordCount - block.oldRecordCount;
+    }
+
+    private void writeFooter() throws IOException {
+        BufferedByteWriter buffer = new BufferedByteWriter();
+        buffer.putInt(matrixPositions.size());
+        for (Map.Entry<String, Preprocessor.IndexEntry> entry : matrixPositions.entrySet()) {
+            buffer.putNullTerminatedString(entry.getKey());
+            buffer.putLong(entry.getValue().position);
+            buffer.putInt(entry.getValue().size);
+        }
+
+        // Expected values, recomputed from the combined contacts
+        buffer.putInt(expectedValueCalculations.size());
+        for (ExpectedValueCalculation ev : expectedValueCalculations.values()) {
+            ev.computeDensity();
+
+            buffer.putNullTerminatedString(HiC.Unit.BP.toString());
+            buffer.putInt(ev.getGridSize());
+
+            double[] expectedValues = ev.getDensityAvg();
+            buffer.putInt(expectedValues.length);
+            for (double expectedValue : expectedValues) {
+                buffer.putDouble(expectedValue);
+            }
+
+            Map<Integer, Double> normalizationFactors = ev.getChrScaleFactors();
+            buffer.putInt(normalizationFactors.size());
+            for (Map.Entry<Integer, Double> normFactor : normalizationFactors.entrySet()) {
+                buffer.putInt(normFactor.getKey());
+                buffer.putDouble(normFactor.getValue());
+            }
+        }
+
+        byte[] bytes = buffer.getBytes();
+        los.writeInt(bytes.length);
+        los.write(bytes);
+    }
+
+    /**
+     * Point the header to the new footer; until then readers see the contacts of the existing file
+     */
+    private void updateMasterIndexPosition(long masterIndexPosition) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(outputFile, "rw")) {
+            BufferedByteWriter buffer = new BufferedByteWriter();
+            buffer.putLong(masterIndexPosition);
+            raf.getChannel().position(8);  // after the magic string and version
+            raf.write(buffer.getBytes());
+        }
+    }
+
+    /**
+     * Matrices of one chromosome pair, with their zoom data matched by resolution
+     */
+    private static class MatrixPair {
+        final String key;
+        final int chr1Idx;
+        final int chr2Idx;
+        final Matrix newMatrix;
+        // null where only one of the files has the resolution
+        final List<MatrixZoomData> oldZoomData = new ArrayList<>();
+        final List<MatrixZoomData> newZoomData = new ArrayList<>();
+
+        MatrixPair(String key, int chr1Idx, int chr2Idx, Matrix newMatrix) {
+            this.key = key;
+            this.chr1Idx = chr1Idx;
+            this.chr2Idx = chr2Idx;
+            this.newMatrix = newMatrix;
+        }
+    }
+
+    private static class ZoomHeader {
+        final HiC.Unit unit;
+        final int binSize;
+        final int blockBinCount;
+        final int blockColumnCount;
+        final List<Preprocessor.IndexEntry> blockIndex = new ArrayList<>();
+        double sum;
+        double cellCount;
+        double percent5;
+        double percent95;
+
+        ZoomHeader(MatrixZoomData zd) {
+            this.unit = zd.getZoom().getUnit();
+            this.binSize = zd.getBinSize();
+            this.blockBinCount = zd.getBlockBinCount();
+            this.blockColumnCount = zd.getBlockColumnCount();
+        }
+    }
+
+    private static class AppendedBlock {
+        final int number;
+        // null when the block is unchanged
+        byte[] compressedBytes;
+        int recordCount;
+        int oldRecordCount;
+
+        AppendedBlock(int number) {
+            this.number = number;
+        }
+    }
+}
@@ -0,0 +1,539 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.tools.utils.original;
+
+import htsjdk.tribble.util.LittleEndianOutputStream;
+import juicebox.HiC;
+import juicebox.HiCGlobals;
+import juicebox.data.*;
+import juicebox.windowui.HiCZoom;
+import juicebox.windowui.NormalizationHandler;
+import org.apache.commons.math.stat.StatUtils;
+import org.broad.igv.feature.Chromosome;
+import org.broad.igv.tdf.BufferedByteWriter;
+import org.broad.igv.util.collections.DownsampledDoubleArrayList;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Writes the sum of several .hic files to a new .hic file.  Blocks are merged directly from the existing files for
+ * each (chromosome pair, resolution, block number), so nothing is re-binned from the original pairs.  A block found
+ * in only one file is copied without re-encoding; the others are summed and compressed in parallel.  Blocks are
+ * written in order using the same layout as the Preprocessor.
+ * Only base-pair resolutions shared by all files are written.  Normalizations can be recomputed afterwards with
+ * NormalizationVectorUpdater.
+ */
+public class HiCFileMerger {
+
+    private static final int VERSION = 8;
+    private static final int LATEST_VERSION = 9;
+
+    private final List<String> inputFiles;
+    private final File outputFile;
+    private final int numThreads;
+    private final Map<String, Preprocessor.IndexEntry> matrixPositions = new LinkedHashMap<>();
+    private final List<ZoomHeaderUpdate> zoomHeaderUpdates = new ArrayList<>();
+    private BlockCodec blockCodec = BlockCodec.DEFLATE;
+    private int version = VERSION;
+    private Map<String, ExpectedValueCalculation> expectedValueCalculations;
+    private LittleEndianOutputStream los;
+    private long masterIndexPositionPosition;
+    private long masterIndexPosition;
+
+    public HiCFileMerger(List<String> inputFiles, File outputFile, int numThreads) {
+        this.inputFiles = inputFiles;
+        this.outputFile = outputFile;
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Blocks not compressed with the default codec require version 9
+     */
+    public void setBlockCodec(BlockCodec blockCodec) {
+        if (blockCodec != null) {
+            this.blockCodec = blockCodec;
+            if (blockCodec != BlockCodec.DEFLATE) {
+                version = LATEST_VERSION;
+            }
+        }
+    }
+
+    public void merge() throws IOException {
+        List<DatasetReaderV2> readers = new ArrayList<>();
+        List<Dataset> datasets = new ArrayList<>();
+        for (String file : inputFiles) {
+            DatasetReaderV2 reader = new DatasetReaderV2(file);
+            datasets.add(reader.read());
+            HiCGlobals.verifySupportedHiCFileVersion(reader.getVersion());
+            readers.add(reader);
+        }
+
+        Dataset firstDataset = datasets.get(0);
+        ChromosomeHandler chromosomeHandler = firstDataset.getChromosomeHandler();
+        for (Dataset ds : datasets) {
+            if (!haveSameChromosomes(chromosomeHandler, ds.getChromosomeHandler())) {
+                throw new RuntimeException("Attempt to merge .hic files with different chromosomes");
+            }
+        }
+
+        List<HiCZoom> bpZooms = new ArrayList<>(firstDataset.getBpZooms());
+        for (Dataset ds : datasets) {
+            bpZooms.retainAll(ds.getBpZooms());
+        }
+        for (int i = 0; i < datasets.size(); i++) {
+            for (HiCZoom zoom : datasets.get(i).getBpZooms()) {
+                if (!bpZooms.contains(zoom)) {
+                    System.err.println("Warning: " + zoom + " of " + inputFiles.get(i) + " is not in every file and is not merged");
+                }
+            }
+            if (!datasets.get(i).getFragZooms().isEmpty()) {
+                System.err.println("Warning: fragment resolutions of " + inputFiles.get(i) + " are not merged");
+            }
+        }
+        Collections.sort(bpZooms, Collections.reverseOrder());
+        if (bpZooms.isEmpty()) {
+            throw new RuntimeException("No resolutions in common between the .hic files");
+        }
+
+        expectedValueCalculations = new LinkedHashMap<>();
+        for (HiCZoom zoom : bpZooms) {
+            expectedValueCalculations.put("BP_" + zoom.getBinSize(),
+                    new ExpectedValueCalculation(chromosomeHandler, zoom.getBinSize(), null, NormalizationHandler.NONE));
+        }
+
+        CombinedDatasetReader combinedReader = new CombinedDatasetReader(readers);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            los = new LittleEndianOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile), HiCGlobals.bufferSize));
+            try {
+                writeHeader(firstDataset.getGenomeId(), chromosomeHandler, bpZooms);
+
+                Chromosome[] chromosomes = chromosomeHandler.getChromosomeArray();
+                for (int i = 0; i < chromosomes.length; i++) {
+                    for (int j = i; j < chromosomes.length; j++) {
+                        writeMatrix(i, j, readers, combinedReader, bpZooms, executor);
+                    }
+                }
+
+                masterIndexPosition = los.getWrittenCount();
+                writeFooter();
+            } finally {
+                los.close();
+            }
+        } finally {
+            executor.shutdownNow();
+            combinedReader.close();
+        }
+
+        updateIndexPositions();
+        System.out.println("\nFinished merging");
+    }
+
+    private static boolean haveSameChromosomes(ChromosomeHandler handler1, ChromosomeHandler handler2) {
+        if (handler1.size() != handler2.size()) return false;
+        for (int i = 0; i < handler1.size(); i++) {
+            Chromosome chr1 = handler1.getChromosomeFromIndex(i);
+            Chromosome chr2 = handler2.getChromosomeFromIndex(i);
+            if (!chr1.getName().equals(chr2.getName()) || chr1.getLength() != chr2.getLength()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeHeader(String genomeId, ChromosomeHandler chromosomeHandler, List<HiCZoom> bpZooms) throws IOException {
+        // Magic number
+        byte[] magicBytes = "HIC".getBytes();
+        los.write(magicBytes[0]);
+        los.write(magicBytes[1]);
+        los.write(magicBytes[2]);
+        los.write(0);
+
+        los.writeInt(version);
+
+        // Placeholder for master index position, replaced with actual position after all contents are written
+        masterIndexPositionPosition = los.getWrittenCount();
+        los.writeLong(0L);
+
+        if (version >= 9) {
+            los.writeInt(blockCodec.getId());
+        }
+
+        los.writeString(genomeId);
+
+        // Attribute dictionary, NVI info is filled in when normalizations are added
+        los.writeInt(3);
+        los.writeString(Preprocessor.SOFTWARE);
+        los.writeString("Juicer Tools Version " + HiCGlobals.versionNum);
+        los.writeString(Preprocessor.NVI_INDEX);
+        los.writeString("0000000000000000");
+        los.writeString(Preprocessor.NVI_LENGTH);
+        los.writeString("0000000000000000");
+
+        // Sequence dictionary
+        los.writeInt(chromosomeHandler.size());
+        for (Chromosome chromosome : chromosomeHandler.getChromosomeArray()) {
+            los.writeString(chromosome.getName());
+            los.writeInt(chromosome.getLength());
+        }
+
+        // BP resolution levels
+        los.writeInt(bpZooms.size());
+        for (HiCZoom zoom : bpZooms) {
+            los.writeInt(zoom.getBinSize());
+        }
+
+        // no fragment resolutions
+        los.writeInt(0);
+    }
+
+    private void writeMatrix(int chr1Idx, int chr2Idx, List<DatasetReaderV2> readers, CombinedDatasetReader combinedReader,
+                             List<HiCZoom> bpZooms, ExecutorService executor) throws IOException {
+        String key = Matrix.generateKey(chr1Idx, chr2Idx);
+
+        List<Matrix> matrices = new ArrayList<>();
+        for (DatasetReaderV2 reader : readers) {
+            Matrix matrix = reader.readMatrix(key);
+            if (matrix != null) {
+                matrices.add(matrix);
+            }
+        }
+        if (matrices.isEmpty()) return;
+
+        List<HiCZoom> zooms = bpZooms;
+        if (chr1Idx == 0 && chr2Idx == 0) {
+            // whole genome view has its own resolution
+            zooms = Collections.singletonList(matrices.get(0).getFirstZoomData(HiC.Unit.BP).getZoom());
+        }
+
+        List<List<MatrixZoomData>> zoomDataGroups = new ArrayList<>();
+        for (HiCZoom zoom : zooms) {
+            zoomDataGroups.add(getCompatibleZoomData(matrices, zoom));
+        }
+
+        long position = los.getWrittenCount();
+        los.writeInt(chr1Idx);
+        los.writeInt(chr2Idx);
+        los.writeInt(zoomDataGroups.size());
+
+        List<ZoomHeaderUpdate> headerUpdates = new ArrayList<>();
+        for (int z = 0; z < zoomDataGroups.size(); z++) {
+            headerUpdates.add(writeZoomHeader(zoomDataGroups.get(z), z, readers));
+        }
+        matrixPositions.put(key, new Preprocessor.IndexEntry(position, (int) (los.getWrittenCount() - position)));
+
+        for (int z = 0; z < zoomDataGroups.size(); z++) {
+            mergeAndWriteBlocks(zoomDataGroups.get(z).get(0), headerUpdates.get(z), readers, combinedReader, executor);
+        }
+        zoomHeaderUpdates.addAll(headerUpdates);
+
+        System.out.print(".");
+    }
+
+    /**
+     * @return zoom data of every matrix at the given resolution
+     * @throws RuntimeException if a matrix lacks the resolution or the block layouts do not match
+     */
+    private static List<MatrixZoomData> getCompatibleZoomData(List<Matrix> matrices, HiCZoom zoom) {
+        List<MatrixZoomData> group = new ArrayList<>();
+        for (Matrix matrix : matrices) {
+            MatrixZoomData zd = matrix.getZoomData(zoom);
+            if (zd == null || !zd.getZoom().equals(zoom)) {
+                throw new RuntimeException("Cannot merge " + zoom + " for matrix " + matrix.getKey() + ": resolution is missing from a file");
+            }
+            MatrixZoomData first = group.isEmpty() ? zd : group.get(0);
+            if (zd.getBlockBinCount() != first.getBlockBinCount() || zd.getBlockColumnCount() != first.getBlockColumnCount()) {
+                throw new RuntimeException("Cannot merge " + zoom + " for matrix " + matrix.getKey() + ": block layouts differ");
+            }
+            group.add(zd);
+        }
+        return group;
+    }
+
+    private ZoomHeaderUpdate writeZoomHeader(List<MatrixZoomData> group, int zoomIndex, List<DatasetReaderV2> readers) throws IOException {
+        MatrixZoomData zd = group.get(0);
+
+        Set<Integer> blockNumberSet = new HashSet<>();
+        List<Set<Integer>> readerBlockNumbers = new ArrayList<>();
+        for (DatasetReaderV2 reader : readers) {
+            List<Integer> numbers = reader.getBlockNumbers(zd);
+            Set<Integer> numberSet = new HashSet<>();
+            if (numbers != null) {
+                numberSet.addAll(numbers);
+                blockNumberSet.addAll(numbers);
+            }
+            readerBlockNumbers.add(numberSet);
+        }
+        List<Integer> blockNumbers = new ArrayList<>(blockNumberSet);
+        Collections.sort(blockNumbers);
+
+        los.writeString(zd.getZoom().getUnit().toString());
+        los.writeInt(zoomIndex);
+        ZoomHeaderUpdate update = new ZoomHeaderUpdate(los.getWrittenCount(), blockNumbers, readerBlockNumbers);
+        los.writeFloat(0);  // sum, occupied cells and percentiles are updated once the blocks are written
+        los.writeFloat(0);
+        los.writeFloat(0);
+        los.writeFloat(0);
+        los.writeInt(zd.getBinSize());
+        los.writeInt(zd.getBlockBinCount());
+        los.writeInt(zd.getBlockColumnCount());
+        los.writeInt(blockNumbers.size());
+
+        update.blockIndexPosition = los.getWrittenCount();
+        for (int i = 0; i < blockNumbers.size(); i++) {
+            los.writeInt(0);
+            los.writeLong(0L);
+            los.writeInt(0);
+        }
+        return update;
+    }
+
+    private void mergeAndWriteBlocks(final MatrixZoomData zd, ZoomHeaderUpdate update, final List<DatasetReaderV2> readers,
+                                     final CombinedDatasetReader combinedReader, ExecutorService executor) throws IOException {
+        final List<Set<Integer>> readerBlockNumbers = update.readerBlockNumbers;
+        DownsampledDoubleArrayList sampledData = new DownsampledDoubleArrayList(10000, 10000);
+        final ExpectedValueCalculation ev;
+        if (zd.getChr1Idx() == zd.getChr2Idx() && zd.getChr1Idx() != 0) {
+            ev = expectedValueCalculations.get("BP_" + zd.getBinSize());
+        } else {
+            ev = null;
+        }
+
+        // each worker adds distances to its own accumulator; they are merged once every block is written
+        final List<ExpectedValueCalculation> evAccumulators = new Vector<>();
+        final ThreadLocal<ExpectedValueCalculation> localEv = ev == null ? null : new ThreadLocal<ExpectedValueCalculation>() {
+            @Override
+            protected ExpectedValueCalculation initialValue() {
+                ExpectedValueCalculation accumulator = ev.createAccumulator();
+                evAccumulators.add(accumulator);
+                return accumulator;
+            }
+        };
+
+        // bounded number of merged blocks held in memory at once
+        int maxPending = 4 * numThreads;
+        Deque<Future<MergedBlock>> pending = new ArrayDeque<>();
+        try {
+            for (final int blockNumber : update.blockNumbers) {
+                if (pending.size() >= maxPending) {
+                    writeMergedBlock(pending.poll().get(), update, sampledData);
+                }
+                pending.add(executor.submit(new Callable<MergedBlock>() {
+                    @Override
+                    public MergedBlock call() throws IOException {
+                        MergedBlock merged = copyIfSingleSource(blockNumber, zd, readers, readerBlockNumbers);
+                        if (merged == null) {
+                            Block block = combinedReader.readNormalizedBlock(blockNumber, zd, NormalizationHandler.NONE);
+                            List<ContactRecord> records = new ArrayList<>(block.getContactRecords());
+                            merged = new MergedBlock(blockNumber, records, blockCodec.compress(BlockEncoder.encode(records, version)));
+                        }
+                        if (localEv != null) {
+                            ExpectedValueCalculation accumulator = localEv.get();
+                            for (ContactRecord record : merged.records) {
+                                accumulator.addDistance(zd.getChr1Idx(), record.getBinX(), record.getBinY(), record.getCounts());
+                            }
+                        }
+                        return merged;
+                    }
+                }));
+            }
+            while (!pending.isEmpty()) {
+                writeMergedBlock(pending.poll().get(), update, sampledData);
+            }
+            for (ExpectedValueCalculation accumulator : evAccumulators) {
+                ev.merge(accumulator);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while merging " + zd.getDescription(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            for (Future<MergedBlock> future : pending) {
+                future.cancel(true);
+            }
+        }
+
+        double[] data = sampledData.toArray();
+        if (data.length > 0) {
+            update.percent5 = StatUtils.percentile(data, 5);
+            update.percent95 = StatUtils.percentile(data, 95);
+        }
+    }
+
+    /**
+     * @param readerBlockNumbers block numbers present in each reader, in the order of readers
+     * @return the block as stored in the only file containing it, or null if it has to be merged and re-encoded
+     */
+    private MergedBlock copyIfSingleSource(int blockNumber, MatrixZoomData zd, List<DatasetReaderV2> readers,
+                                           List<Set<Integer>> readerBlockNumbers) throws IOException {
+        DatasetReaderV2 source = null;
+        for (int i = 0; i < readers.size(); i++) {
+            if (readerBlockNumbers.get(i).contains(blockNumber)) {
+                if (source != null) return null;
+                source = readers.get(i);
+            }
+        }
+        if (source == null || !canCopyBlocksFrom(source)) {
+            return null;
+        }
+        byte[] compressedBytes = source.readCompressedBlock(blockNumber, zd);
+        if (compressedBytes == null) {
+            return null;
+        }
+        return new MergedBlock(blockNumber, source.decodeBlock(compressedBytes), compressedBytes);
+    }
+
+    /**
+     * Blocks can be copied when they use the codec of the output and an encoding its version reads
+     */
+    private boolean canCopyBlocksFrom(DatasetReaderV2 reader) {
+        return reader.getVersion() >= 7 && reader.getVersion() <= version && reader.getBlockCodec() == blockCodec;
+    }
+
+    private void writeMergedBlock(MergedBlock block, ZoomHeaderUpdate update, DownsampledDoubleArrayList sampledData)
+            throws IOException {
+        long position = los.getWrittenCount();
+        los.write(block.compressedBytes);
+        update.blockIndex.add(new Preprocessor.IndexEntry(block.number, position, block.compressedBytes.length));
+        update.cellCount += block.records.size();
+
+        for (ContactRecord record : block.records) {
+            update.sum += record.getCounts();
+            sampledData.add(record.getCounts());
+        }
+    }
+
+    private void writeFooter() throws IOException {
+        BufferedByteWriter buffer = new BufferedByteWriter();
+        buffer.putInt(matrixPositions.size());
+        for (Map.Entry<String, Preprocessor.IndexEntry> entry : matrixPositions.entrySet()) {
+            buffer.putNullTerminatedString(entry.getKey());
+            buffer.putLong(entry.getValue().position);
+            buffer.putInt(entry.getValue().size);
+        }
+
+        // Expected values, recomputed from the merged contacts
+        buffer.putInt(expectedValueCalculations.size());
+        for (ExpectedValueCalculation ev : expectedValueCalculations.values()) {
+            ev.computeDensity();
+
+            buffer.putNullTerminatedString(HiC.Unit.BP.toString());
+            buffer.putInt(ev.getGridSize());
+
+            double[] expectedValues = ev.getDensityAvg();
+            buffer.putInt(expectedValues.length);
+            for (double expectedValue : expectedValues) {
+                buffer.putDouble(expectedValue);
+            }
+
+            Map<Integer, Double> normalizationFactors = ev.getChrScaleFactors();
+            buffer.putInt(normalizationFactors.size());
+            for (Map.Entry<Integer, Double> normFactor : normalizationFactors.entrySet()) {
+                buffer.putInt(normFactor.getKey());
+                buffer.putDouble(normFactor.getValue());
+            }
+        }
+
+        byte[] bytes = buffer.getBytes();
+        los.writeInt(bytes.length);
+        los.write(bytes);
+    }
+
+    private void updateIndexPositions() throws IOException {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(outputFile, "rw");
+
+            BufferedByteWriter buffer = new BufferedByteWriter();
+            buffer.putLong(masterIndexPosition);
+            raf.getChannel().position(masterIndexPositionPosition);
+            raf.write(buffer.getBytes());
+
+            for (ZoomHeaderUpdate update : zoomHeaderUpdates) {
+                buffer = new BufferedByteWriter();
+                buffer.putFloat((float) update.sum);
+                buffer.putFloat((float) update.cellCount);
+                buffer.putFloat((float) update.percent5);
+                buffer.putFloat((float) update.percent95);
+                raf.getChannel().position(update.statsPosition);
+                raf.write(buffer.getBytes());
+
+                buffer = new BufferedByteWriter();
+                for (Preprocessor.IndexEntry entry : update.blockIndex) {
+                    buffer.putInt(entry.id);
+                    buffer.putLong(entry.position);
+                    buffer.putInt(entry.size);
+                }
+                raf.getChannel().position(update.blockIndexPosition);
+                raf.write(buffer.getBytes());
+            }
+        } finally {
+            if (raf != null) raf.close();
+        }
+    }
+
+    private static class MergedBlock {
+        final int number;
+        final List<ContactRecord> records;
+        final byte[] compressedBytes;
+
+        MergedBlock(int number, List<ContactRecord> records, byte[] compressedBytes) {
+            this.number = number;
+            this.records = records;
+            this.compressedBytes = compressedBytes;
+        }
+    }
+
+    /**
+     * Values of a zoom header which are only known once its blocks are written
+     */
+    private static class ZoomHeaderUpdate {
+        final long statsPosition;
+        final List<Integer> blockNumbers;
+        // block numbers present in each source file, in the order of the readers
+        final List<Set<Integer>> readerBlockNumbers;
+        final List<Preprocessor.IndexEntry> blockIndex = new ArrayList<>();
+        long blockIndexPosition;
+        double sum;
+        double cellCount;
+        double percent5;
+        double percent95;
+
+        ZoomHeaderUpdate(long statsPosition, List<Integer> blockNumbers, List<Set<Integer>> readerBlockNumbers) {
+            this.statsPosition = statsPosition;
+            this.blockNumbers = blockNumbers;
+            this.readerBlockNumbers = readerBlockNumbers;
+        }
+    }
+}
@@ -30,6 +30,7 @@ import htsjdk.tribble.util.LittleEndianInputStream;
 import htsjdk.tribble.util.LittleEndianOutputStream;
 import juicebox.HiC;
 import juicebox.HiCGlobals;
+import juicebox.data.BlockCodec;
 import juicebox.data.ChromosomeHandler;
 import juicebox.data.ContactRecord;
 import juicebox.tools.clt.CommandLineParser.Alignment;
@@ -43,7 +44,6 @@ import java.awt.*;
 import java.io.*;
 import java.util.List;
 import java.util.*;
-import java.util.zip.Deflater;
 
 
 /**
@@ -54,20 +54,23 @@ public class Preprocessor {
 
 
     private static final int VERSION = 8;
+    // records the block codec in the header and adds delta encoded blocks
+    private static final int LATEST_VERSION = 9;
     private static final int BLOCK_SIZE = 1000;
     public static final String HIC_FILE_SCALING = "hicFileScalingFactor";
     public static final String STATISTICS = "statistics";
     public static final String GRAPHS = "graphs";
     public static final String SOFTWARE = "software";
-    private static final String NVI_INDEX = "nviIndex";
-    private static final String NVI_LENGTH = "nviLength";
+    static final String NVI_INDEX = "nviIndex";
+    static final String NVI_LENGTH = "nviLength";
 
     private final ChromosomeHandler chromosomeHandler;
     private final Map<String, Integer> chromosomeIndexes;
     private final File outputFile;
     private final Map<String, IndexEntry> matrixPositions;
     private String genomeId;
-    private final Deflater compressor;
+    private BlockCodec blockCodec = BlockCodec.DEFLATE;
+    private int version = VERSION;
     private LittleEndianOutputStream los;
     private long masterIndexPosition;
     private int countThreshold = 0;
@@ -116,9 +119,6 @@ public class Preprocessor {
             chromosomeIndexes.put(chromosomeHandler.getChromosomeFromIndex(i).getName(), i);
         }
 
-        compressor = new Deflater();
-        compressor.setLevel(Deflater.DEFAULT_COMPRESSION);
-
         this.tmpDir = null;  // TODO -- specify this
 
         if (hicFileScalingFactor > 0) {
@@ -442,12 +442,16 @@ public class Preprocessor {
         los.write(0);
 
         // VERSION
-        los.writeInt(VERSION);
+        los.writeInt(version);
 
         // Placeholder for master index position, replaced with actual position after all contents are written
         masterIndexPositionPosition = los.getWrittenCount();
         los.writeLong(0L);
 
+        if (version >= 9) {
+            los.writeInt(blockCodec.getId());
+        }
+
 
         // Genome ID
         los.writeString(genomeId);
@@ -989,41 +993,6 @@ public class Preprocessor {
 
         // System.out.println("Write contact records : records count = " + records.size());
 
-        // Count records first
-        int nRecords;
-        if (countThreshold > 0) {
-            nRecords = 0;
-            for (ContactCount rec : records.values()) {
-                if (rec.getCounts() >= countThreshold) {
-                    nRecords++;
-                }
-            }
-        } else {
-            nRecords = records.size();
-        }
-        BufferedByteWriter buffer = new BufferedByteWriter(nRecords * 12);
-        buffer.putInt(nRecords);
-        zd.cellCount += nRecords;
-
-
-        // Find extents of occupied cells
-        int binXOffset = Integer.MAX_VALUE;
-        int binYOffset = Integer.MAX_VALUE;
-        int binXMax = 0;
-        int binYMax = 0;
-        for (Map.Entry<Point, ContactCount> entry : records.entrySet()) {
-            Point point = entry.getKey();
-            binXOffset = Math.min(binXOffset, point.x);
-            binYOffset = Math.min(binYOffset, point.y);
-            binXMax = Math.max(binXMax, point.x);
-            binYMax = Math.max(binYMax, point.y);
-        }
-
-
-        buffer.putInt(binXOffset);
-        buffer.putInt(binYOffset);
-
-
         // Sort keys in row-major order
         List<Point> keys = new ArrayList<>(records.keySet());
         Collections.sort(keys, new Comparator<Point>() {
@@ -1036,109 +1005,20 @@ public class Preprocessor {
                 }
             }
         });
-        Point lastPoint = keys.get(keys.size() - 1);
-        final short w = (short) (binXMax - binXOffset + 1);
-
-        boolean isInteger = true;
-        float maxCounts = 0;
 
-        LinkedHashMap<Integer, List<ContactRecord>> rows = new LinkedHashMap<>();
+        List<ContactRecord> contactRecords = new ArrayList<>(keys.size());
         for (Point point : keys) {
-            final ContactCount contactCount = records.get(point);
-            float counts = contactCount.getCounts();
+            float counts = records.get(point).getCounts();
             if (counts >= countThreshold) {
-
-                isInteger = isInteger && (Math.floor(counts) == counts);
-                maxCounts = Math.max(counts, maxCounts);
-
-                final int px = point.x - binXOffset;
-                final int py = point.y - binYOffset;
-                List<ContactRecord> row = rows.get(py);
-                if (row == null) {
-                    row = new ArrayList<>(10);
-                    rows.put(py, row);
-                }
-                row.add(new ContactRecord(px, py, counts));
-            }
-        }
-
-        // Compute size for each representation and choose smallest
-        boolean useShort = isInteger && (maxCounts < Short.MAX_VALUE);
-        int valueSize = useShort ? 2 : 4;
-
-        int lorSize = 0;
-        int nDensePts = (lastPoint.y - binYOffset) * w + (lastPoint.x - binXOffset) + 1;
-
-        int denseSize = nDensePts * valueSize;
-        for (List<ContactRecord> row : rows.values()) {
-            lorSize += 4 + row.size() * valueSize;
-        }
-
-        buffer.put((byte) (useShort ? 0 : 1));
-
-        if (lorSize < denseSize) {
-
-            buffer.put((byte) 1);  // List of rows representation
-
-            buffer.putShort((short) rows.size());  // # of rows
-
-            for (Map.Entry<Integer, List<ContactRecord>> entry : rows.entrySet()) {
-
-                int py = entry.getKey();
-                List<ContactRecord> row = entry.getValue();
-                buffer.putShort((short) py);  // Row number
-                buffer.putShort((short) row.size());  // size of row
-
-                for (ContactRecord contactRecord : row) {
-                    buffer.putShort((short) (contactRecord.getBinX()));
-                    final float counts = contactRecord.getCounts();
-
-                    if (useShort) {
-                        buffer.putShort((short) counts);
-                    } else {
-                        buffer.putFloat(counts);
-                    }
-
-                    sampledData.add(counts);
-                    zd.sum += counts;
-                }
-            }
-
-        } else {
-            buffer.put((byte) 2);  // Dense matrix
-
-
-            buffer.putInt(nDensePts);
-            buffer.putShort(w);
-
-            int lastIdx = 0;
-            for (Point p : keys) {
-
-                int idx = (p.y - binYOffset) * w + (p.x - binXOffset);
-                for (int i = lastIdx; i < idx; i++) {
-                    // Filler value
-                    if (useShort) {
-                        buffer.putShort(Short.MIN_VALUE);
-                    } else {
-                        buffer.putFloat(Float.NaN);
-                    }
-                }
-                float counts = records.get(p).getCounts();
-                if (useShort) {
-                    buffer.putShort((short) counts);
-                } else {
-                    buffer.putFloat(counts);
-                }
-                lastIdx = idx + 1;
-
+                contactRecords.add(new ContactRecord(point.x, point.y, counts));
                 sampledData.add(counts);
                 zd.sum += counts;
             }
         }
+        zd.cellCount += contactRecords.size();
 
-
-        byte[] bytes = buffer.getBytes();
-        byte[] compressedBytes = compress(bytes);
+        byte[] bytes = BlockEncoder.encode(contactRecords, version);
+        byte[] compressedBytes = blockCodec.compress(bytes);
         los.write(compressedBytes);
 
     }
@@ -1162,37 +1042,30 @@ public class Preprocessor {
             maxInMemoryBlockSize = maxSize;
     }
 
-    public void setStatisticsFile(String statsOption) {
-        statsFileName = statsOption;
+    /**
+     * Blocks not compressed with the default codec require version 9
+     */
+    public void setBlockCodec(BlockCodec blockCodec) {
+        if (blockCodec != null) {
+            this.blockCodec = blockCodec;
+            if (blockCodec != BlockCodec.DEFLATE) {
+                version = LATEST_VERSION;
+            }
+        }
     }
 
-    private synchronized byte[] compress(byte[] data) {
-
-        // Give the compressor the data to compress
-        compressor.reset();
-        compressor.setInput(data);
-        compressor.finish();
-
-        // Create an expandable byte array to hold the compressed data.
-        // You cannot use an array that's the same size as the orginal because
-        // there is no guarantee that the compressed data will be smaller than
-        // the uncompressed data.
-        ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length);
-
-        // Compress the data
-        byte[] buf = new byte[1024];
-        while (!compressor.finished()) {
-            int count = compressor.deflate(buf);
-            bos.write(buf, 0, count);
-        }
-        try {
-            bos.close();
-        } catch (IOException e) {
-            System.err.println("Error clossing ByteArrayOutputStream");
-            e.printStackTrace();
+    public void setVersion(int version) {
+        if (version < VERSION || version > LATEST_VERSION) {
+            System.err.println("Can only write hic file versions " + VERSION + " to " + LATEST_VERSION);
+        } else if (blockCodec != BlockCodec.DEFLATE && version < 9) {
+            System.err.println("Block codec " + blockCodec + " requires hic file version 9");
+        } else {
+            this.version = version;
         }
+    }
 
-        return bos.toByteArray();
+    public void setStatisticsFile(String statsOption) {
+        statsFileName = statsOption;
     }
 
     interface BlockQueue {
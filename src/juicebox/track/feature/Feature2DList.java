@@ -26,6 +26,7 @@ package juicebox.track.feature;
 
 import juicebox.HiCGlobals;
 import juicebox.data.HiCFileTools;
+import juicebox.data.feature.FeatureListExecutor;
 import org.broad.igv.feature.Chromosome;
 
 import java.awt.*;
@@ -33,6 +34,7 @@ import java.io.File;
 import java.io.PrintWriter;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * List of two-dimensional features.  Hashtable for each chromosome for quick viewing.
@@ -110,8 +112,9 @@ public class Feature2DList {
                 List<Feature2D> commonVals = new ArrayList<>();
                 if (listA.containsKey(chr)) {
                     List<Feature2D> listAFeatures = listA.getFeatureList(chr);
+                    Feature2DSpatialIndex index = Feature2DSpatialIndex.forFeatures(feature2DList, listAFeatures);
                     for (Feature2D feature : listAFeatures) {
-                        if (feature2DList.contains(feature)) {
+                        if (index.containsEquivalent(feature)) {
                             commonVals.add(feature);
                         }
                     }
@@ -126,12 +129,13 @@ public class Feature2DList {
     }
 
     // Iterate through new features and see if there is any overlap
-    // TODO: implement this more efficiently, maybe rtree
     private synchronized static void addAllUnique(List<Feature2D> inputFeatures, List<Feature2D> existingFeatures) {
+        Feature2DSpatialIndex existingIndex = Feature2DSpatialIndex.forFeatures(existingFeatures, inputFeatures);
         for (Feature2D inputFeature : inputFeatures) {
             // Compare input with existing points
-            if (!Feature2DTools.doesOverlap(inputFeature, existingFeatures)) {
+            if (!existingIndex.hasOverlapWith(inputFeature)) {
                 existingFeatures.add(inputFeature);
+                existingIndex.add(inputFeature);
             }
         }
     }
@@ -442,8 +446,9 @@ public class Feature2DList {
             // there are features in both lists
 
             if (featureList.containsKey(inputKey)) {
+                Feature2DSpatialIndex inputIndex = Feature2DSpatialIndex.forFeatures(inputFeatures, featureList.get(inputKey));
                 for (Feature2D myFeature : featureList.get(inputKey)) {
-                    if (Feature2DTools.doesOverlap(myFeature, inputFeatures)) {
+                    if (inputIndex.hasOverlapWith(myFeature)) {
                         output.addByKey(inputKey, myFeature);
                     }
                 }
@@ -533,6 +538,60 @@ public class Feature2DList {
         }
     }
 
+    /**
+     * Same as filterLists, with the lists of different chromosomes filtered in parallel.
+     * The filter must not share mutable state between chromosomes.
+     *
+     * @param filter
+     */
+    public void filterListsInParallel(final FeatureFilter filter) {
+        final List<String> keys;
+        List<Callable<List<Feature2D>>> tasks = new ArrayList<>();
+        synchronized (this) {
+            keys = new ArrayList<>(featureList.keySet());
+            Collections.sort(keys);
+            for (final String key : keys) {
+                final List<Feature2D> features = featureList.get(key);
+                tasks.add(new Callable<List<Feature2D>>() {
+                    @Override
+                    public List<Feature2D> call() {
+                        return filter.filter(key, features);
+                    }
+                });
+            }
+        }
+
+        List<List<Feature2D>> results = FeatureListExecutor.invokeAll(tasks);
+        for (int i = 0; i < keys.size(); i++) {
+            putFeature(keys.get(i), results.get(i));
+        }
+    }
+
+    /**
+     * Same as processLists, with the lists of different chromosomes processed in parallel.
+     * The function must not share mutable state between chromosomes.
+     *
+     * @param function
+     */
+    public void processListsInParallel(final FeatureFunction function) {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        synchronized (this) {
+            List<String> keys = new ArrayList<>(featureList.keySet());
+            Collections.sort(keys);
+            for (final String key : keys) {
+                final List<Feature2D> features = featureList.get(key);
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        function.process(key, features);
+                        return null;
+                    }
+                });
+            }
+        }
+        FeatureListExecutor.invokeAll(tasks);
+    }
+
     /**
      * @return true if features available for this region (key = "chr1_chr2")
      */
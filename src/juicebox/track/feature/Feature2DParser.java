@@ -170,7 +170,7 @@ public class Feature2DParser {
         }
 
         if (featureFilter != null)
-            newList.filterLists(featureFilter);
+            newList.filterListsInParallel(featureFilter);
 
         return newList;
     }
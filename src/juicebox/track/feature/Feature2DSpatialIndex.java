@@ -0,0 +1,284 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2011-2019 Broad Institute, Aiden Lab
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package juicebox.track.feature;
+
+import juicebox.tools.utils.juicer.hiccups.HiCCUPSUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Grid hash over the upper left corners (start1, start2) of the features of a single chromosome pair.
+ * <p/>
+ * Used in place of nested loops over feature lists when comparing/merging lists;
+ * radius, nearest neighbor, equivalence and overlap queries only visit the cells around the query point.
+ * Features are indexed by their coordinates at the time they are added.
+ */
+public class Feature2DSpatialIndex {
+
+    private final Map<Long, List<Feature2D>> grid = new HashMap<>();
+    private final int cellSize;
+    private int maxWidth1 = 0, maxWidth2 = 0;
+    private int size = 0;
+
+    public Feature2DSpatialIndex(int cellSize) {
+        this.cellSize = Math.max(cellSize, 1);
+    }
+
+    public Feature2DSpatialIndex(List<Feature2D> features, int cellSize) {
+        this(cellSize);
+        for (Feature2D feature : features) {
+            add(feature);
+        }
+    }
+
+    /**
+     * Index with cells sized to the largest feature, suitable for equivalence and overlap queries
+     *
+     * @param features      features to index
+     * @param queryFeatures features which will be queried against (and possibly added to) the index
+     * @return index with cells sized to the largest feature in either list
+     */
+    public static Feature2DSpatialIndex forFeatures(List<Feature2D> features, List<Feature2D> queryFeatures) {
+        return new Feature2DSpatialIndex(features, Math.max(getMaxWidth(features), getMaxWidth(queryFeatures)));
+    }
+
+    private static int getMaxWidth(List<Feature2D> features) {
+        int maxWidth = 1;
+        for (Feature2D feature : features) {
+            maxWidth = Math.max(maxWidth, Math.max(feature.getWidth1(), feature.getWidth2()));
+        }
+        return maxWidth;
+    }
+
+    private static long getCellKey(int cellX, int cellY) {
+        return (((long) cellX) << 32) | (cellY & 0xffffffffL);
+    }
+
+    private int getCell(int position) {
+        // floor division so that negative query bounds map to the correct cell
+        int cell = position / cellSize;
+        if (position < 0 && cell * cellSize != position) {
+            cell--;
+        }
+        return cell;
+    }
+
+    public void add(Feature2D feature) {
+        long key = getCellKey(getCell(feature.getStart1()), getCell(feature.getStart2()));
+        List<Feature2D> cell = grid.get(key);
+        if (cell == null) {
+            cell = new ArrayList<>();
+            grid.put(key, cell);
+        }
+        cell.add(feature);
+        maxWidth1 = Math.max(maxWidth1, feature.getWidth1());
+        maxWidth2 = Math.max(maxWidth2, feature.getWidth2());
+        size++;
+    }
+
+    /**
+     * Removes this exact feature (not an equivalent one) from the index
+     *
+     * @return true if the feature was present
+     */
+    public boolean remove(Feature2D feature) {
+        long key = getCellKey(getCell(feature.getStart1()), getCell(feature.getStart2()));
+        List<Feature2D> cell = grid.get(key);
+        if (cell != null) {
+            for (Iterator<Feature2D> iterator = cell.iterator(); iterator.hasNext(); ) {
+                if (iterator.next() == feature) {
+                    iterator.remove();
+                    if (cell.isEmpty()) {
+                        grid.remove(key);
+                    }
+                    size--;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return cells which may contain features with start1 in [minStart1, maxStart1] and start2 in [minStart2, maxStart2]
+     */
+    private List<List<Feature2D>> getCandidateCells(long minStart1, long maxStart1, long minStart2, long maxStart2) {
+        List<List<Feature2D>> cells = new ArrayList<>();
+        if (grid.isEmpty() || minStart1 > maxStart1 || minStart2 > maxStart2) {
+            return cells;
+        }
+
+        int minCellX = getCell(clamp(minStart1)), maxCellX = getCell(clamp(maxStart1));
+        int minCellY = getCell(clamp(minStart2)), maxCellY = getCell(clamp(maxStart2));
+        long numCellsInRange = ((long) maxCellX - minCellX + 1) * ((long) maxCellY - minCellY + 1);
+
+        if (numCellsInRange > grid.size()) {
+            // the range spans more cells than are occupied
+            cells.addAll(grid.values());
+        } else {
+            for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+                for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+                    List<Feature2D> cell = grid.get(getCellKey(cellX, cellY));
+                    if (cell != null) {
+                        cells.add(cell);
+                    }
+                }
+            }
+        }
+        return cells;
+    }
+
+    private static int clamp(long position) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, position));
+    }
+
+    /**
+     * @return features whose upper left corner is in the given (inclusive) range
+     */
+    public List<Feature2D> getFeaturesInRange(int minStart1, int maxStart1, int minStart2, int maxStart2) {
+        List<Feature2D> features = new ArrayList<>();
+        for (List<Feature2D> cell : getCandidateCells(minStart1, maxStart1, minStart2, maxStart2)) {
+            for (Feature2D feature : cell) {
+                if (feature.getStart1() >= minStart1 && feature.getStart1() <= maxStart1
+                        && feature.getStart2() >= minStart2 && feature.getStart2() <= maxStart2) {
+                    features.add(feature);
+                }
+            }
+        }
+        return features;
+    }
+
+    private List<List<Feature2D>> getCandidateCells(int x, int y, double radius) {
+        long r = (long) Math.ceil(radius);
+        return getCandidateCells(x - r, x + r, y - r, y + r);
+    }
+
+    /**
+     * @return features whose upper left corner is within radius of (x, y)
+     */
+    public List<Feature2D> getFeaturesWithinRadius(int x, int y, double radius) {
+        List<Feature2D> features = new ArrayList<>();
+        for (List<Feature2D> cell : getCandidateCells(x, y, radius)) {
+            for (Feature2D feature : cell) {
+                if (HiCCUPSUtils.hypotenuse(x - feature.getStart1(), y - feature.getStart2()) <= radius) {
+                    features.add(feature);
+                }
+            }
+        }
+        return features;
+    }
+
+    /**
+     * @return true if the upper left corner of some feature is within radius of (x, y)
+     */
+    public boolean hasFeatureWithinRadius(int x, int y, double radius) {
+        for (List<Feature2D> cell : getCandidateCells(x, y, radius)) {
+            for (Feature2D feature : cell) {
+                if (HiCCUPSUtils.hypotenuse(x - feature.getStart1(), y - feature.getStart2()) <= radius) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return distance from (x, y) to the closest upper left corner if it is within radius, otherwise -1
+     */
+    public double getNearestDistanceWithinRadius(int x, int y, double radius) {
+        double lowestDistance = -1;
+        for (List<Feature2D> cell : getCandidateCells(x, y, radius)) {
+            for (Feature2D feature : cell) {
+                double d = HiCCUPSUtils.hypotenuse(x - feature.getStart1(), y - feature.getStart2());
+                if (d <= radius && (d < lowestDistance || lowestDistance == -1)) {
+                    lowestDistance = d;
+                }
+            }
+        }
+        return lowestDistance;
+    }
+
+    private List<List<Feature2D>> getCandidateCells(Feature2D feature) {
+        int tolerance = Math.abs(Feature2D.tolerance);
+        return getCandidateCells((long) feature.getStart1() - tolerance, (long) feature.getStart1() + tolerance,
+                (long) feature.getStart2() - tolerance, (long) feature.getStart2() + tolerance);
+    }
+
+    /**
+     * @return true if an indexed feature equals the given feature (i.e. within Feature2D.tolerance)
+     */
+    public boolean containsEquivalent(Feature2D feature) {
+        for (List<Feature2D> cell : getCandidateCells(feature)) {
+            for (Feature2D indexedFeature : cell) {
+                if (feature.equals(indexedFeature)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return indexed features which equal the given feature (i.e. within Feature2D.tolerance)
+     */
+    public List<Feature2D> getEquivalentFeatures(Feature2D feature) {
+        List<Feature2D> features = new ArrayList<>();
+        for (List<Feature2D> cell : getCandidateCells(feature)) {
+            for (Feature2D indexedFeature : cell) {
+                if (feature.equals(indexedFeature)) {
+                    features.add(indexedFeature);
+                }
+            }
+        }
+        return features;
+    }
+
+    /**
+     * @return true if any indexed feature overlaps with the given feature (see Feature2D.overlapsWith)
+     */
+    public boolean hasOverlapWith(Feature2D feature) {
+        int window1 = (feature.getEnd1() - feature.getStart1()) / 2;
+        int window2 = (feature.getEnd2() - feature.getStart2()) / 2;
+        long mid1 = feature.getMidPt1(), mid2 = feature.getMidPt2();
+
+        for (List<Feature2D> cell : getCandidateCells(mid1 - Math.abs(window1) - maxWidth1, mid1 + Math.abs(window1),
+                mid2 - Math.abs(window2) - maxWidth2, mid2 + Math.abs(window2))) {
+            for (Feature2D indexedFeature : cell) {
+                if (indexedFeature.overlapsWith(feature)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -29,6 +29,7 @@ import juicebox.tools.clt.juicer.CompareLists;
 import juicebox.tools.utils.juicer.hiccups.HiCCUPSUtils;
 
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -130,17 +131,12 @@ public class Feature2DTools {
             @Override
             public void process(String chr, List<Feature2D> secondFeature2DList) {
                 if (firstFeatureList.containsKey(chr)) {
-                    List<Feature2D> base1FeatureList = firstFeatureList.getFeatureList(chr);
+                    Feature2DSpatialIndex base1Index = new Feature2DSpatialIndex(
+                            firstFeatureList.getFeatureList(chr), radius);
                     for (Feature2D f2 : secondFeature2DList) {
-                        for (Feature2D f1 : base1FeatureList) {
-                            int dx = f1.getStart1() - f2.getStart1();
-                            int dy = f1.getStart2() - f2.getStart2();
-                            double d = HiCCUPSUtils.hypotenuse(dx, dy);
-                            if (d <= radius) {
-                                //f2.setAttribute(HiCCUPSUtils.centroidAttr, "" + d);
-                                centroids.addByKey(chr, f2);
-                                break;
-                            }
+                        if (base1Index.hasFeatureWithinRadius(f2.getStart1(), f2.getStart2(), radius)) {
+                            //f2.setAttribute(HiCCUPSUtils.centroidAttr, "" + d);
+                            centroids.addByKey(chr, f2);
                         }
                     }
                 }
@@ -157,22 +153,15 @@ public class Feature2DTools {
             @Override
             public void process(String chr, List<Feature2D> secondFeature2DList) {
                 if (firstFeatureList.containsKey(chr)) {
-                    List<Feature2D> base1FeatureList = firstFeatureList.getFeatureList(chr);
+                    Feature2DSpatialIndex base1Index = new Feature2DSpatialIndex(
+                            firstFeatureList.getFeatureList(chr), radius);
                     for (Feature2D f2 : secondFeature2DList) {
-                        double lowestDistance = -1;
-                        //Feature2D overlap = null;
-                        for (Feature2D f1 : base1FeatureList) {
-                            int dx = f1.getStart1() - f2.getStart1();
-                            int dy = f1.getStart2() - f2.getStart2();
-                            double d = HiCCUPSUtils.hypotenuse(dx, dy);
-                            if (d < lowestDistance || lowestDistance == -1) {
-                                //overlap = f1;
-                                lowestDistance = d;
-                            }
-                        }
+                        // features further than radius would be rejected anyway
+                        double lowestDistance = base1Index.getNearestDistanceWithinRadius(f2.getStart1(),
+                                f2.getStart2(), radius);
                         if (lowestDistance != -1) {
                             double f = lowestDistance / (f2.getStart2() - f2.getStart1());
-                            if (lowestDistance <= radius && f <= fraction) {
+                            if (f <= fraction) {
                                 centroids.addByKey(chr, f2);
                             }
                         }
@@ -236,7 +225,7 @@ public class Feature2DTools {
             @Override
             public List<Feature2D> filter(String chr, List<Feature2D> feature2DList) {
                 if (listB.containsKey(chr)) {
-                    feature2DList.removeAll(listB.getFeatureList(chr));
+                    return removeEquivalentFeatures(feature2DList, listB.getFeatureList(chr));
                 }
                 return feature2DList;
             }
@@ -246,7 +235,7 @@ public class Feature2DTools {
             @Override
             public List<Feature2D> filter(String chr, List<Feature2D> feature2DList) {
                 if (listA.containsKey(chr)) {
-                    feature2DList.removeAll(listA.getFeatureList(chr));
+                    return removeEquivalentFeatures(feature2DList, listA.getFeatureList(chr));
                 }
                 return feature2DList;
             }
@@ -275,7 +264,7 @@ public class Feature2DTools {
             @Override
             public List<Feature2D> filter(String chr, List<Feature2D> feature2DList) {
                 if (listB.containsKey(chr)) {
-                    feature2DList.removeAll(listB.getFeatureList(chr));
+                    return removeEquivalentFeatures(feature2DList, listB.getFeatureList(chr));
                 }
                 return feature2DList;
             }
@@ -285,6 +274,22 @@ public class Feature2DTools {
     }
 
 
+    /**
+     * Equivalent to features.removeAll(featuresToRemove), but uses a spatial index rather than List.contains
+     *
+     * @return features (in the original order) which are not equal to any of featuresToRemove
+     */
+    static List<Feature2D> removeEquivalentFeatures(List<Feature2D> features, List<Feature2D> featuresToRemove) {
+        Feature2DSpatialIndex index = Feature2DSpatialIndex.forFeatures(featuresToRemove, features);
+        List<Feature2D> remainingFeatures = new ArrayList<>();
+        for (Feature2D feature : features) {
+            if (!index.containsEquivalent(feature)) {
+                remainingFeatures.add(feature);
+            }
+        }
+        return remainingFeatures;
+    }
+
     public static boolean loopIsUpstreamOfDomain(Feature2D loop, Feature2D domain, int threshold) {
         return loop.getEnd1() < domain.getStart1() - threshold &&
                 loop.getEnd2() < domain.getStart2() - threshold;